@@ -0,0 +1,130 @@
+package com.example.sms;
+
+import com.sun.net.httpserver.Filter;
+import com.sun.net.httpserver.HttpExchange;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Caps the number of requests running against the database at once.
+ * Requests beyond the limit wait in a bounded queue; when the queue is full,
+ * or the wait takes too long, the request is answered with 503 and Retry-After.
+ */
+public class AdmissionFilter extends Filter {
+    private static final byte[] BUSY_BODY = "{\"error\":\"Server busy, retry later\"}".getBytes(StandardCharsets.UTF_8);
+    // Set while a request the executor had no room for runs on the server's dispatcher thread
+    private static final ThreadLocal<Boolean> SHEDDING = new ThreadLocal<>();
+
+    private final Semaphore permits;
+    private final int maxQueued;
+    private final long queueTimeoutMillis;
+    private final int retryAfterSeconds;
+    private final AtomicInteger queued = new AtomicInteger();
+    private final LongAdder rejected = new LongAdder();
+
+    public AdmissionFilter(int maxConcurrent, int maxQueued, long queueTimeoutMillis) {
+        this.permits = new Semaphore(maxConcurrent, true);
+        this.maxQueued = maxQueued;
+        this.queueTimeoutMillis = queueTimeoutMillis;
+        this.retryAfterSeconds = (int) Math.max(1, TimeUnit.MILLISECONDS.toSeconds(queueTimeoutMillis));
+    }
+
+    @Override
+    public void doFilter(HttpExchange exchange, Chain chain) throws IOException {
+        if (!tryAdmit()) {
+            rejected.increment();
+            reject(exchange, retryAfterSeconds);
+            return;
+        }
+        try {
+            chain.doFilter(exchange);
+        } finally {
+            permits.release();
+        }
+    }
+
+    @Override
+    public String description() {
+        return "Limits concurrent API requests and sheds load with 503";
+    }
+
+    /**
+     * Rejection policy for a bounded executor behind the JDK server, which would only close
+     * the connection if the executor threw. The exchange runs on the calling dispatcher
+     * thread instead, and {@link #shedFilter} answers it with 503 before any handler runs.
+     */
+    static RejectedExecutionHandler shedOnCaller() {
+        return (task, executor) -> {
+            SHEDDING.set(Boolean.TRUE);
+            try {
+                task.run();
+            } finally {
+                SHEDDING.remove();
+            }
+        };
+    }
+
+    /**
+     * Answers 503 to exchanges rejected by {@link #shedOnCaller}; every context needs it
+     * ahead of its handler so the dispatcher thread never blocks in one.
+     */
+    static Filter shedFilter() {
+        return new Filter() {
+            @Override
+            public void doFilter(HttpExchange exchange, Chain chain) throws IOException {
+                if (SHEDDING.get() != null) {
+                    reject(exchange, 1);
+                } else {
+                    chain.doFilter(exchange);
+                }
+            }
+
+            @Override
+            public String description() {
+                return "Answers 503 to requests the executor had no room for";
+            }
+        };
+    }
+
+    public int getQueued() {
+        return queued.get();
+    }
+
+    public long getRejected() {
+        return rejected.sum();
+    }
+
+    private boolean tryAdmit() {
+        if (permits.tryAcquire()) {
+            return true;
+        }
+        if (queued.incrementAndGet() > maxQueued) {
+            queued.decrementAndGet();
+            return false;
+        }
+        try {
+            return permits.tryAcquire(queueTimeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } finally {
+            queued.decrementAndGet();
+        }
+    }
+
+    private static void reject(HttpExchange exchange, int retryAfterSeconds) throws IOException {
+        exchange.getResponseHeaders().add("Access-Control-Allow-Origin", "*");
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.getResponseHeaders().add("Retry-After", String.valueOf(retryAfterSeconds));
+        exchange.sendResponseHeaders(503, BUSY_BODY.length);
+        try (OutputStream os = exchange.getResponseBody()) {
+            os.write(BUSY_BODY);
+        }
+    }
+}
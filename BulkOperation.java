@@ -0,0 +1,38 @@
+package com.example.sms;
+
+/**
+ * One create, update or delete in a bulk request.
+ */
+public class BulkOperation {
+    public enum Type {
+        CREATE, UPDATE, DELETE
+    }
+
+    private final int index;
+    private final Type type;
+    private final Student student;
+
+    public BulkOperation(int index, Type type, Student student) {
+        this.index = index;
+        this.type = type;
+        this.student = student;
+    }
+
+    /**
+     * Position of this operation in the request, echoed back in its result.
+     */
+    public int getIndex() {
+        return index;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * The student to write; for deletes only the id is set.
+     */
+    public Student getStudent() {
+        return student;
+    }
+}
@@ -0,0 +1,67 @@
+package com.example.sms;
+
+import java.util.Locale;
+
+/**
+ * Outcome of one bulk operation. The status uses HTTP codes so it can be reported as-is.
+ */
+public class BulkResult {
+    private final int index;
+    private final BulkOperation.Type type;
+    private final String op;
+    private final int status;
+    private final int id;
+    private final String error;
+
+    public BulkResult(int index, BulkOperation.Type type, int status, int id, String error) {
+        this(index, type, type.name().toLowerCase(Locale.ROOT), status, id, error);
+    }
+
+    private BulkResult(int index, BulkOperation.Type type, String op, int status, int id, String error) {
+        this.index = index;
+        this.type = type;
+        this.op = op;
+        this.status = status;
+        this.id = id;
+        this.error = error;
+    }
+
+    public int getIndex() {
+        return index;
+    }
+
+    /**
+     * A 4xx for a request line that never became an operation. The op is echoed as the
+     * client sent it, or null if the line had none or could not be parsed.
+     */
+    public static BulkResult rejected(int index, String op, int status, String error) {
+        return new BulkResult(index, null, op, status, 0, error);
+    }
+
+    /**
+     * The operation type, or null for a {@link #rejected} line.
+     */
+    public BulkOperation.Type getType() {
+        return type;
+    }
+
+    public String getOp() {
+        return op;
+    }
+
+    public int getStatus() {
+        return status;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    public boolean isSuccess() {
+        return status < 300;
+    }
+}
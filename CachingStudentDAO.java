@@ -0,0 +1,228 @@
+package com.example.sms;
+
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Read-through cache in front of {@link StudentDAO#getStudentById(int)}.
+ * <p>
+ * Entries live in LRU segments bounded by size and expire after a TTL. Local updates and
+ * deletes invalidate immediately; the TTL bounds staleness for writes made by other API
+ * instances sharing the same database. Missing ids are cached too, for a shorter time,
+ * and are dropped as soon as this instance inserts a new student.
+ */
+public class CachingStudentDAO extends StudentDAO {
+    private static final int SEGMENTS = 16;
+
+    private final Segment[] segments = new Segment[SEGMENTS];
+    private final long ttlNanos;
+    private final long negativeTtlNanos;
+    // Bumped on every insert; negative entries from an older generation are ignored
+    private final AtomicLong insertGeneration = new AtomicLong();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder negativeHits = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+
+    public CachingStudentDAO(int maxSize, long ttlMillis, long negativeTtlMillis) {
+        int perSegment = Math.max(1, maxSize / SEGMENTS);
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment(perSegment);
+        }
+        this.ttlNanos = ttlMillis * 1_000_000L;
+        this.negativeTtlNanos = negativeTtlMillis * 1_000_000L;
+    }
+
+    @Override
+    public Student getStudentById(int id) throws SQLException {
+        Segment segment = segmentFor(id);
+        long now = System.nanoTime();
+        Entry entry;
+        long modCount;
+        synchronized (segment) {
+            entry = segment.map.get(id);
+            if (entry != null && !isFresh(entry, now)) {
+                segment.map.remove(id);
+                entry = null;
+            }
+            modCount = segment.modCount;
+        }
+        if (entry != null) {
+            if (entry.student == null) {
+                negativeHits.increment();
+                return null;
+            }
+            hits.increment();
+            return copy(entry.student);
+        }
+
+        misses.increment();
+        long generation = insertGeneration.get();
+        Student loaded = super.getStudentById(id);
+        long expiresAt = System.nanoTime() + (loaded != null ? ttlNanos : negativeTtlNanos);
+        synchronized (segment) {
+            // Skip the fill if the segment was invalidated while we were reading
+            if (segment.modCount == modCount) {
+                segment.map.put(id, new Entry(loaded == null ? null : copy(loaded), expiresAt, generation));
+            }
+        }
+        return loaded;
+    }
+
+    /**
+     * Served from the cache like a full read: a cached row beats a narrower query.
+     */
+    @Override
+    public Student getStudentById(int id, StudentFields fields) throws SQLException {
+        return getStudentById(id);
+    }
+
+    @Override
+    public void addStudent(Student student) throws SQLException {
+        super.addStudent(student);
+        insertGeneration.incrementAndGet();
+    }
+
+    @Override
+    public void insertStudents(List<Student> students) throws SQLException {
+        try {
+            super.insertStudents(students);
+        } finally {
+            insertGeneration.incrementAndGet();
+        }
+    }
+
+    @Override
+    public void updateStudent(Student student) throws SQLException {
+        try {
+            super.updateStudent(student);
+        } finally {
+            invalidate(student.getId());
+        }
+    }
+
+    @Override
+    public void deleteStudent(int id) throws SQLException {
+        try {
+            super.deleteStudent(id);
+        } finally {
+            invalidate(id);
+        }
+    }
+
+    @Override
+    public List<BulkResult> executeBulk(List<BulkOperation> ops) throws SQLException {
+        try {
+            return super.executeBulk(ops);
+        } finally {
+            for (BulkOperation op : ops) {
+                if (op.getType() == BulkOperation.Type.CREATE) {
+                    insertGeneration.incrementAndGet();
+                } else {
+                    invalidate(op.getStudent().getId());
+                }
+            }
+        }
+    }
+
+    public void invalidate(int id) {
+        Segment segment = segmentFor(id);
+        synchronized (segment) {
+            segment.map.remove(id);
+            segment.modCount++;
+        }
+        invalidations.increment();
+    }
+
+    public void invalidateAll() {
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                segment.map.clear();
+                segment.modCount++;
+            }
+        }
+        invalidations.increment();
+    }
+
+    public int getSize() {
+        int size = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                size += segment.map.size();
+            }
+        }
+        return size;
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getNegativeHits() {
+        return negativeHits.sum();
+    }
+
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    public long getInvalidations() {
+        return invalidations.sum();
+    }
+
+    private boolean isFresh(Entry entry, long now) {
+        if (now - entry.expiresAt >= 0) {
+            return false;
+        }
+        return entry.student != null || entry.generation == insertGeneration.get();
+    }
+
+    private Segment segmentFor(int id) {
+        int h = id * 0x9E3779B9;
+        return segments[(h >>> 28) & (SEGMENTS - 1)];
+    }
+
+    private static Student copy(Student s) {
+        return new Student(s.getId(), s.getName(), s.getEmail(), s.getAge());
+    }
+
+    private static final class Entry {
+        final Student student;
+        final long expiresAt;
+        final long generation;
+
+        Entry(Student student, long expiresAt, long generation) {
+            this.student = student;
+            this.expiresAt = expiresAt;
+            this.generation = generation;
+        }
+    }
+
+    private final class Segment {
+        final LinkedHashMap<Integer, Entry> map;
+        long modCount;
+
+        Segment(int capacity) {
+            map = new LinkedHashMap<>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Integer, Entry> eldest) {
+                    if (size() > capacity) {
+                        evictions.increment();
+                        return true;
+                    }
+                    return false;
+                }
+            };
+        }
+    }
+}
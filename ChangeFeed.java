@@ -0,0 +1,204 @@
+package com.example.sms;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Numbered stream of student inserts, updates and deletes, sent to subscribers as
+ * Server-Sent Events.
+ * <p>
+ * Every change gets the next sequence number. The last {@code historySize} changes are kept so
+ * a subscriber that reconnects with the id of the last event it saw is sent what it missed.
+ * Event ids are {@code <epoch>-<seq>}, where the epoch identifies this feed, so an id from
+ * before a server restart is not mistaken for a current one.
+ * <p>
+ * Each subscriber has a bounded buffer. One that falls too far behind, or asks to resume from
+ * a change no longer kept, loses its backlog and gets a {@code reset} event instead, which
+ * tells it to reload the full list. Publishing never waits for a subscriber.
+ */
+final class ChangeFeed {
+    enum Type {
+        INSERT("insert"), UPDATE("update"), DELETE("delete");
+
+        final String event;
+
+        Type(String event) {
+            this.event = event;
+        }
+    }
+
+    private static final class Change {
+        final long seq;
+        final Type type;
+        final Student student;
+        // Encoded on first send, so changes nobody receives are never encoded
+        private volatile byte[] frame;
+
+        Change(long seq, Type type, Student student) {
+            this.seq = seq;
+            this.type = type;
+            this.student = student;
+        }
+    }
+
+    private final long epoch = System.currentTimeMillis();
+    private final Change[] history;
+    private final int maxSubscribers;
+    private final List<Subscription> subscribers = new ArrayList<>();
+    private long lastSeq;
+    private final LongAdder resets = new LongAdder();
+
+    ChangeFeed(int historySize, int maxSubscribers) {
+        this.history = new Change[Math.max(1, historySize)];
+        this.maxSubscribers = maxSubscribers;
+    }
+
+    void inserted(Student student) {
+        publish(Type.INSERT, copy(student));
+    }
+
+    void updated(Student student) {
+        publish(Type.UPDATE, copy(student));
+    }
+
+    void deleted(int id) {
+        Student student = new Student();
+        student.setId(id);
+        publish(Type.DELETE, student);
+    }
+
+    synchronized int getSubscribers() {
+        return subscribers.size();
+    }
+
+    long getResets() {
+        return resets.sum();
+    }
+
+    /**
+     * Starts a subscription. {@code lastEventId} is the id of the last event the client saw,
+     * or null to receive only changes from now on.
+     *
+     * @throws RejectedExecutionException when {@code maxSubscribers} are already connected
+     */
+    synchronized Subscription subscribe(String lastEventId, int bufferSize) {
+        if (subscribers.size() >= maxSubscribers) {
+            throw new RejectedExecutionException("Too many change subscribers");
+        }
+        Subscription sub = new Subscription(bufferSize);
+        if (lastEventId != null) {
+            long from = resumePoint(lastEventId);
+            long oldest = Math.max(1, lastSeq - history.length + 1);
+            if (from < oldest - 1 || from > lastSeq || lastSeq - from > bufferSize) {
+                sub.overflowed = true;
+            } else {
+                for (long seq = from + 1; seq <= lastSeq; seq++) {
+                    sub.queue.add(history[(int) (seq % history.length)]);
+                }
+            }
+        }
+        subscribers.add(sub);
+        return sub;
+    }
+
+    private synchronized void publish(Type type, Student student) {
+        Change change = new Change(++lastSeq, type, student);
+        history[(int) (change.seq % history.length)] = change;
+        for (int i = 0; i < subscribers.size(); i++) {
+            Subscription sub = subscribers.get(i);
+            if (!sub.overflowed && !sub.queue.offer(change)) {
+                sub.overflowed = true;
+            }
+        }
+    }
+
+    /**
+     * Sequence number a client's Last-Event-ID stands for, or -1 when it is not from this feed.
+     */
+    private long resumePoint(String lastEventId) {
+        int dash = lastEventId.indexOf('-');
+        if (dash < 0 || !lastEventId.substring(0, dash).equals(Long.toString(epoch))) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(lastEventId.substring(dash + 1).trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private byte[] frame(Change change) {
+        byte[] frame = change.frame;
+        if (frame == null) {
+            JsonWriter json = JsonWriter.acquire();
+            try {
+                json.raw("id: ").raw(epoch + "-" + change.seq).raw("\nevent: ").raw(change.type.event)
+                        .raw("\ndata: {\"seq\":").number(change.seq).raw(",\"student\":");
+                if (change.type == Type.DELETE) {
+                    json.raw("{\"id\":").number(change.student.getId()).raw('}');
+                } else {
+                    json.student(change.student);
+                }
+                json.raw("}\n\n");
+                frame = Arrays.copyOf(json.array(), json.length());
+            } finally {
+                json.release();
+            }
+            change.frame = frame;
+        }
+        return frame;
+    }
+
+    private static Student copy(Student s) {
+        // Handlers may reuse the object they passed in, so events keep their own
+        return new Student(s.getId(), s.getName(), s.getEmail(), s.getAge());
+    }
+
+    /**
+     * One connected client. Call {@link #next} from a single thread and {@link #close} when
+     * the client goes away.
+     */
+    final class Subscription implements AutoCloseable {
+        private final BlockingQueue<Change> queue;
+        // Set under the feed's lock when a change did not fit in the buffer
+        private volatile boolean overflowed;
+
+        private Subscription(int bufferSize) {
+            this.queue = new ArrayBlockingQueue<>(Math.max(1, bufferSize));
+        }
+
+        /**
+         * Waits up to {@code timeoutMillis} for the next event and returns it encoded,
+         * or null if nothing happened.
+         */
+        byte[] next(long timeoutMillis) throws InterruptedException {
+            if (overflowed) {
+                long seq;
+                synchronized (ChangeFeed.this) {
+                    queue.clear();
+                    overflowed = false;
+                    seq = lastSeq;
+                }
+                resets.increment();
+                return ("id: " + epoch + "-" + seq + "\nevent: reset\ndata: {\"seq\":" + seq + "}\n\n")
+                        .getBytes(StandardCharsets.UTF_8);
+            }
+            Change change = queue.poll(timeoutMillis, TimeUnit.MILLISECONDS);
+            return change == null ? null : frame(change);
+        }
+
+        @Override
+        public void close() {
+            synchronized (ChangeFeed.this) {
+                subscribers.remove(this);
+            }
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package com.example.sms;
+
+import com.sun.net.httpserver.Filter;
+import com.sun.net.httpserver.HttpExchange;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Caps the API requests in progress at a limit that follows database latency, and answers
+ * 503 above it at once instead of queueing.
+ * <p>
+ * The store reports the time of each database call to {@link #sample}. Once per window the
+ * average is compared with a baseline, the lowest window average seen so far. While latency
+ * stays within {@code TOLERANCE} of the baseline, the limit grows by about its square root,
+ * but only if traffic came near the limit. Above that, the limit shrinks in proportion.
+ * This is the gradient method: queueing in the database shows up as latency before it shows
+ * up as errors. The baseline creeps up by {@code BASELINE_DRIFT} per slower window, so it
+ * follows a database that has genuinely become slower, but too slowly to hide an overload.
+ * <p>
+ * Every counter is an atomic. The window is closed by whichever thread wins a
+ * compare-and-set, so nothing waits on a lock.
+ */
+public class ConcurrencyLimitFilter extends Filter {
+    // Latency may rise this far over its long-run average before the limit comes down
+    private static final double TOLERANCE = 1.5;
+    // Share of each window's new limit that is applied, to damp noise
+    private static final double SMOOTHING = 0.2;
+    private static final double BASELINE_DRIFT = 0.001;
+    // Windows with fewer database calls say nothing about latency
+    private static final int MIN_SAMPLES = 10;
+    private static final byte[] BUSY_BODY = "{\"error\":\"Server busy, retry later\"}".getBytes(StandardCharsets.UTF_8);
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final long windowNanos;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private volatile double limit;
+    private final AtomicLong windowStart = new AtomicLong(System.nanoTime());
+    private final LongAdder windowLatency = new LongAdder();
+    private final LongAdder windowSamples = new LongAdder();
+    private final AtomicInteger windowPeak = new AtomicInteger();
+    // Written only by the thread closing a window
+    private volatile double baseline;
+    private final LongAdder rejected = new LongAdder();
+
+    public ConcurrencyLimitFilter(int initialLimit, int minLimit, int maxLimit, long windowMillis) {
+        if (minLimit < 1 || maxLimit < minLimit) {
+            throw new IllegalArgumentException("Concurrency limits must satisfy 1 <= min <= max");
+        }
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.limit = Math.max(minLimit, Math.min(maxLimit, initialLimit));
+        this.windowNanos = TimeUnit.MILLISECONDS.toNanos(windowMillis);
+    }
+
+    @Override
+    public void doFilter(HttpExchange exchange, Chain chain) throws IOException {
+        if (!tryAcquire()) {
+            rejected.increment();
+            reject(exchange);
+            return;
+        }
+        try {
+            chain.doFilter(exchange);
+        } finally {
+            inFlight.decrementAndGet();
+            maybeAdjust(System.nanoTime());
+        }
+    }
+
+    @Override
+    public String description() {
+        return "Adapts the number of concurrent API requests to database latency and sheds load with 503";
+    }
+
+    /**
+     * Records the duration of one database call.
+     */
+    public void sample(long nanos) {
+        windowLatency.add(nanos);
+        windowSamples.increment();
+        maybeAdjust(System.nanoTime());
+    }
+
+    public int getLimit() {
+        return (int) limit;
+    }
+
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    public long getRejected() {
+        return rejected.sum();
+    }
+
+    private boolean tryAcquire() {
+        while (true) {
+            int current = inFlight.get();
+            if (current >= (int) limit) {
+                return false;
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                windowPeak.accumulateAndGet(current + 1, Math::max);
+                return true;
+            }
+        }
+    }
+
+    private void maybeAdjust(long now) {
+        long start = windowStart.get();
+        if (now - start < windowNanos || !windowStart.compareAndSet(start, now)) {
+            return;
+        }
+        // Samples recorded while this runs may count towards either window; that is harmless
+        long samples = windowSamples.sumThenReset();
+        long total = windowLatency.sumThenReset();
+        int peak = windowPeak.getAndSet(inFlight.get());
+
+        double current = limit;
+        double gradient = 1.0;
+        if (samples >= MIN_SAMPLES) {
+            double shortLatency = (double) total / samples;
+            double base = baseline == 0 ? shortLatency : Math.min(shortLatency, baseline * (1 + BASELINE_DRIFT));
+            baseline = base;
+            gradient = Math.max(0.5, Math.min(1.0, TOLERANCE * base / shortLatency));
+        }
+        double target = current * gradient + Math.sqrt(current);
+        if (peak < current / 2) {
+            // Traffic never came near the limit, so there is no evidence it is too low
+            target = Math.min(target, current);
+        }
+        double next = current * (1 - SMOOTHING) + target * SMOOTHING;
+        limit = Math.max(minLimit, Math.min(maxLimit, next));
+    }
+
+    private static void reject(HttpExchange exchange) throws IOException {
+        exchange.getResponseHeaders().add("Access-Control-Allow-Origin", "*");
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.getResponseHeaders().add("Retry-After", "1");
+        exchange.sendResponseHeaders(503, BUSY_BODY.length);
+        try (OutputStream os = exchange.getResponseBody()) {
+            os.write(BUSY_BODY);
+        }
+    }
+}
@@ -0,0 +1,534 @@
+package com.example.sms;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded JDBC connection pool used behind {@link DBConnection#getConnection()}.
+ * Borrowed connections are proxies; calling close() hands the physical
+ * connection back to the pool instead of closing the socket.
+ * <p>
+ * With a statement cache, each physical connection also keeps its most recently used
+ * {@code prepareStatement(sql)} statements, keyed by SQL text. Closing such a statement
+ * clears its parameters and puts it back in the cache, so a query that runs again on the
+ * same connection is not parsed again.
+ */
+public class ConnectionPool {
+    private static final int VALIDATION_TIMEOUT_SECONDS = 2;
+    private static final long VALIDATION_SKIP_MILLIS = 500;
+
+    private final String url;
+    private final String username;
+    private final String password;
+    private final int maxSize;
+    private final int minIdle;
+    private final long borrowTimeoutMillis;
+    private final long idleTimeoutMillis;
+    private final long maxLifetimeMillis;
+    private final int statementCacheSize;
+
+    // LIFO: the most recently returned connection is the one most likely to still be valid
+    private final LinkedBlockingDeque<PooledConnection> idle = new LinkedBlockingDeque<>();
+    private final Semaphore permits;
+    private final AtomicInteger active = new AtomicInteger();
+    private final AtomicInteger total = new AtomicInteger();
+    private final AtomicInteger waiters = new AtomicInteger();
+    private final LongAdder borrowCount = new LongAdder();
+    private final LongAdder timeoutCount = new LongAdder();
+    private final LongAdder createdCount = new LongAdder();
+    private final LongAdder evictedCount = new LongAdder();
+    private final LongAdder waitNanos = new LongAdder();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+    private final LongAdder statementHits = new LongAdder();
+    private final LongAdder statementMisses = new LongAdder();
+    private final ScheduledExecutorService housekeeper;
+    private volatile boolean closed;
+
+    public ConnectionPool(String url, String username, String password, int maxSize, int minIdle,
+                          long borrowTimeoutMillis, long idleTimeoutMillis, long maxLifetimeMillis) {
+        this(url, username, password, maxSize, minIdle, borrowTimeoutMillis, idleTimeoutMillis, maxLifetimeMillis, 0);
+    }
+
+    /**
+     * @param statementCacheSize prepared statements kept per connection; 0 disables the cache
+     */
+    public ConnectionPool(String url, String username, String password, int maxSize, int minIdle,
+                          long borrowTimeoutMillis, long idleTimeoutMillis, long maxLifetimeMillis,
+                          int statementCacheSize) {
+        if (maxSize < 1 || minIdle < 0 || minIdle > maxSize) {
+            throw new IllegalArgumentException("Invalid pool size: max=" + maxSize + ", minIdle=" + minIdle);
+        }
+        if (statementCacheSize < 0) {
+            throw new IllegalArgumentException("Invalid statement cache size: " + statementCacheSize);
+        }
+        this.url = url;
+        this.username = username;
+        this.password = password;
+        this.maxSize = maxSize;
+        this.minIdle = minIdle;
+        this.borrowTimeoutMillis = borrowTimeoutMillis;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        this.maxLifetimeMillis = maxLifetimeMillis;
+        this.statementCacheSize = statementCacheSize;
+        this.permits = new Semaphore(maxSize, true);
+
+        housekeeper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "sms-pool-housekeeper");
+            t.setDaemon(true);
+            return t;
+        });
+        long period = Math.max(1000, Math.min(idleTimeoutMillis, 30_000) / 2);
+        housekeeper.scheduleWithFixedDelay(this::housekeep, period, period, TimeUnit.MILLISECONDS);
+
+        fillToMinIdle();
+    }
+
+    public Connection borrow() throws SQLException {
+        if (closed) {
+            throw new SQLException("Connection pool is closed");
+        }
+        long start = System.nanoTime();
+        waiters.incrementAndGet();
+        try {
+            if (!permits.tryAcquire(borrowTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                timeoutCount.increment();
+                throw new SQLTimeoutException("Timed out after " + borrowTimeoutMillis
+                        + " ms waiting for a connection (" + stats() + ")");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a connection", e);
+        } finally {
+            waiters.decrementAndGet();
+            long waited = System.nanoTime() - start;
+            waitNanos.add(waited);
+            maxWaitNanos.accumulateAndGet(waited, Math::max);
+        }
+
+        try {
+            PooledConnection pc;
+            while ((pc = idle.pollFirst()) != null) {
+                if (isUsable(pc)) {
+                    break;
+                }
+                discard(pc);
+            }
+            if (pc == null) {
+                pc = open();
+            }
+            active.incrementAndGet();
+            borrowCount.increment();
+            return pc.lease();
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    public Stats stats() {
+        long borrows = borrowCount.sum();
+        return new Stats(active.get(), idle.size(), total.get(), maxSize, waiters.get(), borrows,
+                timeoutCount.sum(), createdCount.sum(), evictedCount.sum(),
+                borrows == 0 ? 0 : waitNanos.sum() / borrows / 1000, maxWaitNanos.get() / 1000,
+                statementHits.sum(), statementMisses.sum());
+    }
+
+    public void close() {
+        closed = true;
+        housekeeper.shutdownNow();
+        PooledConnection pc;
+        while ((pc = idle.pollFirst()) != null) {
+            discard(pc);
+        }
+    }
+
+    private void release(PooledConnection pc) {
+        active.decrementAndGet();
+        try {
+            if (closed || pc.broken || isExpired(pc, System.currentTimeMillis())) {
+                discard(pc);
+                return;
+            }
+            try {
+                if (!pc.physical.getAutoCommit()) {
+                    pc.physical.rollback();
+                    pc.physical.setAutoCommit(true);
+                }
+            } catch (SQLException e) {
+                discard(pc);
+                return;
+            }
+            pc.lastUsed = System.currentTimeMillis();
+            idle.offerFirst(pc);
+        } finally {
+            permits.release();
+        }
+    }
+
+    private boolean isUsable(PooledConnection pc) {
+        long now = System.currentTimeMillis();
+        if (isExpired(pc, now)) {
+            return false;
+        }
+        if (now - pc.lastUsed < VALIDATION_SKIP_MILLIS) {
+            return true;
+        }
+        try {
+            return pc.physical.isValid(VALIDATION_TIMEOUT_SECONDS);
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    private boolean isExpired(PooledConnection pc, long now) {
+        return maxLifetimeMillis > 0 && now - pc.created >= maxLifetimeMillis;
+    }
+
+    private PooledConnection open() throws SQLException {
+        Connection physical = DriverManager.getConnection(url, username, password);
+        total.incrementAndGet();
+        createdCount.increment();
+        return new PooledConnection(physical);
+    }
+
+    private void discard(PooledConnection pc) {
+        total.decrementAndGet();
+        evictedCount.increment();
+        try {
+            pc.physical.close();
+        } catch (SQLException ignored) {
+        }
+    }
+
+    private void housekeep() {
+        long now = System.currentTimeMillis();
+        Iterator<PooledConnection> it = idle.descendingIterator();
+        while (it.hasNext()) {
+            PooledConnection pc = it.next();
+            boolean idleTooLong = idleTimeoutMillis > 0 && now - pc.lastUsed >= idleTimeoutMillis
+                    && idle.size() > minIdle;
+            if ((idleTooLong || isExpired(pc, now)) && idle.remove(pc)) {
+                discard(pc);
+            }
+        }
+        fillToMinIdle();
+    }
+
+    private void fillToMinIdle() {
+        while (!closed && idle.size() < minIdle && total.get() < maxSize && permits.tryAcquire()) {
+            try {
+                PooledConnection pc = open();
+                idle.offerLast(pc);
+            } catch (SQLException e) {
+                System.err.println("Connection pool: could not open connection: " + e.getMessage());
+                return;
+            } finally {
+                permits.release();
+            }
+        }
+    }
+
+    private final class PooledConnection {
+        final Connection physical;
+        final long created = System.currentTimeMillis();
+        volatile long lastUsed = created;
+        volatile boolean broken;
+        // Only touched by the thread holding the lease; hand-over through the idle deque orders it
+        private final Map<String, PreparedStatement> statements = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, PreparedStatement> eldest) {
+                if (size() <= statementCacheSize) {
+                    return false;
+                }
+                closeQuietly(eldest.getValue());
+                return true;
+            }
+        };
+
+        PooledConnection(Connection physical) {
+            this.physical = physical;
+        }
+
+        /**
+         * Takes the cached statement for {@code sql} out of the cache, or prepares a new one.
+         * While it is in use no other caller can be handed the same statement.
+         */
+        PreparedStatement checkOut(String sql) throws SQLException {
+            PreparedStatement ps = statements.remove(sql);
+            if (ps != null && !ps.isClosed()) {
+                statementHits.increment();
+                return ps;
+            }
+            statementMisses.increment();
+            return physical.prepareStatement(sql);
+        }
+
+        void checkIn(String sql, PreparedStatement ps) {
+            PreparedStatement previous = statements.put(sql, ps);
+            if (previous != null) {
+                // The same SQL was prepared twice on this lease; keep only the newest
+                closeQuietly(previous);
+            }
+        }
+
+        Connection lease() {
+            return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                    new Class<?>[]{Connection.class}, new Lease(this));
+        }
+    }
+
+    private final class Lease implements InvocationHandler {
+        private final PooledConnection pc;
+        private volatile boolean returned;
+
+        Lease(PooledConnection pc) {
+            this.pc = pc;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    if (!returned) {
+                        returned = true;
+                        release(pc);
+                    }
+                    return null;
+                case "isClosed":
+                    return returned || pc.physical.isClosed();
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "PooledConnection[" + pc.physical + "]";
+                default:
+                    break;
+            }
+            if (returned) {
+                throw new SQLException("Connection has already been returned to the pool");
+            }
+            if (statementCacheSize > 0 && method.getName().equals("prepareStatement")
+                    && args.length == 1 && args[0] instanceof String sql) {
+                try {
+                    PreparedStatement ps = pc.checkOut(sql);
+                    return Proxy.newProxyInstance(PreparedStatement.class.getClassLoader(),
+                            new Class<?>[]{PreparedStatement.class}, new CachedStatement(this, (Connection) proxy, sql, ps));
+                } catch (SQLException e) {
+                    if (isFatal(e)) {
+                        pc.broken = true;
+                    }
+                    throw e;
+                }
+            }
+            try {
+                return method.invoke(pc.physical, args);
+            } catch (InvocationTargetException e) {
+                throw unwrap(pc, e);
+            }
+        }
+    }
+
+    /**
+     * A statement from the cache. Closing it resets it and returns it to the cache, unless
+     * the connection has been returned or has failed, in which case it is really closed.
+     */
+    private final class CachedStatement implements InvocationHandler {
+        private final Lease lease;
+        private final Connection connection;
+        private final String sql;
+        private final PreparedStatement statement;
+        private final int fetchSize;
+        private boolean closed;
+
+        CachedStatement(Lease lease, Connection connection, String sql, PreparedStatement statement) throws SQLException {
+            this.lease = lease;
+            this.connection = connection;
+            this.sql = sql;
+            this.statement = statement;
+            this.fetchSize = statement.getFetchSize();
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    if (!closed) {
+                        closed = true;
+                        giveBack();
+                    }
+                    return null;
+                case "isClosed":
+                    return closed || statement.isClosed();
+                case "getConnection":
+                    return connection;
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "CachedStatement[" + statement + "]";
+                default:
+                    break;
+            }
+            if (closed) {
+                throw new SQLException("Statement is closed");
+            }
+            try {
+                return method.invoke(statement, args);
+            } catch (InvocationTargetException e) {
+                throw unwrap(lease.pc, e);
+            }
+        }
+
+        private void giveBack() {
+            if (lease.returned || lease.pc.broken) {
+                closeQuietly(statement);
+                return;
+            }
+            try {
+                statement.clearParameters();
+                statement.clearBatch();
+                if (statement.getFetchSize() != fetchSize) {
+                    statement.setFetchSize(fetchSize);
+                }
+            } catch (SQLException e) {
+                closeQuietly(statement);
+                return;
+            }
+            lease.pc.checkIn(sql, statement);
+        }
+    }
+
+    private static Throwable unwrap(PooledConnection pc, InvocationTargetException e) {
+        Throwable cause = e.getCause();
+        if (cause instanceof SQLException sqlEx && isFatal(sqlEx)) {
+            pc.broken = true;
+        }
+        return cause;
+    }
+
+    private static boolean isFatal(SQLException e) {
+        // SQLState class 08 = connection exception
+        String state = e.getSQLState();
+        return state != null && state.startsWith("08");
+    }
+
+    private static void closeQuietly(PreparedStatement ps) {
+        try {
+            ps.close();
+        } catch (SQLException ignored) {
+        }
+    }
+
+    public static final class Stats {
+        private final int active;
+        private final int idle;
+        private final int total;
+        private final int maxSize;
+        private final int waiters;
+        private final long borrows;
+        private final long timeouts;
+        private final long created;
+        private final long evicted;
+        private final long avgWaitMicros;
+        private final long maxWaitMicros;
+        private final long statementHits;
+        private final long statementMisses;
+
+        Stats(int active, int idle, int total, int maxSize, int waiters, long borrows, long timeouts,
+              long created, long evicted, long avgWaitMicros, long maxWaitMicros,
+              long statementHits, long statementMisses) {
+            this.active = active;
+            this.idle = idle;
+            this.total = total;
+            this.maxSize = maxSize;
+            this.waiters = waiters;
+            this.borrows = borrows;
+            this.timeouts = timeouts;
+            this.created = created;
+            this.evicted = evicted;
+            this.avgWaitMicros = avgWaitMicros;
+            this.maxWaitMicros = maxWaitMicros;
+            this.statementHits = statementHits;
+            this.statementMisses = statementMisses;
+        }
+
+        public int getActive() {
+            return active;
+        }
+
+        public int getIdle() {
+            return idle;
+        }
+
+        public int getTotal() {
+            return total;
+        }
+
+        public int getMaxSize() {
+            return maxSize;
+        }
+
+        public int getWaiters() {
+            return waiters;
+        }
+
+        public long getBorrows() {
+            return borrows;
+        }
+
+        public long getTimeouts() {
+            return timeouts;
+        }
+
+        public long getCreated() {
+            return created;
+        }
+
+        public long getEvicted() {
+            return evicted;
+        }
+
+        public long getAvgWaitMicros() {
+            return avgWaitMicros;
+        }
+
+        public long getMaxWaitMicros() {
+            return maxWaitMicros;
+        }
+
+        public long getStatementHits() {
+            return statementHits;
+        }
+
+        public long getStatementMisses() {
+            return statementMisses;
+        }
+
+        @Override
+        public String toString() {
+            return "active=" + active + ", idle=" + idle + ", total=" + total + "/" + maxSize
+                    + ", waiters=" + waiters + ", borrows=" + borrows + ", timeouts=" + timeouts
+                    + ", avgWaitUs=" + avgWaitMicros + ", maxWaitUs=" + maxWaitMicros;
+        }
+    }
+}
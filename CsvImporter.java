@@ -0,0 +1,173 @@
+package com.example.sms;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Streams students from CSV into the database in multi-row INSERT batches.
+ * <p>
+ * Rows are numbered from 1, not counting the header. Rows that cannot be parsed are
+ * rejected one by one. A batch the database refuses fails as a row range. The importer
+ * then either stops, reporting how many rows are safe to skip when resuming, or records
+ * the range and carries on.
+ */
+class CsvImporter {
+    private static final int MAX_REPORTED_ERRORS = 100;
+
+    interface ProgressListener {
+        void progress(Result result) throws IOException;
+    }
+
+    static class Result {
+        long rowsRead;
+        long imported;
+        long rejected;
+        long failedRows;
+        boolean stopped;
+        // Rows up to and including this number were handled; pass it as skip to resume
+        long resumeAfterRow;
+        final List<String> errors = new ArrayList<>();
+
+        void addError(String error) {
+            if (errors.size() < MAX_REPORTED_ERRORS) {
+                errors.add(error);
+            }
+        }
+    }
+
+    private final StudentStore dao;
+    private final int batchSize;
+    private final boolean continueOnError;
+    private final long progressInterval;
+
+    CsvImporter(StudentStore dao, int batchSize, boolean continueOnError, long progressInterval) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("batchSize must be positive");
+        }
+        this.dao = dao;
+        this.batchSize = batchSize;
+        this.continueOnError = continueOnError;
+        this.progressInterval = progressInterval;
+    }
+
+    Result importFrom(Reader in, long skipRows, ProgressListener listener) throws IOException {
+        CsvReader csv = new CsvReader(in);
+        Result result = new Result();
+        result.resumeAfterRow = skipRows;
+
+        int nameCol = 0;
+        int emailCol = 1;
+        int ageCol = 2;
+        String[] record = csv.next();
+        if (record != null && isHeader(record)) {
+            nameCol = emailCol = ageCol = -1;
+            for (int i = 0; i < record.length; i++) {
+                switch (record[i].trim().toLowerCase()) {
+                    case "name" -> nameCol = i;
+                    case "email" -> emailCol = i;
+                    case "age" -> ageCol = i;
+                    default -> { }
+                }
+            }
+            if (nameCol < 0 || emailCol < 0 || ageCol < 0) {
+                throw new IllegalArgumentException("CSV header must contain name, email and age");
+            }
+            record = csv.next();
+        } else if (record != null && record.length == 4) {
+            // Same layout as our export: id,name,email,age
+            nameCol = 1;
+            emailCol = 2;
+            ageCol = 3;
+        }
+
+        List<Student> batch = new ArrayList<>(batchSize);
+        long batchFirstRow = 0;
+        long nextProgress = skipRows + progressInterval;
+        for (; record != null; record = csv.next()) {
+            long row = ++result.rowsRead;
+            if (row <= skipRows) {
+                continue;
+            }
+            Student s = toStudent(record, nameCol, emailCol, ageCol, row, result);
+            if (s == null) {
+                continue;
+            }
+            if (batch.isEmpty()) {
+                batchFirstRow = row;
+            }
+            batch.add(s);
+            if (batch.size() >= batchSize) {
+                if (!flush(batch, batchFirstRow, row, result)) {
+                    return result;
+                }
+            }
+            if (listener != null && row >= nextProgress) {
+                listener.progress(result);
+                nextProgress = row + progressInterval;
+            }
+        }
+        if (!batch.isEmpty()) {
+            flush(batch, batchFirstRow, result.rowsRead, result);
+        }
+        if (!result.stopped) {
+            result.resumeAfterRow = Math.max(skipRows, result.rowsRead);
+        }
+        return result;
+    }
+
+    private boolean flush(List<Student> batch, long firstRow, long lastRow, Result result) {
+        try {
+            dao.insertStudents(batch);
+            result.imported += batch.size();
+            result.resumeAfterRow = lastRow;
+            return true;
+        } catch (SQLException e) {
+            result.failedRows += batch.size();
+            result.addError("Rows " + firstRow + "-" + lastRow + " failed: " + e.getMessage());
+            if (!continueOnError) {
+                result.stopped = true;
+                result.resumeAfterRow = firstRow - 1;
+                return false;
+            }
+            result.resumeAfterRow = lastRow;
+            return true;
+        } finally {
+            batch.clear();
+        }
+    }
+
+    private static Student toStudent(String[] record, int nameCol, int emailCol, int ageCol, long row, Result result) {
+        int needed = Math.max(nameCol, Math.max(emailCol, ageCol)) + 1;
+        if (record.length < needed) {
+            result.rejected++;
+            result.addError("Row " + row + ": expected at least " + needed + " columns");
+            return null;
+        }
+        String name = record[nameCol].trim();
+        String email = record[emailCol].trim();
+        if (name.isEmpty() || email.isEmpty()) {
+            result.rejected++;
+            result.addError("Row " + row + ": name and email are required");
+            return null;
+        }
+        try {
+            return new Student(0, name, email, Integer.parseInt(record[ageCol].trim()));
+        } catch (NumberFormatException e) {
+            result.rejected++;
+            result.addError("Row " + row + ": invalid age '" + record[ageCol] + "'");
+            return null;
+        }
+    }
+
+    private static boolean isHeader(String[] record) {
+        for (String field : record) {
+            if (field.trim().equalsIgnoreCase("name")) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
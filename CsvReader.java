@@ -0,0 +1,103 @@
+package com.example.sms;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Incremental RFC 4180 CSV reader. Only one record is held in memory at a time.
+ */
+class CsvReader {
+    private final Reader in;
+    private final char[] buf = new char[8192];
+    private int pos;
+    private int len;
+    private long recordNumber;
+
+    CsvReader(Reader in) {
+        this.in = in;
+    }
+
+    /**
+     * Number of records returned so far (1-based number of the last record).
+     */
+    long getRecordNumber() {
+        return recordNumber;
+    }
+
+    /**
+     * Returns the next record, or null at end of input. Blank lines are skipped.
+     */
+    String[] next() throws IOException {
+        List<String> fields = new ArrayList<>(4);
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        boolean any = false;
+        int c;
+        while ((c = read()) != -1) {
+            any = true;
+            if (quoted) {
+                if (c == '"') {
+                    if (peek() == '"') {
+                        read();
+                        field.append('"');
+                    } else {
+                        quoted = false;
+                    }
+                } else {
+                    field.append((char) c);
+                }
+            } else if (c == '"' && field.length() == 0) {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else if (c == '\n' || c == '\r') {
+                if (c == '\r' && peek() == '\n') {
+                    read();
+                }
+                if (fields.isEmpty() && field.length() == 0) {
+                    any = false;
+                    continue;
+                }
+                break;
+            } else {
+                field.append((char) c);
+            }
+        }
+        if (!any) {
+            return null;
+        }
+        if (quoted) {
+            throw new IOException("Unterminated quoted field in record " + (recordNumber + 1));
+        }
+        fields.add(field.toString());
+        recordNumber++;
+        return fields.toArray(new String[0]);
+    }
+
+    private int read() throws IOException {
+        if (pos == len && !fill()) {
+            return -1;
+        }
+        return buf[pos++];
+    }
+
+    private int peek() throws IOException {
+        if (pos == len && !fill()) {
+            return -1;
+        }
+        return buf[pos];
+    }
+
+    private boolean fill() throws IOException {
+        len = in.read(buf, 0, buf.length);
+        pos = 0;
+        if (len <= 0) {
+            len = 0;
+            return false;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,69 @@
+package com.example.sms;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Writes students as RFC 4180 CSV through a fixed-size buffer.
+ */
+class CsvWriter implements AutoCloseable {
+    static final String HEADER = "id,name,email,age";
+
+    private final BufferedWriter out;
+
+    CsvWriter(OutputStream os) {
+        this.out = new BufferedWriter(new OutputStreamWriter(os, StandardCharsets.UTF_8), 16 * 1024);
+    }
+
+    void writeHeader() throws IOException {
+        out.write(HEADER);
+        out.write("\r\n");
+    }
+
+    void writeStudent(int id, String name, String email, int age) throws IOException {
+        out.write(Integer.toString(id));
+        out.write(',');
+        writeField(name);
+        out.write(',');
+        writeField(email);
+        out.write(',');
+        out.write(Integer.toString(age));
+        out.write("\r\n");
+    }
+
+    void flush() throws IOException {
+        out.flush();
+    }
+
+    private void writeField(String s) throws IOException {
+        if (s == null) {
+            return;
+        }
+        boolean needsQuotes = false;
+        for (int i = 0; i < s.length() && !needsQuotes; i++) {
+            char c = s.charAt(i);
+            needsQuotes = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+        if (!needsQuotes) {
+            out.write(s);
+            return;
+        }
+        out.write('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '"') {
+                out.write('"');
+            }
+            out.write(c);
+        }
+        out.write('"');
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+}
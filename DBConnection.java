@@ -1,23 +1,79 @@
 package com.example.sms;
 
 import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.SQLException;
 
 public class DBConnection {
-    private static final String URL = "jdbc:mysql://localhost:3306/studentdb";
-    private static final String USERNAME = "root";
-    private static final String PASSWORD = "Suresh@1234";
+    private static final String URL = System.getProperty("sms.db.url", "jdbc:mysql://localhost:3306/studentdb?rewriteBatchedStatements=true");
+    private static final String USERNAME = System.getProperty("sms.db.user", "root");
+    private static final String PASSWORD = System.getProperty("sms.db.password", "Suresh@1234");
+
+    private static final int POOL_MAX_SIZE = Integer.getInteger("sms.pool.maxSize", 10);
+    private static final int POOL_MIN_IDLE = Integer.getInteger("sms.pool.minIdle", 2);
+    private static final long POOL_BORROW_TIMEOUT_MS = Long.getLong("sms.pool.borrowTimeoutMs", 5_000);
+    private static final long POOL_IDLE_TIMEOUT_MS = Long.getLong("sms.pool.idleTimeoutMs", 600_000);
+    private static final long POOL_MAX_LIFETIME_MS = Long.getLong("sms.pool.maxLifetimeMs", 1_800_000);
+    private static final int POOL_STATEMENT_CACHE_SIZE = Integer.getInteger("sms.pool.statementCacheSize", 64);
 
     private DBConnection() {
     }
 
-    public static Connection getConnection() throws SQLException {
+    // Holder idiom: the pool (and its pre-warmed connections) is created on first use
+    private static final class PoolHolder {
+        static final ConnectionPool POOL = createPool();
+
+        private static ConnectionPool createPool() {
+            return openPool(URL, USERNAME, PASSWORD);
+        }
+    }
+
+    /**
+     * Like {@link #openPool(String, String, String)}, with the {@code sms.db.user} credentials.
+     */
+    public static ConnectionPool openPool(String url) {
+        return openPool(url, USERNAME, PASSWORD);
+    }
+
+    /**
+     * Opens a pool with the {@code sms.pool.*} settings for another database, such as a
+     * shard. It is closed when the JVM exits.
+     */
+    public static ConnectionPool openPool(String url, String username, String password) {
         try {
-            Class.forName("com.mysql.cj.jdbc.Driver"); // <-- ADD THIS LINE
+            Class.forName("com.mysql.cj.jdbc.Driver");
         } catch (ClassNotFoundException e) {
-            throw new SQLException(e);
+            // Other JDBC drivers on the classpath register themselves via ServiceLoader
         }
-        return DriverManager.getConnection(URL, USERNAME, PASSWORD);
+        ConnectionPool pool = new ConnectionPool(url, username, password, POOL_MAX_SIZE, POOL_MIN_IDLE,
+                POOL_BORROW_TIMEOUT_MS, POOL_IDLE_TIMEOUT_MS, POOL_MAX_LIFETIME_MS, POOL_STATEMENT_CACHE_SIZE);
+        Runtime.getRuntime().addShutdownHook(new Thread(pool::close, "sms-pool-shutdown"));
+        return pool;
+    }
+
+    /**
+     * Borrows a connection from the pool. Closing it returns it to the pool.
+     */
+    public static Connection getConnection() throws SQLException {
+        long start = System.nanoTime();
+        try {
+            return PoolHolder.POOL.borrow();
+        } finally {
+            Metrics.DB_ACQUIRE.recordSince(start);
+        }
+    }
+
+    public static ConnectionPool.Stats getPoolStats() {
+        return PoolHolder.POOL.stats();
+    }
+
+    public static int getPoolMaxSize() {
+        return POOL_MAX_SIZE;
+    }
+
+    /**
+     * Creates the pool eagerly so the first request does not pay for the initial connections.
+     */
+    public static void warmUp() {
+        PoolHolder.POOL.stats();
     }
 }
@@ -0,0 +1,687 @@
+package com.example.sms;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Heap-resident student store for edge nodes and load tests.
+ * <p>
+ * Rows are spread over lock stripes by id. Each stripe keeps its rows in parallel column
+ * arrays (ids, names, emails, ages) ordered by id, with an {@link IntIntMap} from id to
+ * slot. Point reads use an optimistic {@link StampedLock} read and only fall back to the
+ * read lock if a writer got in the way. Secondary indexes on (email, id) and (age, id)
+ * serve sorted and filtered pages. Index entries are checked against the row before use,
+ * so a reader racing a writer never returns a row under a value it no longer has.
+ * <p>
+ * Ids are handed out per stripe: stripe {@code s} issues {@code s + 1}, {@code s + 1 + STRIPES}, ...
+ * and new rows go to the stripes in turn, so ids still grow roughly in insertion order.
+ * String comparisons for sorting and prefix filters are case-sensitive, unlike MySQL's
+ * default collation.
+ */
+public class InMemoryStudentStore implements StudentStore {
+    private static final int STRIPES = 16;
+    private static final int STREAM_CHUNK = 1024;
+    private static final Filter NO_FILTER = new Filter(null, null, null, null);
+
+    private final Stripe[] stripes = new Stripe[STRIPES];
+    private final AtomicInteger nextStripe = new AtomicInteger();
+    private final ConcurrentSkipListSet<EmailKey> emailIndex = new ConcurrentSkipListSet<>();
+    private final ConcurrentSkipListSet<AgeKey> ageIndex = new ConcurrentSkipListSet<>();
+
+    public InMemoryStudentStore() {
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new Stripe(i);
+        }
+    }
+
+    /**
+     * Number of students currently stored.
+     */
+    public int size() {
+        int n = 0;
+        for (Stripe s : stripes) {
+            long stamp = s.lock.readLock();
+            try {
+                n += s.live;
+            } finally {
+                s.lock.unlockRead(stamp);
+            }
+        }
+        return n;
+    }
+
+    @Override
+    public void addStudent(Student student) {
+        Stripe s = stripes[nextStripe.getAndIncrement() & (STRIPES - 1)];
+        long stamp = s.lock.writeLock();
+        try {
+            student.setId(insert(s, student));
+        } finally {
+            s.lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public void updateStudent(Student student) {
+        Stripe s = stripeFor(student.getId());
+        if (s == null) {
+            return;
+        }
+        long stamp = s.lock.writeLock();
+        try {
+            update(s, student);
+        } finally {
+            s.lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public void deleteStudent(int id) {
+        Stripe s = stripeFor(id);
+        if (s == null) {
+            return;
+        }
+        long stamp = s.lock.writeLock();
+        try {
+            delete(s, id);
+        } finally {
+            s.lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public Student getStudentById(int id) {
+        Stripe s = stripeFor(id);
+        if (s == null) {
+            return null;
+        }
+        long stamp = s.lock.tryOptimisticRead();
+        if (stamp != 0) {
+            Student found = s.read(id);
+            if (s.lock.validate(stamp)) {
+                return found;
+            }
+        }
+        stamp = s.lock.readLock();
+        try {
+            return s.read(id);
+        } finally {
+            s.lock.unlockRead(stamp);
+        }
+    }
+
+    @Override
+    public List<Student> getAllStudents() {
+        List<Student> list = new ArrayList<>(size());
+        int afterId = 0;
+        List<Student> chunk;
+        while (!(chunk = pageById(NO_FILTER, afterId, false, STREAM_CHUNK)).isEmpty()) {
+            list.addAll(chunk);
+            afterId = chunk.get(chunk.size() - 1).getId();
+        }
+        return list;
+    }
+
+    /**
+     * Streams in chunks taken under short read locks; the handler runs with no lock held.
+     */
+    @Override
+    public void streamAllStudents(RowHandler handler) throws IOException {
+        int afterId = 0;
+        List<Student> chunk;
+        while (!(chunk = pageById(NO_FILTER, afterId, false, STREAM_CHUNK)).isEmpty()) {
+            for (Student st : chunk) {
+                handler.row(st.getId(), st.getName(), st.getEmail(), st.getAge());
+            }
+            afterId = chunk.get(chunk.size() - 1).getId();
+        }
+    }
+
+    @Override
+    public StudentPage findStudents(StudentQuery query) {
+        Filter filter = new Filter(query.getMinAge(), query.getMaxAge(), query.getNamePrefix(), query.getEmailPrefix());
+        int need = query.getLimit() + 1;
+        boolean desc = query.isDescending();
+        List<Student> list = switch (query.getSortField()) {
+            case ID -> pageById(filter, query.hasPosition() ? query.getAfterId() : (desc ? Integer.MAX_VALUE : 0),
+                    desc, need);
+            case EMAIL -> pageByEmail(filter, query, need);
+            case AGE -> pageByAge(filter, query, need);
+            case NAME -> pageByName(filter, query, need);
+        };
+
+        String nextCursor = null;
+        if (list.size() > query.getLimit()) {
+            list.remove(list.size() - 1);
+            nextCursor = query.cursorAfter(list.get(list.size() - 1));
+        }
+        return new StudentPage(list, nextCursor);
+    }
+
+    /**
+     * Merges rows past {@code afterId} from every stripe in id order. Each stripe hands over
+     * a small sorted run under its read lock; the merged output is only trusted up to the
+     * smallest last id among stripes that filled their run, and the rest is fetched in the
+     * next round. Reads are proportional to the page, not to the store.
+     */
+    private List<Student> pageById(Filter filter, int afterId, boolean desc, int need) {
+        List<Student> out = new ArrayList<>(Math.min(need, STREAM_CHUNK));
+        int perStripe = need / STRIPES + 16;
+        Comparator<Student> byId = Comparator.comparingInt(Student::getId);
+        List<Student> merged = new ArrayList<>();
+        while (out.size() < need) {
+            merged.clear();
+            int bound = desc ? Integer.MIN_VALUE : Integer.MAX_VALUE;
+            boolean capped = false;
+            for (Stripe s : stripes) {
+                int n;
+                long stamp = s.lock.readLock();
+                try {
+                    n = s.collect(filter, afterId, desc, perStripe, merged);
+                } finally {
+                    s.lock.unlockRead(stamp);
+                }
+                if (n == perStripe) {
+                    int last = merged.get(merged.size() - 1).getId();
+                    bound = desc ? Math.max(bound, last) : Math.min(bound, last);
+                    capped = true;
+                }
+            }
+            merged.sort(desc ? byId.reversed() : byId);
+            for (Student st : merged) {
+                if (out.size() == need || (desc ? st.getId() < bound : st.getId() > bound)) {
+                    break;
+                }
+                out.add(st);
+            }
+            if (!capped || out.isEmpty()) {
+                break;
+            }
+            afterId = out.get(out.size() - 1).getId();
+        }
+        return out;
+    }
+
+    private List<Student> pageByEmail(Filter filter, StudentQuery query, int need) {
+        boolean desc = query.isDescending();
+        String prefix = query.getEmailPrefix();
+        NavigableSet<EmailKey> view = emailIndex;
+        if (query.hasPosition()) {
+            EmailKey from = new EmailKey(indexText(query.getAfterValue()), query.getAfterId());
+            view = desc ? emailIndex.headSet(from, false) : emailIndex.tailSet(from, false);
+        } else if (prefix != null && !desc) {
+            view = emailIndex.tailSet(new EmailKey(prefix, Integer.MIN_VALUE), true);
+        }
+        if (desc) {
+            view = view.descendingSet();
+        }
+
+        List<Student> list = new ArrayList<>();
+        for (EmailKey key : view) {
+            if (prefix != null && !key.email.startsWith(prefix)) {
+                // Ahead of the prefix range keep going; past it there is nothing left
+                if (desc == key.email.compareTo(prefix) > 0) {
+                    continue;
+                }
+                break;
+            }
+            Student st = getStudentById(key.id);
+            if (st != null && key.email.equals(indexText(st.getEmail())) && filter.matches(st)) {
+                list.add(st);
+                if (list.size() == need) {
+                    break;
+                }
+            }
+        }
+        return list;
+    }
+
+    private List<Student> pageByAge(Filter filter, StudentQuery query, int need) {
+        boolean desc = query.isDescending();
+        NavigableSet<AgeKey> view = ageIndex;
+        if (query.hasPosition()) {
+            AgeKey from = new AgeKey(parseAge(query.getAfterValue()), query.getAfterId());
+            view = desc ? ageIndex.headSet(from, false) : ageIndex.tailSet(from, false);
+        } else if (!desc && filter.minAge != null) {
+            view = ageIndex.tailSet(new AgeKey(filter.minAge, Integer.MIN_VALUE), true);
+        } else if (desc && filter.maxAge != null) {
+            view = ageIndex.headSet(new AgeKey(filter.maxAge, Integer.MAX_VALUE), true);
+        }
+        if (desc) {
+            view = view.descendingSet();
+        }
+
+        List<Student> list = new ArrayList<>();
+        for (AgeKey key : view) {
+            if (desc ? filter.minAge != null && key.age < filter.minAge : filter.maxAge != null && key.age > filter.maxAge) {
+                break;
+            }
+            Student st = getStudentById(key.id);
+            if (st != null && st.getAge() == key.age && filter.matches(st)) {
+                list.add(st);
+                if (list.size() == need) {
+                    break;
+                }
+            }
+        }
+        return list;
+    }
+
+    /**
+     * Names are not indexed: scan every stripe and keep the best {@code need} rows in a
+     * bounded heap.
+     */
+    private List<Student> pageByName(Filter filter, StudentQuery query, int need) {
+        Comparator<Student> order = Comparator.comparing((Student st) -> indexText(st.getName()))
+                .thenComparingInt(Student::getId);
+        if (query.isDescending()) {
+            order = order.reversed();
+        }
+        Student after = query.hasPosition() ? new Student(query.getAfterId(), query.getAfterValue(), null, 0) : null;
+        // Worst row on top, so it is the one dropped when the heap overflows
+        PriorityQueue<Student> heap = new PriorityQueue<>(need + 1, order.reversed());
+        Comparator<Student> cmp = order;
+        for (Stripe s : stripes) {
+            long stamp = s.lock.readLock();
+            try {
+                s.forEach(filter, st -> {
+                    if (after == null || cmp.compare(st, after) > 0) {
+                        heap.add(st);
+                        if (heap.size() > need) {
+                            heap.poll();
+                        }
+                    }
+                });
+            } finally {
+                s.lock.unlockRead(stamp);
+            }
+        }
+        List<Student> list = new ArrayList<>(heap);
+        list.sort(order);
+        return list;
+    }
+
+    /**
+     * Applies the operations under every stripe's write lock, so readers see all of them
+     * or none. Nothing here can fail part-way, so there is no rollback.
+     */
+    @Override
+    public List<BulkResult> executeBulk(List<BulkOperation> ops) {
+        List<BulkResult> results = new ArrayList<>(ops.size());
+        long[] stamps = lockAll();
+        try {
+            for (BulkOperation op : ops) {
+                Student st = op.getStudent();
+                switch (op.getType()) {
+                    case CREATE -> {
+                        int id = insert(stripes[nextStripe.getAndIncrement() & (STRIPES - 1)], st);
+                        results.add(new BulkResult(op.getIndex(), op.getType(), 201, id, null));
+                    }
+                    case UPDATE, DELETE -> {
+                        Stripe s = stripeFor(st.getId());
+                        boolean found = s != null && (op.getType() == BulkOperation.Type.UPDATE
+                                ? update(s, st) : delete(s, st.getId()));
+                        results.add(found
+                                ? new BulkResult(op.getIndex(), op.getType(), 200, st.getId(), null)
+                                : new BulkResult(op.getIndex(), op.getType(), 404, st.getId(), "Student not found"));
+                    }
+                }
+            }
+        } finally {
+            unlockAll(stamps);
+        }
+        return results;
+    }
+
+    @Override
+    public void insertStudents(List<Student> students) {
+        if (students.isEmpty()) {
+            return;
+        }
+        long[] stamps = lockAll();
+        try {
+            for (Student st : students) {
+                st.setId(insert(stripes[nextStripe.getAndIncrement() & (STRIPES - 1)], st));
+            }
+        } finally {
+            unlockAll(stamps);
+        }
+    }
+
+    /**
+     * Inserts a row under an id chosen by the caller, for stores layered on top of this one.
+     * The id must be higher than every id already issued by its stripe.
+     */
+    void insertWithId(Student student) {
+        Stripe s = stripeFor(student.getId());
+        long stamp = s.lock.writeLock();
+        try {
+            insertWithId(s, student);
+        } finally {
+            s.lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Applies already-validated operations atomically for readers. Creates carry the id the
+     * caller assigned; updates and deletes of missing ids are ignored.
+     */
+    void applyWithIds(List<BulkOperation> ops) {
+        long[] stamps = lockAll();
+        try {
+            for (BulkOperation op : ops) {
+                Student st = op.getStudent();
+                Stripe s = stripeFor(st.getId());
+                switch (op.getType()) {
+                    case CREATE -> insertWithId(s, st);
+                    case UPDATE -> update(s, st);
+                    case DELETE -> delete(s, st.getId());
+                }
+            }
+        } finally {
+            unlockAll(stamps);
+        }
+    }
+
+    private long[] lockAll() {
+        long[] stamps = new long[STRIPES];
+        for (int i = 0; i < STRIPES; i++) {
+            stamps[i] = stripes[i].lock.writeLock();
+        }
+        return stamps;
+    }
+
+    private void unlockAll(long[] stamps) {
+        for (int i = STRIPES - 1; i >= 0; i--) {
+            stripes[i].lock.unlockWrite(stamps[i]);
+        }
+    }
+
+    private Stripe stripeFor(int id) {
+        return id > 0 ? stripes[(id - 1) & (STRIPES - 1)] : null;
+    }
+
+    // The three writers below run under the stripe's write lock
+
+    private int insert(Stripe s, Student st) {
+        int id = s.nextId();
+        s.append(id, st.getName(), st.getEmail(), st.getAge());
+        emailIndex.add(new EmailKey(indexText(st.getEmail()), id));
+        ageIndex.add(new AgeKey(st.getAge(), id));
+        return id;
+    }
+
+    private void insertWithId(Stripe s, Student st) {
+        int id = st.getId();
+        s.reserve(id);
+        s.append(id, st.getName(), st.getEmail(), st.getAge());
+        emailIndex.add(new EmailKey(indexText(st.getEmail()), id));
+        ageIndex.add(new AgeKey(st.getAge(), id));
+    }
+
+    private boolean update(Stripe s, Student st) {
+        int id = st.getId();
+        int slot = s.slots.get(id);
+        if (slot == IntIntMap.MISSING) {
+            return false;
+        }
+        String oldEmail = indexText(s.emails[slot]);
+        String newEmail = indexText(st.getEmail());
+        if (!oldEmail.equals(newEmail)) {
+            emailIndex.remove(new EmailKey(oldEmail, id));
+        }
+        if (s.ages[slot] != st.getAge()) {
+            ageIndex.remove(new AgeKey(s.ages[slot], id));
+        }
+        s.names[slot] = st.getName();
+        s.emails[slot] = st.getEmail();
+        s.ages[slot] = st.getAge();
+        emailIndex.add(new EmailKey(newEmail, id));
+        ageIndex.add(new AgeKey(st.getAge(), id));
+        return true;
+    }
+
+    private boolean delete(Stripe s, int id) {
+        int slot = s.slots.get(id);
+        if (slot == IntIntMap.MISSING) {
+            return false;
+        }
+        emailIndex.remove(new EmailKey(indexText(s.emails[slot]), id));
+        ageIndex.remove(new AgeKey(s.ages[slot], id));
+        s.remove(slot);
+        return true;
+    }
+
+    private static String indexText(String s) {
+        return s == null ? "" : s;
+    }
+
+    private static int parseAge(String value) {
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Malformed cursor");
+        }
+    }
+
+    private interface RowVisitor {
+        void visit(Student student);
+    }
+
+    /**
+     * One lock stripe. Rows are appended in id order; a deleted row keeps its slot with a
+     * negated id until the stripe is compacted, so the id column stays sorted by absolute
+     * value and can be binary searched.
+     */
+    private static final class Stripe {
+        private static final int INITIAL_CAPACITY = 64;
+
+        final StampedLock lock = new StampedLock();
+        final int index;
+        final IntIntMap slots = new IntIntMap(INITIAL_CAPACITY);
+        int[] ids = new int[INITIAL_CAPACITY];
+        String[] names = new String[INITIAL_CAPACITY];
+        String[] emails = new String[INITIAL_CAPACITY];
+        int[] ages = new int[INITIAL_CAPACITY];
+        int used;
+        int live;
+        int issued;
+
+        Stripe(int index) {
+            this.index = index;
+        }
+
+        /**
+         * Safe to call without the lock as part of an optimistic read: every array is read
+         * once and bounds-checked, and a torn result is discarded by the caller's validate.
+         */
+        Student read(int id) {
+            int slot = slots.get(id);
+            int[] idCol = ids;
+            String[] nameCol = names;
+            String[] emailCol = emails;
+            int[] ageCol = ages;
+            if (slot < 0 || slot >= idCol.length || slot >= nameCol.length || slot >= emailCol.length
+                    || slot >= ageCol.length || idCol[slot] != id) {
+                return null;
+            }
+            return new Student(id, nameCol[slot], emailCol[slot], ageCol[slot]);
+        }
+
+        int nextId() {
+            return issued++ * STRIPES + index + 1;
+        }
+
+        /**
+         * Marks an externally chosen id as issued so that {@link #nextId()} never repeats it.
+         */
+        void reserve(int id) {
+            if (used > 0 && Math.abs(ids[used - 1]) >= id) {
+                throw new IllegalArgumentException("Id " + id + " is not above the last id in its stripe");
+            }
+            issued = Math.max(issued, (id - index - 1) / STRIPES + 1);
+        }
+
+        void append(int id, String name, String email, int age) {
+            if (used == ids.length) {
+                int capacity = ids.length * 2;
+                ids = Arrays.copyOf(ids, capacity);
+                names = Arrays.copyOf(names, capacity);
+                emails = Arrays.copyOf(emails, capacity);
+                ages = Arrays.copyOf(ages, capacity);
+            }
+            int slot = used++;
+            ids[slot] = id;
+            names[slot] = name;
+            emails[slot] = email;
+            ages[slot] = age;
+            slots.put(id, slot);
+            live++;
+        }
+
+        void remove(int slot) {
+            slots.remove(ids[slot]);
+            ids[slot] = -ids[slot];
+            names[slot] = null;
+            emails[slot] = null;
+            live--;
+            if (used > INITIAL_CAPACITY && live < used / 2) {
+                compact();
+            }
+        }
+
+        private void compact() {
+            int[] idCol = new int[Math.max(INITIAL_CAPACITY, live * 2)];
+            String[] nameCol = new String[idCol.length];
+            String[] emailCol = new String[idCol.length];
+            int[] ageCol = new int[idCol.length];
+            int n = 0;
+            for (int i = 0; i < used; i++) {
+                if (ids[i] > 0) {
+                    idCol[n] = ids[i];
+                    nameCol[n] = names[i];
+                    emailCol[n] = emails[i];
+                    ageCol[n] = ages[i];
+                    slots.put(ids[i], n);
+                    n++;
+                }
+            }
+            ids = idCol;
+            names = nameCol;
+            emails = emailCol;
+            ages = ageCol;
+            used = n;
+        }
+
+        /**
+         * Adds up to {@code max} live, matching rows that come after {@code afterId} in the
+         * requested direction, and returns how many were added.
+         */
+        int collect(Filter filter, int afterId, boolean desc, int max, List<Student> out) {
+            int found = 0;
+            if (desc) {
+                for (int i = firstSlotAbove(afterId - 1) - 1; i >= 0 && found < max; i--) {
+                    if (ids[i] > 0 && filter.matches(names[i], emails[i], ages[i])) {
+                        out.add(new Student(ids[i], names[i], emails[i], ages[i]));
+                        found++;
+                    }
+                }
+            } else {
+                for (int i = firstSlotAbove(afterId); i < used && found < max; i++) {
+                    if (ids[i] > 0 && filter.matches(names[i], emails[i], ages[i])) {
+                        out.add(new Student(ids[i], names[i], emails[i], ages[i]));
+                        found++;
+                    }
+                }
+            }
+            return found;
+        }
+
+        void forEach(Filter filter, RowVisitor visitor) {
+            for (int i = 0; i < used; i++) {
+                if (ids[i] > 0 && filter.matches(names[i], emails[i], ages[i])) {
+                    visitor.visit(new Student(ids[i], names[i], emails[i], ages[i]));
+                }
+            }
+        }
+
+        private int firstSlotAbove(int id) {
+            int lo = 0;
+            int hi = used;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (Math.abs(ids[mid]) <= id) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            return lo;
+        }
+    }
+
+    private static final class Filter {
+        final Integer minAge;
+        final Integer maxAge;
+        final String namePrefix;
+        final String emailPrefix;
+
+        Filter(Integer minAge, Integer maxAge, String namePrefix, String emailPrefix) {
+            this.minAge = minAge;
+            this.maxAge = maxAge;
+            this.namePrefix = namePrefix;
+            this.emailPrefix = emailPrefix;
+        }
+
+        boolean matches(Student st) {
+            return matches(st.getName(), st.getEmail(), st.getAge());
+        }
+
+        boolean matches(String name, String email, int age) {
+            return (minAge == null || age >= minAge)
+                    && (maxAge == null || age <= maxAge)
+                    && (namePrefix == null || (name != null && name.startsWith(namePrefix)))
+                    && (emailPrefix == null || (email != null && email.startsWith(emailPrefix)));
+        }
+    }
+
+    private static final class EmailKey implements Comparable<EmailKey> {
+        final String email;
+        final int id;
+
+        EmailKey(String email, int id) {
+            this.email = email;
+            this.id = id;
+        }
+
+        @Override
+        public int compareTo(EmailKey o) {
+            int c = email.compareTo(o.email);
+            return c != 0 ? c : Integer.compare(id, o.id);
+        }
+    }
+
+    private static final class AgeKey implements Comparable<AgeKey> {
+        final int age;
+        final int id;
+
+        AgeKey(int age, int id) {
+            this.age = age;
+            this.id = id;
+        }
+
+        @Override
+        public int compareTo(AgeKey o) {
+            int c = Integer.compare(age, o.age);
+            return c != 0 ? c : Integer.compare(id, o.id);
+        }
+    }
+}
@@ -0,0 +1,310 @@
+package com.example.sms;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Keeps in-memory views of another store up to date: a {@link StudentSearchIndex} and
+ * {@link StudentStats}. Every write goes to the store first and reaches the views, and then
+ * the {@link ChangeFeed}, only once it has succeeded.
+ * <p>
+ * Writes to the same id are serialized so the views and the feed see them in the store's order.
+ * Writes that bypass this instance, such as another API instance sharing the database,
+ * are picked up by {@link #rebuild()}, which the reconciler thread runs periodically.
+ */
+public class IndexedStudentStore implements StudentStore {
+    private static final int LOCK_STRIPES = 64;
+    // Rebuilds that lose the race with writers this many times hold writers off instead
+    private static final int OPTIMISTIC_REBUILDS = 3;
+
+    private static final class Views {
+        final StudentSearchIndex index = new StudentSearchIndex();
+        final StudentStats stats = new StudentStats();
+
+        void put(int id, String name, String email, int age) {
+            Student previous = index.put(id, name, email, age);
+            if (previous != null) {
+                stats.remove(previous);
+            }
+            stats.add(email, age);
+        }
+
+        void update(Student s) {
+            Student previous = index.update(s);
+            if (previous != null) {
+                stats.remove(previous);
+                stats.add(s);
+            }
+        }
+
+        void remove(int id) {
+            Student previous = index.remove(id);
+            if (previous != null) {
+                stats.remove(previous);
+            }
+        }
+    }
+
+    private final StudentStore store;
+    private final ReentrantLock[] locks = new ReentrantLock[LOCK_STRIPES];
+    // Writers hold the read side from store write to view update; rebuild swaps under the write side
+    private final ReentrantReadWriteLock swapLock = new ReentrantReadWriteLock();
+    private volatile Views views = new Views();
+    private final ChangeFeed changes;
+    private final AtomicLong writes = new AtomicLong();
+    private Thread reconciler;
+
+    public IndexedStudentStore(StudentStore store) {
+        this(store, new ChangeFeed(10_000, 1_000));
+    }
+
+    IndexedStudentStore(StudentStore store, ChangeFeed changes) {
+        this.store = store;
+        this.changes = changes;
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            locks[i] = new ReentrantLock();
+        }
+    }
+
+    public StudentStore getStore() {
+        return store;
+    }
+
+    /**
+     * Rebuilds the views from every student in the store. The scan runs without blocking
+     * writers; if any write lands meanwhile the scan is repeated, and after a few tries it
+     * runs again with writers held off.
+     */
+    public void rebuild() throws SQLException, IOException {
+        for (int attempt = 0; attempt < OPTIMISTIC_REBUILDS; attempt++) {
+            long before = writes.get();
+            Views fresh = scan();
+            swapLock.writeLock().lock();
+            try {
+                if (writes.get() == before) {
+                    views = fresh;
+                    // The scan may have found changes made elsewhere
+                    writes.incrementAndGet();
+                    return;
+                }
+            } finally {
+                swapLock.writeLock().unlock();
+            }
+        }
+        swapLock.writeLock().lock();
+        try {
+            views = scan();
+            writes.incrementAndGet();
+        } finally {
+            swapLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Starts a daemon thread that calls {@link #rebuild()} every {@code intervalMs}.
+     */
+    public synchronized void startReconciler(long intervalMs) {
+        if (reconciler != null || intervalMs <= 0) {
+            return;
+        }
+        reconciler = Thread.ofPlatform().daemon().name("sms-reconciler").start(() -> {
+            while (true) {
+                try {
+                    Thread.sleep(intervalMs);
+                    rebuild();
+                } catch (InterruptedException e) {
+                    return;
+                } catch (SQLException | IOException | RuntimeException e) {
+                    System.err.println("Reconciliation failed: " + e.getMessage());
+                }
+            }
+        });
+    }
+
+    /**
+     * Number that changes after every write through this store and every rebuild, so a
+     * response built from the store is current for as long as it is unchanged. Read it
+     * before reading the store: it moves only once a write has finished.
+     */
+    long version() {
+        return writes.get();
+    }
+
+    /**
+     * Number of students, as of the last write or rebuild.
+     */
+    int size() {
+        return views.index.size();
+    }
+
+    StudentSearchIndex.Result search(String query, int limit, long budgetNanos) {
+        return views.index.search(query, limit, budgetNanos);
+    }
+
+    StudentStats.Snapshot stats() {
+        return views.stats.snapshot();
+    }
+
+    /**
+     * Changes made through this store. Writes that bypass it, and rebuilds, are not in the feed.
+     */
+    ChangeFeed changes() {
+        return changes;
+    }
+
+    @Override
+    public void addStudent(Student student) throws SQLException {
+        swapLock.readLock().lock();
+        try {
+            store.addStudent(student);
+            // A new id cannot race with another writer
+            views.put(student.getId(), student.getName(), student.getEmail(), student.getAge());
+            changes.inserted(student);
+        } finally {
+            // Counted even on failure: the store may have changed anyway
+            writes.incrementAndGet();
+            swapLock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void updateStudent(Student student) throws SQLException {
+        ReentrantLock lock = lockFor(student.getId());
+        swapLock.readLock().lock();
+        lock.lock();
+        try {
+            store.updateStudent(student);
+            views.update(student);
+            // Published even if no row matched; subscribers ignore ids they do not have
+            changes.updated(student);
+        } finally {
+            writes.incrementAndGet();
+            lock.unlock();
+            swapLock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void deleteStudent(int id) throws SQLException {
+        ReentrantLock lock = lockFor(id);
+        swapLock.readLock().lock();
+        lock.lock();
+        try {
+            store.deleteStudent(id);
+            views.remove(id);
+            changes.deleted(id);
+        } finally {
+            writes.incrementAndGet();
+            lock.unlock();
+            swapLock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public Student getStudentById(int id) throws SQLException {
+        return store.getStudentById(id);
+    }
+
+    @Override
+    public Student getStudentById(int id, StudentFields fields) throws SQLException {
+        return store.getStudentById(id, fields);
+    }
+
+    @Override
+    public List<Student> getAllStudents() throws SQLException {
+        return store.getAllStudents();
+    }
+
+    @Override
+    public void streamAllStudents(RowHandler handler) throws SQLException, IOException {
+        store.streamAllStudents(handler);
+    }
+
+    @Override
+    public void streamAllStudents(StudentFields fields, RowHandler handler) throws SQLException, IOException {
+        store.streamAllStudents(fields, handler);
+    }
+
+    @Override
+    public StudentPage findStudents(StudentQuery query) throws SQLException {
+        return store.findStudents(query);
+    }
+
+    @Override
+    public List<BulkResult> executeBulk(List<BulkOperation> ops) throws SQLException {
+        swapLock.readLock().lock();
+        lockAll();
+        try {
+            List<BulkResult> results = store.executeBulk(ops);
+            Views v = views;
+            for (int i = 0; i < ops.size(); i++) {
+                BulkResult r = results.get(i);
+                if (!r.isSuccess()) {
+                    continue;
+                }
+                Student s = ops.get(i).getStudent();
+                switch (r.getType()) {
+                    case CREATE -> {
+                        v.put(r.getId(), s.getName(), s.getEmail(), s.getAge());
+                        changes.inserted(new Student(r.getId(), s.getName(), s.getEmail(), s.getAge()));
+                    }
+                    case UPDATE -> {
+                        v.update(s);
+                        changes.updated(s);
+                    }
+                    case DELETE -> {
+                        v.remove(s.getId());
+                        changes.deleted(s.getId());
+                    }
+                }
+            }
+            return results;
+        } finally {
+            writes.incrementAndGet();
+            unlockAll();
+            swapLock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void insertStudents(List<Student> students) throws SQLException {
+        swapLock.readLock().lock();
+        try {
+            store.insertStudents(students);
+            Views v = views;
+            for (Student s : students) {
+                v.put(s.getId(), s.getName(), s.getEmail(), s.getAge());
+                changes.inserted(s);
+            }
+        } finally {
+            writes.incrementAndGet();
+            swapLock.readLock().unlock();
+        }
+    }
+
+    private Views scan() throws SQLException, IOException {
+        Views fresh = new Views();
+        store.streamAllStudents(fresh::put);
+        return fresh;
+    }
+
+    private ReentrantLock lockFor(int id) {
+        return locks[id & (LOCK_STRIPES - 1)];
+    }
+
+    private void lockAll() {
+        for (ReentrantLock lock : locks) {
+            lock.lock();
+        }
+    }
+
+    private void unlockAll() {
+        for (int i = LOCK_STRIPES - 1; i >= 0; i--) {
+            locks[i].unlock();
+        }
+    }
+}
@@ -0,0 +1,190 @@
+package com.example.sms;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.function.LongConsumer;
+
+/**
+ * Records the latency and failures of every call to another store in {@link Metrics}.
+ * Time for {@link #streamAllStudents} includes the handler's work on each row.
+ * <p>
+ * An optional listener also gets the duration of every single-statement call, for example
+ * to drive {@link ConcurrencyLimitFilter}. Streams and batches are left out, because their
+ * time depends on how many rows they carry.
+ */
+public class InstrumentedStudentStore implements StudentStore {
+    private static final Metrics.StoreMethod ADD = Metrics.storeMethod("addStudent");
+    private static final Metrics.StoreMethod UPDATE = Metrics.storeMethod("updateStudent");
+    private static final Metrics.StoreMethod DELETE = Metrics.storeMethod("deleteStudent");
+    private static final Metrics.StoreMethod GET = Metrics.storeMethod("getStudentById");
+    private static final Metrics.StoreMethod GET_ALL = Metrics.storeMethod("getAllStudents");
+    private static final Metrics.StoreMethod STREAM = Metrics.storeMethod("streamAllStudents");
+    private static final Metrics.StoreMethod FIND = Metrics.storeMethod("findStudents");
+    private static final Metrics.StoreMethod BULK = Metrics.storeMethod("executeBulk");
+    private static final Metrics.StoreMethod INSERT = Metrics.storeMethod("insertStudents");
+
+    private final StudentStore store;
+    private final LongConsumer latencyListener;
+
+    public InstrumentedStudentStore(StudentStore store) {
+        this(store, null);
+    }
+
+    public InstrumentedStudentStore(StudentStore store, LongConsumer latencyListener) {
+        this.store = store;
+        this.latencyListener = latencyListener;
+    }
+
+    public StudentStore getStore() {
+        return store;
+    }
+
+    @Override
+    public void addStudent(Student student) throws SQLException {
+        long start = System.nanoTime();
+        boolean ok = false;
+        try {
+            store.addStudent(student);
+            ok = true;
+        } finally {
+            done(ADD, start, ok);
+        }
+    }
+
+    @Override
+    public void updateStudent(Student student) throws SQLException {
+        long start = System.nanoTime();
+        boolean ok = false;
+        try {
+            store.updateStudent(student);
+            ok = true;
+        } finally {
+            done(UPDATE, start, ok);
+        }
+    }
+
+    @Override
+    public void deleteStudent(int id) throws SQLException {
+        long start = System.nanoTime();
+        boolean ok = false;
+        try {
+            store.deleteStudent(id);
+            ok = true;
+        } finally {
+            done(DELETE, start, ok);
+        }
+    }
+
+    @Override
+    public Student getStudentById(int id) throws SQLException {
+        long start = System.nanoTime();
+        boolean ok = false;
+        try {
+            Student student = store.getStudentById(id);
+            ok = true;
+            return student;
+        } finally {
+            done(GET, start, ok);
+        }
+    }
+
+    @Override
+    public Student getStudentById(int id, StudentFields fields) throws SQLException {
+        long start = System.nanoTime();
+        boolean ok = false;
+        try {
+            Student student = store.getStudentById(id, fields);
+            ok = true;
+            return student;
+        } finally {
+            done(GET, start, ok);
+        }
+    }
+
+    @Override
+    public List<Student> getAllStudents() throws SQLException {
+        long start = System.nanoTime();
+        boolean ok = false;
+        try {
+            List<Student> students = store.getAllStudents();
+            ok = true;
+            return students;
+        } finally {
+            done(GET_ALL, start, ok);
+        }
+    }
+
+    @Override
+    public void streamAllStudents(RowHandler handler) throws SQLException, IOException {
+        long start = System.nanoTime();
+        boolean ok = false;
+        try {
+            store.streamAllStudents(handler);
+            ok = true;
+        } finally {
+            done(STREAM, start, ok);
+        }
+    }
+
+    @Override
+    public void streamAllStudents(StudentFields fields, RowHandler handler) throws SQLException, IOException {
+        long start = System.nanoTime();
+        boolean ok = false;
+        try {
+            store.streamAllStudents(fields, handler);
+            ok = true;
+        } finally {
+            done(STREAM, start, ok);
+        }
+    }
+
+    @Override
+    public StudentPage findStudents(StudentQuery query) throws SQLException {
+        long start = System.nanoTime();
+        boolean ok = false;
+        try {
+            StudentPage page = store.findStudents(query);
+            ok = true;
+            return page;
+        } finally {
+            done(FIND, start, ok);
+        }
+    }
+
+    @Override
+    public List<BulkResult> executeBulk(List<BulkOperation> ops) throws SQLException {
+        long start = System.nanoTime();
+        boolean ok = false;
+        try {
+            List<BulkResult> results = store.executeBulk(ops);
+            ok = true;
+            return results;
+        } finally {
+            done(BULK, start, ok);
+        }
+    }
+
+    @Override
+    public void insertStudents(List<Student> students) throws SQLException {
+        long start = System.nanoTime();
+        boolean ok = false;
+        try {
+            store.insertStudents(students);
+            ok = true;
+        } finally {
+            done(INSERT, start, ok);
+        }
+    }
+
+    private void done(Metrics.StoreMethod method, long start, boolean ok) {
+        long nanos = System.nanoTime() - start;
+        method.latency.record(nanos);
+        if (latencyListener != null && method != STREAM && method != BULK && method != INSERT) {
+            latencyListener.accept(nanos);
+        }
+        if (!ok) {
+            method.errors.increment();
+        }
+    }
+}
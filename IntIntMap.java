@@ -0,0 +1,137 @@
+package com.example.sms;
+
+import java.util.Arrays;
+
+/**
+ * Open-addressing hash map from int to int with linear probing and no boxing.
+ * Keys and values share one array, so a reader holding the array always sees matching
+ * pairs. Key 0 marks an empty slot and cannot be stored. Not thread-safe.
+ */
+final class IntIntMap {
+    static final int MISSING = -1;
+
+    // key at 2 * i, value at 2 * i + 1
+    private int[] table;
+    private int size;
+
+    IntIntMap(int expectedSize) {
+        int capacity = 16;
+        while (capacity < expectedSize * 2) {
+            capacity <<= 1;
+        }
+        table = new int[capacity * 2];
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * Returns the value for the key, or {@link #MISSING}. The probe count is bounded, so a
+     * racing optimistic reader gets a wrong answer rather than an endless loop.
+     */
+    int get(int key) {
+        int[] t = table;
+        int mask = (t.length >> 1) - 1;
+        int i = hash(key) & mask;
+        for (int probes = 0; probes <= mask; probes++) {
+            int k = t[i << 1];
+            if (k == key) {
+                return t[(i << 1) + 1];
+            }
+            if (k == 0) {
+                return MISSING;
+            }
+            i = (i + 1) & mask;
+        }
+        return MISSING;
+    }
+
+    void put(int key, int value) {
+        if (key == 0) {
+            throw new IllegalArgumentException("key 0 is reserved");
+        }
+        int[] t = table;
+        int mask = (t.length >> 1) - 1;
+        int i = hash(key) & mask;
+        while (true) {
+            int k = t[i << 1];
+            if (k == key) {
+                t[(i << 1) + 1] = value;
+                return;
+            }
+            if (k == 0) {
+                t[(i << 1) + 1] = value;
+                t[i << 1] = key;
+                break;
+            }
+            i = (i + 1) & mask;
+        }
+        if (++size * 2 > mask + 1) {
+            resize((mask + 1) * 2);
+        }
+    }
+
+    void remove(int key) {
+        int[] t = table;
+        int mask = (t.length >> 1) - 1;
+        int i = hash(key) & mask;
+        while (true) {
+            int k = t[i << 1];
+            if (k == 0) {
+                return;
+            }
+            if (k == key) {
+                break;
+            }
+            i = (i + 1) & mask;
+        }
+        // Backward-shift deletion: pull later entries of the probe chain into the gap
+        int j = i;
+        while (true) {
+            j = (j + 1) & mask;
+            int k = t[j << 1];
+            if (k == 0) {
+                break;
+            }
+            int home = hash(k) & mask;
+            boolean between = i <= j ? (home > i && home <= j) : (home > i || home <= j);
+            if (!between) {
+                t[(i << 1) + 1] = t[(j << 1) + 1];
+                t[i << 1] = k;
+                i = j;
+            }
+        }
+        t[i << 1] = 0;
+        t[(i << 1) + 1] = 0;
+        size--;
+    }
+
+    void clear() {
+        Arrays.fill(table, 0);
+        size = 0;
+    }
+
+    private void resize(int capacity) {
+        int[] old = table;
+        int[] t = new int[capacity * 2];
+        int mask = capacity - 1;
+        for (int p = 0; p < old.length; p += 2) {
+            int k = old[p];
+            if (k != 0) {
+                int i = hash(k) & mask;
+                while (t[i << 1] != 0) {
+                    i = (i + 1) & mask;
+                }
+                t[i << 1] = k;
+                t[(i << 1) + 1] = old[p + 1];
+            }
+        }
+        table = t;
+    }
+
+    private static int hash(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
@@ -0,0 +1,136 @@
+package com.example.sms;
+
+/**
+ * Open-addressing hash map from int to long with linear probing and no boxing.
+ * Key 0 marks an empty slot and cannot be stored. Not thread-safe, and unlike
+ * {@link IntIntMap} not safe for optimistic readers either: callers lock around all access.
+ */
+final class IntLongMap {
+    static final long MISSING = -1;
+
+    private int[] keys;
+    private long[] values;
+    private int size;
+
+    IntLongMap(int expectedSize) {
+        int capacity = 16;
+        while (capacity < expectedSize * 2) {
+            capacity <<= 1;
+        }
+        keys = new int[capacity];
+        values = new long[capacity];
+    }
+
+    int size() {
+        return size;
+    }
+
+    long get(int key) {
+        int mask = keys.length - 1;
+        for (int i = hash(key) & mask; ; i = (i + 1) & mask) {
+            int k = keys[i];
+            if (k == key) {
+                return values[i];
+            }
+            if (k == 0) {
+                return MISSING;
+            }
+        }
+    }
+
+    boolean containsKey(int key) {
+        return get(key) != MISSING;
+    }
+
+    /**
+     * Stores the value and returns the previous one, or {@link #MISSING}.
+     */
+    long put(int key, long value) {
+        if (key == 0) {
+            throw new IllegalArgumentException("key 0 is reserved");
+        }
+        int mask = keys.length - 1;
+        int i = hash(key) & mask;
+        while (keys[i] != 0) {
+            if (keys[i] == key) {
+                long old = values[i];
+                values[i] = value;
+                return old;
+            }
+            i = (i + 1) & mask;
+        }
+        keys[i] = key;
+        values[i] = value;
+        if (++size * 2 > keys.length) {
+            resize(keys.length * 2);
+        }
+        return MISSING;
+    }
+
+    /**
+     * Removes the key and returns its value, or {@link #MISSING}.
+     */
+    long remove(int key) {
+        int mask = keys.length - 1;
+        int i = hash(key) & mask;
+        while (keys[i] != key) {
+            if (keys[i] == 0) {
+                return MISSING;
+            }
+            i = (i + 1) & mask;
+        }
+        long old = values[i];
+        // Backward-shift deletion: pull later entries of the probe chain into the gap
+        for (int j = (i + 1) & mask; keys[j] != 0; j = (j + 1) & mask) {
+            int home = hash(keys[j]) & mask;
+            boolean between = i <= j ? (home > i && home <= j) : (home > i || home <= j);
+            if (!between) {
+                keys[i] = keys[j];
+                values[i] = values[j];
+                i = j;
+            }
+        }
+        keys[i] = 0;
+        values[i] = 0;
+        size--;
+        return old;
+    }
+
+    /**
+     * Returns all keys in no particular order.
+     */
+    int[] keys() {
+        int[] out = new int[size];
+        int n = 0;
+        for (int k : keys) {
+            if (k != 0) {
+                out[n++] = k;
+            }
+        }
+        return out;
+    }
+
+    private void resize(int capacity) {
+        int[] oldKeys = keys;
+        long[] oldValues = values;
+        keys = new int[capacity];
+        values = new long[capacity];
+        int mask = capacity - 1;
+        for (int p = 0; p < oldKeys.length; p++) {
+            int k = oldKeys[p];
+            if (k != 0) {
+                int i = hash(k) & mask;
+                while (keys[i] != 0) {
+                    i = (i + 1) & mask;
+                }
+                keys[i] = k;
+                values[i] = oldValues[p];
+            }
+        }
+    }
+
+    private static int hash(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
@@ -0,0 +1,415 @@
+package com.example.sms;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Single-pass JSON parser for flat student objects, working directly on UTF-8 bytes.
+ * Known keys (id, name, email, age, op) are decoded into a reusable {@link Fields};
+ * anything else, including nested values, is skipped without allocating.
+ * Malformed input raises IllegalArgumentException.
+ */
+final class JsonReader {
+    static final class Fields {
+        String op;
+        String name;
+        String email;
+        int id;
+        boolean hasId;
+        int age;
+        boolean hasAge;
+
+        void clear() {
+            op = name = email = null;
+            id = age = 0;
+            hasId = hasAge = false;
+        }
+
+        Student toStudent() {
+            if (name == null || name.isEmpty() || email == null || email.isEmpty()) {
+                throw new IllegalArgumentException("name and email are required");
+            }
+            if (!hasAge) {
+                throw new IllegalArgumentException("age is required");
+            }
+            return new Student(id, name, email, age);
+        }
+    }
+
+    interface ObjectHandler {
+        void object(Fields fields);
+    }
+
+    private final byte[] b;
+    private final int end;
+    private int pos;
+    private char[] scratch;
+
+    private JsonReader(byte[] b, int off, int len) {
+        this.b = b;
+        this.pos = off;
+        this.end = off + len;
+    }
+
+    /**
+     * Parses one object. The whole input must be that object plus optional whitespace.
+     */
+    static void parseObject(byte[] b, int off, int len, Fields out) {
+        JsonReader r = new JsonReader(b, off, len);
+        out.clear();
+        r.readObject(out);
+        r.skipWhitespace();
+        if (r.pos != r.end) {
+            throw r.error("Unexpected trailing data");
+        }
+    }
+
+    /**
+     * Parses an array of objects, handing each one to the handler as soon as it is read.
+     * The same Fields instance is reused for every element.
+     */
+    static void parseArray(byte[] b, int off, int len, ObjectHandler handler) {
+        JsonReader r = new JsonReader(b, off, len);
+        Fields fields = new Fields();
+        r.expect('[');
+        r.skipWhitespace();
+        if (r.peek() == ']') {
+            r.pos++;
+        } else {
+            while (true) {
+                fields.clear();
+                r.readObject(fields);
+                handler.object(fields);
+                r.skipWhitespace();
+                byte c = r.next();
+                if (c == ']') {
+                    break;
+                }
+                if (c != ',') {
+                    throw r.error("Expected ',' or ']'");
+                }
+            }
+        }
+        r.skipWhitespace();
+        if (r.pos != r.end) {
+            throw r.error("Unexpected trailing data");
+        }
+    }
+
+    private void readObject(Fields out) {
+        expect('{');
+        skipWhitespace();
+        if (peek() == '}') {
+            pos++;
+            return;
+        }
+        while (true) {
+            skipWhitespace();
+            int key = readKey();
+            expect(':');
+            skipWhitespace();
+            switch (key) {
+                case KEY_ID -> {
+                    out.id = readInt();
+                    out.hasId = true;
+                }
+                case KEY_AGE -> {
+                    out.age = readInt();
+                    out.hasAge = true;
+                }
+                case KEY_NAME -> out.name = readStringOrNull();
+                case KEY_EMAIL -> out.email = readStringOrNull();
+                case KEY_OP -> out.op = readStringOrNull();
+                default -> skipValue();
+            }
+            skipWhitespace();
+            byte c = next();
+            if (c == '}') {
+                return;
+            }
+            if (c != ',') {
+                throw error("Expected ',' or '}'");
+            }
+        }
+    }
+
+    private static final int KEY_OTHER = 0;
+    private static final int KEY_ID = 1;
+    private static final int KEY_NAME = 2;
+    private static final int KEY_EMAIL = 3;
+    private static final int KEY_AGE = 4;
+    private static final int KEY_OP = 5;
+
+    /**
+     * Reads a key and identifies it by comparing bytes in place; keys are never materialized.
+     */
+    private int readKey() {
+        expect('"');
+        int start = pos;
+        while (true) {
+            byte c = next();
+            if (c == '"') {
+                break;
+            }
+            if (c == '\\') {
+                // Escaped keys never match ours; skip the escape and treat as unknown
+                next();
+                skipStringRest();
+                return KEY_OTHER;
+            }
+        }
+        int n = pos - 1 - start;
+        if (matches(start, n, "id")) return KEY_ID;
+        if (matches(start, n, "name")) return KEY_NAME;
+        if (matches(start, n, "email")) return KEY_EMAIL;
+        if (matches(start, n, "age")) return KEY_AGE;
+        if (matches(start, n, "op")) return KEY_OP;
+        return KEY_OTHER;
+    }
+
+    private boolean matches(int start, int n, String key) {
+        if (n != key.length()) {
+            return false;
+        }
+        for (int i = 0; i < n; i++) {
+            if (b[start + i] != key.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private String readStringOrNull() {
+        if (peek() == 'n') {
+            expectLiteral("null");
+            return null;
+        }
+        return readString();
+    }
+
+    private String readString() {
+        expect('"');
+        int start = pos;
+        // Fast path: plain ASCII without escapes becomes a Latin-1 string with a single copy
+        while (pos < end) {
+            byte c = b[pos];
+            if (c == '"') {
+                String s = new String(b, start, pos - start, StandardCharsets.ISO_8859_1);
+                pos++;
+                return s;
+            }
+            if (c == '\\' || c < 0x20) {
+                break;
+            }
+            pos++;
+        }
+        pos = start;
+        return readStringSlow();
+    }
+
+    private String readStringSlow() {
+        if (scratch == null) {
+            scratch = new char[64];
+        }
+        char[] out = scratch;
+        int n = 0;
+        while (true) {
+            if (pos >= end) {
+                throw error("Unterminated string");
+            }
+            if (n + 2 > out.length) {
+                out = scratch = Arrays.copyOf(out, out.length * 2);
+            }
+            int c = b[pos++] & 0xFF;
+            if (c == '"') {
+                return new String(out, 0, n);
+            }
+            if (c == '\\') {
+                byte e = next();
+                switch (e) {
+                    case '"' -> out[n++] = '"';
+                    case '\\' -> out[n++] = '\\';
+                    case '/' -> out[n++] = '/';
+                    case 'b' -> out[n++] = '\b';
+                    case 'f' -> out[n++] = '\f';
+                    case 'n' -> out[n++] = '\n';
+                    case 'r' -> out[n++] = '\r';
+                    case 't' -> out[n++] = '\t';
+                    case 'u' -> out[n++] = readHex4();
+                    default -> throw error("Invalid escape");
+                }
+            } else if (c < 0x20) {
+                throw error("Control character in string");
+            } else if (c < 0x80) {
+                out[n++] = (char) c;
+            } else if ((c & 0xE0) == 0xC0) {
+                out[n++] = (char) (((c & 0x1F) << 6) | continuation());
+            } else if ((c & 0xF0) == 0xE0) {
+                int c2 = continuation();
+                out[n++] = (char) (((c & 0x0F) << 12) | (c2 << 6) | continuation());
+            } else if ((c & 0xF8) == 0xF0) {
+                int c2 = continuation();
+                int c3 = continuation();
+                int cp = ((c & 0x07) << 18) | (c2 << 12) | (c3 << 6) | continuation();
+                out[n++] = Character.highSurrogate(cp);
+                out[n++] = Character.lowSurrogate(cp);
+            } else {
+                throw error("Invalid UTF-8");
+            }
+        }
+    }
+
+    private int continuation() {
+        int c = next() & 0xFF;
+        if ((c & 0xC0) != 0x80) {
+            throw error("Invalid UTF-8");
+        }
+        return c & 0x3F;
+    }
+
+    private char readHex4() {
+        int v = 0;
+        for (int i = 0; i < 4; i++) {
+            int c = next();
+            int d;
+            if (c >= '0' && c <= '9') d = c - '0';
+            else if (c >= 'a' && c <= 'f') d = c - 'a' + 10;
+            else if (c >= 'A' && c <= 'F') d = c - 'A' + 10;
+            else throw error("Invalid unicode escape");
+            v = (v << 4) | d;
+        }
+        return (char) v;
+    }
+
+    /**
+     * Reads an int given either as a JSON number or as a numeric string ("20").
+     */
+    private int readInt() {
+        boolean quoted = peek() == '"';
+        if (quoted) {
+            pos++;
+            skipWhitespace();
+        }
+        boolean negative = false;
+        if (peek() == '-') {
+            negative = true;
+            pos++;
+        }
+        long v = 0;
+        int digits = 0;
+        while (pos < end && b[pos] >= '0' && b[pos] <= '9') {
+            v = v * 10 + (b[pos++] - '0');
+            if (++digits > 10) {
+                throw error("Number out of range");
+            }
+        }
+        if (digits == 0) {
+            throw error("Expected a number");
+        }
+        if (pos < end && (b[pos] == '.' || b[pos] == 'e' || b[pos] == 'E')) {
+            throw error("Expected an integer");
+        }
+        v = negative ? -v : v;
+        if (v < Integer.MIN_VALUE || v > Integer.MAX_VALUE) {
+            throw error("Number out of range");
+        }
+        if (quoted) {
+            skipWhitespace();
+            expect('"');
+        }
+        return (int) v;
+    }
+
+    private void skipValue() {
+        byte c = peek();
+        switch (c) {
+            case '"' -> {
+                pos++;
+                skipStringRest();
+            }
+            case '{', '[' -> skipContainer();
+            case 't' -> expectLiteral("true");
+            case 'f' -> expectLiteral("false");
+            case 'n' -> expectLiteral("null");
+            default -> {
+                int start = pos;
+                while (pos < end && (b[pos] == '-' || b[pos] == '+' || b[pos] == '.' || b[pos] == 'e'
+                        || b[pos] == 'E' || (b[pos] >= '0' && b[pos] <= '9'))) {
+                    pos++;
+                }
+                if (pos == start) {
+                    throw error("Unexpected character");
+                }
+            }
+        }
+    }
+
+    private void skipStringRest() {
+        while (true) {
+            byte c = next();
+            if (c == '"') {
+                return;
+            }
+            if (c == '\\') {
+                next();
+            }
+        }
+    }
+
+    private void skipContainer() {
+        int depth = 0;
+        do {
+            byte c = next();
+            if (c == '"') {
+                skipStringRest();
+            } else if (c == '{' || c == '[') {
+                depth++;
+            } else if (c == '}' || c == ']') {
+                depth--;
+            }
+        } while (depth > 0);
+    }
+
+    private void expectLiteral(String literal) {
+        for (int i = 0; i < literal.length(); i++) {
+            if (next() != literal.charAt(i)) {
+                throw error("Invalid literal");
+            }
+        }
+    }
+
+    private void skipWhitespace() {
+        while (pos < end) {
+            byte c = b[pos];
+            if (c != ' ' && c != '\n' && c != '\r' && c != '\t') {
+                return;
+            }
+            pos++;
+        }
+    }
+
+    private void expect(char c) {
+        skipWhitespace();
+        if (next() != c) {
+            throw error("Expected '" + c + "'");
+        }
+    }
+
+    private byte peek() {
+        if (pos >= end) {
+            throw error("Unexpected end of input");
+        }
+        return b[pos];
+    }
+
+    private byte next() {
+        if (pos >= end) {
+            throw error("Unexpected end of input");
+        }
+        return b[pos++];
+    }
+
+    private IllegalArgumentException error(String message) {
+        return new IllegalArgumentException("Invalid JSON at byte " + pos + ": " + message);
+    }
+}
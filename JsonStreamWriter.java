@@ -0,0 +1,67 @@
+package com.example.sms;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Writes a JSON array of students straight to an output stream. Rows are encoded into a
+ * pooled {@link JsonWriter} buffer that is flushed whenever it passes a fixed size.
+ */
+class JsonStreamWriter implements AutoCloseable {
+    private static final int FLUSH_THRESHOLD = 16 * 1024;
+
+    private final OutputStream os;
+    private final StudentFields fields;
+    private final JsonWriter json = JsonWriter.acquire();
+    private boolean first = true;
+
+    JsonStreamWriter(OutputStream os) {
+        this(os, StudentFields.ALL);
+    }
+
+    /**
+     * Writes only {@code fields} of each student.
+     */
+    JsonStreamWriter(OutputStream os, StudentFields fields) {
+        this.os = os;
+        this.fields = fields;
+    }
+
+    void beginArray() throws IOException {
+        json.raw('[');
+    }
+
+    void writeStudent(int id, String name, String email, int age) throws IOException {
+        if (!first) {
+            json.raw(',');
+        }
+        first = false;
+        json.student(id, name, email, age, fields);
+        if (json.length() >= FLUSH_THRESHOLD) {
+            json.writeTo(os);
+            json.reset();
+        }
+    }
+
+    void endArray() throws IOException {
+        json.raw(']');
+    }
+
+    /**
+     * Returns the buffer to its pool without writing it or closing the stream, so a failed
+     * response is left cut short.
+     */
+    void discard() {
+        json.release();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            json.writeTo(os);
+            os.close();
+        } finally {
+            json.release();
+        }
+    }
+}
@@ -0,0 +1,222 @@
+package com.example.sms;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+
+/**
+ * Encodes JSON straight into a growable UTF-8 byte buffer. Strings are escaped per
+ * RFC 8259 without intermediate String or char[] copies. Instances are pooled:
+ * take one with {@link #acquire()} and give it back with {@link #release()}.
+ */
+final class JsonWriter {
+    private static final int INITIAL_CAPACITY = 4 * 1024;
+    private static final int MAX_POOLED_CAPACITY = 256 * 1024;
+    private static final ArrayBlockingQueue<JsonWriter> POOL = new ArrayBlockingQueue<>(64);
+    private static final byte[] HEX = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] MIN_INT = "-2147483648".getBytes(StandardCharsets.US_ASCII);
+
+    private byte[] buf = new byte[INITIAL_CAPACITY];
+    private int len;
+    private long acquiredAt;
+
+    static JsonWriter acquire() {
+        JsonWriter w = POOL.poll();
+        if (w == null) {
+            w = new JsonWriter();
+        }
+        w.acquiredAt = System.nanoTime();
+        return w;
+    }
+
+    /**
+     * {@link System#nanoTime()} when this writer was handed out by {@link #acquire()}.
+     */
+    long acquiredAt() {
+        return acquiredAt;
+    }
+
+    void release() {
+        if (buf.length <= MAX_POOLED_CAPACITY) {
+            len = 0;
+            POOL.offer(this);
+        }
+    }
+
+    byte[] array() {
+        return buf;
+    }
+
+    int length() {
+        return len;
+    }
+
+    void reset() {
+        len = 0;
+    }
+
+    void writeTo(OutputStream os) throws IOException {
+        os.write(buf, 0, len);
+    }
+
+    JsonWriter raw(char c) {
+        ensure(1);
+        buf[len++] = (byte) c;
+        return this;
+    }
+
+    /**
+     * Appends ASCII text as-is; only for literals and keys that need no escaping.
+     */
+    JsonWriter raw(String ascii) {
+        int n = ascii.length();
+        ensure(n);
+        for (int i = 0; i < n; i++) {
+            buf[len++] = (byte) ascii.charAt(i);
+        }
+        return this;
+    }
+
+    JsonWriter number(int value) {
+        if (value == Integer.MIN_VALUE) {
+            ensure(MIN_INT.length);
+            System.arraycopy(MIN_INT, 0, buf, len, MIN_INT.length);
+            len += MIN_INT.length;
+            return this;
+        }
+        ensure(11);
+        if (value < 0) {
+            buf[len++] = '-';
+            value = -value;
+        }
+        int digits = 1;
+        for (int v = value; v >= 10; v /= 10) {
+            digits++;
+        }
+        int pos = len + digits;
+        len = pos;
+        do {
+            buf[--pos] = (byte) ('0' + value % 10);
+            value /= 10;
+        } while (value != 0);
+        return this;
+    }
+
+    JsonWriter number(long value) {
+        if (value >= Integer.MIN_VALUE && value <= Integer.MAX_VALUE) {
+            return number((int) value);
+        }
+        return raw(Long.toString(value));
+    }
+
+    JsonWriter bool(boolean value) {
+        return raw(value ? "true" : "false");
+    }
+
+    JsonWriter string(String s) {
+        if (s == null) {
+            return raw("null");
+        }
+        int n = s.length();
+        // Worst case: every char becomes a six-byte unicode escape
+        ensure(n * 6 + 2);
+        byte[] b = buf;
+        int p = len;
+        b[p++] = '"';
+        for (int i = 0; i < n; i++) {
+            char c = s.charAt(i);
+            if (c >= 0x20 && c < 0x80) {
+                if (c == '"' || c == '\\') {
+                    b[p++] = '\\';
+                }
+                b[p++] = (byte) c;
+            } else if (c < 0x20) {
+                b[p++] = '\\';
+                switch (c) {
+                    case '\n' -> b[p++] = 'n';
+                    case '\r' -> b[p++] = 'r';
+                    case '\t' -> b[p++] = 't';
+                    case '\b' -> b[p++] = 'b';
+                    case '\f' -> b[p++] = 'f';
+                    default -> {
+                        b[p++] = 'u';
+                        b[p++] = '0';
+                        b[p++] = '0';
+                        b[p++] = HEX[c >> 4];
+                        b[p++] = HEX[c & 0xF];
+                    }
+                }
+            } else if (c < 0x800) {
+                b[p++] = (byte) (0xC0 | (c >> 6));
+                b[p++] = (byte) (0x80 | (c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < n && Character.isLowSurrogate(s.charAt(i + 1))) {
+                int cp = Character.toCodePoint(c, s.charAt(++i));
+                b[p++] = (byte) (0xF0 | (cp >> 18));
+                b[p++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+                b[p++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+                b[p++] = (byte) (0x80 | (cp & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                // Unpaired surrogate: not representable in UTF-8
+                b[p++] = (byte) 0xEF;
+                b[p++] = (byte) 0xBF;
+                b[p++] = (byte) 0xBD;
+            } else {
+                b[p++] = (byte) (0xE0 | (c >> 12));
+                b[p++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                b[p++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+        b[p++] = '"';
+        len = p;
+        return this;
+    }
+
+    JsonWriter student(int id, String name, String email, int age) {
+        raw("{\"id\":").number(id);
+        raw(",\"name\":").string(name);
+        raw(",\"email\":").string(email);
+        return raw(",\"age\":").number(age).raw('}');
+    }
+
+    JsonWriter student(Student s) {
+        return student(s.getId(), s.getName(), s.getEmail(), s.getAge());
+    }
+
+    /**
+     * Writes only the keys in {@code fields}, in the usual order.
+     */
+    JsonWriter student(int id, String name, String email, int age, StudentFields fields) {
+        if (fields.isAll()) {
+            return student(id, name, email, age);
+        }
+        char sep = '{';
+        if (fields.has(StudentFields.ID)) {
+            raw(sep).raw("\"id\":").number(id);
+            sep = ',';
+        }
+        if (fields.has(StudentFields.NAME)) {
+            raw(sep).raw("\"name\":").string(name);
+            sep = ',';
+        }
+        if (fields.has(StudentFields.EMAIL)) {
+            raw(sep).raw("\"email\":").string(email);
+            sep = ',';
+        }
+        if (fields.has(StudentFields.AGE)) {
+            raw(sep).raw("\"age\":").number(age);
+        }
+        return raw('}');
+    }
+
+    JsonWriter student(Student s, StudentFields fields) {
+        return student(s.getId(), s.getName(), s.getEmail(), s.getAge(), fields);
+    }
+
+    private void ensure(int extra) {
+        if (len + extra > buf.length) {
+            buf = Arrays.copyOf(buf, Math.max(buf.length * 2, len + extra));
+        }
+    }
+}
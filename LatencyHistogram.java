@@ -0,0 +1,142 @@
+package com.example.sms;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free latency histogram in nanoseconds with log-linear buckets: every power of two is
+ * split into {@value #SUB_BUCKETS} equal buckets, so a bucket is at most 1/16 (6.25%) wider
+ * than its lower bound. Values below {@value #SUB_BUCKETS} ns get one bucket each.
+ * <p>
+ * Counts are striped by thread id so concurrent recorders rarely touch the same array;
+ * {@link #snapshot()} adds the stripes together. {@link #record} allocates nothing.
+ */
+final class LatencyHistogram {
+    private static final int SUB_BITS = 4;
+    static final int SUB_BUCKETS = 1 << SUB_BITS;
+    static final int BUCKETS = (63 - SUB_BITS + 1) * SUB_BUCKETS;
+    // Slot after the buckets holds the sum of recorded values
+    private static final int SUM = BUCKETS;
+    private static final int STRIPES = Math.min(16, Integer.highestOneBit(Runtime.getRuntime().availableProcessors() * 2 - 1));
+
+    private final AtomicLongArray[] stripes = new AtomicLongArray[STRIPES];
+
+    LatencyHistogram() {
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new AtomicLongArray(BUCKETS + 1);
+        }
+    }
+
+    void record(long nanos) {
+        if (nanos < 0) {
+            nanos = 0;
+        }
+        AtomicLongArray stripe = stripes[(int) Thread.currentThread().threadId() & (STRIPES - 1)];
+        stripe.incrementAndGet(bucket(nanos));
+        stripe.addAndGet(SUM, nanos);
+    }
+
+    /**
+     * Records the time elapsed since {@code startNanos}, a {@link System#nanoTime()} reading.
+     */
+    void recordSince(long startNanos) {
+        record(System.nanoTime() - startNanos);
+    }
+
+    Snapshot snapshot() {
+        long[] counts = new long[BUCKETS];
+        long sum = 0;
+        for (AtomicLongArray stripe : stripes) {
+            for (int i = 0; i < BUCKETS; i++) {
+                counts[i] += stripe.get(i);
+            }
+            sum += stripe.get(SUM);
+        }
+        return new Snapshot(counts, sum);
+    }
+
+    static int bucket(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int sub = (int) (value >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BITS + 1) * SUB_BUCKETS + sub;
+    }
+
+    /**
+     * Smallest value that falls in the bucket.
+     */
+    static long lowerBound(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int exponent = bucket / SUB_BUCKETS + SUB_BITS - 1;
+        long sub = bucket % SUB_BUCKETS;
+        return (SUB_BUCKETS + sub) << (exponent - SUB_BITS);
+    }
+
+    /**
+     * Largest value that falls in the bucket.
+     */
+    static long upperBound(int bucket) {
+        return bucket == BUCKETS - 1 ? Long.MAX_VALUE : lowerBound(bucket + 1) - 1;
+    }
+
+    /**
+     * Counts merged from all stripes at one moment. Later recordings do not change it.
+     */
+    static final class Snapshot {
+        private final long[] counts;
+        final long count;
+        final long sum;
+
+        Snapshot(long[] counts, long sum) {
+            this.counts = counts;
+            this.sum = sum;
+            long n = 0;
+            for (long c : counts) {
+                n += c;
+            }
+            this.count = n;
+        }
+
+        /**
+         * Upper bound of the bucket holding the value at quantile q (0-1); 0 when empty.
+         */
+        long quantile(double q) {
+            if (count == 0) {
+                return 0;
+            }
+            long rank = Math.max(1, (long) Math.ceil(q * count));
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    return upperBound(i);
+                }
+            }
+            return upperBound(BUCKETS - 1);
+        }
+
+        long max() {
+            for (int i = BUCKETS - 1; i >= 0; i--) {
+                if (counts[i] > 0) {
+                    return upperBound(i);
+                }
+            }
+            return 0;
+        }
+
+        /**
+         * Number of values below {@code limit}, exact when the limit is a bucket boundary,
+         * as every power of two is.
+         */
+        long countBelow(long limit) {
+            long n = 0;
+            for (int i = 0; i < BUCKETS && lowerBound(i) < limit; i++) {
+                n += counts[i];
+            }
+            return n;
+        }
+    }
+}
@@ -0,0 +1,577 @@
+package com.example.sms;
+
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Load generator for the REST API. Runs a weighted mix of requests against a running server,
+ * or against one started in this JVM with --in-process, and prints throughput and latency
+ * percentiles every interval and at the end.
+ * <p>
+ * In open mode requests are started on a fixed schedule (--rate per second) whatever the
+ * server does. In closed mode --concurrency workers each send a request, wait for the answer,
+ * and send the next; with --rate they also pace themselves to that total rate. Whenever there
+ * is a schedule, latency is measured from when the request should have started, not when it
+ * was sent, so a stalled server shows up as high latency rather than as fewer samples
+ * (coordinated omission). The time from send to answer is reported separately as service time.
+ * <p>
+ * Usage: LoadTest [--url http://localhost:8081 | --in-process] [--mode open|closed]
+ * [--rate 500] [--concurrency 16] [--duration 30s] [--warmup 5s] [--interval 1s]
+ * [--mix get=60,list=10,search=10,post=10,put=5,delete=5] [--preload 1000]
+ * [--maxOutstanding 10000] [--out result.json]
+ */
+public class LoadTest {
+
+    enum Op {
+        GET("get"), LIST("list"), SEARCH("search"), POST("post"), PUT("put"), DELETE("delete");
+
+        final String param;
+
+        Op(String param) {
+            this.param = param;
+        }
+    }
+
+    private static final Pattern CREATED_ID = Pattern.compile("\"id\":\\s*(\\d+)");
+    private static final int PRELOAD_CHUNK = 500;
+
+    // Settings
+    private String url = "http://localhost:8081";
+    private boolean inProcess;
+    private String mode = "closed";
+    private double rate;
+    private int concurrency = 16;
+    private long durationNanos = Duration.ofSeconds(30).toNanos();
+    private long warmupNanos = Duration.ofSeconds(5).toNanos();
+    private long intervalNanos = Duration.ofSeconds(1).toNanos();
+    private final int[] weights = {60, 10, 10, 10, 5, 5};
+    private int preload = 1000;
+    private int maxOutstanding = 10_000;
+    private String out;
+
+    // Run state
+    private HttpClient client;
+    private final IdPool ids = new IdPool();
+    private final AtomicLong nameCounter = new AtomicLong();
+    private final Map<Op, OpStats> stats = new LinkedHashMap<>();
+    private final OpStats total = new OpStats();
+    private volatile Interval interval = new Interval();
+    private final List<IntervalReport> intervals = new ArrayList<>();
+    private long measureStart;
+
+    public static void main(String[] args) throws Exception {
+        LoadTest test = new LoadTest();
+        try {
+            test.parse(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println("Usage: LoadTest [--url URL | --in-process] [--mode open|closed] [--rate N] [--concurrency N]"
+                    + " [--duration 30s] [--warmup 5s] [--interval 1s] [--mix get=60,list=10,...] [--preload N]"
+                    + " [--maxOutstanding N] [--out result.json]");
+            System.exit(2);
+        }
+        HttpServer server = test.inProcess ? test.startServer() : null;
+        try {
+            test.run();
+        } finally {
+            if (server != null) {
+                server.stop(0);
+                // Store threads (reconciler, pool, write-behind) would otherwise keep the JVM up
+                System.exit(0);
+            }
+        }
+    }
+
+    private void parse(String[] args) {
+        for (int i = 0; i < args.length; i++) {
+            String name = args[i];
+            if (name.equals("--in-process")) {
+                inProcess = true;
+                continue;
+            }
+            if (i + 1 >= args.length) {
+                throw new IllegalArgumentException("Missing value for " + name);
+            }
+            String value = args[++i];
+            switch (name) {
+                case "--url" -> url = value.endsWith("/") ? value.substring(0, value.length() - 1) : value;
+                case "--mode" -> {
+                    if (!value.equals("open") && !value.equals("closed")) {
+                        throw new IllegalArgumentException("--mode must be open or closed");
+                    }
+                    mode = value;
+                }
+                case "--rate" -> rate = Double.parseDouble(value);
+                case "--concurrency" -> concurrency = Integer.parseInt(value);
+                case "--duration" -> durationNanos = parseDuration(value);
+                case "--warmup" -> warmupNanos = parseDuration(value);
+                case "--interval" -> intervalNanos = parseDuration(value);
+                case "--mix" -> parseMix(value);
+                case "--preload" -> preload = Integer.parseInt(value);
+                case "--maxOutstanding" -> maxOutstanding = Integer.parseInt(value);
+                case "--out" -> out = value;
+                default -> throw new IllegalArgumentException("Unknown option: " + name);
+            }
+        }
+        if (mode.equals("open") && rate <= 0) {
+            throw new IllegalArgumentException("Open mode needs --rate");
+        }
+        if (concurrency < 1 || maxOutstanding < 1 || intervalNanos <= 0 || durationNanos <= 0) {
+            throw new IllegalArgumentException("--concurrency, --maxOutstanding, --interval and --duration must be positive");
+        }
+    }
+
+    private static long parseDuration(String value) {
+        String v = value.toLowerCase(Locale.ROOT);
+        if (v.endsWith("ms")) return Duration.ofMillis(Long.parseLong(v.substring(0, v.length() - 2))).toNanos();
+        if (v.endsWith("s")) return Duration.ofSeconds(Long.parseLong(v.substring(0, v.length() - 1))).toNanos();
+        if (v.endsWith("m")) return Duration.ofMinutes(Long.parseLong(v.substring(0, v.length() - 1))).toNanos();
+        return Duration.ofSeconds(Long.parseLong(v)).toNanos();
+    }
+
+    private void parseMix(String value) {
+        Arrays.fill(weights, 0);
+        for (String part : value.split(",")) {
+            int eq = part.indexOf('=');
+            if (eq < 0) {
+                throw new IllegalArgumentException("Bad --mix entry: " + part);
+            }
+            String name = part.substring(0, eq).trim();
+            Op op = null;
+            for (Op candidate : Op.values()) {
+                if (candidate.param.equals(name)) op = candidate;
+            }
+            if (op == null) {
+                throw new IllegalArgumentException("Unknown operation in --mix: " + name);
+            }
+            weights[op.ordinal()] = Integer.parseInt(part.substring(eq + 1).trim());
+        }
+        if (Arrays.stream(weights).sum() <= 0) {
+            throw new IllegalArgumentException("--mix needs a positive weight");
+        }
+    }
+
+    /**
+     * Starts StudentAPI on a free local port. Without an explicit sms.store the in-memory
+     * store is used, so no database is needed.
+     */
+    private HttpServer startServer() throws IOException, SQLException {
+        if (System.getProperty("sms.store") == null) {
+            System.setProperty("sms.store", "memory");
+        }
+        HttpServer server = StudentAPI.start(new InetSocketAddress("localhost", 0));
+        url = "http://localhost:" + server.getAddress().getPort();
+        System.out.println("Started in-process server on " + url + " (sms.store=" + System.getProperty("sms.store") + ")");
+        return server;
+    }
+
+    private void run() throws Exception {
+        for (Op op : Op.values()) {
+            stats.put(op, new OpStats());
+        }
+        // The client keeps its own executor: the request executor is shut down to wait for the run
+        try (ExecutorService clientExecutor = Executors.newVirtualThreadPerTaskExecutor();
+             ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            client = HttpClient.newBuilder()
+                    .version(HttpClient.Version.HTTP_1_1)
+                    .connectTimeout(Duration.ofSeconds(5))
+                    .executor(clientExecutor)
+                    .build();
+            preload();
+
+            System.out.printf("%s loop against %s: %s, %ds after %ds warm-up%n", mode, url,
+                    rate > 0 ? String.format("%.0f req/s", rate) : concurrency + " workers unpaced",
+                    durationNanos / 1_000_000_000, warmupNanos / 1_000_000_000);
+            long start = System.nanoTime();
+            measureStart = start + warmupNanos;
+            long end = measureStart + durationNanos;
+            Thread reporter = Thread.ofPlatform().daemon().name("load-reporter").start(() -> report(end));
+            if (mode.equals("open")) {
+                runOpen(executor, start, end);
+            } else {
+                runClosed(executor, start, end);
+            }
+            reporter.join();
+        }
+        printSummary();
+        if (out != null) {
+            writeJson(Path.of(out));
+            System.out.println("Results written to " + out);
+        }
+    }
+
+    private void preload() throws IOException, InterruptedException {
+        if (preload <= 0) {
+            return;
+        }
+        for (int done = 0; done < preload; done += PRELOAD_CHUNK) {
+            int n = Math.min(PRELOAD_CHUNK, preload - done);
+            StringBuilder body = new StringBuilder("[");
+            for (int i = 0; i < n; i++) {
+                if (i > 0) body.append(',');
+                long k = nameCounter.incrementAndGet();
+                body.append("{\"op\":\"create\",\"name\":\"Load User ").append(k).append("\",\"email\":\"load")
+                        .append(k).append("@example.com\",\"age\":").append(18 + k % 40).append('}');
+            }
+            body.append(']');
+            HttpResponse<String> response = client.send(HttpRequest.newBuilder(URI.create(url + "/api/students/_bulk"))
+                    .POST(HttpRequest.BodyPublishers.ofString(body.toString())).build(), HttpResponse.BodyHandlers.ofString());
+            if (response.statusCode() != 200) {
+                throw new IOException("Preload failed with " + response.statusCode() + ": " + response.body());
+            }
+            Matcher m = CREATED_ID.matcher(response.body());
+            while (m.find()) {
+                ids.add(Integer.parseInt(m.group(1)));
+            }
+        }
+        System.out.println("Preloaded " + ids.size() + " students");
+    }
+
+    /**
+     * Starts request i at start + i / rate. If maxOutstanding requests are already running the
+     * dispatcher waits, but the schedule does not move, so the wait counts as latency.
+     */
+    private void runOpen(ExecutorService executor, long start, long end) throws InterruptedException {
+        Semaphore outstanding = new Semaphore(maxOutstanding);
+        double periodNanos = 1e9 / rate;
+        for (long i = 0; ; i++) {
+            long intended = start + (long) (i * periodNanos);
+            if (intended >= end) {
+                break;
+            }
+            sleepUntil(intended);
+            outstanding.acquire();
+            executor.execute(() -> {
+                try {
+                    execute(intended);
+                } finally {
+                    outstanding.release();
+                }
+            });
+        }
+    }
+
+    private void runClosed(ExecutorService executor, long start, long end) {
+        double periodNanos = rate > 0 ? 1e9 * concurrency / rate : 0;
+        for (int w = 0; w < concurrency; w++) {
+            // Spread paced workers across one period so they do not fire together
+            long offset = (long) (periodNanos * w / concurrency);
+            executor.execute(() -> {
+                for (long k = 0; ; k++) {
+                    long intended = periodNanos > 0 ? start + offset + (long) (k * periodNanos) : System.nanoTime();
+                    if (intended >= end) {
+                        return;
+                    }
+                    sleepUntil(intended);
+                    execute(intended);
+                }
+            });
+        }
+    }
+
+    private static void sleepUntil(long nanoTime) {
+        long wait;
+        while ((wait = nanoTime - System.nanoTime()) > 0) {
+            LockSupport.parkNanos(wait);
+        }
+    }
+
+    private void execute(long intended) {
+        Op op = pick();
+        HttpRequest request = request(op);
+        if (request == null) {
+            op = Op.LIST;
+            request = request(op);
+        }
+        long sent = System.nanoTime();
+        int status;
+        String body = null;
+        try {
+            HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+            status = response.statusCode();
+            body = response.body();
+        } catch (IOException e) {
+            status = 0;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        long now = System.nanoTime();
+        if (op == Op.POST && status == 201) {
+            Matcher m = CREATED_ID.matcher(body);
+            if (m.find()) ids.add(Integer.parseInt(m.group(1)));
+        }
+        if (intended >= measureStart) {
+            stats.get(op).record(now - intended, now - sent, status);
+            total.record(now - intended, now - sent, status);
+            Interval current = interval;
+            current.latency.record(now - intended);
+            current.requests.increment();
+            if (status < 200 || status >= 300) current.errors.increment();
+        }
+    }
+
+    private Op pick() {
+        int sum = 0;
+        for (int w : weights) sum += w;
+        int r = ThreadLocalRandom.current().nextInt(sum);
+        for (Op op : Op.values()) {
+            r -= weights[op.ordinal()];
+            if (r < 0) return op;
+        }
+        return Op.GET;
+    }
+
+    /**
+     * Builds a request for the operation, or returns null when it needs an id and none is left.
+     */
+    private HttpRequest request(Op op) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        String base = url + "/api/students";
+        switch (op) {
+            case GET -> {
+                int id = ids.pick();
+                return id == 0 ? null : HttpRequest.newBuilder(URI.create(base + "?id=" + id)).GET().build();
+            }
+            case LIST -> {
+                return HttpRequest.newBuilder(URI.create(base + "?limit=50&after=" + random.nextInt(Math.max(1, ids.size())))).GET().build();
+            }
+            case SEARCH -> {
+                return HttpRequest.newBuilder(URI.create(base + "/search?q=user+" + random.nextInt(1000))).GET().build();
+            }
+            case POST -> {
+                long k = nameCounter.incrementAndGet();
+                return HttpRequest.newBuilder(URI.create(base))
+                        .POST(HttpRequest.BodyPublishers.ofString(studentJson(k, 18 + random.nextInt(40)))).build();
+            }
+            case PUT -> {
+                int id = ids.pick();
+                return id == 0 ? null : HttpRequest.newBuilder(URI.create(base + "/" + id))
+                        .PUT(HttpRequest.BodyPublishers.ofString(studentJson(id, 18 + random.nextInt(40)))).build();
+            }
+            case DELETE -> {
+                int id = ids.take();
+                return id == 0 ? null : HttpRequest.newBuilder(URI.create(base + "/" + id)).DELETE().build();
+            }
+            default -> throw new IllegalStateException();
+        }
+    }
+
+    private static String studentJson(long k, int age) {
+        return "{\"name\":\"Load User " + k + "\",\"email\":\"load" + k + "@example.com\",\"age\":" + age + "}";
+    }
+
+    private void report(long end) {
+        long next = measureStart + intervalNanos;
+        sleepUntil(measureStart);
+        interval = new Interval();
+        while (next <= end) {
+            sleepUntil(next);
+            Interval done = interval;
+            interval = new Interval();
+            LatencyHistogram.Snapshot s = done.latency.snapshot();
+            IntervalReport r = new IntervalReport((next - measureStart) / 1e9, done.requests.sum() * 1e9 / intervalNanos,
+                    s, done.errors.sum());
+            intervals.add(r);
+            System.out.printf("%7.1fs %9.0f req/s  p50 %9.3f ms  p99 %9.3f ms  p99.9 %9.3f ms  max %9.3f ms  errors %d%n",
+                    r.second, r.throughput, ms(s.quantile(0.5)), ms(s.quantile(0.99)), ms(s.quantile(0.999)),
+                    ms(s.max()), r.errors);
+            next += intervalNanos;
+        }
+    }
+
+    private void printSummary() {
+        double seconds = durationNanos / 1e9;
+        System.out.println();
+        System.out.printf("%-8s %9s %9s %8s %10s %10s %10s %10s%n", "op", "requests", "req/s", "errors",
+                "p50 ms", "p99 ms", "p99.9 ms", "max ms");
+        for (Map.Entry<Op, OpStats> e : stats.entrySet()) {
+            printRow(e.getKey().param, e.getValue(), seconds);
+        }
+        printRow("total", total, seconds);
+        if (mode.equals("closed") && rate <= 0) {
+            System.out.println("Closed loop without --rate has no schedule, so latency equals service time.");
+        }
+    }
+
+    private static void printRow(String name, OpStats s, double seconds) {
+        LatencyHistogram.Snapshot l = s.latency.snapshot();
+        if (l.count == 0) {
+            return;
+        }
+        System.out.printf("%-8s %9d %9.0f %8d %10.3f %10.3f %10.3f %10.3f%n", name, l.count, l.count / seconds,
+                s.errors(), ms(l.quantile(0.5)), ms(l.quantile(0.99)), ms(l.quantile(0.999)), ms(l.max()));
+    }
+
+    private void writeJson(Path path) throws IOException {
+        double seconds = durationNanos / 1e9;
+        JsonWriter json = JsonWriter.acquire();
+        try {
+            json.raw("{\"config\":{\"url\":").string(url)
+                    .raw(",\"mode\":").string(mode)
+                    .raw(",\"rate\":").raw(String.valueOf(rate))
+                    .raw(",\"concurrency\":").number(concurrency)
+                    .raw(",\"durationSeconds\":").raw(String.valueOf(seconds))
+                    .raw(",\"warmupSeconds\":").raw(String.valueOf(warmupNanos / 1e9))
+                    .raw(",\"mix\":{");
+            for (Op op : Op.values()) {
+                if (op.ordinal() > 0) json.raw(',');
+                json.string(op.param).raw(':').number(weights[op.ordinal()]);
+            }
+            json.raw("}},\"intervals\":[");
+            for (int i = 0; i < intervals.size(); i++) {
+                IntervalReport r = intervals.get(i);
+                if (i > 0) json.raw(',');
+                json.raw("{\"second\":").raw(String.valueOf(r.second))
+                        .raw(",\"throughput\":").raw(String.format(Locale.ROOT, "%.1f", r.throughput))
+                        .raw(",\"errors\":").number(r.errors)
+                        .raw(",\"latency\":");
+                percentiles(json, r.latency);
+                json.raw('}');
+            }
+            json.raw("],\"summary\":{");
+            writeOp(json, "total", total, seconds);
+            for (Map.Entry<Op, OpStats> e : stats.entrySet()) {
+                json.raw(',');
+                writeOp(json, e.getKey().param, e.getValue(), seconds);
+            }
+            json.raw("}}\n");
+            try (OutputStream os = Files.newOutputStream(path)) {
+                json.writeTo(os);
+            }
+        } finally {
+            json.release();
+        }
+    }
+
+    private static void writeOp(JsonWriter json, String name, OpStats s, double seconds) {
+        LatencyHistogram.Snapshot latency = s.latency.snapshot();
+        json.string(name).raw(":{\"requests\":").number(latency.count)
+                .raw(",\"throughput\":").raw(String.format(Locale.ROOT, "%.1f", latency.count / seconds))
+                .raw(",\"errors\":").number(s.errors())
+                .raw(",\"status\":{");
+        for (int i = 0; i < s.statusClasses.length; i++) {
+            if (i > 0) json.raw(',');
+            json.string(i == 0 ? "failed" : i + "xx").raw(':').number(s.statusClasses[i].sum());
+        }
+        json.raw("},\"latency\":");
+        percentiles(json, latency);
+        json.raw(",\"serviceTime\":");
+        percentiles(json, s.serviceTime.snapshot());
+        json.raw('}');
+    }
+
+    /**
+     * Percentiles in microseconds.
+     */
+    private static void percentiles(JsonWriter json, LatencyHistogram.Snapshot s) {
+        json.raw("{\"p50\":").number(s.quantile(0.5) / 1000)
+                .raw(",\"p90\":").number(s.quantile(0.9) / 1000)
+                .raw(",\"p99\":").number(s.quantile(0.99) / 1000)
+                .raw(",\"p999\":").number(s.quantile(0.999) / 1000)
+                .raw(",\"max\":").number(s.max() / 1000).raw('}');
+    }
+
+    private static double ms(long nanos) {
+        return nanos / 1e6;
+    }
+
+    private static final class OpStats {
+        final LatencyHistogram latency = new LatencyHistogram();
+        final LatencyHistogram serviceTime = new LatencyHistogram();
+        // Index 0 counts requests that got no response
+        final LongAdder[] statusClasses = new LongAdder[6];
+
+        OpStats() {
+            for (int i = 0; i < statusClasses.length; i++) {
+                statusClasses[i] = new LongAdder();
+            }
+        }
+
+        void record(long latencyNanos, long serviceNanos, int status) {
+            latency.record(latencyNanos);
+            serviceTime.record(serviceNanos);
+            int statusClass = status / 100;
+            statusClasses[statusClass >= 1 && statusClass <= 5 ? statusClass : 0].increment();
+        }
+
+        long errors() {
+            return statusClasses[0].sum() + statusClasses[1].sum() + statusClasses[3].sum()
+                    + statusClasses[4].sum() + statusClasses[5].sum();
+        }
+    }
+
+    private static final class Interval {
+        final LatencyHistogram latency = new LatencyHistogram();
+        final LongAdder requests = new LongAdder();
+        final LongAdder errors = new LongAdder();
+    }
+
+    private static final class IntervalReport {
+        final double second;
+        final double throughput;
+        final LatencyHistogram.Snapshot latency;
+        final long errors;
+
+        IntervalReport(double second, double throughput, LatencyHistogram.Snapshot latency, long errors) {
+            this.second = second;
+            this.throughput = throughput;
+            this.latency = latency;
+            this.errors = errors;
+        }
+    }
+
+    /**
+     * Ids known to exist, for get, put and delete. 0 means none is left.
+     */
+    private static final class IdPool {
+        private int[] ids = new int[1024];
+        private int size;
+
+        synchronized void add(int id) {
+            if (size == ids.length) ids = Arrays.copyOf(ids, size * 2);
+            ids[size++] = id;
+        }
+
+        synchronized int pick() {
+            return size == 0 ? 0 : ids[ThreadLocalRandom.current().nextInt(size)];
+        }
+
+        synchronized int take() {
+            if (size == 0) return 0;
+            int i = ThreadLocalRandom.current().nextInt(size);
+            int id = ids[i];
+            ids[i] = ids[--size];
+            return id;
+        }
+
+        synchronized int size() {
+            return size;
+        }
+    }
+}
@@ -0,0 +1,415 @@
+package com.example.sms;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Durable embedded student store that needs no database server.
+ * <p>
+ * Every change is appended to a {@link StudentLog} and fsynced before the call returns;
+ * concurrent writers share fsyncs. An id-to-location index of the latest record for each
+ * student is rebuilt from the log on startup, and the live rows are loaded into an
+ * {@link InMemoryStudentStore}, which answers all reads. Updates and deletes leave dead
+ * records behind; a background thread copies the live records out of mostly-dead segments
+ * and deletes them.
+ * <p>
+ * Readers may see a change slightly before its fsync completes. A failed fsync makes the
+ * store refuse further writes, since what reached the disk is then unknown.
+ */
+public class LogStudentStore implements StudentStore, AutoCloseable {
+    private static final int SEGMENT_SIZE = Integer.getInteger("sms.log.segmentSize", 64 * 1024 * 1024);
+    private static final boolean FSYNC = !"false".equals(System.getProperty("sms.log.fsync"));
+    private static final long COMPACT_INTERVAL_MS = Long.getLong("sms.log.compactIntervalMs", 30_000);
+    private static final double COMPACT_THRESHOLD =
+            Double.parseDouble(System.getProperty("sms.log.compactThreshold", "0.5"));
+    private static final int COMPACT_BATCH = 256;
+
+    private final StudentLog log;
+    private final boolean fsync;
+    private final double compactThreshold;
+    private final InMemoryStudentStore view = new InMemoryStudentStore();
+    // Guarded by writeLock, as are the log's appends and segment list
+    private final IntLongMap index = new IntLongMap(1024);
+    private final StudentLog.Frame frame = new StudentLog.Frame();
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private final Thread compactor;
+    private int lastId;
+    private volatile boolean closed;
+
+    public LogStudentStore(Path dir) throws IOException {
+        this(dir, SEGMENT_SIZE, FSYNC, COMPACT_INTERVAL_MS, COMPACT_THRESHOLD);
+    }
+
+    LogStudentStore(Path dir, int segmentSize, boolean fsync, long compactIntervalMs, double compactThreshold)
+            throws IOException {
+        this.log = new StudentLog(dir, segmentSize);
+        this.fsync = fsync;
+        this.compactThreshold = compactThreshold;
+        int headerLastId = log.open((location, size, type, id) -> {
+            if (type == StudentLog.PUT) {
+                indexPut(id, location, size);
+            } else {
+                indexRemove(id);
+            }
+            lastId = Math.max(lastId, id);
+        });
+        lastId = Math.max(lastId, headerLastId);
+        int[] ids = index.keys();
+        Arrays.sort(ids);
+        for (int id : ids) {
+            view.insertWithId(log.read(index.get(id)));
+        }
+
+        if (compactIntervalMs > 0) {
+            compactor = Thread.ofPlatform().daemon().name("sms-log-compactor").unstarted(() -> {
+                while (!closed) {
+                    try {
+                        Thread.sleep(compactIntervalMs);
+                        compact();
+                    } catch (InterruptedException e) {
+                        return;
+                    } catch (IOException | RuntimeException e) {
+                        System.err.println("Log compaction failed: " + e.getMessage());
+                    }
+                }
+            });
+            compactor.start();
+        } else {
+            compactor = null;
+        }
+    }
+
+    /**
+     * Number of students currently stored.
+     */
+    public int size() {
+        return view.size();
+    }
+
+    @Override
+    public void addStudent(Student student) throws SQLException {
+        long position;
+        writeLock.lock();
+        try {
+            int id = lastId + 1;
+            frame.reset();
+            frame.put(id, student.getName(), student.getEmail(), student.getAge());
+            position = append(id);
+            lastId = id;
+            indexPut(id, frame.location(0), frame.size(0));
+            view.insertWithId(new Student(id, student.getName(), student.getEmail(), student.getAge()));
+            student.setId(id);
+        } finally {
+            writeLock.unlock();
+        }
+        awaitDurable(position);
+    }
+
+    @Override
+    public void updateStudent(Student student) throws SQLException {
+        long position;
+        writeLock.lock();
+        try {
+            int id = student.getId();
+            if (!index.containsKey(id)) {
+                return;
+            }
+            frame.reset();
+            frame.put(id, student.getName(), student.getEmail(), student.getAge());
+            position = append(lastId);
+            indexPut(id, frame.location(0), frame.size(0));
+            view.updateStudent(student);
+        } finally {
+            writeLock.unlock();
+        }
+        awaitDurable(position);
+    }
+
+    @Override
+    public void deleteStudent(int id) throws SQLException {
+        long position;
+        writeLock.lock();
+        try {
+            if (!index.containsKey(id)) {
+                return;
+            }
+            frame.reset();
+            frame.delete(id);
+            position = append(lastId);
+            indexRemove(id);
+            view.deleteStudent(id);
+        } finally {
+            writeLock.unlock();
+        }
+        awaitDurable(position);
+    }
+
+    @Override
+    public Student getStudentById(int id) {
+        return view.getStudentById(id);
+    }
+
+    @Override
+    public List<Student> getAllStudents() {
+        return view.getAllStudents();
+    }
+
+    @Override
+    public void streamAllStudents(RowHandler handler) throws IOException {
+        view.streamAllStudents(handler);
+    }
+
+    @Override
+    public StudentPage findStudents(StudentQuery query) {
+        return view.findStudents(query);
+    }
+
+    /**
+     * Writes all successful operations as one frame, so they survive a crash together.
+     * If the write fails nothing is applied and every operation is reported as failed.
+     */
+    @Override
+    public List<BulkResult> executeBulk(List<BulkOperation> ops) throws SQLException {
+        List<BulkResult> results = new ArrayList<>(ops.size());
+        List<BulkOperation> applied = new ArrayList<>(ops.size());
+        long position;
+        writeLock.lock();
+        try {
+            // Existence as seen by the operations so far in this batch
+            IntLongMap changed = new IntLongMap(ops.size());
+            int id = lastId;
+            frame.reset();
+            for (BulkOperation op : ops) {
+                Student st = op.getStudent();
+                switch (op.getType()) {
+                    case CREATE -> {
+                        id++;
+                        frame.put(id, st.getName(), st.getEmail(), st.getAge());
+                        changed.put(id, 1);
+                        Student created = new Student(id, st.getName(), st.getEmail(), st.getAge());
+                        applied.add(new BulkOperation(op.getIndex(), op.getType(), created));
+                        results.add(new BulkResult(op.getIndex(), op.getType(), 201, id, null));
+                    }
+                    case UPDATE, DELETE -> {
+                        long state = changed.get(st.getId());
+                        boolean exists = state == IntLongMap.MISSING ? index.containsKey(st.getId()) : state == 1;
+                        if (!exists) {
+                            results.add(new BulkResult(op.getIndex(), op.getType(), 404, st.getId(), "Student not found"));
+                            continue;
+                        }
+                        if (op.getType() == BulkOperation.Type.UPDATE) {
+                            frame.put(st.getId(), st.getName(), st.getEmail(), st.getAge());
+                        } else {
+                            frame.delete(st.getId());
+                            changed.put(st.getId(), 0);
+                        }
+                        applied.add(op);
+                        results.add(new BulkResult(op.getIndex(), op.getType(), 200, st.getId(), null));
+                    }
+                }
+            }
+            if (frame.count() == 0) {
+                return results;
+            }
+            try {
+                position = log.append(frame, id);
+            } catch (IOException e) {
+                results.clear();
+                for (BulkOperation op : ops) {
+                    results.add(new BulkResult(op.getIndex(), op.getType(), 500, op.getStudent().getId(),
+                            "Rolled back: " + e.getMessage()));
+                }
+                return results;
+            }
+            lastId = id;
+            for (int i = 0; i < applied.size(); i++) {
+                BulkOperation op = applied.get(i);
+                if (op.getType() == BulkOperation.Type.DELETE) {
+                    indexRemove(op.getStudent().getId());
+                } else {
+                    indexPut(op.getStudent().getId(), frame.location(i), frame.size(i));
+                }
+            }
+            view.applyWithIds(applied);
+        } finally {
+            writeLock.unlock();
+        }
+        awaitDurable(position);
+        return results;
+    }
+
+    @Override
+    public void insertStudents(List<Student> students) throws SQLException {
+        if (students.isEmpty()) {
+            return;
+        }
+        List<BulkOperation> created = new ArrayList<>(students.size());
+        long position;
+        writeLock.lock();
+        try {
+            int id = lastId;
+            frame.reset();
+            for (Student st : students) {
+                id++;
+                frame.put(id, st.getName(), st.getEmail(), st.getAge());
+                created.add(new BulkOperation(created.size(), BulkOperation.Type.CREATE,
+                        new Student(id, st.getName(), st.getEmail(), st.getAge())));
+            }
+            position = append(id);
+            lastId = id;
+            for (int i = 0; i < created.size(); i++) {
+                int rowId = created.get(i).getStudent().getId();
+                indexPut(rowId, frame.location(i), frame.size(i));
+                students.get(i).setId(rowId);
+            }
+            view.applyWithIds(created);
+        } finally {
+            writeLock.unlock();
+        }
+        awaitDurable(position);
+    }
+
+    /**
+     * Copies the live records out of every sealed segment whose live share has dropped below
+     * the threshold, then deletes it. Writers are only blocked while each small batch is copied.
+     */
+    void compact() throws IOException {
+        List<StudentLog.Segment> candidates = new ArrayList<>();
+        writeLock.lock();
+        try {
+            for (StudentLog.Segment seg : log.sealedSegments()) {
+                if (seg.liveRatio(log.isOldest(seg)) < compactThreshold) {
+                    candidates.add(seg);
+                }
+            }
+        } finally {
+            writeLock.unlock();
+        }
+        for (StudentLog.Segment seg : candidates) {
+            compact(seg);
+        }
+    }
+
+    private void compact(StudentLog.Segment seg) throws IOException {
+        boolean keepTombstones;
+        writeLock.lock();
+        try {
+            // Nothing older can hold a record a tombstone here still has to hide
+            keepTombstones = !log.isOldest(seg);
+        } finally {
+            writeLock.unlock();
+        }
+        IntLongMap puts = new IntLongMap(1024);
+        IntLongMap tombstones = new IntLongMap(16);
+        log.scan(seg, (location, size, type, id) -> {
+            if (type == StudentLog.PUT) {
+                puts.put(id, location);
+            } else if (keepTombstones) {
+                tombstones.put(id, location);
+            }
+        });
+
+        int[] putIds = puts.keys();
+        int[] deadIds = tombstones.keys();
+        for (int from = 0; from < putIds.length + deadIds.length; from += COMPACT_BATCH) {
+            int to = Math.min(from + COMPACT_BATCH, putIds.length + deadIds.length);
+            long position = 0;
+            writeLock.lock();
+            try {
+                frame.reset();
+                List<Integer> moved = new ArrayList<>();
+                for (int i = from; i < to; i++) {
+                    if (i < putIds.length) {
+                        int id = putIds[i];
+                        long location = puts.get(id);
+                        if (index.get(id) == location) {
+                            Student st = log.read(location);
+                            frame.put(id, st.getName(), st.getEmail(), st.getAge());
+                            moved.add(id);
+                        }
+                    } else if (!index.containsKey(deadIds[i - putIds.length])) {
+                        frame.delete(deadIds[i - putIds.length]);
+                    }
+                }
+                if (frame.count() > 0) {
+                    position = log.append(frame, lastId);
+                    for (int i = 0; i < moved.size(); i++) {
+                        indexPut(moved.get(i), frame.location(i), frame.size(i));
+                    }
+                }
+            } finally {
+                writeLock.unlock();
+            }
+            if (position > 0) {
+                log.awaitDurable(position);
+            }
+        }
+
+        writeLock.lock();
+        try {
+            // The copies must be on disk before the originals go, whatever the fsync setting
+            log.force();
+            log.drop(seg);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        if (compactor != null) {
+            compactor.interrupt();
+            try {
+                compactor.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        writeLock.lock();
+        try {
+            log.close();
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    private long append(int lastIdAfter) throws SQLException {
+        try {
+            return log.append(frame, lastIdAfter);
+        } catch (IOException e) {
+            throw new SQLException("Log write failed: " + e.getMessage(), e);
+        }
+    }
+
+    private void awaitDurable(long position) throws SQLException {
+        if (!fsync) {
+            return;
+        }
+        try {
+            log.awaitDurable(position);
+        } catch (IOException e) {
+            throw new SQLException("Log fsync failed: " + e.getMessage(), e);
+        }
+    }
+
+    private void indexPut(int id, long location, int size) {
+        long old = index.put(id, location);
+        if (old != IntLongMap.MISSING) {
+            log.segment(old).liveBytes -= log.opSize(old);
+        }
+        log.segment(location).liveBytes += size;
+    }
+
+    private void indexRemove(int id) {
+        long old = index.remove(id);
+        if (old != IntLongMap.MISSING) {
+            log.segment(old).liveBytes -= log.opSize(old);
+        }
+    }
+}
@@ -0,0 +1,244 @@
+package com.example.sms;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Process-wide metrics: request counters and latency histograms per API endpoint and per
+ * store method, plus connection checkout and JSON encoding times. Instruments are created
+ * once and then updated without locks or allocation. Rendered by {@link #prometheus()} and
+ * {@link #json(JsonWriter)}.
+ */
+final class Metrics {
+    static final LatencyHistogram DB_ACQUIRE = new LatencyHistogram();
+    static final LatencyHistogram JSON_ENCODE = new LatencyHistogram();
+    static final LongAdder IN_FLIGHT = new LongAdder();
+
+    // Prometheus "le" bounds: powers of two from about 1 microsecond to 34 seconds
+    private static final int MIN_LE_EXPONENT = 10;
+    private static final int MAX_LE_EXPONENT = 35;
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+    private static final String[] QUANTILE_NAMES = {"p50", "p90", "p99", "p999"};
+
+    private static final Map<String, Endpoint> ENDPOINTS = new ConcurrentSkipListMap<>();
+    private static final Map<String, StoreMethod> STORE_METHODS = new ConcurrentSkipListMap<>();
+    private static final Map<String, Gauge> GAUGES = new ConcurrentSkipListMap<>();
+
+    private Metrics() {
+    }
+
+    /**
+     * Counters for one route, keyed by "METHOD /path".
+     */
+    static final class Endpoint {
+        final String method;
+        final String route;
+        final LatencyHistogram latency = new LatencyHistogram();
+        // Responses by status class; index 0 counts requests that never sent a status
+        final LongAdder[] responses = new LongAdder[6];
+        final LongAdder bytesIn = new LongAdder();
+        final LongAdder bytesOut = new LongAdder();
+
+        private Endpoint(String method, String route) {
+            this.method = method;
+            this.route = route;
+            for (int i = 0; i < responses.length; i++) {
+                responses[i] = new LongAdder();
+            }
+        }
+
+        void recordStatus(int status) {
+            int statusClass = status / 100;
+            responses[statusClass >= 1 && statusClass <= 5 ? statusClass : 0].increment();
+        }
+    }
+
+    static final class StoreMethod {
+        final String name;
+        final LatencyHistogram latency = new LatencyHistogram();
+        final LongAdder errors = new LongAdder();
+
+        private StoreMethod(String name) {
+            this.name = name;
+        }
+    }
+
+    private static final class Gauge {
+        final String type;
+        final String help;
+        final LongSupplier value;
+
+        Gauge(String type, String help, LongSupplier value) {
+            this.type = type;
+            this.help = help;
+            this.value = value;
+        }
+    }
+
+    /**
+     * Returns the endpoint for a key such as "GET /api/students", creating it on first use.
+     * Callers pass constant keys, so the lookup after that allocates nothing.
+     */
+    static Endpoint endpoint(String key) {
+        Endpoint e = ENDPOINTS.get(key);
+        if (e == null) {
+            int space = key.indexOf(' ');
+            e = ENDPOINTS.computeIfAbsent(key, k -> new Endpoint(k.substring(0, space), k.substring(space + 1)));
+        }
+        return e;
+    }
+
+    static StoreMethod storeMethod(String name) {
+        return STORE_METHODS.computeIfAbsent(name, StoreMethod::new);
+    }
+
+    /**
+     * Registers a value read at render time, such as a queue length. Names are Prometheus
+     * metric names; registering a name again replaces it.
+     */
+    static void gauge(String name, String help, LongSupplier value) {
+        GAUGES.put(name, new Gauge("gauge", help, value));
+    }
+
+    /**
+     * Like {@link #gauge}, for a value that only grows, such as a rejection count.
+     */
+    static void counter(String name, String help, LongSupplier value) {
+        GAUGES.put(name, new Gauge("counter", help, value));
+    }
+
+    static String prometheus() {
+        StringBuilder out = new StringBuilder(16 * 1024);
+
+        header(out, "sms_http_requests_total", "counter", "API responses by status class");
+        for (Endpoint e : ENDPOINTS.values()) {
+            for (int i = 0; i < e.responses.length; i++) {
+                long n = e.responses[i].sum();
+                if (n > 0) {
+                    out.append("sms_http_requests_total{method=\"").append(e.method).append("\",route=\"").append(e.route)
+                            .append("\",status=\"").append(i == 0 ? "none" : i + "xx").append("\"} ").append(n).append('\n');
+                }
+            }
+        }
+        header(out, "sms_http_request_bytes_total", "counter", "Request body bytes read");
+        for (Endpoint e : ENDPOINTS.values()) {
+            sample(out, "sms_http_request_bytes_total", endpointLabels(e), e.bytesIn.sum());
+        }
+        header(out, "sms_http_response_bytes_total", "counter", "Response body bytes written");
+        for (Endpoint e : ENDPOINTS.values()) {
+            sample(out, "sms_http_response_bytes_total", endpointLabels(e), e.bytesOut.sum());
+        }
+        header(out, "sms_http_requests_in_flight", "gauge", "API requests being handled");
+        sample(out, "sms_http_requests_in_flight", "", IN_FLIGHT.sum());
+        header(out, "sms_http_request_duration_seconds", "histogram", "API request latency, including admission wait");
+        for (Endpoint e : ENDPOINTS.values()) {
+            histogram(out, "sms_http_request_duration_seconds", endpointLabels(e), e.latency.snapshot());
+        }
+
+        header(out, "sms_store_call_duration_seconds", "histogram", "Student store call latency");
+        for (StoreMethod m : STORE_METHODS.values()) {
+            histogram(out, "sms_store_call_duration_seconds", "method=\"" + m.name + "\"", m.latency.snapshot());
+        }
+        header(out, "sms_store_call_errors_total", "counter", "Student store calls that threw");
+        for (StoreMethod m : STORE_METHODS.values()) {
+            sample(out, "sms_store_call_errors_total", "method=\"" + m.name + "\"", m.errors.sum());
+        }
+
+        header(out, "sms_db_connection_acquire_seconds", "histogram", "Time to get a pooled connection");
+        histogram(out, "sms_db_connection_acquire_seconds", "", DB_ACQUIRE.snapshot());
+        header(out, "sms_json_encode_seconds", "histogram", "Time to build a JSON response body");
+        histogram(out, "sms_json_encode_seconds", "", JSON_ENCODE.snapshot());
+
+        for (Map.Entry<String, Gauge> g : GAUGES.entrySet()) {
+            header(out, g.getKey(), g.getValue().type, g.getValue().help);
+            sample(out, g.getKey(), "", g.getValue().value.getAsLong());
+        }
+        return out.toString();
+    }
+
+    /**
+     * Writes the same data as a JSON object, with latency quantiles in microseconds.
+     */
+    static void json(JsonWriter json) {
+        json.raw("{\"inFlight\":").number(IN_FLIGHT.sum()).raw(",\"endpoints\":[");
+        boolean first = true;
+        for (Endpoint e : ENDPOINTS.values()) {
+            if (!first) json.raw(',');
+            first = false;
+            json.raw("{\"method\":").string(e.method).raw(",\"route\":").string(e.route).raw(",\"responses\":{");
+            boolean firstClass = true;
+            for (int i = 0; i < e.responses.length; i++) {
+                long n = e.responses[i].sum();
+                if (n == 0) continue;
+                if (!firstClass) json.raw(',');
+                firstClass = false;
+                json.string(i == 0 ? "none" : i + "xx").raw(':').number(n);
+            }
+            json.raw("},\"bytesIn\":").number(e.bytesIn.sum()).raw(",\"bytesOut\":").number(e.bytesOut.sum())
+                    .raw(",\"latency\":");
+            latencyJson(json, e.latency.snapshot());
+            json.raw('}');
+        }
+        json.raw("],\"store\":[");
+        first = true;
+        for (StoreMethod m : STORE_METHODS.values()) {
+            if (!first) json.raw(',');
+            first = false;
+            json.raw("{\"method\":").string(m.name).raw(",\"errors\":").number(m.errors.sum()).raw(",\"latency\":");
+            latencyJson(json, m.latency.snapshot());
+            json.raw('}');
+        }
+        json.raw("],\"dbConnectionAcquire\":");
+        latencyJson(json, DB_ACQUIRE.snapshot());
+        json.raw(",\"jsonEncode\":");
+        latencyJson(json, JSON_ENCODE.snapshot());
+        json.raw(",\"gauges\":{");
+        first = true;
+        for (Map.Entry<String, Gauge> g : GAUGES.entrySet()) {
+            if (!first) json.raw(',');
+            first = false;
+            json.string(g.getKey()).raw(':').number(g.getValue().value.getAsLong());
+        }
+        json.raw("}}");
+    }
+
+    private static void latencyJson(JsonWriter json, LatencyHistogram.Snapshot s) {
+        json.raw("{\"count\":").number(s.count)
+                .raw(",\"meanMicros\":").number(s.count == 0 ? 0 : s.sum / s.count / 1000);
+        for (int i = 0; i < QUANTILES.length; i++) {
+            json.raw(",\"").raw(QUANTILE_NAMES[i]).raw("Micros\":").number(s.quantile(QUANTILES[i]) / 1000);
+        }
+        json.raw(",\"maxMicros\":").number(s.max() / 1000).raw('}');
+    }
+
+    private static String endpointLabels(Endpoint e) {
+        return "method=\"" + e.method + "\",route=\"" + e.route + "\"";
+    }
+
+    private static void header(StringBuilder out, String name, String type, String help) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    private static void sample(StringBuilder out, String name, String labels, long value) {
+        out.append(name);
+        if (!labels.isEmpty()) {
+            out.append('{').append(labels).append('}');
+        }
+        out.append(' ').append(value).append('\n');
+    }
+
+    private static void histogram(StringBuilder out, String name, String labels, LatencyHistogram.Snapshot s) {
+        String prefix = labels.isEmpty() ? "" : labels + ",";
+        for (int e = MIN_LE_EXPONENT; e <= MAX_LE_EXPONENT; e++) {
+            out.append(name).append("_bucket{").append(prefix).append("le=\"").append((1L << e) / 1e9).append("\"} ")
+                    .append(s.countBelow(1L << e)).append('\n');
+        }
+        out.append(name).append("_bucket{").append(prefix).append("le=\"+Inf\"} ").append(s.count).append('\n');
+        String braced = labels.isEmpty() ? "" : "{" + labels + "}";
+        out.append(name).append("_sum").append(braced).append(' ').append(s.sum / 1e9).append('\n');
+        out.append(name).append("_count").append(braced).append(' ').append(s.count).append('\n');
+    }
+}
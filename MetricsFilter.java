@@ -0,0 +1,114 @@
+package com.example.sms;
+
+import com.sun.net.httpserver.Filter;
+import com.sun.net.httpserver.HttpExchange;
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Times every request on its context and counts responses and body bytes per route.
+ * Install it before {@link AdmissionFilter} so rejected and queued requests are measured too.
+ */
+public class MetricsFilter extends Filter {
+
+    @Override
+    public void doFilter(HttpExchange exchange, Chain chain) throws IOException {
+        Metrics.Endpoint endpoint = Metrics.endpoint(route(exchange));
+        CountingInputStream in = new CountingInputStream(exchange.getRequestBody(), endpoint.bytesIn);
+        CountingOutputStream out = new CountingOutputStream(exchange.getResponseBody(), endpoint.bytesOut);
+        exchange.setStreams(in, out);
+        Metrics.IN_FLIGHT.increment();
+        long start = System.nanoTime();
+        try {
+            chain.doFilter(exchange);
+        } finally {
+            endpoint.latency.recordSince(start);
+            endpoint.recordStatus(exchange.getResponseCode());
+            Metrics.IN_FLIGHT.decrement();
+        }
+    }
+
+    @Override
+    public String description() {
+        return "Records per-route request latency, status and bytes";
+    }
+
+    /**
+     * Maps a request to one of a fixed set of route keys, matching StudentAPI's dispatch.
+     */
+    static String route(HttpExchange exchange) {
+        String path = exchange.getRequestURI().getPath();
+        String query = exchange.getRequestURI().getRawQuery();
+        switch (exchange.getRequestMethod()) {
+            case "GET":
+                if (path.endsWith("/export.csv")) return "GET /api/students/export.csv";
+                if (path.endsWith("/search")) return "GET /api/students/search";
+                if (path.endsWith("/stats")) return "GET /api/students/stats";
+                if (path.endsWith("/changes")) return "GET /api/students/changes";
+                if (path.contains("/operations/")) return "GET /api/students/operations/{id}";
+                if (query != null && query.startsWith("id=")) return "GET /api/students?id";
+                if (query != null && !query.isEmpty()) return "GET /api/students?page";
+                return "GET /api/students";
+            case "POST":
+                if (path.endsWith("/_bulk")) return "POST /api/students/_bulk";
+                if (path.endsWith("/import")) return "POST /api/students/import";
+                return "POST /api/students";
+            case "PUT":
+                return "PUT /api/students/{id}";
+            case "DELETE":
+                return "DELETE /api/students/{id}";
+            case "OPTIONS":
+                return "OPTIONS /api/students";
+            default:
+                return "OTHER /api/students";
+        }
+    }
+
+    private static final class CountingInputStream extends FilterInputStream {
+        private final LongAdder bytes;
+
+        CountingInputStream(InputStream in, LongAdder bytes) {
+            super(in);
+            this.bytes = bytes;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = in.read();
+            if (b >= 0) bytes.increment();
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = in.read(b, off, len);
+            if (n > 0) bytes.add(n);
+            return n;
+        }
+    }
+
+    private static final class CountingOutputStream extends FilterOutputStream {
+        private final LongAdder bytes;
+
+        CountingOutputStream(OutputStream out, LongAdder bytes) {
+            super(out);
+            this.bytes = bytes;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            bytes.increment();
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            bytes.add(len);
+        }
+    }
+}
@@ -0,0 +1,490 @@
+package com.example.sms;
+
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpContext;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpPrincipal;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Semaphore;
+
+/**
+ * One request and its response on an {@link NioHttpServer} connection. The handler thread
+ * fills pooled buffers and hands them to the connection's event loop, which writes them in
+ * order; it waits only when too many are still unwritten.
+ */
+final class NioHttpExchange extends HttpExchange {
+    // Writes at least this large are sent from the caller's array instead of being copied
+    private static final int DIRECT_WRITE_BYTES = NioHttpServer.BUFFER_SIZE / 2;
+    private static final int MAX_QUEUED_BUFFERS = 4;
+    // Room for a chunk size as 8 hex digits and CRLF, written once the chunk is complete
+    private static final int CHUNK_HEADER = 10;
+    // Room for the CRLF after chunk data and the "0\r\n\r\n" ending the body
+    private static final int CHUNK_TRAILER = 7;
+    private static final byte[] CRLF = {'\r', '\n'};
+
+    private static volatile String date = "";
+    private static volatile long dateSecond;
+
+    private enum Framing { NONE, FIXED, CHUNKED, UNTIL_CLOSE }
+
+    private final NioHttpServer server;
+    private final NioHttpServer.Connection connection;
+    private final NioHttpServer.Request request;
+    private final HttpContext context;
+    private final Headers responseHeaders = new Headers();
+    private final Map<String, Object> attributes = new HashMap<>();
+    private final ResponseStream rawOut = new ResponseStream();
+    private InputStream in;
+    private OutputStream out = rawOut;
+    private volatile int responseCode = -1;
+
+    NioHttpExchange(NioHttpServer server, NioHttpServer.Connection connection, NioHttpServer.Request request, HttpContext context,
+                    InputStream in) {
+        this.server = server;
+        this.connection = connection;
+        this.request = request;
+        this.context = context;
+        this.in = in;
+    }
+
+    @Override
+    public Headers getRequestHeaders() {
+        return request.headers;
+    }
+
+    @Override
+    public Headers getResponseHeaders() {
+        return responseHeaders;
+    }
+
+    @Override
+    public URI getRequestURI() {
+        return request.uri;
+    }
+
+    @Override
+    public String getRequestMethod() {
+        return request.method;
+    }
+
+    @Override
+    public HttpContext getHttpContext() {
+        return context;
+    }
+
+    @Override
+    public void close() {
+        try {
+            in.close();
+            out.close();
+        } catch (IOException e) {
+            // The connection is gone; nothing left to tell the client
+        }
+    }
+
+    @Override
+    public InputStream getRequestBody() {
+        return in;
+    }
+
+    @Override
+    public OutputStream getResponseBody() {
+        return out;
+    }
+
+    @Override
+    public void sendResponseHeaders(int code, long length) throws IOException {
+        if (responseCode >= 0) {
+            throw new IOException("Response headers already sent");
+        }
+        responseCode = code;
+        boolean head = request.method.equals("HEAD");
+        boolean bodiless = code < 200 || code == 204 || code == 304;
+        boolean close = connection.closeAfterResponse || "close".equalsIgnoreCase(responseHeaders.getFirst("Connection"));
+
+        Framing framing;
+        if (bodiless || head || length == -1) {
+            framing = Framing.NONE;
+            if (bodiless) {
+                responseHeaders.remove("Content-Length");
+            } else if (!head || length > 0) {
+                responseHeaders.set("Content-Length", String.valueOf(Math.max(0, length)));
+            } else if (length == -1 && !responseHeaders.containsKey("Content-Length")) {
+                // A HEAD answer may set the length of the body it leaves out itself
+                responseHeaders.set("Content-Length", "0");
+            }
+        } else if (length > 0) {
+            framing = Framing.FIXED;
+            responseHeaders.set("Content-Length", String.valueOf(length));
+        } else if (request.protocol.equals("HTTP/1.1")) {
+            framing = Framing.CHUNKED;
+            responseHeaders.remove("Content-Length");
+            responseHeaders.set("Transfer-Encoding", "chunked");
+        } else {
+            // HTTP/1.0 has no chunked encoding, so the body ends when the connection does
+            framing = Framing.UNTIL_CLOSE;
+            responseHeaders.remove("Content-Length");
+            close = true;
+        }
+        if (close) {
+            connection.closeAfterResponse = true;
+            responseHeaders.set("Connection", "close");
+        } else if (request.protocol.equals("HTTP/1.0")) {
+            responseHeaders.set("Connection", "keep-alive");
+        }
+
+        StringBuilder sb = new StringBuilder(256);
+        sb.append("HTTP/1.1 ").append(code).append(' ').append(reason(code)).append("\r\n");
+        sb.append("Date: ").append(date()).append("\r\n");
+        for (Map.Entry<String, List<String>> header : responseHeaders.entrySet()) {
+            for (String value : header.getValue()) {
+                sb.append(header.getKey()).append(": ").append(value).append("\r\n");
+            }
+        }
+        sb.append("\r\n");
+        rawOut.start(sb.toString().getBytes(StandardCharsets.ISO_8859_1), framing, length);
+    }
+
+    @Override
+    public InetSocketAddress getRemoteAddress() {
+        return connection.remoteAddress;
+    }
+
+    @Override
+    public int getResponseCode() {
+        return responseCode;
+    }
+
+    @Override
+    public InetSocketAddress getLocalAddress() {
+        return connection.localAddress;
+    }
+
+    @Override
+    public String getProtocol() {
+        return request.protocol;
+    }
+
+    @Override
+    public Object getAttribute(String name) {
+        return attributes.get(name);
+    }
+
+    @Override
+    public void setAttribute(String name, Object value) {
+        attributes.put(name, value);
+    }
+
+    @Override
+    public void setStreams(InputStream i, OutputStream o) {
+        if (i != null) {
+            in = i;
+        }
+        if (o != null) {
+            out = o;
+        }
+    }
+
+    @Override
+    public HttpPrincipal getPrincipal() {
+        return null;
+    }
+
+    /**
+     * Called once the handler has returned. Answers 500 if it never responded, and ends the
+     * response if it did not close the stream.
+     */
+    void finish() {
+        try {
+            rawOut.close();
+        } catch (IOException e) {
+            // The connection is gone
+        }
+    }
+
+    /**
+     * Called instead of {@link #finish} when the handler failed. A response already under
+     * way is not ended, so the connection closes with the body cut short and the client can
+     * tell it is incomplete.
+     */
+    void abort() {
+        connection.closeAfterResponse = true;
+        if (responseCode < 0) {
+            finish();
+        } else {
+            rawOut.abort();
+        }
+    }
+
+    private static String date() {
+        long second = System.currentTimeMillis() / 1000;
+        if (second != dateSecond) {
+            date = DateTimeFormatter.RFC_1123_DATE_TIME.format(ZonedDateTime.now(ZoneOffset.UTC));
+            dateSecond = second;
+        }
+        return date;
+    }
+
+    private static String reason(int code) {
+        return switch (code) {
+            case 100 -> "Continue";
+            case 200 -> "OK";
+            case 201 -> "Created";
+            case 202 -> "Accepted";
+            case 204 -> "No Content";
+            case 206 -> "Partial Content";
+            case 301 -> "Moved Permanently";
+            case 302 -> "Found";
+            case 304 -> "Not Modified";
+            case 400 -> "Bad Request";
+            case 401 -> "Unauthorized";
+            case 403 -> "Forbidden";
+            case 404 -> "Not Found";
+            case 405 -> "Method Not Allowed";
+            case 409 -> "Conflict";
+            case 412 -> "Precondition Failed";
+            case 413 -> "Content Too Large";
+            case 415 -> "Unsupported Media Type";
+            case 429 -> "Too Many Requests";
+            case 500 -> "Internal Server Error";
+            case 501 -> "Not Implemented";
+            case 503 -> "Service Unavailable";
+            case 504 -> "Gateway Timeout";
+            default -> "Status " + code;
+        };
+    }
+
+    /**
+     * Response body stream. Small writes are copied into a pooled direct buffer that goes to
+     * the event loop when full; a large write is queued as is and waited for, since the
+     * caller may reuse its array as soon as the call returns.
+     */
+    private final class ResponseStream extends OutputStream {
+        private final Semaphore queued = new Semaphore(MAX_QUEUED_BUFFERS);
+        private Framing framing;
+        private ByteBuffer buffer;
+        // Where the current chunk's data starts; CHUNKED only
+        private int chunkStart;
+        // Bytes still owed under Content-Length; FIXED only
+        private long remaining;
+        private boolean closed;
+        private volatile boolean failed;
+
+        void start(byte[] head, Framing framing, long length) {
+            this.framing = framing;
+            this.remaining = length;
+            if (head.length + CHUNK_HEADER + CHUNK_TRAILER <= NioHttpServer.BUFFER_SIZE) {
+                buffer = server.acquireBuffer();
+                buffer.put(head);
+            } else {
+                connection.submit(new NioHttpServer.Write(ByteBuffer.wrap(head), false, null, false));
+            }
+            beginChunk();
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            check(1);
+            if (framing == Framing.NONE) {
+                return;
+            }
+            if (buffer == null) {
+                buffer = server.acquireBuffer();
+                beginChunk();
+            }
+            buffer.put((byte) b);
+            if (space() == 0) {
+                send(false);
+            }
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            check(len);
+            if (framing == Framing.NONE || len == 0) {
+                return;
+            }
+            if (len >= DIRECT_WRITE_BYTES) {
+                if (buffer != null) {
+                    send(false);
+                }
+                CompletableFuture<Boolean> written = new CompletableFuture<>();
+                if (framing == Framing.CHUNKED) {
+                    byte[] size = (Integer.toHexString(len) + "\r\n").getBytes(StandardCharsets.US_ASCII);
+                    connection.submit(new NioHttpServer.Write(ByteBuffer.wrap(size), false, null, false));
+                    connection.submit(new NioHttpServer.Write(ByteBuffer.wrap(b, off, len), false, null, false));
+                    connection.submit(new NioHttpServer.Write(ByteBuffer.wrap(CRLF), false, written::complete, false));
+                } else {
+                    connection.submit(new NioHttpServer.Write(ByteBuffer.wrap(b, off, len), false, written::complete, false));
+                }
+                await(written);
+                return;
+            }
+            while (len > 0) {
+                if (buffer == null) {
+                    buffer = server.acquireBuffer();
+                    beginChunk();
+                }
+                int n = Math.min(len, space());
+                buffer.put(b, off, n);
+                off += n;
+                len -= n;
+                if (space() == 0) {
+                    send(false);
+                }
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if (closed || framing == null || framing == Framing.NONE) {
+                return;
+            }
+            if (failed) {
+                throw new IOException("Connection closed");
+            }
+            if (buffer != null) {
+                send(false);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            if (framing == null) {
+                // The handler never answered
+                connection.closeAfterResponse = true;
+                sendResponseHeaders(500, -1);
+            }
+            closed = true;
+            if (framing == Framing.FIXED && remaining > 0) {
+                // The client cannot tell where this response ends, so it gets no other
+                connection.closeAfterResponse = true;
+            }
+            if (buffer == null && framing == Framing.CHUNKED) {
+                buffer = server.acquireBuffer();
+                beginChunk();
+            }
+            if (buffer != null) {
+                send(true);
+            } else {
+                connection.submit(new NioHttpServer.Write(NioHttpServer.Write.EMPTY, false, null, true));
+            }
+        }
+
+        void abort() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            if (buffer != null) {
+                server.releaseBuffer(buffer);
+                buffer = null;
+            }
+            connection.submit(new NioHttpServer.Write(NioHttpServer.Write.EMPTY, false, null, true));
+        }
+
+        private void check(int len) throws IOException {
+            if (framing == null) {
+                throw new IOException("Response headers not sent");
+            }
+            if (closed) {
+                throw new IOException("Stream is closed");
+            }
+            if (failed) {
+                throw new IOException("Connection closed");
+            }
+            if (framing == Framing.NONE && len > 0 && !request.method.equals("HEAD")) {
+                throw new IOException("Response has no body");
+            }
+            if (framing == Framing.FIXED) {
+                if (len > remaining) {
+                    throw new IOException("Body longer than its Content-Length");
+                }
+                remaining -= len;
+            }
+        }
+
+        private void beginChunk() {
+            if (framing == Framing.CHUNKED && buffer != null) {
+                chunkStart = buffer.position() + CHUNK_HEADER;
+                buffer.position(chunkStart);
+            }
+        }
+
+        private int space() {
+            return buffer.capacity() - buffer.position() - (framing == Framing.CHUNKED ? CHUNK_TRAILER : 0);
+        }
+
+        /**
+         * Hands the buffer to the event loop, first completing the chunk it holds.
+         */
+        private void send(boolean last) throws IOException {
+            ByteBuffer b = buffer;
+            buffer = null;
+            if (framing == Framing.CHUNKED) {
+                int dataLength = b.position() - chunkStart;
+                if (dataLength > 0) {
+                    // Leading zeros keep the size a fixed width, so it fits the space left for it
+                    byte[] size = String.format("%08x\r\n", dataLength).getBytes(StandardCharsets.US_ASCII);
+                    b.put(chunkStart - CHUNK_HEADER, size);
+                    b.put(CRLF);
+                } else {
+                    b.position(chunkStart - CHUNK_HEADER);
+                }
+                if (last) {
+                    b.put(new byte[] {'0', '\r', '\n', '\r', '\n'});
+                }
+            }
+            b.flip();
+            if (!b.hasRemaining() && !last) {
+                server.releaseBuffer(b);
+                return;
+            }
+            try {
+                queued.acquire();
+            } catch (InterruptedException e) {
+                server.releaseBuffer(b);
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while sending a response");
+            }
+            connection.submit(new NioHttpServer.Write(b, true, written -> {
+                if (!written) {
+                    failed = true;
+                }
+                queued.release();
+            }, last));
+        }
+
+        private void await(CompletableFuture<Boolean> written) throws IOException {
+            try {
+                if (!written.get()) {
+                    failed = true;
+                    throw new IOException("Connection closed");
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while sending a response");
+            } catch (ExecutionException e) {
+                throw new IOException(e.getCause());
+            }
+        }
+    }
+}
@@ -0,0 +1,1343 @@
+package com.example.sms;
+
+import com.sun.net.httpserver.Authenticator;
+import com.sun.net.httpserver.Filter;
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpContext;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.BindException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * HTTP/1.1 server built on NIO selectors that stands in for the JDK's {@link HttpServer}:
+ * contexts, filters and handlers work unchanged. Chosen with {@code -Dsms.api.engine=nio}.
+ * <p>
+ * Each of {@code loops} threads owns a selector and the connections handed to it; the first
+ * also accepts. Loop threads only move bytes. A request head is read and parsed there, and
+ * its handler then runs on the server's executor while the body streams in behind it: the
+ * loop appends body bytes to the handler's input stream and stops reading the connection
+ * once {@link #BODY_WINDOW} bytes wait unread, or once all requests together hold
+ * {@code maxBufferedBodyBytes}. Responses go out from pooled direct buffers, and a large
+ * write is sent from the caller's array without a copy. Connections are kept alive, and
+ * pipelined requests are answered in order, one at a time.
+ * <p>
+ * A request head over {@code maxHeaderBytes} gets 431 and a declared body over
+ * {@code maxBodyBytes} gets 413. A chunked body that grows past it fails the handler's
+ * stream, and the connection closes after the response. Connections close after
+ * {@code idleTimeoutMillis} without a request in progress, or while a body is awaited.
+ * An error on one connection closes only that connection.
+ */
+public final class NioHttpServer extends HttpServer {
+    static final int BUFFER_SIZE = 16 * 1024;
+    // Unread body bytes a request may hold before its connection stops reading
+    static final int BODY_WINDOW = 4 * BUFFER_SIZE;
+    // Body a handler left unread that is still read and dropped to keep the connection
+    private static final long MAX_DRAIN_BYTES = 64 * 1024;
+    private static final int MAX_POOLED_BUFFERS = 1024;
+    private static final long SWEEP_INTERVAL_MS = 1_000;
+    private static final byte[] CONTINUE = "HTTP/1.1 100 Continue\r\n\r\n".getBytes(StandardCharsets.US_ASCII);
+
+    private final int loopCount;
+    private final int maxHeaderBytes;
+    private final long maxBodyBytes;
+    private final long maxBufferedBodyBytes;
+    private final long idleTimeoutNanos;
+    private final List<Context> contexts = new CopyOnWriteArrayList<>();
+    private final Queue<ByteBuffer> buffers = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pooledBuffers = new AtomicInteger();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    // Body bytes read but not yet consumed by handlers, across all connections
+    private final AtomicLong bufferedBodyBytes = new AtomicLong();
+    // Connections that stopped reading because of the server-wide limit
+    private final Queue<Connection> stalled = new ConcurrentLinkedQueue<>();
+    private ServerSocketChannel serverChannel;
+    private volatile Executor executor;
+    private EventLoop[] loops;
+    private volatile boolean stopping;
+
+    public NioHttpServer(int loops, int maxHeaderBytes, long maxBodyBytes, long maxBufferedBodyBytes,
+                         long idleTimeoutMillis) {
+        // A request head has to fit in one read buffer
+        if (loops < 1 || maxHeaderBytes < 256 || maxHeaderBytes > BUFFER_SIZE
+                || maxBodyBytes < 0 || maxBufferedBodyBytes < BODY_WINDOW) {
+            throw new IllegalArgumentException("Invalid NIO server settings");
+        }
+        this.loopCount = loops;
+        this.maxHeaderBytes = maxHeaderBytes;
+        this.maxBodyBytes = maxBodyBytes;
+        this.maxBufferedBodyBytes = maxBufferedBodyBytes;
+        this.idleTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(idleTimeoutMillis);
+    }
+
+    @Override
+    public synchronized void bind(InetSocketAddress address, int backlog) throws IOException {
+        if (serverChannel != null) {
+            throw new BindException("Server is already bound");
+        }
+        ServerSocketChannel channel = ServerSocketChannel.open();
+        try {
+            channel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+            channel.bind(address, backlog);
+            channel.configureBlocking(false);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        serverChannel = channel;
+    }
+
+    @Override
+    public synchronized void start() {
+        if (serverChannel == null) {
+            throw new IllegalStateException("Server is not bound");
+        }
+        if (loops != null) {
+            throw new IllegalStateException("Server is already started");
+        }
+        if (executor == null) {
+            executor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("sms-nio-handler-", 0).factory());
+        }
+        loops = new EventLoop[loopCount];
+        try {
+            for (int i = 0; i < loopCount; i++) {
+                loops[i] = new EventLoop();
+            }
+            serverChannel.register(loops[0].selector, SelectionKey.OP_ACCEPT);
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot open selector", e);
+        }
+        for (int i = 0; i < loopCount; i++) {
+            loops[i].thread = Thread.ofPlatform().name("sms-nio-loop-" + i).start(loops[i]);
+        }
+    }
+
+    @Override
+    public void setExecutor(Executor executor) {
+        this.executor = executor;
+    }
+
+    @Override
+    public Executor getExecutor() {
+        return executor;
+    }
+
+    /**
+     * Stops accepting, waits up to {@code delaySeconds} for requests in progress to finish,
+     * then closes every connection.
+     */
+    @Override
+    public void stop(int delaySeconds) {
+        stopping = true;
+        try {
+            serverChannel.close();
+        } catch (IOException e) {
+            // Closing anyway
+        }
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(delaySeconds);
+        while (inFlight.get() > 0 && System.nanoTime() < deadline) {
+            try {
+                Thread.sleep(20);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        EventLoop[] started;
+        synchronized (this) {
+            started = loops;
+        }
+        if (started == null) {
+            return;
+        }
+        for (EventLoop loop : started) {
+            loop.running = false;
+            loop.selector.wakeup();
+        }
+        for (EventLoop loop : started) {
+            try {
+                loop.thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    @Override
+    public HttpContext createContext(String path, HttpHandler handler) {
+        if (path == null || !path.startsWith("/")) {
+            throw new IllegalArgumentException("Context path must start with /");
+        }
+        for (Context c : contexts) {
+            if (c.path.equals(path)) {
+                throw new IllegalArgumentException("Context already exists: " + path);
+            }
+        }
+        Context context = new Context(path, handler);
+        contexts.add(context);
+        return context;
+    }
+
+    @Override
+    public HttpContext createContext(String path) {
+        return createContext(path, null);
+    }
+
+    @Override
+    public void removeContext(String path) {
+        for (Context c : contexts) {
+            if (c.path.equals(path)) {
+                contexts.remove(c);
+                return;
+            }
+        }
+        throw new IllegalArgumentException("No context for " + path);
+    }
+
+    @Override
+    public void removeContext(HttpContext context) {
+        contexts.remove(context);
+    }
+
+    @Override
+    public InetSocketAddress getAddress() {
+        try {
+            return (InetSocketAddress) serverChannel.getLocalAddress();
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    ByteBuffer acquireBuffer() {
+        ByteBuffer buffer = buffers.poll();
+        if (buffer == null) {
+            return ByteBuffer.allocateDirect(BUFFER_SIZE);
+        }
+        pooledBuffers.decrementAndGet();
+        return buffer;
+    }
+
+    void releaseBuffer(ByteBuffer buffer) {
+        if (pooledBuffers.incrementAndGet() <= MAX_POOLED_BUFFERS) {
+            buffer.clear();
+            buffers.offer(buffer);
+        } else {
+            pooledBuffers.decrementAndGet();
+        }
+    }
+
+    /**
+     * Context with the longest path that prefixes the request path, as the JDK server does.
+     */
+    private Context findContext(String path) {
+        Context best = null;
+        for (Context c : contexts) {
+            if (path.startsWith(c.path) && (best == null || c.path.length() > best.path.length())) {
+                best = c;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Bytes handlers have taken out of request bodies; lets stalled connections read again.
+     */
+    private void bodyConsumed(long n) {
+        if (bufferedBodyBytes.addAndGet(-n) < maxBufferedBodyBytes) {
+            Connection c;
+            while (bufferedBodyBytes.get() < maxBufferedBodyBytes && (c = stalled.poll()) != null) {
+                c.loop.execute(c::resumeBody);
+            }
+        }
+    }
+
+    private void dispatch(Connection connection, Request request, RequestBody body) {
+        Context context = findContext(request.uri.getPath() == null ? "" : request.uri.getPath());
+        InputStream in = body != null ? body : InputStream.nullInputStream();
+        NioHttpExchange exchange = new NioHttpExchange(this, connection, request, context, in);
+        inFlight.incrementAndGet();
+        Runnable task = () -> {
+            boolean failed = true;
+            try {
+                if (context == null || context.handler == null) {
+                    exchange.sendResponseHeaders(404, -1);
+                } else {
+                    new Filter.Chain(context.filters, context.handler).doFilter(exchange);
+                }
+                failed = false;
+            } catch (IOException | RuntimeException e) {
+                // Whatever was sent cannot be trusted to be complete, so it is aborted below
+            } finally {
+                if (body != null) {
+                    body.close();
+                }
+                if (failed) {
+                    exchange.abort();
+                } else {
+                    exchange.finish();
+                }
+                inFlight.decrementAndGet();
+            }
+        };
+        try {
+            executor.execute(task);
+        } catch (RejectedExecutionException e) {
+            inFlight.decrementAndGet();
+            if (body != null) {
+                body.close();
+            }
+            connection.fail(503, "Service Unavailable");
+        }
+    }
+
+    private final class Context extends HttpContext {
+        final String path;
+        volatile HttpHandler handler;
+        final Map<String, Object> attributes = new ConcurrentHashMap<>();
+        final List<Filter> filters = new CopyOnWriteArrayList<>();
+        volatile Authenticator authenticator;
+
+        Context(String path, HttpHandler handler) {
+            this.path = path;
+            this.handler = handler;
+        }
+
+        @Override
+        public HttpHandler getHandler() {
+            return handler;
+        }
+
+        @Override
+        public void setHandler(HttpHandler handler) {
+            this.handler = handler;
+        }
+
+        @Override
+        public String getPath() {
+            return path;
+        }
+
+        @Override
+        public HttpServer getServer() {
+            return NioHttpServer.this;
+        }
+
+        @Override
+        public Map<String, Object> getAttributes() {
+            return attributes;
+        }
+
+        @Override
+        public List<Filter> getFilters() {
+            return filters;
+        }
+
+        /**
+         * Kept for callers that set one, but not applied: the API does not use authentication.
+         */
+        @Override
+        public Authenticator setAuthenticator(Authenticator authenticator) {
+            Authenticator previous = this.authenticator;
+            this.authenticator = authenticator;
+            return previous;
+        }
+
+        @Override
+        public Authenticator getAuthenticator() {
+            return authenticator;
+        }
+    }
+
+    private final class EventLoop implements Runnable {
+        final Selector selector;
+        final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+        final Set<Connection> connections = new HashSet<>();
+        final AtomicBoolean wakeupPending = new AtomicBoolean();
+        volatile boolean running = true;
+        Thread thread;
+        // Loop 0 only: where the next accepted connection goes
+        int nextLoop;
+
+        EventLoop() throws IOException {
+            this.selector = Selector.open();
+        }
+
+        /**
+         * Runs a task on this loop's thread.
+         */
+        void execute(Runnable task) {
+            tasks.add(task);
+            // Also from the loop thread itself, so its next select does not sleep on the task
+            if (wakeupPending.compareAndSet(false, true)) {
+                selector.wakeup();
+            }
+        }
+
+        @Override
+        public void run() {
+            long lastSweep = System.nanoTime();
+            while (running) {
+                try {
+                    selector.select(SWEEP_INTERVAL_MS);
+                    wakeupPending.set(false);
+                    Runnable task;
+                    while ((task = tasks.poll()) != null) {
+                        runTask(task);
+                    }
+                    Set<SelectionKey> keys = selector.selectedKeys();
+                    for (SelectionKey key : keys) {
+                        if (key.isValid()) {
+                            handle(key);
+                        }
+                    }
+                    keys.clear();
+                    long now = System.nanoTime();
+                    if (now - lastSweep >= TimeUnit.MILLISECONDS.toNanos(SWEEP_INTERVAL_MS)) {
+                        lastSweep = now;
+                        for (Connection c : new ArrayList<>(connections)) {
+                            if (c.isIdle(now)) {
+                                c.close();
+                            }
+                        }
+                    }
+                } catch (Throwable e) {
+                    System.err.println("NIO event loop error: " + e);
+                }
+            }
+            for (Connection c : new ArrayList<>(connections)) {
+                c.close();
+            }
+            // Writes queued since are failed, so no handler waits on them
+            Runnable task;
+            while ((task = tasks.poll()) != null) {
+                runTask(task);
+            }
+            try {
+                selector.close();
+            } catch (IOException e) {
+                // Nothing left to release
+            }
+        }
+
+        /**
+         * Serves one ready key. Whatever goes wrong, even an Error, costs only that connection,
+         * so the loop keeps serving, and for loop 0 accepting, the others.
+         */
+        private void handle(SelectionKey key) {
+            if (key.isAcceptable()) {
+                try {
+                    accept();
+                } catch (Throwable e) {
+                    System.err.println("NIO accept error: " + e);
+                }
+                return;
+            }
+            Connection c = (Connection) key.attachment();
+            try {
+                if (key.isWritable()) {
+                    c.flush();
+                }
+                if (key.isValid() && key.isReadable()) {
+                    c.onReadable();
+                }
+            } catch (Throwable e) {
+                System.err.println("NIO connection error, closing it: " + e);
+                c.close();
+            }
+        }
+
+        private void runTask(Runnable task) {
+            try {
+                task.run();
+            } catch (Throwable e) {
+                System.err.println("NIO event loop task error: " + e);
+            }
+        }
+
+        private void accept() throws IOException {
+            SocketChannel channel;
+            while ((channel = serverChannel.accept()) != null) {
+                if (stopping) {
+                    channel.close();
+                    continue;
+                }
+                channel.configureBlocking(false);
+                channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                EventLoop target = loops[nextLoop];
+                nextLoop = (nextLoop + 1) % loops.length;
+                SocketChannel accepted = channel;
+                target.execute(() -> target.register(accepted));
+            }
+        }
+
+        private void register(SocketChannel channel) {
+            try {
+                Connection c = new Connection(this, channel);
+                c.key = channel.register(selector, SelectionKey.OP_READ, c);
+                connections.add(c);
+            } catch (IOException e) {
+                try {
+                    channel.close();
+                } catch (IOException ignored) {
+                    // Already failed
+                }
+            }
+        }
+    }
+
+    /**
+     * One queued piece of a response. {@code last} marks the end of the response.
+     */
+    static final class Write {
+        interface Listener {
+            void done(boolean written);
+        }
+
+        static final ByteBuffer EMPTY = ByteBuffer.allocate(0);
+
+        final ByteBuffer buffer;
+        final boolean pooled;
+        final Listener listener;
+        final boolean last;
+
+        Write(ByteBuffer buffer, boolean pooled, Listener listener, boolean last) {
+            this.buffer = buffer;
+            this.pooled = pooled;
+            this.listener = listener;
+            this.last = last;
+        }
+    }
+
+    /**
+     * A client connection. Its state belongs to the loop thread; handler threads reach it only
+     * through {@link #submit} and the {@link RequestBody} they read.
+     */
+    final class Connection {
+        private final EventLoop loop;
+        private final SocketChannel channel;
+        final InetSocketAddress remoteAddress;
+        final InetSocketAddress localAddress;
+        private SelectionKey key;
+        // Unparsed bytes, in write mode; held only while there are some
+        private ByteBuffer in;
+        private final RequestParser parser = new RequestParser(maxHeaderBytes, maxBodyBytes);
+        private final ArrayDeque<Write> writes = new ArrayDeque<>();
+        // Body of the dispatched request while it is still arriving
+        private RequestBody body;
+        // Not reading until the handler takes some of the body
+        private volatile boolean paused;
+        private boolean responding;
+        private boolean inputClosed;
+        private boolean closed;
+        volatile boolean closeAfterResponse;
+        private long lastActive = System.nanoTime();
+
+        Connection(EventLoop loop, SocketChannel channel) throws IOException {
+            this.loop = loop;
+            this.channel = channel;
+            this.remoteAddress = (InetSocketAddress) channel.getRemoteAddress();
+            this.localAddress = (InetSocketAddress) channel.getLocalAddress();
+        }
+
+        /**
+         * Queues part of a response; callable from any thread. Pooled buffers go back to the
+         * pool once written.
+         */
+        void submit(Write write) {
+            execute(() -> {
+                if (closed) {
+                    complete(write, false);
+                } else {
+                    writes.add(write);
+                    flush();
+                }
+            });
+        }
+
+        /**
+         * Answers with a bodiless error and closes the connection.
+         */
+        void fail(int status, String reason) {
+            closeAfterResponse = true;
+            byte[] response = ("HTTP/1.1 " + status + " " + reason + "\r\nContent-Length: 0\r\nConnection: close\r\n\r\n")
+                    .getBytes(StandardCharsets.US_ASCII);
+            submit(new Write(ByteBuffer.wrap(response), false, null, true));
+        }
+
+        /**
+         * Runs a task for this connection on its loop; if it fails, only this connection closes.
+         */
+        private void execute(Runnable task) {
+            loop.execute(() -> {
+                try {
+                    task.run();
+                } catch (Throwable e) {
+                    System.err.println("NIO connection error, closing it: " + e);
+                    close();
+                }
+            });
+        }
+
+        /**
+         * Called from the handler's thread as it takes body bytes, or drops them.
+         */
+        private void bodyRead(int n) {
+            if (n > 0) {
+                bodyConsumed(n);
+            }
+            if (paused) {
+                execute(this::resumeBody);
+            }
+        }
+
+        private void onReadable() {
+            if (in == null) {
+                in = acquireBuffer();
+            }
+            int n;
+            try {
+                n = channel.read(in);
+            } catch (IOException e) {
+                close();
+                return;
+            }
+            if (n < 0) {
+                // Answer what was already sent in full, then close
+                inputClosed = true;
+                setReading(false);
+            } else {
+                lastActive = System.nanoTime();
+            }
+            process();
+        }
+
+        /**
+         * Feeds buffered bytes to the body being received, and parses and dispatches the next
+         * request once the previous response is done.
+         */
+        private void process() {
+            while (!closed) {
+                if (paused || (body == null && responding)) {
+                    // Pipelined requests wait in the buffer until the response is done
+                    setReading(false);
+                    return;
+                }
+                int result = RequestParser.NEED_MORE;
+                if (in != null && in.position() > 0) {
+                    in.flip();
+                    try {
+                        result = parser.parse(in, body);
+                    } catch (RequestParser.BadRequest e) {
+                        in.compact();
+                        badRequest(e);
+                        return;
+                    }
+                    in.compact();
+                }
+                if (result == RequestParser.BODY_DONE) {
+                    body.end();
+                    body = null;
+                    continue;
+                }
+                if (result == RequestParser.READY) {
+                    Request request = parser.take();
+                    if (!request.keepAlive || stopping) {
+                        closeAfterResponse = true;
+                    }
+                    if (request.expectContinue) {
+                        writes.add(new Write(ByteBuffer.wrap(CONTINUE), false, null, false));
+                        flush();
+                    }
+                    responding = true;
+                    body = request.hasBody ? new RequestBody(this) : null;
+                    dispatch(this, request, body);
+                    continue;
+                }
+                if (body != null) {
+                    if (body.drained > MAX_DRAIN_BYTES) {
+                        // Not worth reading the rest of an unwanted body to keep the connection
+                        body = null;
+                        closeAfterResponse = true;
+                        if (!responding) {
+                            close();
+                        } else {
+                            setReading(false);
+                        }
+                        return;
+                    }
+                    if (overLimit() && pause()) {
+                        return;
+                    }
+                }
+                if (inputClosed) {
+                    if (body != null) {
+                        body.fail(new IOException("Connection closed before the request body ended"));
+                        body = null;
+                        closeAfterResponse = true;
+                    }
+                    if (!responding) {
+                        close();
+                    }
+                    return;
+                }
+                if (in != null && in.position() == 0) {
+                    releaseBuffer(in);
+                    in = null;
+                }
+                setReading(true);
+                return;
+            }
+        }
+
+        private void badRequest(RequestParser.BadRequest e) {
+            setReading(false);
+            if (body == null) {
+                responding = true;
+                fail(e.status, e.getMessage());
+                return;
+            }
+            // The handler is already answering; it sees the error on its stream
+            body.fail(new IOException(e.status + " " + e.getMessage()));
+            body = null;
+            closeAfterResponse = true;
+            if (!responding) {
+                close();
+            }
+        }
+
+        /**
+         * Whether the body being received holds as much unread as it may. A body with nothing
+         * unread may always take more, so a handler waiting for bytes is never starved.
+         */
+        private boolean overLimit() {
+            int buffered = body.buffered;
+            return buffered >= BODY_WINDOW || (buffered > 0 && bufferedBodyBytes.get() >= maxBufferedBodyBytes);
+        }
+
+        /**
+         * Stops reading until the handler catches up; false if it already has.
+         */
+        private boolean pause() {
+            paused = true;
+            if (body.buffered < BODY_WINDOW) {
+                stalled.add(this);
+            }
+            // The handler may have read everything between the check and the flag
+            if (!overLimit()) {
+                paused = false;
+                return false;
+            }
+            setReading(false);
+            return true;
+        }
+
+        private void resumeBody() {
+            if (!paused || closed) {
+                return;
+            }
+            if (body != null && overLimit()) {
+                if (body.buffered < BODY_WINDOW) {
+                    stalled.add(this);
+                }
+                return;
+            }
+            paused = false;
+            process();
+        }
+
+        private void flush() {
+            if (closed) {
+                return;
+            }
+            while (!writes.isEmpty()) {
+                Write write = writes.peek();
+                try {
+                    channel.write(write.buffer);
+                } catch (IOException e) {
+                    close();
+                    return;
+                }
+                if (write.buffer.hasRemaining()) {
+                    key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+                    return;
+                }
+                writes.poll();
+                lastActive = System.nanoTime();
+                complete(write, true);
+                if (write.last) {
+                    responseDone();
+                    if (closed) {
+                        return;
+                    }
+                }
+            }
+            if ((key.interestOps() & SelectionKey.OP_WRITE) != 0) {
+                key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+            }
+        }
+
+        private void responseDone() {
+            responding = false;
+            if (closeAfterResponse) {
+                close();
+            } else {
+                process();
+            }
+        }
+
+        private void complete(Write write, boolean written) {
+            if (write.pooled) {
+                releaseBuffer(write.buffer);
+            }
+            if (write.listener != null) {
+                write.listener.done(written);
+            }
+        }
+
+        private void setReading(boolean reading) {
+            if (closed || !key.isValid()) {
+                return;
+            }
+            int ops = key.interestOps();
+            int updated = reading && !inputClosed ? ops | SelectionKey.OP_READ : ops & ~SelectionKey.OP_READ;
+            if (updated != ops) {
+                key.interestOps(updated);
+            }
+        }
+
+        /**
+         * Idle while nothing is being written and either no request is in progress or its body
+         * is awaited from the client rather than held up by the handler.
+         */
+        private boolean isIdle(long now) {
+            return writes.isEmpty() && now - lastActive > idleTimeoutNanos
+                    && (!responding || (body != null && !paused));
+        }
+
+        private void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            loop.connections.remove(this);
+            if (key != null) {
+                key.cancel();
+            }
+            try {
+                channel.close();
+            } catch (IOException e) {
+                // Closing anyway
+            }
+            if (body != null) {
+                body.fail(new IOException("Connection closed before the request body ended"));
+                body = null;
+            }
+            if (in != null) {
+                releaseBuffer(in);
+                in = null;
+            }
+            Write write;
+            while ((write = writes.poll()) != null) {
+                complete(write, false);
+            }
+        }
+    }
+
+    /**
+     * A request body as it arrives, read by the handler as the exchange's input stream. The
+     * loop appends what it reads; the handler blocks until bytes or the end arrive. Once the
+     * handler closes it, what is still to come is read and dropped.
+     * <p>
+     * Waits use a lock rather than a monitor, so a virtual thread blocked here does not pin
+     * its carrier.
+     */
+    final class RequestBody extends InputStream implements RequestParser.BodySink {
+        private final Connection connection;
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Condition arrived = lock.newCondition();
+        private final ArrayDeque<byte[]> chunks = new ArrayDeque<>();
+        // Read position in the first chunk
+        private int offset;
+        // Bytes appended and not yet read or dropped
+        volatile int buffered;
+        private boolean ended;
+        private IOException failure;
+        private boolean abandoned;
+        // Loop thread only: bytes dropped after the handler closed the stream
+        long drained;
+
+        RequestBody(Connection connection) {
+            this.connection = connection;
+        }
+
+        @Override
+        public void append(ByteBuffer buf, int n) {
+            lock.lock();
+            try {
+                if (abandoned || failure != null) {
+                    buf.position(buf.position() + n);
+                    drained += n;
+                    return;
+                }
+                byte[] data = new byte[n];
+                buf.get(data);
+                chunks.add(data);
+                buffered += n;
+                bufferedBodyBytes.addAndGet(n);
+                arrived.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void end() {
+            lock.lock();
+            try {
+                ended = true;
+                arrived.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * Ends the body with an error, which the handler's next read throws; bytes it has not
+         * read are dropped.
+         */
+        void fail(IOException e) {
+            int released;
+            lock.lock();
+            try {
+                if (ended || failure != null) {
+                    return;
+                }
+                failure = e;
+                released = buffered;
+                chunks.clear();
+                offset = 0;
+                buffered = 0;
+                arrived.signalAll();
+            } finally {
+                lock.unlock();
+            }
+            if (released > 0) {
+                bodyConsumed(released);
+            }
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            int n = read(one, 0, 1);
+            return n < 0 ? -1 : one[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            Objects.checkFromIndexSize(off, len, b.length);
+            if (len == 0) {
+                return 0;
+            }
+            int n = 0;
+            lock.lock();
+            try {
+                while (chunks.isEmpty()) {
+                    if (abandoned) {
+                        throw new IOException("Stream is closed");
+                    }
+                    if (failure != null) {
+                        throw new IOException(failure.getMessage(), failure);
+                    }
+                    if (ended) {
+                        return -1;
+                    }
+                    try {
+                        arrived.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new InterruptedIOException("Interrupted while reading the request body");
+                    }
+                }
+                while (n < len && !chunks.isEmpty()) {
+                    byte[] chunk = chunks.peek();
+                    int k = Math.min(len - n, chunk.length - offset);
+                    System.arraycopy(chunk, offset, b, off + n, k);
+                    n += k;
+                    offset += k;
+                    if (offset == chunk.length) {
+                        chunks.poll();
+                        offset = 0;
+                    }
+                }
+                buffered -= n;
+            } finally {
+                lock.unlock();
+            }
+            connection.bodyRead(n);
+            return n;
+        }
+
+        @Override
+        public int available() {
+            return buffered;
+        }
+
+        /**
+         * Drops what is buffered; the rest of the body is read and dropped as it arrives.
+         */
+        @Override
+        public void close() {
+            int released;
+            lock.lock();
+            try {
+                if (abandoned) {
+                    return;
+                }
+                abandoned = true;
+                released = buffered;
+                chunks.clear();
+                offset = 0;
+                buffered = 0;
+                arrived.signalAll();
+            } finally {
+                lock.unlock();
+            }
+            connection.bodyRead(released);
+        }
+    }
+
+    /**
+     * A parsed request head. A body, if it has one, streams in after it.
+     */
+    static final class Request {
+        final String method;
+        final URI uri;
+        final String protocol;
+        final Headers headers;
+        final boolean keepAlive;
+        boolean hasBody;
+        // The client waits for "100 Continue" before sending the body
+        boolean expectContinue;
+
+        Request(String method, URI uri, String protocol, Headers headers, boolean keepAlive) {
+            this.method = method;
+            this.uri = uri;
+            this.protocol = protocol;
+            this.headers = headers;
+            this.keepAlive = keepAlive;
+        }
+    }
+
+    /**
+     * Incremental HTTP/1.x request parser. Feed it whatever has arrived; it consumes what it
+     * can and keeps its place between calls. A head is reported READY as soon as it is parsed;
+     * the body after it goes to a {@link BodySink} as it is decoded, until BODY_DONE.
+     */
+    static final class RequestParser {
+        static final int NEED_MORE = 0;
+        static final int READY = 1;
+        static final int BODY_DONE = 2;
+        private static final int MAX_LINE = 4096;
+
+        interface BodySink {
+            /**
+             * Takes the next {@code n} bytes of {@code buf}, advancing its position past them.
+             */
+            void append(ByteBuffer buf, int n);
+        }
+
+        static final class BadRequest extends Exception {
+            final int status;
+
+            BadRequest(int status, String reason) {
+                super(reason, null, false, false);
+                this.status = status;
+            }
+        }
+
+        private enum State { HEAD, BODY, CHUNK_SIZE, CHUNK_DATA, CHUNK_END, TRAILER }
+
+        private final int maxHeaderBytes;
+        private final long maxBodyBytes;
+        private State state = State.HEAD;
+        // Bytes of the head already searched for its end
+        private int scanned;
+        private Request request;
+        // Content-Length bytes still to come
+        private long bodyRemaining;
+        // Chunked body bytes so far
+        private long bodyLength;
+        private long chunkRemaining;
+        private final StringBuilder line = new StringBuilder();
+
+        RequestParser(int maxHeaderBytes, long maxBodyBytes) {
+            this.maxHeaderBytes = maxHeaderBytes;
+            this.maxBodyBytes = maxBodyBytes;
+        }
+
+        /**
+         * Parses from {@code buf}, which is in read mode, and leaves it positioned after the
+         * bytes consumed. Body bytes go to {@code sink}, which is only used between READY for
+         * a request with a body and BODY_DONE.
+         */
+        int parse(ByteBuffer buf, BodySink sink) throws BadRequest {
+            while (true) {
+                switch (state) {
+                    case HEAD -> {
+                        int end = findHeadEnd(buf);
+                        if (end < 0) {
+                            if (buf.remaining() >= maxHeaderBytes || buf.limit() == buf.capacity()) {
+                                throw new BadRequest(431, "Request Header Fields Too Large");
+                            }
+                            return NEED_MORE;
+                        }
+                        if (end - buf.position() > maxHeaderBytes) {
+                            throw new BadRequest(431, "Request Header Fields Too Large");
+                        }
+                        byte[] head = new byte[end - buf.position()];
+                        buf.get(head);
+                        scanned = 0;
+                        parseHead(new String(head, StandardCharsets.ISO_8859_1));
+                        return READY;
+                    }
+                    case BODY -> {
+                        int n = (int) Math.min(buf.remaining(), bodyRemaining);
+                        if (n > 0) {
+                            sink.append(buf, n);
+                            bodyRemaining -= n;
+                        }
+                        if (bodyRemaining > 0) {
+                            return NEED_MORE;
+                        }
+                        state = State.HEAD;
+                        return BODY_DONE;
+                    }
+                    case CHUNK_SIZE -> {
+                        String sizeLine = readLine(buf);
+                        if (sizeLine == null) {
+                            return NEED_MORE;
+                        }
+                        int semicolon = sizeLine.indexOf(';');
+                        String hex = (semicolon < 0 ? sizeLine : sizeLine.substring(0, semicolon)).trim();
+                        long size;
+                        try {
+                            size = Long.parseLong(hex, 16);
+                        } catch (NumberFormatException e) {
+                            throw new BadRequest(400, "Bad Request");
+                        }
+                        if (size < 0 || size > maxBodyBytes - bodyLength) {
+                            throw new BadRequest(413, "Content Too Large");
+                        }
+                        if (size == 0) {
+                            state = State.TRAILER;
+                        } else {
+                            chunkRemaining = size;
+                            state = State.CHUNK_DATA;
+                        }
+                    }
+                    case CHUNK_DATA -> {
+                        int n = (int) Math.min(buf.remaining(), chunkRemaining);
+                        if (n > 0) {
+                            sink.append(buf, n);
+                            bodyLength += n;
+                            chunkRemaining -= n;
+                        }
+                        if (chunkRemaining > 0) {
+                            return NEED_MORE;
+                        }
+                        state = State.CHUNK_END;
+                    }
+                    case CHUNK_END -> {
+                        String end = readLine(buf);
+                        if (end == null) {
+                            return NEED_MORE;
+                        }
+                        if (!end.isEmpty()) {
+                            throw new BadRequest(400, "Bad Request");
+                        }
+                        state = State.CHUNK_SIZE;
+                    }
+                    case TRAILER -> {
+                        // Trailer fields are read and dropped
+                        String trailer = readLine(buf);
+                        if (trailer == null) {
+                            return NEED_MORE;
+                        }
+                        if (trailer.isEmpty()) {
+                            state = State.HEAD;
+                            return BODY_DONE;
+                        }
+                    }
+                }
+            }
+        }
+
+        /**
+         * Returns the request after {@link #parse} reported it READY.
+         */
+        Request take() {
+            Request r = request;
+            request = null;
+            return r;
+        }
+
+        /**
+         * Index just past the blank line ending the head, or -1 if it has not arrived.
+         */
+        private int findHeadEnd(ByteBuffer buf) {
+            int start = buf.position();
+            int limit = buf.limit();
+            for (int i = start + Math.max(0, scanned - 3); i < limit; i++) {
+                if (buf.get(i) != '\n') {
+                    continue;
+                }
+                // Blank lines before the request line are ignored
+                if (i == start || (i == start + 1 && buf.get(start) == '\r')) {
+                    continue;
+                }
+                if (i + 1 < limit && buf.get(i + 1) == '\n') {
+                    return i + 2;
+                }
+                if (i + 2 < limit && buf.get(i + 1) == '\r' && buf.get(i + 2) == '\n') {
+                    return i + 3;
+                }
+            }
+            scanned = limit - start;
+            return -1;
+        }
+
+        private void parseHead(String head) throws BadRequest {
+            String[] lines = head.split("\r?\n");
+            int first = 0;
+            while (first < lines.length && lines[first].isEmpty()) {
+                first++;
+            }
+            if (first == lines.length) {
+                throw new BadRequest(400, "Bad Request");
+            }
+            String[] requestLine = lines[first].split(" ", -1);
+            if (requestLine.length != 3 || requestLine[0].isEmpty()) {
+                throw new BadRequest(400, "Bad Request");
+            }
+            String protocol = requestLine[2];
+            if (!protocol.equals("HTTP/1.1") && !protocol.equals("HTTP/1.0")) {
+                throw new BadRequest(protocol.startsWith("HTTP/") ? 505 : 400,
+                        protocol.startsWith("HTTP/") ? "HTTP Version Not Supported" : "Bad Request");
+            }
+            URI uri;
+            try {
+                uri = new URI(requestLine[1]);
+            } catch (URISyntaxException e) {
+                throw new BadRequest(400, "Bad Request");
+            }
+
+            Headers headers = new Headers();
+            for (int i = first + 1; i < lines.length; i++) {
+                String field = lines[i];
+                if (field.isEmpty()) {
+                    continue;
+                }
+                int colon = field.indexOf(':');
+                // Folded lines and whitespace before the colon are rejected, as RFC 9112 requires
+                if (colon <= 0 || field.charAt(0) == ' ' || field.charAt(0) == '\t'
+                        || Character.isWhitespace(field.charAt(colon - 1))) {
+                    throw new BadRequest(400, "Bad Request");
+                }
+                headers.add(field.substring(0, colon), field.substring(colon + 1).trim());
+            }
+
+            String connection = headers.getFirst("Connection");
+            boolean keepAlive = protocol.equals("HTTP/1.1")
+                    ? !"close".equalsIgnoreCase(connection)
+                    : "keep-alive".equalsIgnoreCase(connection);
+            request = new Request(requestLine[0], uri, protocol, headers, keepAlive);
+
+            List<String> transferEncoding = headers.get("Transfer-Encoding");
+            List<String> contentLength = headers.get("Content-Length");
+            if (transferEncoding != null) {
+                // Both framings at once is how requests get smuggled past proxies
+                if (contentLength != null || !transferEncoding.get(transferEncoding.size() - 1).toLowerCase().endsWith("chunked")) {
+                    throw new BadRequest(400, "Bad Request");
+                }
+                bodyLength = 0;
+                state = State.CHUNK_SIZE;
+            } else if (contentLength != null) {
+                long length;
+                try {
+                    length = Long.parseLong(contentLength.get(0).trim());
+                } catch (NumberFormatException e) {
+                    throw new BadRequest(400, "Bad Request");
+                }
+                for (String other : contentLength) {
+                    if (!other.trim().equals(contentLength.get(0).trim())) {
+                        throw new BadRequest(400, "Bad Request");
+                    }
+                }
+                if (length < 0) {
+                    throw new BadRequest(400, "Bad Request");
+                }
+                if (length > maxBodyBytes) {
+                    throw new BadRequest(413, "Content Too Large");
+                }
+                bodyRemaining = length;
+                state = length == 0 ? State.HEAD : State.BODY;
+            }
+            request.hasBody = state != State.HEAD;
+            request.expectContinue = request.hasBody && protocol.equals("HTTP/1.1")
+                    && "100-continue".equalsIgnoreCase(headers.getFirst("Expect"));
+        }
+
+        private String readLine(ByteBuffer buf) throws BadRequest {
+            while (buf.hasRemaining()) {
+                byte b = buf.get();
+                if (b == '\n') {
+                    int length = line.length();
+                    if (length > 0 && line.charAt(length - 1) == '\r') {
+                        line.setLength(length - 1);
+                    }
+                    String result = line.toString();
+                    line.setLength(0);
+                    return result;
+                }
+                if (line.length() >= MAX_LINE) {
+                    throw new BadRequest(400, "Bad Request");
+                }
+                line.append((char) (b & 0xff));
+            }
+            return null;
+        }
+    }
+}
@@ -0,0 +1,170 @@
+package com.example.sms;
+
+import com.sun.net.httpserver.Filter;
+import com.sun.net.httpserver.HttpExchange;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Per-client token buckets, with separate limits for reads (GET, HEAD, OPTIONS) and writes.
+ * A client is identified by its X-API-Key header if that key is one of {@code apiKeys}, else
+ * by its IP address, so made-up keys cannot buy a client fresh buckets.
+ * Requests over the limit are answered with 429 and Retry-After.
+ * <p>
+ * Each bucket is a single timestamp, updated with compare-and-set: the time at which it
+ * would be full again (the generic cell rate algorithm). A full bucket is the same as a new
+ * one, so full buckets are dropped once {@code maxClients} are tracked. If there is still no
+ * room, new clients share one bucket until some fill up.
+ */
+public class RateLimitFilter extends Filter {
+    private static final String API_KEY_HEADER = "X-API-Key";
+    private static final long SWEEP_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+    private static final byte[] LIMITED_BODY = "{\"error\":\"Rate limit exceeded, retry later\"}".getBytes(StandardCharsets.UTF_8);
+
+    /**
+     * A rate with a burst allowance.
+     */
+    static final class Limit {
+        final long intervalNanos;
+        // How far ahead of now a bucket's full time may be while it still has a token
+        final long toleranceNanos;
+
+        Limit(double perSecond, int burst) {
+            if (perSecond <= 0 || burst < 1) {
+                throw new IllegalArgumentException("Rate limits must be positive");
+            }
+            this.intervalNanos = Math.max(1, (long) (TimeUnit.SECONDS.toNanos(1) / perSecond));
+            this.toleranceNanos = intervalNanos * (burst - 1);
+        }
+
+        /**
+         * Takes a token from {@code bucket}. Returns 0 if there was one, else how many
+         * nanoseconds until there will be.
+         */
+        long take(AtomicLong bucket, long now) {
+            while (true) {
+                long full = bucket.get();
+                long from = Math.max(full, now);
+                if (from - now > toleranceNanos) {
+                    return from - now - toleranceNanos;
+                }
+                if (bucket.compareAndSet(full, from + intervalNanos)) {
+                    return 0;
+                }
+            }
+        }
+    }
+
+    private static final class Client {
+        final AtomicLong reads;
+        final AtomicLong writes;
+
+        Client(long now) {
+            this.reads = new AtomicLong(now);
+            this.writes = new AtomicLong(now);
+        }
+
+        boolean full(long now) {
+            return reads.get() <= now && writes.get() <= now;
+        }
+    }
+
+    private final Limit readLimit;
+    private final Limit writeLimit;
+    private final int maxClients;
+    private final Set<String> apiKeys;
+    private final Map<String, Client> clients = new ConcurrentHashMap<>();
+    private final Client overflow = new Client(System.nanoTime());
+    private final AtomicLong lastSweep = new AtomicLong(System.nanoTime());
+    private final LongAdder limited = new LongAdder();
+
+    public RateLimitFilter(double readsPerSecond, int readBurst, double writesPerSecond, int writeBurst, int maxClients,
+                           Set<String> apiKeys) {
+        this.readLimit = new Limit(readsPerSecond, readBurst);
+        this.writeLimit = new Limit(writesPerSecond, writeBurst);
+        this.maxClients = maxClients;
+        this.apiKeys = Set.copyOf(apiKeys);
+    }
+
+    @Override
+    public void doFilter(HttpExchange exchange, Chain chain) throws IOException {
+        String method = exchange.getRequestMethod();
+        boolean read = method.equals("GET") || method.equals("HEAD") || method.equals("OPTIONS");
+        long now = System.nanoTime();
+        Client client = client(clientKey(exchange), now);
+        long wait = read ? readLimit.take(client.reads, now) : writeLimit.take(client.writes, now);
+        if (wait > 0) {
+            limited.increment();
+            reject(exchange, wait);
+            return;
+        }
+        chain.doFilter(exchange);
+    }
+
+    @Override
+    public String description() {
+        return "Limits each client's request rate and answers 429 above it";
+    }
+
+    public long getLimited() {
+        return limited.sum();
+    }
+
+    public int getClients() {
+        return clients.size();
+    }
+
+    /**
+     * Unknown keys are ignored rather than rejected: authentication is not this filter's job.
+     */
+    private String clientKey(HttpExchange exchange) {
+        String apiKey = exchange.getRequestHeaders().getFirst(API_KEY_HEADER);
+        if (apiKey != null && apiKeys.contains(apiKey.trim())) {
+            return "key:" + apiKey.trim();
+        }
+        return "ip:" + exchange.getRemoteAddress().getAddress().getHostAddress();
+    }
+
+    private Client client(String key, long now) {
+        Client client = clients.get(key);
+        if (client != null) {
+            return client;
+        }
+        if (clients.size() >= maxClients) {
+            sweep(now);
+            if (clients.size() >= maxClients) {
+                return overflow;
+            }
+        }
+        return clients.computeIfAbsent(key, k -> new Client(now));
+    }
+
+    /**
+     * Drops full buckets, at most once a second however many new clients arrive.
+     */
+    private void sweep(long now) {
+        long last = lastSweep.get();
+        if (now - last < SWEEP_INTERVAL_NANOS || !lastSweep.compareAndSet(last, now)) {
+            return;
+        }
+        clients.values().removeIf(c -> c.full(now));
+    }
+
+    private static void reject(HttpExchange exchange, long waitNanos) throws IOException {
+        long retryAfter = Math.max(1, (waitNanos + TimeUnit.SECONDS.toNanos(1) - 1) / TimeUnit.SECONDS.toNanos(1));
+        exchange.getResponseHeaders().add("Access-Control-Allow-Origin", "*");
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.getResponseHeaders().add("Retry-After", String.valueOf(retryAfter));
+        exchange.sendResponseHeaders(429, LIMITED_BODY.length);
+        try (OutputStream os = exchange.getResponseBody()) {
+            os.write(LIMITED_BODY);
+        }
+    }
+}
@@ -0,0 +1,157 @@
+package com.example.sms;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Encoded response bodies keyed by request, each tagged with the data version it was built
+ * from. An entry is used only while the version has not moved on, so writes never need to
+ * find and drop the entries they affect.
+ * <p>
+ * Concurrent misses for the same key and version share one load: the first caller runs it
+ * and the others wait for its result. A failed load is not cached; every waiter gets the
+ * failure. Entries are evicted least recently used first once their bodies pass
+ * {@code maxBytes}.
+ */
+final class ResponseCache {
+
+    interface Loader {
+        byte[] load() throws SQLException, IOException;
+    }
+
+    private static final class Entry {
+        final long version;
+        final byte[] body;
+
+        Entry(long version, byte[] body) {
+            this.version = version;
+            this.body = body;
+        }
+    }
+
+    private static final class Flight {
+        final long version;
+        final CompletableFuture<byte[]> result = new CompletableFuture<>();
+
+        Flight(long version) {
+            this.version = version;
+        }
+    }
+
+    private final long maxBytes;
+    // Guarded by this
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long bytes;
+    private final Map<String, Flight> flights = new ConcurrentHashMap<>();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+
+    ResponseCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Returns the body for {@code key} built at {@code version} or later, loading it if
+     * there is none.
+     */
+    byte[] get(String key, long version, Loader loader) throws SQLException, IOException {
+        synchronized (this) {
+            Entry entry = entries.get(key);
+            if (entry != null && entry.version >= version) {
+                hits.increment();
+                return entry.body;
+            }
+        }
+        while (true) {
+            Flight flight = flights.get(key);
+            if (flight != null && flight.version >= version) {
+                coalesced.increment();
+                return await(flight);
+            }
+            Flight mine = new Flight(version);
+            boolean won = flight == null ? flights.putIfAbsent(key, mine) == null : flights.replace(key, flight, mine);
+            if (!won) {
+                continue;
+            }
+            misses.increment();
+            try {
+                byte[] body = loader.load();
+                store(key, version, body);
+                mine.result.complete(body);
+                return body;
+            } catch (SQLException | IOException | RuntimeException | Error e) {
+                mine.result.completeExceptionally(e);
+                throw e;
+            } finally {
+                flights.remove(key, mine);
+            }
+        }
+    }
+
+    long getHits() {
+        return hits.sum();
+    }
+
+    long getMisses() {
+        return misses.sum();
+    }
+
+    long getCoalesced() {
+        return coalesced.sum();
+    }
+
+    synchronized long getBytes() {
+        return bytes;
+    }
+
+    private synchronized void store(String key, long version, byte[] body) {
+        // One body may not take more than a quarter of the cache
+        if (body.length > maxBytes / 4) {
+            return;
+        }
+        Entry old = entries.get(key);
+        if (old != null && old.version > version) {
+            return;
+        }
+        if (old != null) {
+            bytes -= old.body.length;
+        }
+        entries.put(key, new Entry(version, body));
+        bytes += body.length;
+        Iterator<Entry> eldest = entries.values().iterator();
+        while (bytes > maxBytes && eldest.hasNext()) {
+            bytes -= eldest.next().body.length;
+            eldest.remove();
+        }
+    }
+
+    private static byte[] await(Flight flight) throws SQLException, IOException {
+        try {
+            return flight.result.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for a response to be built", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof SQLException sqlEx) {
+                throw sqlEx;
+            }
+            if (cause instanceof IOException ioEx) {
+                throw ioEx;
+            }
+            if (cause instanceof Error error) {
+                throw error;
+            }
+            throw (RuntimeException) cause;
+        }
+    }
+}
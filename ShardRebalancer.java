@@ -0,0 +1,157 @@
+package com.example.sms;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Evens out the buckets of a {@link ShardedStudentStore}, for instance after a shard has
+ * been added. Each shard should own {@code BUCKETS / shards} buckets, give or take one.
+ * Buckets are taken from the highest down, so bucket 0, which holds the ids of a database
+ * that predates sharding, is the last to move.
+ * <p>
+ * Buckets move one at a time with {@link ShardedStudentStore#moveBucket}, so only writes
+ * to the bucket being moved wait. With {@code sms.shards.rebalance=true} the API runs this
+ * in the background while it serves requests. From the command line it must run while no
+ * API instance uses the shards, because a running instance would not see the new map.
+ * <p>
+ * Progress is reported to a {@link Listener}; only the command line prints it.
+ * <p>
+ * Usage: ShardRebalancer status | rebalance [--pauseMs 0]
+ */
+public class ShardRebalancer {
+    /**
+     * Told about each move, and how a background run ended.
+     */
+    interface Listener {
+        void moved(int bucket, int from, int to, long students, long millis, int done, int total);
+
+        default void finished(int moved) {
+        }
+
+        default void failed(Exception e) {
+        }
+    }
+
+    private final ShardedStudentStore store;
+    private final long pauseMillis;
+    private final Listener listener;
+
+    public ShardRebalancer(ShardedStudentStore store, long pauseMillis, Listener listener) {
+        this.store = store;
+        this.pauseMillis = pauseMillis;
+        this.listener = listener;
+    }
+
+    public static void main(String[] args) {
+        long pauseMillis = 0;
+        boolean valid = args.length > 0 && (args[0].equals("status") || args[0].equals("rebalance"));
+        if (valid && args.length == 3 && args[1].equals("--pauseMs")) {
+            pauseMillis = Long.parseLong(args[2]);
+        } else if (args.length != 1) {
+            valid = false;
+        }
+        if (!valid) {
+            System.err.println("Usage: ShardRebalancer status | rebalance [--pauseMs N]");
+            System.exit(2);
+        }
+        try {
+            ShardedStudentStore store = ShardedStudentStore.fromProperties(System.err::println);
+            ShardRebalancer rebalancer = new ShardRebalancer(store, pauseMillis,
+                    (bucket, from, to, students, millis, done, total) -> System.out.printf(
+                            "Bucket %d: shard %d -> %d, %d students in %d ms (%d/%d)%n",
+                            bucket, from, to, students, millis, done, total));
+            if (args[0].equals("rebalance")) {
+                int moved = rebalancer.rebalance();
+                System.out.println("Moved " + moved + " buckets");
+            }
+            int[] owned = rebalancer.bucketsPerShard();
+            for (ShardedStudentStore.Shard shard : store.shards()) {
+                System.out.printf("shard %d  %-50s %4d buckets %10d students%n", shard.index, shard.url,
+                        owned[shard.index], shard.count());
+            }
+        } catch (SQLException | RuntimeException e) {
+            System.err.println("ShardRebalancer failed: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /**
+     * The moves that even out the buckets, as {bucket, target shard} pairs.
+     */
+    List<int[]> plan() {
+        int shards = store.shards().size();
+        int[] owned = bucketsPerShard();
+        int[] target = new int[shards];
+        for (int i = 0; i < shards; i++) {
+            target[i] = ShardedStudentStore.BUCKETS / shards + (i < ShardedStudentStore.BUCKETS % shards ? 1 : 0);
+        }
+        List<int[]> moves = new ArrayList<>();
+        for (int b = ShardedStudentStore.BUCKETS - 1; b >= 0; b--) {
+            int from = store.ownerOf(b);
+            if (owned[from] <= target[from]) {
+                continue;
+            }
+            int to = -1;
+            for (int i = 0; i < shards; i++) {
+                if (owned[i] < target[i] && (to < 0 || target[i] - owned[i] > target[to] - owned[to])) {
+                    to = i;
+                }
+            }
+            if (to < 0) {
+                break;
+            }
+            owned[from]--;
+            owned[to]++;
+            moves.add(new int[]{b, to});
+        }
+        return moves;
+    }
+
+    /**
+     * Carries out the plan and returns the number of buckets moved.
+     */
+    public int rebalance() throws SQLException {
+        List<int[]> moves = plan();
+        int done = 0;
+        for (int[] move : moves) {
+            int from = store.ownerOf(move[0]);
+            long start = System.nanoTime();
+            long rows = store.moveBucket(move[0], move[1]);
+            done++;
+            listener.moved(move[0], from, move[1], rows, (System.nanoTime() - start) / 1_000_000, done, moves.size());
+            if (pauseMillis > 0) {
+                try {
+                    Thread.sleep(pauseMillis);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+        }
+        return done;
+    }
+
+    /**
+     * Runs {@link #rebalance} on a daemon thread; the listener hears how it ended.
+     */
+    void startInBackground() {
+        Thread t = new Thread(() -> {
+            try {
+                listener.finished(rebalance());
+            } catch (SQLException | RuntimeException e) {
+                listener.failed(e);
+            }
+        }, "sms-shard-rebalancer");
+        t.setDaemon(true);
+        t.start();
+    }
+
+    int[] bucketsPerShard() {
+        int[] owned = new int[store.shards().size()];
+        for (int b = 0; b < ShardedStudentStore.BUCKETS; b++) {
+            owned[store.ownerOf(b)]++;
+        }
+        return owned;
+    }
+}
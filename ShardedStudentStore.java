@@ -0,0 +1,960 @@
+package com.example.sms;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+
+/**
+ * Spreads students over several databases (shards) by id.
+ * <p>
+ * The top {@code BUCKET_BITS} bits of an id name its bucket and the rest count up within
+ * it, so each bucket is one primary key range. Every bucket belongs to one shard; the
+ * bucket-to-shard table is the range map used for routing. A shard records the buckets it
+ * owns in its {@code student_buckets} table, together with the next free sequence number
+ * in each. Ids are reserved there in blocks, so there is no central sequence, and API
+ * instances sharing the shards never hand out the same id. New students go round-robin
+ * over the buckets, which spreads them over the shards in proportion to the buckets each
+ * one owns.
+ * <p>
+ * A read by id goes to one shard. A full scan runs on every shard at once and the streams
+ * are merged by id (a k-way merge). Pages are merged the same way in the query's sort
+ * order. Rows a shard holds for a bucket it does not own are skipped. They are left there
+ * by a move in progress or one that was interrupted.
+ * <p>
+ * {@link #moveBucket} moves one bucket to another shard while the store keeps serving.
+ * Writes to that bucket wait until the move is done, and nothing else waits. Moves are
+ * coordinated within this process, so other processes must not write to the shards
+ * during a move. Bulk operations and {@link #insertStudents} are atomic on each shard but
+ * not across shards.
+ */
+public class ShardedStudentStore implements StudentStore {
+    static final int BUCKET_BITS = 8;
+    static final int BUCKETS = 1 << BUCKET_BITS;
+    static final int SEQ_BITS = 31 - BUCKET_BITS;
+    static final int MAX_SEQ = (1 << SEQ_BITS) - 1;
+    private static final int ID_BLOCK = 100;
+    private static final int COPY_BATCH = StudentQuery.MAX_LIMIT;
+    private static final int CHUNK_ROWS = 256;
+    private static final int QUEUE_CHUNKS = 4;
+    private static final Object END = new Object();
+    // NULLs sort first on the shards, as on MySQL and H2
+    private static final Comparator<String> TEXT_ORDER = Comparator.nullsFirst(ShardedStudentStore::compareCodePoints);
+
+    /**
+     * One database and the DAO that reads and writes students in it.
+     */
+    static final class Shard {
+        final int index;
+        final String url;
+        final StudentDAO dao;
+        private final ConnectionPool pool;
+
+        Shard(int index, String url, ConnectionPool pool) {
+            this.index = index;
+            this.url = url;
+            this.pool = pool;
+            this.dao = new StudentDAO(pool, true, true);
+        }
+
+        void createBucketTable() throws SQLException {
+            try (Connection conn = pool.borrow();
+                 Statement st = conn.createStatement()) {
+                st.execute("CREATE TABLE IF NOT EXISTS student_buckets "
+                        + "(bucket INT PRIMARY KEY, next_seq INT NOT NULL, epoch INT NOT NULL)");
+            }
+        }
+
+        /**
+         * The buckets this shard claims, each with its next sequence number and epoch.
+         */
+        Map<Integer, int[]> claims() throws SQLException {
+            Map<Integer, int[]> claims = new HashMap<>();
+            try (Connection conn = pool.borrow();
+                 PreparedStatement ps = conn.prepareStatement("SELECT bucket, next_seq, epoch FROM student_buckets");
+                 ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    claims.put(rs.getInt(1), new int[]{rs.getInt(2), rs.getInt(3)});
+                }
+            }
+            return claims;
+        }
+
+        void claim(int bucket, int nextSeq, int epoch) throws SQLException {
+            try (Connection conn = pool.borrow();
+                 PreparedStatement ps = conn.prepareStatement(
+                         "INSERT INTO student_buckets (bucket, next_seq, epoch) VALUES (?, ?, ?)")) {
+                ps.setInt(1, bucket);
+                ps.setInt(2, nextSeq);
+                ps.setInt(3, epoch);
+                ps.executeUpdate();
+            }
+        }
+
+        /**
+         * Reserves up to {@code count} sequence numbers in the bucket. Returns the first and
+         * how many, or null if the bucket is used up.
+         */
+        int[] reserve(int bucket, int count) throws SQLException {
+            try (Connection conn = pool.borrow()) {
+                conn.setAutoCommit(false);
+                try (PreparedStatement select = conn.prepareStatement(
+                             "SELECT next_seq FROM student_buckets WHERE bucket = ? FOR UPDATE");
+                     PreparedStatement update = conn.prepareStatement(
+                             "UPDATE student_buckets SET next_seq = ? WHERE bucket = ?")) {
+                    select.setInt(1, bucket);
+                    int next;
+                    try (ResultSet rs = select.executeQuery()) {
+                        if (!rs.next()) {
+                            throw new SQLException("Shard " + index + " does not own bucket " + bucket);
+                        }
+                        next = rs.getInt(1);
+                    }
+                    int n = (int) Math.min(count, (long) MAX_SEQ + 1 - next);
+                    if (n <= 0) {
+                        conn.rollback();
+                        return null;
+                    }
+                    update.setInt(1, next + n);
+                    update.setInt(2, bucket);
+                    update.executeUpdate();
+                    conn.commit();
+                    return new int[]{next, n};
+                } catch (SQLException e) {
+                    conn.rollback();
+                    throw e;
+                }
+            }
+        }
+
+        /**
+         * Drops the claim on a bucket and every row in it, in one transaction.
+         */
+        void release(int bucket) throws SQLException {
+            try (Connection conn = pool.borrow()) {
+                conn.setAutoCommit(false);
+                try (PreparedStatement claim = conn.prepareStatement("DELETE FROM student_buckets WHERE bucket = ?");
+                     PreparedStatement rows = conn.prepareStatement("DELETE FROM students WHERE id BETWEEN ? AND ?")) {
+                    claim.setInt(1, bucket);
+                    claim.executeUpdate();
+                    rows.setInt(1, firstId(bucket));
+                    rows.setInt(2, lastId(bucket));
+                    rows.executeUpdate();
+                    conn.commit();
+                } catch (SQLException e) {
+                    conn.rollback();
+                    throw e;
+                }
+            }
+        }
+
+        void deleteRange(int fromId, int toId) throws SQLException {
+            try (Connection conn = pool.borrow();
+                 PreparedStatement ps = conn.prepareStatement("DELETE FROM students WHERE id BETWEEN ? AND ?")) {
+                ps.setInt(1, fromId);
+                ps.setInt(2, toId);
+                ps.executeUpdate();
+            }
+        }
+
+        /**
+         * The highest id from {@code fromId} to {@code toId}, or 0 if there is none.
+         */
+        int maxId(int fromId, int toId) throws SQLException {
+            try (Connection conn = pool.borrow();
+                 PreparedStatement ps = conn.prepareStatement("SELECT MAX(id) FROM students WHERE id BETWEEN ? AND ?")) {
+                ps.setInt(1, fromId);
+                ps.setInt(2, toId);
+                try (ResultSet rs = ps.executeQuery()) {
+                    return rs.next() ? rs.getInt(1) : 0;
+                }
+            }
+        }
+
+        long count() throws SQLException {
+            try (Connection conn = pool.borrow();
+                 PreparedStatement ps = conn.prepareStatement("SELECT COUNT(*) FROM students");
+                 ResultSet rs = ps.executeQuery()) {
+                return rs.next() ? rs.getLong(1) : 0;
+            }
+        }
+    }
+
+    private interface ShardCall<T> {
+        T call(Shard shard) throws SQLException;
+    }
+
+    /**
+     * Sequence numbers reserved for one bucket and not yet used.
+     */
+    private static final class Block {
+        final ReentrantLock lock = new ReentrantLock();
+        int next;
+        int end;
+        boolean exhausted;
+    }
+
+    /**
+     * Rows from one shard's scan, handed to the merging thread in groups.
+     */
+    private static final class Chunk {
+        final int[] ids = new int[CHUNK_ROWS];
+        final String[] names = new String[CHUNK_ROWS];
+        final String[] emails = new String[CHUNK_ROWS];
+        final int[] ages = new int[CHUNK_ROWS];
+        int size;
+    }
+
+    private final List<Shard> shards;
+    // Copied on change, so a reader sees one consistent map for a whole query
+    private volatile int[] owners;
+    private final Object ownersLock = new Object();
+    // Writes to a bucket hold the read lock; a move holds the write lock
+    private final ReentrantReadWriteLock[] moveLocks = new ReentrantReadWriteLock[BUCKETS];
+    private final Block[] blocks = new Block[BUCKETS];
+    private final AtomicInteger nextBucket = new AtomicInteger();
+    private final LongAdder moves = new LongAdder();
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final Consumer<String> warnings;
+
+    /**
+     * {@code warnings} hears about repairs made while loading the shard map.
+     */
+    ShardedStudentStore(List<Shard> shards, Consumer<String> warnings) throws SQLException {
+        if (shards.isEmpty() || shards.size() > BUCKETS) {
+            throw new IllegalArgumentException("Between 1 and " + BUCKETS + " shards are supported");
+        }
+        for (int i = 0; i < shards.size(); i++) {
+            if (shards.get(i).index != i) {
+                throw new IllegalArgumentException("Shard " + i + " has index " + shards.get(i).index);
+            }
+        }
+        this.shards = List.copyOf(shards);
+        this.warnings = warnings;
+        for (int b = 0; b < BUCKETS; b++) {
+            moveLocks[b] = new ReentrantReadWriteLock();
+            blocks[b] = new Block();
+        }
+        this.owners = loadOwners();
+    }
+
+    /**
+     * Builds the store from {@code sms.shard.0.url}, {@code sms.shard.1.url} and so on, each
+     * with optional {@code .user} and {@code .password}; the defaults are those of
+     * {@code sms.db.*}. Every shard gets its own pool with the {@code sms.pool.*} settings.
+     */
+    static ShardedStudentStore fromProperties(Consumer<String> warnings) {
+        List<Shard> shards = new ArrayList<>();
+        for (int i = 0; ; i++) {
+            String url = System.getProperty("sms.shard." + i + ".url");
+            if (url == null) {
+                break;
+            }
+            String user = System.getProperty("sms.shard." + i + ".user");
+            ConnectionPool pool = user == null ? DBConnection.openPool(url)
+                    : DBConnection.openPool(url, user, System.getProperty("sms.shard." + i + ".password", ""));
+            shards.add(new Shard(i, url, pool));
+        }
+        if (shards.isEmpty()) {
+            throw new IllegalArgumentException("sms.store=sharded needs sms.shard.0.url, sms.shard.1.url, ...");
+        }
+        try {
+            return new ShardedStudentStore(shards, warnings);
+        } catch (SQLException e) {
+            throw new IllegalStateException("Cannot load the shard map: " + e.getMessage(), e);
+        }
+    }
+
+    static int bucketOf(int id) {
+        return id >>> SEQ_BITS;
+    }
+
+    static int firstId(int bucket) {
+        return bucket << SEQ_BITS;
+    }
+
+    static int lastId(int bucket) {
+        return firstId(bucket) | MAX_SEQ;
+    }
+
+    List<Shard> shards() {
+        return shards;
+    }
+
+    int ownerOf(int bucket) {
+        return owners[bucket];
+    }
+
+    long getMoves() {
+        return moves.sum();
+    }
+
+    @Override
+    public void addStudent(Student student) throws SQLException {
+        student.setId(nextId());
+        write(student.getId(), shard -> {
+            shard.dao.addStudent(student);
+            return null;
+        });
+    }
+
+    @Override
+    public void updateStudent(Student student) throws SQLException {
+        if (student.getId() <= 0) {
+            return;
+        }
+        write(student.getId(), shard -> {
+            shard.dao.updateStudent(student);
+            return null;
+        });
+    }
+
+    @Override
+    public void deleteStudent(int id) throws SQLException {
+        if (id <= 0) {
+            return;
+        }
+        write(id, shard -> {
+            shard.dao.deleteStudent(id);
+            return null;
+        });
+    }
+
+    @Override
+    public Student getStudentById(int id) throws SQLException {
+        return getStudentById(id, StudentFields.ALL);
+    }
+
+    /**
+     * Asks the owning shard. If the bucket moved while the shard was asked, the row may
+     * already be gone from it, so a miss is retried against the new owner.
+     */
+    @Override
+    public Student getStudentById(int id, StudentFields fields) throws SQLException {
+        if (id <= 0) {
+            return null;
+        }
+        while (true) {
+            int[] map = owners;
+            Student student = shards.get(map[bucketOf(id)]).dao.getStudentById(id, fields);
+            if (student != null || map == owners) {
+                return student;
+            }
+        }
+    }
+
+    @Override
+    public List<Student> getAllStudents() throws SQLException {
+        List<Student> list = new ArrayList<>();
+        try {
+            streamAllStudents((id, name, email, age) -> list.add(new Student(id, name, email, age)));
+        } catch (IOException e) {
+            throw new SQLException("Shard scan was interrupted", e);
+        }
+        return list;
+    }
+
+    @Override
+    public void streamAllStudents(RowHandler handler) throws SQLException, IOException {
+        streamAllStudents(StudentFields.ALL, handler);
+    }
+
+    /**
+     * Scans every shard at once. Each scan is in id order and fills a small queue; this
+     * thread repeatedly passes on the lowest id at the head of any queue.
+     */
+    @Override
+    public void streamAllStudents(StudentFields fields, RowHandler handler) throws SQLException, IOException {
+        int[] map = owners;
+        if (shards.size() == 1) {
+            shards.get(0).dao.streamAllStudents(fields, handler);
+            return;
+        }
+        List<Future<?>> scans = new ArrayList<>(shards.size());
+        PriorityQueue<MergeSource> heads = new PriorityQueue<>(shards.size(), Comparator.comparingInt(MergeSource::id));
+        try {
+            List<MergeSource> sources = new ArrayList<>(shards.size());
+            for (Shard shard : shards) {
+                BlockingQueue<Object> queue = new ArrayBlockingQueue<>(QUEUE_CHUNKS);
+                scans.add(executor.submit(() -> scan(shard, fields, map, queue)));
+                sources.add(new MergeSource(queue));
+            }
+            for (MergeSource source : sources) {
+                if (source.advance()) {
+                    heads.add(source);
+                }
+            }
+            while (!heads.isEmpty()) {
+                MergeSource source = heads.poll();
+                Chunk c = source.chunk;
+                int i = source.pos;
+                handler.row(c.ids[i], c.names[i], c.emails[i], c.ages[i]);
+                if (source.advance()) {
+                    heads.add(source);
+                }
+            }
+        } finally {
+            // Stops scans still running if the handler failed or the caller went away
+            for (Future<?> scan : scans) {
+                scan.cancel(true);
+            }
+        }
+    }
+
+    private static Void scan(Shard shard, StudentFields fields, int[] map, BlockingQueue<Object> queue) {
+        Chunk[] chunk = {new Chunk()};
+        try {
+            shard.dao.streamAllStudents(fields, (id, name, email, age) -> {
+                if (map[bucketOf(id)] != shard.index) {
+                    return;
+                }
+                Chunk c = chunk[0];
+                c.ids[c.size] = id;
+                c.names[c.size] = name;
+                c.emails[c.size] = email;
+                c.ages[c.size] = age;
+                if (++c.size == CHUNK_ROWS) {
+                    put(queue, c);
+                    chunk[0] = new Chunk();
+                }
+            });
+            if (chunk[0].size > 0) {
+                put(queue, chunk[0]);
+            }
+            put(queue, END);
+        } catch (InterruptedIOException e) {
+            // Cancelled; nobody is reading the queue any more
+        } catch (SQLException | IOException | RuntimeException e) {
+            try {
+                queue.put(e);
+            } catch (InterruptedException ignored) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        return null;
+    }
+
+    private static void put(BlockingQueue<Object> queue, Object item) throws InterruptedIOException {
+        try {
+            queue.put(item);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Shard scan cancelled");
+        }
+    }
+
+    /**
+     * The merging side of one shard's scan.
+     */
+    private static final class MergeSource {
+        private final BlockingQueue<Object> queue;
+        Chunk chunk;
+        int pos;
+
+        MergeSource(BlockingQueue<Object> queue) {
+            this.queue = queue;
+        }
+
+        int id() {
+            return chunk.ids[pos];
+        }
+
+        /**
+         * Moves to the next row, waiting for the scan if needed. Returns false at the end.
+         */
+        boolean advance() throws SQLException, IOException {
+            if (chunk != null && ++pos < chunk.size) {
+                return true;
+            }
+            Object item;
+            try {
+                item = queue.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while merging shard scans");
+            }
+            if (item == END) {
+                return false;
+            }
+            if (item instanceof SQLException e) {
+                throw e;
+            }
+            if (item instanceof IOException e) {
+                throw e;
+            }
+            if (item instanceof RuntimeException e) {
+                throw e;
+            }
+            chunk = (Chunk) item;
+            pos = 0;
+            return true;
+        }
+    }
+
+    /**
+     * Runs the query on every shard and merges the pages. Each shard returns at most one
+     * page, and the first {@code limit} rows of the merge are the page across all shards.
+     * <p>
+     * A shard with more rows than its page has only been seen up to its last row, so the
+     * merge stops there: past it, that shard's next rows could be missing. Its page can run
+     * out early when it holds rows of buckets it no longer owns, which are skipped.
+     */
+    @Override
+    public StudentPage findStudents(StudentQuery query) throws SQLException {
+        int[] map = owners;
+        List<StudentPage> pages = onEveryShard(shard -> shard.dao.findStudents(query));
+        Comparator<Student> order = order(query);
+        // The earliest last row among shards that have more
+        Student seenUpTo = null;
+        PriorityQueue<PageSource> heads = new PriorityQueue<>(pages.size(), (a, b) -> order.compare(a.head, b.head));
+        for (int i = 0; i < pages.size(); i++) {
+            StudentPage page = pages.get(i);
+            List<Student> rows = page.getStudents();
+            if (page.getNextCursor() != null && !rows.isEmpty()) {
+                Student last = rows.get(rows.size() - 1);
+                if (seenUpTo == null || order.compare(last, seenUpTo) < 0) {
+                    seenUpTo = last;
+                }
+            }
+            PageSource source = new PageSource(shards.get(i).index, rows.iterator());
+            if (source.advance(map)) {
+                heads.add(source);
+            }
+        }
+        List<Student> list = new ArrayList<>(Math.min(query.getLimit(), 256));
+        Student resumeAfter = null;
+        while (!heads.isEmpty()) {
+            PageSource source = heads.peek();
+            if (seenUpTo != null && order.compare(source.head, seenUpTo) > 0) {
+                break;
+            }
+            if (list.size() == query.getLimit()) {
+                resumeAfter = list.get(list.size() - 1);
+                break;
+            }
+            heads.poll();
+            list.add(source.head);
+            if (source.advance(map)) {
+                heads.add(source);
+            }
+        }
+        if (resumeAfter == null) {
+            // Every row up to seenUpTo is in the list; the next page starts after it, even if
+            // it is a skipped row and the list is empty
+            resumeAfter = seenUpTo;
+        }
+        String nextCursor = resumeAfter != null ? query.cursorAfter(resumeAfter) : null;
+        return new StudentPage(list, nextCursor);
+    }
+
+    private static final class PageSource {
+        private final int shard;
+        private final Iterator<Student> rows;
+        Student head;
+
+        PageSource(int shard, Iterator<Student> rows) {
+            this.shard = shard;
+            this.rows = rows;
+        }
+
+        boolean advance(int[] map) {
+            while (rows.hasNext()) {
+                Student s = rows.next();
+                if (map[bucketOf(s.getId())] == shard) {
+                    head = s;
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * The order the shards' ORDER BY produces. Shard DAOs sort text by code point (see
+     * {@link StudentDAO#findStudents}), whatever the column's collation, with NULLs first.
+     */
+    static Comparator<Student> order(StudentQuery query) {
+        Comparator<Student> byId = Comparator.comparingInt(Student::getId);
+        Comparator<Student> order = switch (query.getSortField()) {
+            case ID -> byId;
+            case NAME -> Comparator.comparing(Student::getName, TEXT_ORDER).thenComparing(byId);
+            case EMAIL -> Comparator.comparing(Student::getEmail, TEXT_ORDER).thenComparing(byId);
+            case AGE -> Comparator.comparingInt(Student::getAge).thenComparing(byId);
+        };
+        return query.isDescending() ? order.reversed() : order;
+    }
+
+    /**
+     * Compares by Unicode code point, which is the byte order of UTF-8 and so of
+     * {@code utf8mb4_0900_bin}. String.compareTo differs above U+FFFF.
+     */
+    static int compareCodePoints(String a, String b) {
+        int i = 0;
+        int j = 0;
+        while (i < a.length() && j < b.length()) {
+            int ca = a.codePointAt(i);
+            int cb = b.codePointAt(j);
+            if (ca != cb) {
+                return Integer.compare(ca, cb);
+            }
+            i += Character.charCount(ca);
+            j += Character.charCount(cb);
+        }
+        return Integer.compare(a.length() - i, b.length() - j);
+    }
+
+    /**
+     * Assigns ids to creates, then runs each shard's operations, in their original order,
+     * as that shard's own transaction. Results come back in the order of {@code ops}.
+     */
+    @Override
+    public List<BulkResult> executeBulk(List<BulkOperation> ops) throws SQLException {
+        for (BulkOperation op : ops) {
+            if (op.getType() == BulkOperation.Type.CREATE) {
+                op.getStudent().setId(nextId());
+            }
+        }
+        List<Lock> locks = lockBuckets(ops.stream().mapToInt(op -> op.getStudent().getId()).toArray());
+        try {
+            int[] map = owners;
+            Map<Integer, List<BulkOperation>> groups = new HashMap<>();
+            for (BulkOperation op : ops) {
+                int id = op.getStudent().getId();
+                if (id > 0) {
+                    groups.computeIfAbsent(map[bucketOf(id)], k -> new ArrayList<>()).add(op);
+                }
+            }
+            List<Integer> order = new ArrayList<>(groups.keySet());
+            List<Future<List<BulkResult>>> futures = new ArrayList<>(order.size());
+            for (int shard : order) {
+                futures.add(executor.submit(() -> shards.get(shard).dao.executeBulk(groups.get(shard))));
+            }
+            List<List<BulkResult>> outcomes = await(futures);
+            Map<Integer, Iterator<BulkResult>> byShard = new HashMap<>();
+            for (int i = 0; i < order.size(); i++) {
+                byShard.put(order.get(i), outcomes.get(i).iterator());
+            }
+            List<BulkResult> results = new ArrayList<>(ops.size());
+            for (BulkOperation op : ops) {
+                int id = op.getStudent().getId();
+                if (id <= 0) {
+                    results.add(new BulkResult(op.getIndex(), op.getType(), 404, id, "Student not found"));
+                } else {
+                    results.add(byShard.get(map[bucketOf(id)]).next());
+                }
+            }
+            return results;
+        } finally {
+            unlock(locks);
+        }
+    }
+
+    /**
+     * Inserts each shard's part in parallel, each in one statement. If any part fails, the
+     * parts that succeeded are deleted again before the failure is thrown.
+     */
+    @Override
+    public void insertStudents(List<Student> students) throws SQLException {
+        if (students.isEmpty()) {
+            return;
+        }
+        for (Student s : students) {
+            s.setId(nextId());
+        }
+        List<Lock> locks = lockBuckets(students.stream().mapToInt(Student::getId).toArray());
+        try {
+            int[] map = owners;
+            Map<Integer, List<Student>> groups = new HashMap<>();
+            for (Student s : students) {
+                groups.computeIfAbsent(map[bucketOf(s.getId())], k -> new ArrayList<>()).add(s);
+            }
+            Map<Integer, Future<?>> futures = new HashMap<>();
+            for (Map.Entry<Integer, List<Student>> group : groups.entrySet()) {
+                futures.put(group.getKey(), executor.submit(() -> {
+                    shards.get(group.getKey()).dao.insertStudents(group.getValue());
+                    return null;
+                }));
+            }
+            SQLException failure = null;
+            List<Integer> inserted = new ArrayList<>();
+            for (Map.Entry<Integer, Future<?>> f : futures.entrySet()) {
+                try {
+                    await(List.of(f.getValue()));
+                    inserted.add(f.getKey());
+                } catch (SQLException | RuntimeException e) {
+                    if (failure == null) {
+                        failure = e instanceof SQLException sql ? sql : new SQLException(e);
+                    }
+                }
+            }
+            if (failure != null) {
+                for (int shard : inserted) {
+                    List<BulkOperation> undo = new ArrayList<>();
+                    for (Student s : groups.get(shard)) {
+                        undo.add(new BulkOperation(undo.size(), BulkOperation.Type.DELETE, s));
+                    }
+                    try {
+                        shards.get(shard).dao.executeBulk(undo);
+                    } catch (SQLException e) {
+                        failure.addSuppressed(e);
+                    }
+                }
+                throw failure;
+            }
+        } finally {
+            unlock(locks);
+        }
+    }
+
+    /**
+     * Moves a bucket to another shard and returns the number of students copied. Writes to
+     * the bucket wait for the move; reads keep going to the old owner until the new one has
+     * every row. Rows and the bucket's next sequence number are copied, then the new owner
+     * claims the bucket with a higher epoch, the map is switched, and the old owner drops
+     * its rows. After a crash in between, {@link #loadOwners} keeps the higher epoch.
+     */
+    public long moveBucket(int bucket, int target) throws SQLException {
+        Shard to = shards.get(target);
+        Lock lock = moveLocks[bucket].writeLock();
+        lock.lock();
+        try {
+            Shard from = shards.get(owners[bucket]);
+            if (from == to) {
+                return 0;
+            }
+            int[] claim = from.claims().get(bucket);
+            if (claim == null) {
+                throw new SQLException("Shard " + from.index + " has no claim on bucket " + bucket);
+            }
+            int last = lastId(bucket);
+            // Rows from an earlier move that did not finish
+            to.deleteRange(firstId(bucket), last);
+            long copied = 0;
+            int after = firstId(bucket) - 1;
+            while (true) {
+                StudentQuery page = new StudentQuery();
+                page.setLimit(COPY_BATCH);
+                page.setAfterId(after);
+                StudentPage rows = from.dao.findStudents(page);
+                List<Student> batch = new ArrayList<>(rows.getStudents().size());
+                for (Student s : rows.getStudents()) {
+                    if (s.getId() <= last) {
+                        batch.add(s);
+                    }
+                }
+                to.dao.restoreStudents(batch);
+                copied += batch.size();
+                if (batch.size() < rows.getStudents().size() || rows.getNextCursor() == null) {
+                    break;
+                }
+                after = batch.get(batch.size() - 1).getId();
+            }
+            to.claim(bucket, claim[0], claim[1] + 1);
+            synchronized (ownersLock) {
+                int[] next = owners.clone();
+                next[bucket] = target;
+                owners = next;
+            }
+            from.release(bucket);
+            moves.increment();
+            return copied;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Reads every shard's claims. Where two shards claim a bucket, a move stopped after the
+     * new owner's claim; the higher epoch wins and the old owner's copy is dropped. A new
+     * set of shards splits the buckets into equal ranges; a bucket whose ids are already in
+     * use goes to the shard that has them, so a single existing database can become shard 0.
+     */
+    private int[] loadOwners() throws SQLException {
+        int[] owner = new int[BUCKETS];
+        int[] epoch = new int[BUCKETS];
+        Arrays.fill(owner, -1);
+        List<Map<Integer, int[]>> claims = new ArrayList<>();
+        for (Shard shard : shards) {
+            shard.createBucketTable();
+            Map<Integer, int[]> shardClaims = shard.claims();
+            claims.add(shardClaims);
+            for (Map.Entry<Integer, int[]> c : shardClaims.entrySet()) {
+                int b = c.getKey();
+                if (owner[b] < 0 || c.getValue()[1] > epoch[b]) {
+                    owner[b] = shard.index;
+                    epoch[b] = c.getValue()[1];
+                }
+            }
+        }
+        int unowned = 0;
+        for (int b = 0; b < BUCKETS; b++) {
+            if (owner[b] < 0) {
+                unowned++;
+            }
+        }
+        if (unowned == 0) {
+            for (Shard shard : shards) {
+                for (Map.Entry<Integer, int[]> c : claims.get(shard.index).entrySet()) {
+                    int b = c.getKey();
+                    if (owner[b] != shard.index && c.getValue()[1] < epoch[b]) {
+                        warnings.accept("Shard " + shard.index + ": dropping stale copy of bucket " + b);
+                        shard.release(b);
+                    }
+                }
+            }
+            return owner;
+        }
+        if (unowned < BUCKETS) {
+            throw new IllegalStateException(unowned + " of " + BUCKETS
+                    + " buckets have no owner; is a shard missing from sms.shard.N.url?");
+        }
+        for (int b = 0; b < BUCKETS; b++) {
+            int chosen = b * shards.size() / BUCKETS;
+            int maxId = 0;
+            for (Shard shard : shards) {
+                int max = shard.maxId(firstId(b), lastId(b));
+                if (max > 0) {
+                    if (maxId > 0) {
+                        throw new IllegalStateException("Ids of bucket " + b + " are in use on more than one shard");
+                    }
+                    chosen = shard.index;
+                    maxId = max;
+                }
+            }
+            shards.get(chosen).claim(b, Math.max(1, (maxId & MAX_SEQ) + 1), 0);
+            owner[b] = chosen;
+        }
+        return owner;
+    }
+
+    /**
+     * Takes the next id, round-robin over the buckets. Each bucket's ids are reserved in
+     * blocks from its owner; a bucket that is used up is skipped.
+     */
+    private int nextId() throws SQLException {
+        for (int attempt = 0; attempt < BUCKETS; attempt++) {
+            int bucket = nextBucket.getAndIncrement() & (BUCKETS - 1);
+            Block block = blocks[bucket];
+            block.lock.lock();
+            try {
+                if (block.next >= block.end) {
+                    if (block.exhausted) {
+                        continue;
+                    }
+                    // Under the move lock, so a move copies a sequence number that covers this block
+                    Lock move = moveLocks[bucket].readLock();
+                    move.lock();
+                    try {
+                        int[] reserved = shards.get(owners[bucket]).reserve(bucket, ID_BLOCK);
+                        if (reserved == null) {
+                            block.exhausted = true;
+                            continue;
+                        }
+                        block.next = reserved[0];
+                        block.end = reserved[0] + reserved[1];
+                    } finally {
+                        move.unlock();
+                    }
+                }
+                return firstId(bucket) | block.next++;
+            } finally {
+                block.lock.unlock();
+            }
+        }
+        throw new SQLException("Every id bucket is used up");
+    }
+
+    private <T> T write(int id, ShardCall<T> call) throws SQLException {
+        Lock lock = moveLocks[bucketOf(id)].readLock();
+        lock.lock();
+        try {
+            return call.call(shards.get(owners[bucketOf(id)]));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Takes the move read locks for the buckets of {@code ids}, in bucket order.
+     */
+    private List<Lock> lockBuckets(int[] ids) {
+        boolean[] used = new boolean[BUCKETS];
+        for (int id : ids) {
+            if (id > 0) {
+                used[bucketOf(id)] = true;
+            }
+        }
+        List<Lock> locks = new ArrayList<>();
+        for (int b = 0; b < BUCKETS; b++) {
+            if (used[b]) {
+                Lock lock = moveLocks[b].readLock();
+                lock.lock();
+                locks.add(lock);
+            }
+        }
+        return locks;
+    }
+
+    private static void unlock(List<Lock> locks) {
+        for (Lock lock : locks) {
+            lock.unlock();
+        }
+    }
+
+    private <T> List<T> onEveryShard(ShardCall<T> call) throws SQLException {
+        if (shards.size() == 1) {
+            return List.of(call.call(shards.get(0)));
+        }
+        List<Future<T>> futures = new ArrayList<>(shards.size());
+        for (Shard shard : shards) {
+            futures.add(executor.submit(() -> call.call(shard)));
+        }
+        return await(futures);
+    }
+
+    private static <T> List<T> await(List<? extends Future<T>> futures) throws SQLException {
+        List<T> results = new ArrayList<>(futures.size());
+        try {
+            for (Future<T> future : futures) {
+                results.add(future.get());
+            }
+            return results;
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof SQLException sql) throw sql;
+            if (cause instanceof RuntimeException re) throw re;
+            if (cause instanceof Error err) throw err;
+            throw new SQLException(cause);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for shards", e);
+        } finally {
+            for (Future<T> future : futures) {
+                future.cancel(true);
+            }
+        }
+    }
+}
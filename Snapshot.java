@@ -0,0 +1,383 @@
+package com.example.sms;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.CRC32C;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Backs up the students table to a directory of compressed segments, and restores it.
+ * <p>
+ * The ids from the lowest to the highest are split into equal ranges, one segment each.
+ * Segments are exported, or restored with batched inserts, by up to --parallelism tasks at
+ * once. Each task holds one pooled connection, so the work spreads across cores while the
+ * database sees a bounded number of connections. There are several segments per task by
+ * default, so a range that happens to hold more rows does not leave the other tasks idle.
+ * <p>
+ * A segment is a gzipped CSV file in the export layout (id,name,email,age). manifest.csv
+ * lists each segment with its id range, row count, size and CRC-32C. The manifest is written
+ * last, so a directory without one is an unfinished export. Restore checks every segment
+ * against the manifest before it writes anything. With --replace it loads a staging copy of
+ * the table and swaps it in with one rename at the end, so a failed restore leaves the
+ * students table as it was.
+ * <p>
+ * Each segment is read by its own query. An export taken while students are being written
+ * is consistent within each segment but not across them, and misses ids above the highest
+ * one seen when it started.
+ * <p>
+ * Usage: Snapshot export DIR [--segments N] [--parallelism N]
+ * <br>
+ * Snapshot restore DIR [--parallelism N] [--batchSize 1000] [--replace]
+ * <p>
+ * Works on the jdbc store (MySQL) only; other values of sms.store are refused.
+ */
+public class Snapshot {
+    static final String MANIFEST = "manifest.csv";
+    private static final String MANIFEST_HEADER = "segment,fromId,toId,rows,bytes,crc32c";
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int SEGMENTS_PER_TASK = 4;
+
+    /**
+     * One id range and the file it is stored in.
+     */
+    static final class Segment {
+        final String file;
+        final int fromId;
+        final int toId;
+        long rows;
+        long bytes;
+        long crc;
+
+        Segment(String file, int fromId, int toId) {
+            this.file = file;
+            this.fromId = fromId;
+            this.toId = toId;
+        }
+    }
+
+    private interface SegmentTask {
+        void run(Segment segment) throws IOException, SQLException;
+    }
+
+    private final StudentDAO dao;
+    private final int parallelism;
+    private final int batchSize;
+
+    public Snapshot(StudentDAO dao, int parallelism, int batchSize) {
+        if (parallelism < 1 || batchSize < 1) {
+            throw new IllegalArgumentException("parallelism and batchSize must be positive");
+        }
+        this.dao = dao;
+        this.parallelism = parallelism;
+        this.batchSize = batchSize;
+    }
+
+    public static void main(String[] args) {
+        String usage = "Usage: Snapshot export DIR [--segments N] [--parallelism N]\n"
+                + "       Snapshot restore DIR [--parallelism N] [--batchSize N] [--replace]";
+        int parallelism = Math.min(Runtime.getRuntime().availableProcessors(), DBConnection.getPoolMaxSize());
+        int segments = 0;
+        int batchSize = 1000;
+        boolean replace = false;
+        String command;
+        Path dir;
+        try {
+            if (args.length < 2 || !(args[0].equals("export") || args[0].equals("restore"))) {
+                throw new IllegalArgumentException("Expected export or restore and a directory");
+            }
+            command = args[0];
+            dir = Path.of(args[1]);
+            for (int i = 2; i < args.length; i++) {
+                String name = args[i];
+                if (name.equals("--replace")) {
+                    replace = true;
+                    continue;
+                }
+                if (i + 1 >= args.length) {
+                    throw new IllegalArgumentException("Missing value for " + name);
+                }
+                String value = args[++i];
+                switch (name) {
+                    case "--segments" -> segments = Integer.parseInt(value);
+                    case "--parallelism" -> parallelism = Integer.parseInt(value);
+                    case "--batchSize" -> batchSize = Integer.parseInt(value);
+                    default -> throw new IllegalArgumentException("Unknown option: " + name);
+                }
+            }
+            if (segments == 0) {
+                segments = parallelism * SEGMENTS_PER_TASK;
+            }
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println(usage);
+            System.exit(2);
+            return;
+        }
+
+        String store = System.getProperty("sms.store", "jdbc");
+        if (!store.equals("jdbc")) {
+            System.err.println("Snapshot works on the jdbc store only, not sms.store=" + store);
+            System.exit(2);
+            return;
+        }
+
+        long start = System.nanoTime();
+        try {
+            Snapshot snapshot = new Snapshot((StudentDAO) StudentStore.create(), parallelism, batchSize);
+            if (command.equals("export")) {
+                List<Segment> written = snapshot.export(dir, segments);
+                long rows = 0;
+                long bytes = 0;
+                for (Segment s : written) {
+                    rows += s.rows;
+                    bytes += s.bytes;
+                }
+                System.out.printf("Exported %d students in %d segments (%d bytes) to %s in %.2f s%n",
+                        rows, written.size(), bytes, dir, (System.nanoTime() - start) / 1e9);
+            } else {
+                long rows = snapshot.restore(dir, replace);
+                System.out.printf("Restored %d students from %s in %.2f s%n", rows, dir, (System.nanoTime() - start) / 1e9);
+            }
+        } catch (IOException | SQLException | RuntimeException e) {
+            System.err.println("Snapshot " + command + " failed: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Writes a snapshot of the students table to {@code dir}, which must not already hold one.
+     */
+    public List<Segment> export(Path dir, int segmentCount) throws IOException, SQLException {
+        if (segmentCount < 1) {
+            throw new IllegalArgumentException("segments must be positive");
+        }
+        Files.createDirectories(dir);
+        if (Files.exists(dir.resolve(MANIFEST))) {
+            throw new IOException(dir + " already holds a snapshot");
+        }
+        List<Segment> segments = new ArrayList<>();
+        int[] bounds = dao.idBounds();
+        if (bounds != null) {
+            long width = ((long) bounds[1] - bounds[0] + segmentCount) / segmentCount;
+            for (long from = bounds[0]; from <= bounds[1]; from += width) {
+                int to = (int) Math.min(bounds[1], from + width - 1);
+                segments.add(new Segment(String.format("segment-%05d.csv.gz", segments.size()), (int) from, to));
+            }
+        }
+        runAll(segments, s -> exportSegment(dir, s));
+        writeManifest(dir, segments);
+        return segments;
+    }
+
+    /**
+     * Loads the snapshot in {@code dir} into the students table, keeping the ids. The table
+     * must be empty unless {@code replace} is set. Then the snapshot is loaded into a staging
+     * table, which replaces the students table only once every row is in; writes made to the
+     * students table in the meantime are lost. Returns the number of students restored.
+     */
+    public long restore(Path dir, boolean replace) throws IOException, SQLException {
+        List<Segment> segments = readManifest(dir);
+        runAll(segments, s -> verifySegment(dir, s));
+        if (!replace && dao.idBounds() != null) {
+            throw new IllegalStateException("The students table is not empty; restore with --replace to replace it");
+        }
+        LongAdder restored = new LongAdder();
+        if (!replace) {
+            runAll(segments, s -> restored.add(restoreSegment(dir, s, false)));
+            return restored.sum();
+        }
+        dao.createRestoreTable();
+        try {
+            runAll(segments, s -> restored.add(restoreSegment(dir, s, true)));
+            dao.swapInRestoreTable();
+        } catch (IOException | SQLException | RuntimeException e) {
+            try {
+                dao.dropRestoreTable();
+            } catch (SQLException suppressed) {
+                e.addSuppressed(suppressed);
+            }
+            throw e;
+        }
+        return restored.sum();
+    }
+
+    private void exportSegment(Path dir, Segment segment) throws IOException, SQLException {
+        CRC32C crc = new CRC32C();
+        Path path = dir.resolve(segment.file);
+        try (CsvWriter csv = new CsvWriter(new GZIPOutputStream(new CheckedOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(path), BUFFER_SIZE), crc), BUFFER_SIZE))) {
+            csv.writeHeader();
+            dao.streamStudentRange(segment.fromId, segment.toId, (id, name, email, age) -> {
+                csv.writeStudent(id, name, email, age);
+                segment.rows++;
+            });
+        }
+        segment.crc = crc.getValue();
+        segment.bytes = Files.size(path);
+    }
+
+    /**
+     * Checks size and CRC-32C of the compressed file. GZIP's own CRC then covers the
+     * decompressed rows while they are restored.
+     */
+    private static void verifySegment(Path dir, Segment segment) throws IOException {
+        CRC32C crc = new CRC32C();
+        long bytes = 0;
+        try (InputStream in = new CheckedInputStream(Files.newInputStream(dir.resolve(segment.file)), crc)) {
+            byte[] buf = new byte[BUFFER_SIZE];
+            int n;
+            while ((n = in.read(buf)) > 0) {
+                bytes += n;
+            }
+        }
+        if (bytes != segment.bytes || crc.getValue() != segment.crc) {
+            throw new IOException(segment.file + " does not match the manifest: " + bytes + " bytes, crc32c "
+                    + Long.toHexString(crc.getValue()) + ", expected " + segment.bytes + " bytes, crc32c "
+                    + Long.toHexString(segment.crc));
+        }
+    }
+
+    private long restoreSegment(Path dir, Segment segment, boolean staged) throws IOException, SQLException {
+        long rows = 0;
+        try (InputStreamReader reader = new InputStreamReader(new GZIPInputStream(
+                Files.newInputStream(dir.resolve(segment.file)), BUFFER_SIZE), StandardCharsets.UTF_8)) {
+            CsvReader csv = new CsvReader(reader);
+            String[] record = csv.next();
+            if (record == null || !String.join(",", record).equals(CsvWriter.HEADER)) {
+                throw new IOException(segment.file + " does not start with the header " + CsvWriter.HEADER);
+            }
+            List<Student> batch = new ArrayList<>(batchSize);
+            while ((record = csv.next()) != null) {
+                Student student = toStudent(segment, record, csv.getRecordNumber());
+                batch.add(student);
+                rows++;
+                if (batch.size() >= batchSize) {
+                    dao.restoreStudents(batch, staged);
+                    batch.clear();
+                }
+            }
+            dao.restoreStudents(batch, staged);
+        }
+        if (rows != segment.rows) {
+            throw new IOException(segment.file + " has " + rows + " rows, expected " + segment.rows);
+        }
+        return rows;
+    }
+
+    private static Student toStudent(Segment segment, String[] record, long recordNumber) throws IOException {
+        try {
+            if (record.length != 4) {
+                throw new IllegalArgumentException("expected 4 fields, got " + record.length);
+            }
+            int id = Integer.parseInt(record[0]);
+            if (id < segment.fromId || id > segment.toId) {
+                throw new IllegalArgumentException("id " + id + " is outside " + segment.fromId + "-" + segment.toId);
+            }
+            return new Student(id, record[1], record[2], Integer.parseInt(record[3]));
+        } catch (IllegalArgumentException e) {
+            throw new IOException(segment.file + " record " + recordNumber + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Runs the task for every segment, at most {@code parallelism} at a time. The first
+     * failure cancels the segments that have not finished and is rethrown.
+     */
+    private void runAll(List<Segment> segments, SegmentTask task) throws IOException, SQLException {
+        Semaphore permits = new Semaphore(parallelism);
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            List<Future<Void>> futures = new ArrayList<>(segments.size());
+            for (Segment segment : segments) {
+                futures.add(executor.submit(() -> {
+                    permits.acquire();
+                    try {
+                        task.run(segment);
+                        return null;
+                    } finally {
+                        permits.release();
+                    }
+                }));
+            }
+            for (Future<Void> future : futures) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    futures.forEach(f -> f.cancel(true));
+                    Throwable cause = e.getCause();
+                    if (cause instanceof IOException io) throw io;
+                    if (cause instanceof SQLException sql) throw sql;
+                    if (cause instanceof RuntimeException re) throw re;
+                    throw new IOException(cause);
+                } catch (InterruptedException e) {
+                    futures.forEach(f -> f.cancel(true));
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while waiting for segments");
+                }
+            }
+        }
+    }
+
+    private static void writeManifest(Path dir, List<Segment> segments) throws IOException {
+        Path tmp = dir.resolve(MANIFEST + ".tmp");
+        try (BufferedWriter out = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+            out.write(MANIFEST_HEADER);
+            out.write("\r\n");
+            for (Segment s : segments) {
+                out.write(s.file + "," + s.fromId + "," + s.toId + "," + s.rows + "," + s.bytes + ","
+                        + Long.toHexString(s.crc) + "\r\n");
+            }
+        }
+        Files.move(tmp, dir.resolve(MANIFEST), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private static List<Segment> readManifest(Path dir) throws IOException {
+        Path path = dir.resolve(MANIFEST);
+        if (!Files.exists(path)) {
+            throw new IOException(dir + " has no " + MANIFEST + "; it is not a finished snapshot");
+        }
+        List<Segment> segments = new ArrayList<>();
+        try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            CsvReader csv = new CsvReader(reader);
+            String[] record = csv.next();
+            if (record == null || !String.join(",", record).equals(MANIFEST_HEADER)) {
+                throw new IOException(MANIFEST + " does not start with the header " + MANIFEST_HEADER);
+            }
+            while ((record = csv.next()) != null) {
+                try {
+                    if (record.length != 6 || record[0].contains("/") || record[0].contains("\\")) {
+                        throw new IllegalArgumentException("bad record");
+                    }
+                    Segment s = new Segment(record[0], Integer.parseInt(record[1]), Integer.parseInt(record[2]));
+                    s.rows = Long.parseLong(record[3]);
+                    s.bytes = Long.parseLong(record[4]);
+                    s.crc = Long.parseLong(record[5], 16);
+                    segments.add(s);
+                } catch (IllegalArgumentException e) {
+                    throw new IOException(MANIFEST + " record " + csv.getRecordNumber() + ": " + e.getMessage());
+                }
+            }
+        }
+        return segments;
+    }
+}
@@ -0,0 +1,238 @@
+package com.example.sms;
+
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpExchange;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Static files held in memory, encoded once when they are added. Text files also get a
+ * gzip copy, sent to clients whose {@code Accept-Encoding} allows it. Every response has a
+ * strong ETag, and a request whose {@code If-None-Match} matches gets 304 with no body.
+ * <p>
+ * Only paths added here can be served, so request paths never reach the file system.
+ */
+final class StaticAssets {
+    // Smaller bodies fit in one packet anyway, so compressing them gains nothing
+    private static final int MIN_GZIP_BYTES = 256;
+    private static final Map<String, String> CONTENT_TYPES = new HashMap<>();
+
+    static {
+        CONTENT_TYPES.put("html", "text/html; charset=utf-8");
+        CONTENT_TYPES.put("htm", "text/html; charset=utf-8");
+        CONTENT_TYPES.put("css", "text/css; charset=utf-8");
+        CONTENT_TYPES.put("js", "text/javascript; charset=utf-8");
+        CONTENT_TYPES.put("mjs", "text/javascript; charset=utf-8");
+        CONTENT_TYPES.put("json", "application/json");
+        CONTENT_TYPES.put("map", "application/json");
+        CONTENT_TYPES.put("txt", "text/plain; charset=utf-8");
+        CONTENT_TYPES.put("csv", "text/csv; charset=utf-8");
+        CONTENT_TYPES.put("svg", "image/svg+xml");
+        CONTENT_TYPES.put("png", "image/png");
+        CONTENT_TYPES.put("jpg", "image/jpeg");
+        CONTENT_TYPES.put("jpeg", "image/jpeg");
+        CONTENT_TYPES.put("gif", "image/gif");
+        CONTENT_TYPES.put("webp", "image/webp");
+        CONTENT_TYPES.put("ico", "image/x-icon");
+        CONTENT_TYPES.put("woff2", "font/woff2");
+        CONTENT_TYPES.put("woff", "font/woff");
+    }
+
+    /**
+     * One file, ready to send as is or gzipped.
+     */
+    static final class Asset {
+        final String contentType;
+        final String cacheControl;
+        final byte[] body;
+        final String etag;
+        // Null when gzip would not make the body smaller
+        final byte[] gzipBody;
+        final String gzipEtag;
+
+        Asset(String contentType, byte[] body, String cacheControl) {
+            this.contentType = contentType;
+            this.cacheControl = cacheControl;
+            this.body = body;
+            String hash = hash(body);
+            this.etag = "\"" + hash + "\"";
+            byte[] gzipped = compressible(contentType) && body.length >= MIN_GZIP_BYTES ? gzip(body) : null;
+            this.gzipBody = gzipped != null && gzipped.length < body.length ? gzipped : null;
+            // A strong ETag names exact bytes, so the gzip copy needs its own
+            this.gzipEtag = "\"" + hash + "-gz\"";
+        }
+    }
+
+    private final Map<String, Asset> assets = new ConcurrentHashMap<>();
+
+    void put(String path, Asset asset) {
+        assets.put(path, asset);
+    }
+
+    /**
+     * Adds every regular file under {@code dir}, served at its path relative to it. Files over
+     * {@code maxFileBytes} are skipped with a warning.
+     */
+    void addDirectory(Path dir, String cacheControl, long maxFileBytes) throws IOException {
+        try (Stream<Path> files = Files.walk(dir)) {
+            for (Path file : (Iterable<Path>) files.filter(Files::isRegularFile)::iterator) {
+                if (Files.size(file) > maxFileBytes) {
+                    System.err.println("Not serving " + file + ": larger than " + maxFileBytes + " bytes");
+                    continue;
+                }
+                String path = "/" + dir.relativize(file).toString().replace('\\', '/');
+                assets.put(path, new Asset(contentType(path), Files.readAllBytes(file), cacheControl));
+            }
+        }
+    }
+
+    /**
+     * Answers a GET or HEAD for a known path. Returns false, having sent nothing, when the
+     * path is unknown; a path ending in "/" means its index.html.
+     */
+    boolean serve(HttpExchange exchange) throws IOException {
+        String path = exchange.getRequestURI().getPath();
+        Asset asset = assets.get(path);
+        if (asset == null && path.endsWith("/")) {
+            asset = assets.get(path + "index.html");
+        }
+        if (asset == null) {
+            return false;
+        }
+        String method = exchange.getRequestMethod();
+        if (!method.equals("GET") && !method.equals("HEAD")) {
+            exchange.getResponseHeaders().set("Allow", "GET, HEAD");
+            exchange.sendResponseHeaders(405, -1);
+            exchange.close();
+            return true;
+        }
+
+        boolean gzip = asset.gzipBody != null && acceptsGzip(exchange.getRequestHeaders().getFirst("Accept-Encoding"));
+        byte[] body = gzip ? asset.gzipBody : asset.body;
+        String etag = gzip ? asset.gzipEtag : asset.etag;
+        Headers headers = exchange.getResponseHeaders();
+        headers.set("ETag", etag);
+        headers.set("Cache-Control", asset.cacheControl);
+        if (asset.gzipBody != null) {
+            headers.set("Vary", "Accept-Encoding");
+        }
+        if (matches(exchange.getRequestHeaders().getFirst("If-None-Match"), etag)) {
+            exchange.sendResponseHeaders(304, -1);
+            exchange.close();
+            return true;
+        }
+        headers.set("Content-Type", asset.contentType);
+        if (gzip) {
+            headers.set("Content-Encoding", "gzip");
+        }
+        if (method.equals("HEAD")) {
+            headers.set("Content-Length", String.valueOf(body.length));
+            exchange.sendResponseHeaders(200, -1);
+            exchange.close();
+            return true;
+        }
+        exchange.sendResponseHeaders(200, body.length);
+        try (OutputStream os = exchange.getResponseBody()) {
+            os.write(body);
+        }
+        return true;
+    }
+
+    static String contentType(String path) {
+        int dot = path.lastIndexOf('.');
+        String ext = dot < 0 ? "" : path.substring(dot + 1).toLowerCase(Locale.ROOT);
+        return CONTENT_TYPES.getOrDefault(ext, "application/octet-stream");
+    }
+
+    private static boolean compressible(String contentType) {
+        return contentType.startsWith("text/") || contentType.startsWith("application/json")
+                || contentType.startsWith("image/svg+xml");
+    }
+
+    /**
+     * True unless the header leaves gzip out or gives it q=0.
+     */
+    static boolean acceptsGzip(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        boolean wildcard = false;
+        for (String part : acceptEncoding.split(",")) {
+            String[] params = part.trim().split(";");
+            String coding = params[0].trim().toLowerCase(Locale.ROOT);
+            boolean refused = false;
+            for (int i = 1; i < params.length; i++) {
+                String p = params[i].trim().toLowerCase(Locale.ROOT);
+                if (p.startsWith("q=")) {
+                    try {
+                        refused = Double.parseDouble(p.substring(2)) <= 0;
+                    } catch (NumberFormatException e) {
+                        refused = true;
+                    }
+                }
+            }
+            if (coding.equals("gzip") || coding.equals("x-gzip")) {
+                return !refused;
+            }
+            if (coding.equals("*")) {
+                wildcard = !refused;
+            }
+        }
+        return wildcard;
+    }
+
+    /**
+     * If-None-Match uses weak comparison, so a W/ prefix on the client's tag is ignored.
+     */
+    static boolean matches(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String tag : ifNoneMatch.split(",")) {
+            tag = tag.trim();
+            if (tag.startsWith("W/")) {
+                tag = tag.substring(2);
+            }
+            if (tag.equals("*") || tag.equals(etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String hash(byte[] body) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(body);
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(digest).substring(0, 22);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static byte[] gzip(byte[] body) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(body.length / 2);
+        try (GZIPOutputStream gz = new GZIPOutputStream(out) {
+            {
+                def.setLevel(Deflater.BEST_COMPRESSION);
+            }
+        }) {
+            gz.write(body);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return out.toByteArray();
+    }
+}
@@ -1,31 +1,347 @@
 package com.example.sms;
 
+import com.sun.net.httpserver.Filter;
+import com.sun.net.httpserver.HttpContext;
 import com.sun.net.httpserver.HttpExchange;
 import com.sun.net.httpserver.HttpHandler;
 import com.sun.net.httpserver.HttpServer;
 import java.io.*;
 import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 public class StudentAPI {
-    private static final StudentDAO dao = new StudentDAO();
     private static final int PORT = 8081;
 
-    public static void main(String[] args) throws IOException {
-        HttpServer server = HttpServer.create(new InetSocketAddress("localhost", PORT), 0);
+    // "virtual" (one virtual thread per request) or "platform" (bounded thread pool)
+    private static final String ENGINE = System.getProperty("sms.api.engine", "jdk");
+    private static final String EXECUTOR_MODE = System.getProperty("sms.api.executor", "virtual");
+    private static final int MAX_CONCURRENT = Integer.getInteger("sms.api.maxConcurrent", DBConnection.getPoolMaxSize());
+    private static final int MAX_QUEUED = Integer.getInteger("sms.api.maxQueued", 100);
+    private static final long QUEUE_TIMEOUT_MS = Long.getLong("sms.api.queueTimeoutMs", 2_000);
+    private static final int PLATFORM_THREADS = Integer.getInteger("sms.api.threads", MAX_CONCURRENT + MAX_QUEUED);
+    private static final int BULK_CHUNK_SIZE = Integer.getInteger("sms.bulk.chunkSize", 500);
+    private static final int BULK_MAX_LINE_BYTES = Math.max(1024, Integer.getInteger("sms.bulk.maxLineBytes", 65_536));
+    // A JSON array is parsed whole, so its body is held in memory; NDJSON is read line by line
+    private static final int BULK_MAX_BODY_BYTES = Integer.getInteger("sms.bulk.maxBodyBytes", 16 * 1024 * 1024);
+    private static final int IMPORT_BATCH_SIZE = Integer.getInteger("sms.import.batchSize", 1000);
+    private static final long IMPORT_PROGRESS_ROWS = Long.getLong("sms.import.progressRows", 10_000);
+    private static final long SEARCH_BUDGET_MS = Long.getLong("sms.search.budgetMs", 20);
+    private static final int SEARCH_MAX_LIMIT = 100;
+    private static final long RECONCILE_INTERVAL_MS = Long.getLong("sms.reconcileIntervalMs", 300_000);
+    private static final boolean WRITE_BEHIND = Boolean.getBoolean("sms.writeBehind.enabled");
+    private static final int CHANGES_BUFFER = Integer.getInteger("sms.changes.bufferSize", 1_000);
+    private static final long CHANGES_HEARTBEAT_MS = Long.getLong("sms.changes.heartbeatMs", 15_000);
+    private static final boolean RESPONSE_CACHE = Boolean.getBoolean("sms.responseCache.enabled");
+    private static final int RESPONSE_CACHE_MAX_LIST_ROWS = Integer.getInteger("sms.responseCache.maxListRows", 10_000);
+    private static final String STATIC_DIR = System.getProperty("sms.static.dir");
+    private static final long STATIC_MAX_AGE_SECONDS = Long.getLong("sms.static.maxAgeSeconds", 3_600);
+    private static final long STATIC_MAX_FILE_BYTES = Long.getLong("sms.static.maxFileBytes", 16L * 1024 * 1024);
+    private static final boolean RATE_LIMIT = Boolean.getBoolean("sms.rateLimit.enabled");
 
-        // Create context handlers
-        server.createContext("/api/students", new StudentHandler());
-        server.createContext("/", new RootHandler());
+    private static final StudentStore store = StudentStore.create();
+    // Null unless enabled; fed the latency of every database call
+    private static final ConcurrencyLimitFilter limiter = Boolean.getBoolean("sms.limiter.enabled")
+            ? new ConcurrencyLimitFilter(Integer.getInteger("sms.limiter.initialLimit", MAX_CONCURRENT),
+                    Integer.getInteger("sms.limiter.minLimit", 2),
+                    Integer.getInteger("sms.limiter.maxLimit", 1_000),
+                    Long.getLong("sms.limiter.windowMs", 100))
+            : null;
+    private static final IndexedStudentStore indexed = new IndexedStudentStore(
+            new InstrumentedStudentStore(store, limiter == null ? null : limiter::sample),
+            new ChangeFeed(Integer.getInteger("sms.changes.history", 10_000), maxSubscribers()));
+    private static final ResponseCache responseCache = new ResponseCache(Long.getLong("sms.responseCache.maxBytes", 64L * 1024 * 1024));
+    // Part of every list ETag, so tags from before a restart never match
+    private static final String DATA_EPOCH = Long.toString(System.currentTimeMillis(), 36);
+    // Handlers write through this; with write-behind, single-row writes are queued and grouped
+    private static final StudentStore dao = WRITE_BEHIND
+            ? new WriteBehindStudentStore(indexed,
+                    Integer.getInteger("sms.writeBehind.queueSize", 10_000),
+                    Integer.getInteger("sms.writeBehind.batchSize", 256),
+                    Long.getLong("sms.writeBehind.maxDelayMs", 2),
+                    Long.getLong("sms.writeBehind.offerTimeoutMs", 1_000),
+                    Long.getLong("sms.writeBehind.commitTimeoutMs", 10_000),
+                    Integer.getInteger("sms.writeBehind.trackedOps", 10_000))
+            : indexed;
 
-        server.setExecutor(null);
-        server.start();
-        System.out.println("Student Management API running on http://localhost:" + PORT);
+    public static void main(String[] args) throws IOException, SQLException {
+        start(new InetSocketAddress("localhost", PORT));
+        System.out.println("Student Management API running on http://localhost:" + PORT
+                + " (" + ENGINE + " engine, " + EXECUTOR_MODE + " threads, max " + MAX_CONCURRENT + " concurrent requests)");
         System.out.println("Frontend: http://localhost:" + PORT + "/index.html");
     }
 
+    /**
+     * Prepares the store and starts the server on the given address (port 0 picks a free one).
+     */
+    static HttpServer start(InetSocketAddress address) throws IOException, SQLException {
+        if (store instanceof StudentDAO) {
+            DBConnection.warmUp();
+        }
+        indexed.rebuild();
+        indexed.startReconciler(RECONCILE_INTERVAL_MS);
+        if (store instanceof ShardedStudentStore sharded && Boolean.getBoolean("sms.shards.rebalance")) {
+            new ShardRebalancer(sharded, Long.getLong("sms.shards.rebalancePauseMs", 0), new ShardRebalancer.Listener() {
+                @Override
+                public void moved(int bucket, int from, int to, long students, long millis, int done, int total) {
+                    // Counted by sms_shard_bucket_moves_total
+                }
+
+                @Override
+                public void failed(Exception e) {
+                    System.err.println("Shard rebalance stopped: " + e.getMessage());
+                }
+            }).startInBackground();
+        }
+        if (dao instanceof WriteBehindStudentStore writeBehind) {
+            // Apply queued writes before the JVM exits
+            Runtime.getRuntime().addShutdownHook(new Thread(writeBehind::close, "sms-write-behind-shutdown"));
+        }
+        HttpServer server = createServer(address);
+        AdmissionFilter admission = new AdmissionFilter(MAX_CONCURRENT, MAX_QUEUED, QUEUE_TIMEOUT_MS);
+        RateLimitFilter rateLimit = RATE_LIMIT
+                ? new RateLimitFilter(Double.parseDouble(System.getProperty("sms.rateLimit.readsPerSecond", "50")),
+                        Integer.getInteger("sms.rateLimit.readBurst", 100),
+                        Double.parseDouble(System.getProperty("sms.rateLimit.writesPerSecond", "10")),
+                        Integer.getInteger("sms.rateLimit.writeBurst", 20),
+                        Integer.getInteger("sms.rateLimit.maxClients", 100_000),
+                        apiKeys(System.getProperty("sms.rateLimit.apiKeys", "")))
+                : null;
+        registerGauges(admission, rateLimit);
+
+        // Create context handlers. Cheap rejections come first: rate limit, then the
+        // adaptive limit, then admission's short queue for a database connection.
+        Filter shed = AdmissionFilter.shedFilter();
+        HttpContext api = server.createContext("/api/students", new StudentHandler());
+        api.getFilters().add(new MetricsFilter());
+        api.getFilters().add(shed);
+        if (rateLimit != null) {
+            api.getFilters().add(rateLimit);
+        }
+        if (limiter != null) {
+            api.getFilters().add(limiter);
+        }
+        api.getFilters().add(admission);
+        // Streams stay open indefinitely, so they must not hold admission slots
+        HttpContext changes = server.createContext("/api/students/changes", new ChangesHandler());
+        changes.getFilters().add(new MetricsFilter());
+        changes.getFilters().add(shed);
+        if (rateLimit != null) {
+            changes.getFilters().add(rateLimit);
+        }
+        server.createContext("/metrics", new MetricsHandler()).getFilters().add(shed);
+        server.createContext("/", new RootHandler()).getFilters().add(shed);
+
+        server.setExecutor(createExecutor());
+        server.start();
+        return server;
+    }
+
+    /**
+     * Comma-separated API keys that get their own rate limit buckets.
+     */
+    private static Set<String> apiKeys(String value) {
+        Set<String> keys = new HashSet<>();
+        for (String key : value.split(",")) {
+            if (!key.isBlank()) {
+                keys.add(key.trim());
+            }
+        }
+        return keys;
+    }
+
+    private static void registerGauges(AdmissionFilter admission, RateLimitFilter rateLimit) {
+        Metrics.gauge("sms_admission_queued", "Requests waiting for an admission slot", admission::getQueued);
+        Metrics.counter("sms_admission_rejected_total", "Requests rejected with 503 by admission", admission::getRejected);
+        if (rateLimit != null) {
+            Metrics.counter("sms_rate_limited_total", "Requests rejected with 429 by the per-client rate limit", rateLimit::getLimited);
+            Metrics.gauge("sms_rate_limit_clients", "Clients with a rate limit bucket", rateLimit::getClients);
+        }
+        if (limiter != null) {
+            Metrics.gauge("sms_concurrency_limit", "Current adaptive limit on API requests in progress", limiter::getLimit);
+            Metrics.gauge("sms_concurrency_in_flight", "API requests counted against the adaptive limit", limiter::getInFlight);
+            Metrics.counter("sms_concurrency_rejected_total", "Requests rejected with 503 by the adaptive limit", limiter::getRejected);
+        }
+        if (store instanceof StudentDAO) {
+            Metrics.gauge("sms_pool_active", "Pooled connections in use", () -> DBConnection.getPoolStats().getActive());
+            Metrics.gauge("sms_pool_idle", "Pooled connections idle", () -> DBConnection.getPoolStats().getIdle());
+            Metrics.gauge("sms_pool_waiters", "Threads waiting for a connection", () -> DBConnection.getPoolStats().getWaiters());
+            Metrics.counter("sms_pool_timeouts_total", "Connection checkouts that timed out", () -> DBConnection.getPoolStats().getTimeouts());
+            Metrics.counter("sms_pool_statement_cache_hits_total", "Prepared statements reused from a connection's cache", () -> DBConnection.getPoolStats().getStatementHits());
+            Metrics.counter("sms_pool_statement_cache_misses_total", "Prepared statements parsed on a connection", () -> DBConnection.getPoolStats().getStatementMisses());
+        }
+        if (store instanceof CachingStudentDAO cache) {
+            Metrics.counter("sms_student_cache_hits_total", "Students served from the read-through cache", cache::getHits);
+            Metrics.counter("sms_student_cache_negative_hits_total", "Missing ids answered from the cache", cache::getNegativeHits);
+            Metrics.counter("sms_student_cache_misses_total", "Students read from the database on a cache miss", cache::getMisses);
+            Metrics.counter("sms_student_cache_evictions_total", "Cached students dropped to stay within sms.cache.maxSize", cache::getEvictions);
+            Metrics.counter("sms_student_cache_invalidations_total", "Local writes that dropped cached students", cache::getInvalidations);
+            Metrics.gauge("sms_student_cache_size", "Students and missing ids in the cache", cache::getSize);
+        }
+        if (store instanceof ShardedStudentStore sharded) {
+            Metrics.gauge("sms_shards", "Databases the students are spread over", () -> sharded.shards().size());
+            Metrics.counter("sms_shard_bucket_moves_total", "Buckets moved between shards", sharded::getMoves);
+        }
+        if (RESPONSE_CACHE) {
+            Metrics.counter("sms_response_cache_hits_total", "List responses served from the cache", responseCache::getHits);
+            Metrics.counter("sms_response_cache_misses_total", "List responses built from the store", responseCache::getMisses);
+            Metrics.counter("sms_response_cache_coalesced_total", "List requests that waited for another's build", responseCache::getCoalesced);
+            Metrics.gauge("sms_response_cache_bytes", "Bytes of cached list responses", responseCache::getBytes);
+        }
+        Metrics.gauge("sms_changes_subscribers", "Clients connected to the change feed", () -> indexed.changes().getSubscribers());
+        Metrics.counter("sms_changes_resets_total", "Change feed subscribers told to reload", () -> indexed.changes().getResets());
+        if (dao instanceof WriteBehindStudentStore writeBehind) {
+            Metrics.gauge("sms_write_behind_queued", "Writes waiting in the write-behind queue", writeBehind::getQueued);
+            Metrics.counter("sms_write_behind_batches_total", "Write-behind groups applied", writeBehind::getBatches);
+            Metrics.counter("sms_write_behind_rejected_total", "Writes rejected because the queue was full", writeBehind::getRejected);
+        }
+    }
+
+    /**
+     * Serves {@link Metrics} as Prometheus text, or as JSON with ?format=json.
+     */
+    static class MetricsHandler implements HttpHandler {
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            String query = exchange.getRequestURI().getRawQuery();
+            byte[] body;
+            if (query != null && query.contains("format=json")) {
+                JsonWriter json = JsonWriter.acquire();
+                try {
+                    Metrics.json(json);
+                    body = Arrays.copyOf(json.array(), json.length());
+                } finally {
+                    json.release();
+                }
+                exchange.getResponseHeaders().set("Content-Type", "application/json");
+            } else {
+                body = Metrics.prometheus().getBytes(StandardCharsets.UTF_8);
+                exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+            }
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream os = exchange.getResponseBody()) {
+                os.write(body);
+            }
+        }
+    }
+
+    /**
+     * Streams student changes as Server-Sent Events; see {@link ChangeFeed}. A comment line is
+     * sent when nothing has happened for {@code sms.changes.heartbeatMs}, which keeps proxies
+     * from closing the connection and notices clients that have gone away.
+     */
+    static class ChangesHandler implements HttpHandler {
+        private static final byte[] HEARTBEAT = ":\n\n".getBytes(StandardCharsets.US_ASCII);
+
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            exchange.getResponseHeaders().add("Access-Control-Allow-Origin", "*");
+            if (!exchange.getRequestMethod().equals("GET")) {
+                exchange.getResponseHeaders().set("Allow", "GET");
+                exchange.sendResponseHeaders(405, -1);
+                exchange.close();
+                return;
+            }
+            ChangeFeed.Subscription subscription;
+            try {
+                subscription = indexed.changes().subscribe(exchange.getRequestHeaders().getFirst("Last-Event-ID"), CHANGES_BUFFER);
+            } catch (RejectedExecutionException e) {
+                exchange.getResponseHeaders().set("Retry-After", "5");
+                exchange.sendResponseHeaders(503, -1);
+                exchange.close();
+                return;
+            }
+            exchange.getResponseHeaders().set("Content-Type", "text/event-stream; charset=utf-8");
+            exchange.getResponseHeaders().set("Cache-Control", "no-cache");
+            try (subscription; OutputStream os = exchange.getResponseBody()) {
+                exchange.sendResponseHeaders(200, 0);
+                os.write(HEARTBEAT);
+                os.flush();
+                while (true) {
+                    byte[] event = subscription.next(CHANGES_HEARTBEAT_MS);
+                    os.write(event != null ? event : HEARTBEAT);
+                    os.flush();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (IOException e) {
+                // The client disconnected
+            }
+        }
+    }
+
+    static HttpServer createServer(InetSocketAddress address) throws IOException {
+        switch (ENGINE) {
+            case "jdk":
+                return HttpServer.create(address, 0);
+            case "nio":
+                NioHttpServer server = new NioHttpServer(
+                        Integer.getInteger("sms.nio.loops", Runtime.getRuntime().availableProcessors()),
+                        Integer.getInteger("sms.nio.maxHeaderBytes", 8 * 1024),
+                        Long.getLong("sms.nio.maxBodyBytes", 64L * 1024 * 1024),
+                        Long.getLong("sms.nio.maxBufferedBodyBytes", 32L * 1024 * 1024),
+                        Long.getLong("sms.nio.idleTimeoutMs", 60_000));
+                server.bind(address, 0);
+                return server;
+            default:
+                throw new IllegalArgumentException("Unknown sms.api.engine: " + ENGINE);
+        }
+    }
+
+    /**
+     * Each change stream holds its thread while open. A fixed pool must keep threads for
+     * everything else, so streams get at most half of it.
+     */
+    private static int maxSubscribers() {
+        int configured = Integer.getInteger("sms.changes.maxSubscribers", 1_000);
+        return EXECUTOR_MODE.equals("platform") ? Math.min(configured, Math.max(1, PLATFORM_THREADS / 2)) : configured;
+    }
+
+    static ExecutorService createExecutor() {
+        switch (EXECUTOR_MODE) {
+            case "virtual":
+                return Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("sms-api-", 0).factory());
+            case "platform":
+                // Sized so that requests wait in AdmissionFilter's bounded queue. The pool's own
+                // queue only absorbs bursts; past it the request is answered with 503 at once.
+                // The NIO engine answers 503 itself when execute throws.
+                return new ThreadPoolExecutor(PLATFORM_THREADS, PLATFORM_THREADS, 0, TimeUnit.MILLISECONDS,
+                        new ArrayBlockingQueue<>(Math.max(1, MAX_QUEUED)), Thread.ofPlatform().name("sms-api-", 0).factory(),
+                        ENGINE.equals("nio") ? new ThreadPoolExecutor.AbortPolicy() : AdmissionFilter.shedOnCaller());
+            default:
+                throw new IllegalArgumentException("Unknown sms.api.executor: " + EXECUTOR_MODE);
+        }
+    }
+
     static class StudentHandler implements HttpHandler {
+        private final StudentStore dao;
+
+        StudentHandler() {
+            this(StudentAPI.dao);
+        }
+
+        /**
+         * Serves the students in {@code dao} instead of the configured store.
+         */
+        StudentHandler(StudentStore dao) {
+            this.dao = dao;
+        }
+
         @Override
         public void handle(HttpExchange exchange) throws IOException {
             // Enable CORS
@@ -41,15 +357,31 @@ public class StudentAPI {
 
             String method = exchange.getRequestMethod();
             String path = exchange.getRequestURI().getPath();
-            String query = exchange.getRequestURI().getQuery();
+            String query = exchange.getRequestURI().getRawQuery();
 
             try {
                 switch (method) {
                     case "GET":
-                        handleGet(exchange, path, query);
+                        if (path.endsWith("/export.csv")) {
+                            handleExportCsv(exchange);
+                        } else if (path.endsWith("/search")) {
+                            handleSearch(exchange, query);
+                        } else if (path.endsWith("/stats")) {
+                            handleStats(exchange, query);
+                        } else if (path.contains("/operations/")) {
+                            handleOperation(exchange, path);
+                        } else {
+                            handleGet(exchange, path, query);
+                        }
                         break;
                     case "POST":
-                        handlePost(exchange);
+                        if (path.endsWith("/_bulk")) {
+                            handleBulk(exchange, query);
+                        } else if (path.endsWith("/import")) {
+                            handleImportCsv(exchange, query);
+                        } else {
+                            handlePost(exchange);
+                        }
                         break;
                     case "PUT":
                         handlePut(exchange, path);
@@ -61,55 +393,439 @@ public class StudentAPI {
                         sendError(exchange, 405, "Method not allowed");
                 }
             } catch (Exception e) {
-                sendError(exchange, 500, e.getMessage());
+                if (exchange.getResponseCode() != -1) {
+                    // Too late for an error status. Failing the exchange drops the connection,
+                    // so the client sees the body cut short instead of a complete-looking one.
+                    throw e instanceof IOException io ? io : new IOException(e);
+                }
+                if (e instanceof IllegalArgumentException) {
+                    sendError(exchange, 400, e.getMessage());
+                } else if (e instanceof RejectedExecutionException) {
+                    exchange.getResponseHeaders().set("Retry-After", "1");
+                    sendError(exchange, 503, e.getMessage());
+                } else {
+                    sendError(exchange, 500, e.getMessage());
+                }
             }
         }
 
+        /**
+         * {@code fields=id,name} limits each student to those keys, and the database reads
+         * only those columns. It combines with {@code id=}, with page queries and with the
+         * full list.
+         */
         private void handleGet(HttpExchange exchange, String path, String query) throws IOException, SQLException {
-            if (query != null && query.startsWith("id=")) {
-                int id = Integer.parseInt(query.substring(3));
-                Student student = dao.getStudentById(id);
+            Map<String, String> params = query == null || query.isEmpty() ? Map.of() : parseQuery(query);
+            StudentFields fields = StudentFields.parse(params.get("fields"));
+            if (params.containsKey("id")) {
+                int id = Integer.parseInt(params.get("id"));
+                Student student = dao.getStudentById(id, fields);
                 if (student != null) {
-                    String json = studentToJson(student);
-                    sendResponse(exchange, 200, json);
+                    JsonWriter json = JsonWriter.acquire();
+                    json.student(student, fields);
+                    sendJson(exchange, 200, json);
                 } else {
                     sendError(exchange, 404, "Student not found");
                 }
+            } else if (params.size() > (params.containsKey("fields") ? 1 : 0)) {
+                StudentQuery studentQuery = parseStudentQuery(params);
+                studentQuery.setFields(fields);
+                if (RESPONSE_CACHE) {
+                    sendCached(exchange, query, () -> encodePage(studentQuery));
+                } else {
+                    sendJson(exchange, 200, encodePage(studentQuery, JsonWriter.acquire()));
+                }
+            } else if (RESPONSE_CACHE && indexed.size() <= RESPONSE_CACHE_MAX_LIST_ROWS) {
+                sendCached(exchange, fields.isAll() ? "" : "fields=" + fields, () -> encodeAllStudents(fields));
             } else {
-                List<Student> students = dao.getAllStudents();
-                StringBuilder jsonArray = new StringBuilder("[");
-                for (int i = 0; i < students.size(); i++) {
-                    if (i > 0) jsonArray.append(",");
-                    jsonArray.append(studentToJson(students.get(i)));
+                streamAllStudents(exchange, fields);
+            }
+        }
+
+        private JsonWriter encodePage(StudentQuery query, JsonWriter json) throws SQLException {
+            StudentPage page = dao.findStudents(query);
+            json.raw("{\"students\":[");
+            List<Student> students = page.getStudents();
+            for (int i = 0; i < students.size(); i++) {
+                if (i > 0) json.raw(',');
+                json.student(students.get(i), query.getFields());
+            }
+            json.raw("],\"nextCursor\":").string(page.getNextCursor()).raw('}');
+            return json;
+        }
+
+        private byte[] encodePage(StudentQuery query) throws SQLException {
+            JsonWriter json = JsonWriter.acquire();
+            try {
+                encodePage(query, json);
+                return Arrays.copyOf(json.array(), json.length());
+            } finally {
+                Metrics.JSON_ENCODE.recordSince(json.acquiredAt());
+                json.release();
+            }
+        }
+
+        private byte[] encodeAllStudents(StudentFields fields) throws SQLException, IOException {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            try (JsonStreamWriter writer = new JsonStreamWriter(out, fields)) {
+                writer.beginArray();
+                dao.streamAllStudents(fields, writer::writeStudent);
+                writer.endArray();
+            }
+            return out.toByteArray();
+        }
+
+        /**
+         * Sends a list response from {@link ResponseCache}. The ETag names the data version,
+         * so a client holding the current one gets 304 without the store being read.
+         */
+        private void sendCached(HttpExchange exchange, String key, ResponseCache.Loader loader)
+                throws IOException, SQLException {
+            // Read before the store, so the body is at least as new as the version it is cached under
+            long version = indexed.version();
+            String etag = "\"" + DATA_EPOCH + "-" + version + "\"";
+            if (StaticAssets.matches(exchange.getRequestHeaders().getFirst("If-None-Match"), etag)) {
+                exchange.getResponseHeaders().set("ETag", etag);
+                exchange.sendResponseHeaders(304, -1);
+                exchange.close();
+                return;
+            }
+            byte[] body = responseCache.get(key, version, loader);
+            // Set only now, so an error response never carries a tag
+            exchange.getResponseHeaders().set("ETag", etag);
+            exchange.getResponseHeaders().set("Cache-Control", "no-cache");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream os = exchange.getResponseBody()) {
+                os.write(body);
+            }
+        }
+
+        /**
+         * Streams the full list with chunked transfer. Headers go out with the first row,
+         * so a failing query can still be reported as a normal error response. A failure
+         * after that leaves the body unended, and the connection is dropped.
+         */
+        private void streamAllStudents(HttpExchange exchange, StudentFields fields) throws IOException, SQLException {
+            JsonStreamWriter[] writer = new JsonStreamWriter[1];
+            try {
+                dao.streamAllStudents(fields, (id, name, email, age) -> {
+                    if (writer[0] == null) {
+                        writer[0] = startStream(exchange, fields);
+                    }
+                    writer[0].writeStudent(id, name, email, age);
+                });
+                if (writer[0] == null) {
+                    writer[0] = startStream(exchange, fields);
+                }
+                writer[0].endArray();
+            } catch (IOException | SQLException | RuntimeException e) {
+                if (writer[0] != null) {
+                    writer[0].discard();
                 }
-                jsonArray.append("]");
-                sendResponse(exchange, 200, jsonArray.toString());
+                throw e;
             }
+            writer[0].close();
         }
 
-        private void handlePost(HttpExchange exchange) throws IOException, SQLException {
-            String body = readBody(exchange);
-            String[] parts = parseJson(body);
-            
-            Student student = new Student();
-            student.setName(parts[0]);
-            student.setEmail(parts[1]);
-            student.setAge(Integer.parseInt(parts[2]));
+        private JsonStreamWriter startStream(HttpExchange exchange, StudentFields fields) throws IOException {
+            exchange.sendResponseHeaders(200, 0);
+            JsonStreamWriter writer = new JsonStreamWriter(exchange.getResponseBody(), fields);
+            writer.beginArray();
+            return writer;
+        }
 
+        private void handlePost(HttpExchange exchange) throws IOException, SQLException {
+            Student student = readStudent(exchange);
+            if (queueAsync(exchange, BulkOperation.Type.CREATE, student)) {
+                return;
+            }
             dao.addStudent(student);
-            sendResponse(exchange, 201, "{\"message\": \"Student added successfully\"}");
+            sendResponse(exchange, 201, "{\"message\": \"Student added successfully\", \"id\": " + student.getId() + "}");
+        }
+
+        /**
+         * Ranked search over name and email. Query parameters: q (required), limit (1-100,
+         * default 10), budgetMs (time allowed before returning the best matches so far).
+         */
+        private void handleSearch(HttpExchange exchange, String query) throws IOException {
+            Map<String, String> params = query == null ? Map.of() : parseQuery(query);
+            String q = params.get("q");
+            if (q == null || q.isBlank()) {
+                throw new IllegalArgumentException("q is required");
+            }
+            int limit = Integer.parseInt(params.getOrDefault("limit", "10"));
+            if (limit < 1 || limit > SEARCH_MAX_LIMIT) {
+                throw new IllegalArgumentException("limit must be between 1 and " + SEARCH_MAX_LIMIT);
+            }
+            long budgetMs = Long.parseLong(params.getOrDefault("budgetMs", String.valueOf(SEARCH_BUDGET_MS)));
+            if (budgetMs < 1) {
+                throw new IllegalArgumentException("budgetMs must be positive");
+            }
+
+            StudentSearchIndex.Result result = indexed.search(q, limit, budgetMs * 1_000_000L);
+            JsonWriter json = JsonWriter.acquire();
+            json.raw("{\"students\":[");
+            for (int i = 0; i < result.students.size(); i++) {
+                if (i > 0) json.raw(',');
+                json.student(result.students.get(i));
+            }
+            json.raw("],\"matched\":").number(result.matched)
+                    .raw(",\"partial\":").bool(result.partial).raw('}');
+            sendJson(exchange, 200, json);
+        }
+
+        /**
+         * Totals served from the in-memory aggregates. Query parameter: domains (how many of
+         * the largest email domains to list, default 20).
+         */
+        private void handleStats(HttpExchange exchange, String query) throws IOException {
+            Map<String, String> params = query == null ? Map.of() : parseQuery(query);
+            int maxDomains = Integer.parseInt(params.getOrDefault("domains", "20"));
+            if (maxDomains < 0) {
+                throw new IllegalArgumentException("domains must not be negative");
+            }
+
+            StudentStats.Snapshot stats = indexed.stats();
+            JsonWriter json = JsonWriter.acquire();
+            json.raw("{\"count\":").number(stats.count)
+                    .raw(",\"age\":{\"min\":").number(stats.minAge)
+                    .raw(",\"max\":").number(stats.maxAge)
+                    .raw(",\"mean\":").raw(String.valueOf(Math.round(stats.meanAge * 100) / 100.0))
+                    .raw(",\"p50\":").number(stats.p50)
+                    .raw(",\"p90\":").number(stats.p90)
+                    .raw(",\"p99\":").number(stats.p99)
+                    .raw(",\"histogram\":{");
+            boolean first = true;
+            for (int age = 0; age < stats.ages.length; age++) {
+                if (stats.ages[age] == 0) continue;
+                if (!first) json.raw(',');
+                json.string(String.valueOf(age)).raw(':').number(stats.ages[age]);
+                first = false;
+            }
+            json.raw("}},\"distinctDomains\":").number(stats.domains.size()).raw(",\"domains\":[");
+            for (int i = 0; i < Math.min(maxDomains, stats.domains.size()); i++) {
+                StudentStats.DomainCount d = stats.domains.get(i);
+                if (i > 0) json.raw(',');
+                json.raw("{\"domain\":").string(d.domain).raw(",\"count\":").number(d.count).raw('}');
+            }
+            json.raw("]}");
+            sendJson(exchange, 200, json);
+        }
+
+        /**
+         * Streams the export like {@link #streamAllStudents}: headers go out with the first
+         * row, so a failing query is still answered with an error status. A failure after
+         * that leaves the writer open: CSV has no end marker, so only a broken transfer tells
+         * the client the file is incomplete.
+         */
+        private void handleExportCsv(HttpExchange exchange) throws IOException, SQLException {
+            CsvWriter[] csv = new CsvWriter[1];
+            dao.streamAllStudents((id, name, email, age) -> {
+                if (csv[0] == null) {
+                    csv[0] = startCsv(exchange);
+                }
+                csv[0].writeStudent(id, name, email, age);
+            });
+            if (csv[0] == null) {
+                csv[0] = startCsv(exchange);
+            }
+            csv[0].close();
+        }
+
+        private CsvWriter startCsv(HttpExchange exchange) throws IOException {
+            exchange.getResponseHeaders().set("Content-Type", "text/csv; charset=utf-8");
+            exchange.getResponseHeaders().set("Content-Disposition", "attachment; filename=\"students.csv\"");
+            exchange.sendResponseHeaders(200, 0);
+            CsvWriter csv = new CsvWriter(exchange.getResponseBody());
+            csv.writeHeader();
+            return csv;
+        }
+
+        /**
+         * Imports CSV from the request body. The response is NDJSON: a progress line every
+         * sms.import.progressRows rows, then a final summary line.
+         * Query parameters: skip (rows to skip, for resuming), batchSize, onError=stop|continue.
+         */
+        private void handleImportCsv(HttpExchange exchange, String query) throws IOException {
+            Map<String, String> params = query == null ? Map.of() : parseQuery(query);
+            long skip = Long.parseLong(params.getOrDefault("skip", "0"));
+            int batchSize = Integer.parseInt(params.getOrDefault("batchSize", String.valueOf(IMPORT_BATCH_SIZE)));
+            boolean continueOnError = "continue".equals(params.get("onError"));
+            CsvImporter importer = new CsvImporter(dao, batchSize, continueOnError, IMPORT_PROGRESS_ROWS);
+
+            exchange.getResponseHeaders().set("Content-Type", "application/x-ndjson");
+            exchange.sendResponseHeaders(200, 0);
+            try (OutputStream os = exchange.getResponseBody();
+                 Reader body = new InputStreamReader(exchange.getRequestBody(), StandardCharsets.UTF_8)) {
+                CsvImporter.Result result;
+                try {
+                    result = importer.importFrom(body, skip, progress -> {
+                        writeImportResult(os, progress, false);
+                        os.flush();
+                    });
+                } catch (IOException | IllegalArgumentException e) {
+                    JsonWriter json = JsonWriter.acquire();
+                    try {
+                        json.raw("{\"error\":").string(String.valueOf(e.getMessage())).raw("}\n").writeTo(os);
+                    } finally {
+                        json.release();
+                    }
+                    return;
+                }
+                writeImportResult(os, result, true);
+            }
+        }
+
+        private void writeImportResult(OutputStream os, CsvImporter.Result r, boolean done) throws IOException {
+            JsonWriter json = JsonWriter.acquire();
+            try {
+                json.raw("{\"done\":").bool(done)
+                        .raw(",\"rowsRead\":").number(r.rowsRead)
+                        .raw(",\"imported\":").number(r.imported)
+                        .raw(",\"rejected\":").number(r.rejected)
+                        .raw(",\"failedRows\":").number(r.failedRows)
+                        .raw(",\"resumeAfterRow\":").number(r.resumeAfterRow);
+                if (done) {
+                    json.raw(",\"stopped\":").bool(r.stopped).raw(",\"errors\":[");
+                    for (int i = 0; i < r.errors.size(); i++) {
+                        if (i > 0) json.raw(',');
+                        json.string(r.errors.get(i));
+                    }
+                    json.raw(']');
+                }
+                json.raw("}\n").writeTo(os);
+            } finally {
+                json.release();
+            }
+        }
+
+        /**
+         * Accepts a JSON array, or NDJSON when Content-Type is application/x-ndjson, of
+         * {"op":"create|update|delete", ...} objects. Valid operations are written in
+         * transactions of chunkSize; NDJSON is executed chunk by chunk as it is read.
+         */
+        private void handleBulk(HttpExchange exchange, String query) throws IOException, SQLException {
+            int chunkSize = BULK_CHUNK_SIZE;
+            if (query != null) {
+                String param = parseQuery(query).get("chunkSize");
+                if (param != null) chunkSize = Integer.parseInt(param);
+            }
+            if (chunkSize < 1) {
+                throw new IllegalArgumentException("chunkSize must be positive");
+            }
+
+            List<BulkResult> results = new ArrayList<>();
+            List<BulkOperation> chunk = new ArrayList<>(Math.min(chunkSize, 1024));
+            String contentType = exchange.getRequestHeaders().getFirst("Content-Type");
+            if (contentType != null && contentType.startsWith("application/x-ndjson")) {
+                InputStream in = new BufferedInputStream(exchange.getRequestBody());
+                JsonReader.Fields fields = new JsonReader.Fields();
+                LineBuffer line = new LineBuffer();
+                int index = 0;
+                while (line.read(in)) {
+                    if (line.isBlank()) {
+                        continue;
+                    }
+                    int lineIndex = index++;
+                    if (line.truncated) {
+                        results.add(BulkResult.rejected(lineIndex, null, 413,
+                                "Line longer than " + BULK_MAX_LINE_BYTES + " bytes"));
+                        continue;
+                    }
+                    try {
+                        JsonReader.parseObject(line.buf, 0, line.len, fields);
+                        addBulkOperation(lineIndex, fields, chunk, results);
+                    } catch (IllegalArgumentException e) {
+                        results.add(BulkResult.rejected(lineIndex, null, 400, e.getMessage()));
+                    }
+                    if (chunk.size() >= chunkSize) {
+                        results.addAll(dao.executeBulk(chunk));
+                        chunk.clear();
+                    }
+                }
+            } else {
+                List<BulkOperation> ops = new ArrayList<>();
+                // One byte over the limit is enough to know it was passed
+                byte[] body = exchange.getRequestBody().readNBytes(BULK_MAX_BODY_BYTES + 1);
+                if (body.length > BULK_MAX_BODY_BYTES) {
+                    sendError(exchange, 413, "Body longer than " + BULK_MAX_BODY_BYTES
+                            + " bytes; send NDJSON to stream larger requests");
+                    return;
+                }
+                int[] index = {0};
+                JsonReader.parseArray(body, 0, body.length, fields -> addBulkOperation(index[0]++, fields, ops, results));
+                for (BulkOperation op : ops) {
+                    chunk.add(op);
+                    if (chunk.size() >= chunkSize) {
+                        results.addAll(dao.executeBulk(chunk));
+                        chunk.clear();
+                    }
+                }
+            }
+            if (!chunk.isEmpty()) {
+                results.addAll(dao.executeBulk(chunk));
+            }
+            results.sort((a, b) -> Integer.compare(a.getIndex(), b.getIndex()));
+
+            int failed = 0;
+            JsonWriter json = JsonWriter.acquire();
+            json.raw("{\"results\":[");
+            for (int i = 0; i < results.size(); i++) {
+                BulkResult r = results.get(i);
+                if (!r.isSuccess()) failed++;
+                if (i > 0) json.raw(',');
+                json.raw("{\"index\":").number(r.getIndex())
+                        .raw(",\"op\":").string(r.getOp())
+                        .raw(",\"status\":").number(r.getStatus());
+                if (r.getId() > 0) json.raw(",\"id\":").number(r.getId());
+                if (r.getError() != null) json.raw(",\"error\":").string(r.getError());
+                json.raw('}');
+            }
+            json.raw("],\"processed\":").number(results.size())
+                    .raw(",\"failed\":").number(failed).raw('}');
+            sendJson(exchange, 200, json);
+        }
+
+        private void addBulkOperation(int index, JsonReader.Fields fields, List<BulkOperation> ops, List<BulkResult> results) {
+            String op = fields.op == null ? "" : fields.op.toLowerCase();
+            BulkOperation.Type type;
+            switch (op) {
+                case "create" -> type = BulkOperation.Type.CREATE;
+                case "update" -> type = BulkOperation.Type.UPDATE;
+                case "delete" -> type = BulkOperation.Type.DELETE;
+                default -> {
+                    results.add(BulkResult.rejected(index, fields.op, 400,
+                            fields.op == null ? "op is required" : "Unknown op: " + fields.op));
+                    return;
+                }
+            }
+            try {
+                if (type != BulkOperation.Type.CREATE && !fields.hasId) {
+                    throw new IllegalArgumentException("id is required");
+                }
+                Student student;
+                if (type == BulkOperation.Type.DELETE) {
+                    student = new Student();
+                    student.setId(fields.id);
+                } else {
+                    student = fields.toStudent();
+                    if (type == BulkOperation.Type.CREATE) {
+                        student.setId(0);
+                    }
+                }
+                ops.add(new BulkOperation(index, type, student));
+            } catch (IllegalArgumentException e) {
+                results.add(new BulkResult(index, type, 400, 0, "Invalid operation: " + e.getMessage()));
+            }
         }
 
         private void handlePut(HttpExchange exchange, String path) throws IOException, SQLException {
             int id = Integer.parseInt(path.substring(path.lastIndexOf('/') + 1));
-            String body = readBody(exchange);
-            String[] parts = parseJson(body);
-
-            Student student = new Student();
+            Student student = readStudent(exchange);
             student.setId(id);
-            student.setName(parts[0]);
-            student.setEmail(parts[1]);
-            student.setAge(Integer.parseInt(parts[2]));
+            if (queueAsync(exchange, BulkOperation.Type.UPDATE, student)) {
+                return;
+            }
 
             dao.updateStudent(student);
             sendResponse(exchange, 200, "{\"message\": \"Student updated successfully\"}");
@@ -117,89 +833,190 @@ public class StudentAPI {
 
         private void handleDelete(HttpExchange exchange, String path) throws IOException, SQLException {
             int id = Integer.parseInt(path.substring(path.lastIndexOf('/') + 1));
+            Student student = new Student();
+            student.setId(id);
+            if (queueAsync(exchange, BulkOperation.Type.DELETE, student)) {
+                return;
+            }
             dao.deleteStudent(id);
             sendResponse(exchange, 200, "{\"message\": \"Student deleted successfully\"}");
         }
 
-        private String studentToJson(Student s) {
-            return "{\"id\":" + s.getId() + ",\"name\":\"" + escapeJson(s.getName()) + 
-                   "\",\"email\":\"" + escapeJson(s.getEmail()) + "\",\"age\":" + s.getAge() + "}";
+        /**
+         * With write-behind on and "Prefer: respond-async" on the request, queues the write and
+         * answers 202 with an operation id to poll. Returns false if the write should run inline.
+         */
+        private boolean queueAsync(HttpExchange exchange, BulkOperation.Type type, Student student) throws IOException {
+            String prefer = exchange.getRequestHeaders().getFirst("Prefer");
+            if (!(dao instanceof WriteBehindStudentStore writeBehind) || prefer == null || !prefer.contains("respond-async")) {
+                return false;
+            }
+            WriteBehindStudentStore.Operation op = writeBehind.submit(type, student);
+            exchange.getResponseHeaders().set("Location", "/api/students/operations/" + op.id);
+            JsonWriter json = JsonWriter.acquire();
+            json.raw("{\"operationId\":").number(op.id).raw('}');
+            sendJson(exchange, 202, json);
+            return true;
         }
 
-        private String[] parseJson(String json) {
-            String[] result = new String[3];
-            result[0] = extractValue(json, "name");
-            result[1] = extractValue(json, "email");
-            result[2] = extractValue(json, "age");
-            return result;
+        private void handleOperation(HttpExchange exchange, String path) throws IOException {
+            long id = Long.parseLong(path.substring(path.lastIndexOf('/') + 1));
+            WriteBehindStudentStore.Operation op = dao instanceof WriteBehindStudentStore writeBehind
+                    ? writeBehind.operation(id) : null;
+            if (op == null) {
+                sendError(exchange, 404, "Operation not found");
+                return;
+            }
+            JsonWriter json = JsonWriter.acquire();
+            json.raw("{\"operationId\":").number(op.id)
+                    .raw(",\"op\":").string(op.type.name().toLowerCase());
+            if (!op.result.isDone()) {
+                json.raw(",\"state\":\"pending\"");
+            } else if (op.result.isCompletedExceptionally()) {
+                Throwable cause = op.result.exceptionNow();
+                json.raw(",\"state\":\"failed\",\"error\":").string(String.valueOf(cause.getMessage()));
+            } else {
+                BulkResult r = op.result.resultNow();
+                json.raw(",\"state\":").string(r.isSuccess() ? "done" : "failed")
+                        .raw(",\"status\":").number(r.getStatus());
+                if (r.getId() > 0) json.raw(",\"id\":").number(r.getId());
+                if (r.getError() != null) json.raw(",\"error\":").string(r.getError());
+            }
+            json.raw('}');
+            sendJson(exchange, 200, json);
         }
 
-        private String extractValue(String json, String key) {
-            String searchKey = "\"" + key + "\":";
-            int startIdx = json.indexOf(searchKey);
-            if (startIdx == -1) return "";
-            
-            startIdx += searchKey.length();
-            char firstChar = json.charAt(startIdx);
-            
-            if (firstChar == '"') {
-                int endIdx = json.indexOf('"', startIdx + 1);
-                return json.substring(startIdx + 1, endIdx);
-            } else {
-                int endIdx = json.indexOf(',', startIdx);
-                if (endIdx == -1) endIdx = json.indexOf('}', startIdx);
-                return json.substring(startIdx, endIdx).trim();
+        private StudentQuery parseStudentQuery(Map<String, String> params) {
+            StudentQuery q = new StudentQuery();
+            if (params.containsKey("sort")) {
+                String sort = params.get("sort");
+                if (sort.startsWith("-")) {
+                    q.setDescending(true);
+                    sort = sort.substring(1);
+                }
+                q.setSortField(StudentQuery.SortField.fromParam(sort));
+            }
+            if (params.containsKey("limit")) q.setLimit(Integer.parseInt(params.get("limit")));
+            if (params.containsKey("minAge")) q.setMinAge(Integer.parseInt(params.get("minAge")));
+            if (params.containsKey("maxAge")) q.setMaxAge(Integer.parseInt(params.get("maxAge")));
+            if (params.containsKey("name")) q.setNamePrefix(params.get("name"));
+            if (params.containsKey("email")) q.setEmailPrefix(params.get("email"));
+            if (params.containsKey("cursor")) {
+                q.setCursor(params.get("cursor"));
+            } else if (params.containsKey("after")) {
+                q.setAfterId(Integer.parseInt(params.get("after")));
             }
+            return q;
         }
 
-        private String escapeJson(String str) {
-            return str.replace("\"", "\\\"").replace("\n", "\\n").replace("\r", "\\r");
+        private Map<String, String> parseQuery(String query) {
+            Map<String, String> params = new HashMap<>();
+            for (String pair : query.split("&")) {
+                if (pair.isEmpty()) continue;
+                int eq = pair.indexOf('=');
+                String key = eq < 0 ? pair : pair.substring(0, eq);
+                String value = eq < 0 ? "" : pair.substring(eq + 1);
+                params.put(URLDecoder.decode(key, StandardCharsets.UTF_8), URLDecoder.decode(value, StandardCharsets.UTF_8));
+            }
+            return params;
         }
 
-        private String readBody(HttpExchange exchange) throws IOException {
-            InputStream is = exchange.getRequestBody();
-            BufferedReader reader = new BufferedReader(new InputStreamReader(is));
-            StringBuilder sb = new StringBuilder();
-            String line;
-            while ((line = reader.readLine()) != null) {
-                sb.append(line);
+        /**
+         * Reusable byte buffer holding one NDJSON line, without its terminator. A line over
+         * sms.bulk.maxLineBytes is read to its end but not kept, and comes back truncated.
+         */
+        private static final class LineBuffer {
+            byte[] buf = new byte[1024];
+            int len;
+            boolean truncated;
+
+            boolean read(InputStream in) throws IOException {
+                len = 0;
+                truncated = false;
+                int c;
+                while ((c = in.read()) != -1) {
+                    if (c == '\n') {
+                        if (len > 0 && buf[len - 1] == '\r') len--;
+                        return true;
+                    }
+                    if (len == BULK_MAX_LINE_BYTES) {
+                        truncated = true;
+                        continue;
+                    }
+                    if (len == buf.length) buf = Arrays.copyOf(buf, Math.min(len * 2, BULK_MAX_LINE_BYTES));
+                    buf[len++] = (byte) c;
+                }
+                return len > 0;
+            }
+
+            boolean isBlank() {
+                for (int i = 0; i < len; i++) {
+                    if (buf[i] != ' ' && buf[i] != '\t' && buf[i] != '\r') return false;
+                }
+                return true;
             }
-            return sb.toString();
+        }
+
+        private Student readStudent(HttpExchange exchange) throws IOException {
+            byte[] body = exchange.getRequestBody().readAllBytes();
+            JsonReader.Fields fields = new JsonReader.Fields();
+            JsonReader.parseObject(body, 0, body.length, fields);
+            return fields.toStudent();
         }
 
         private void sendResponse(HttpExchange exchange, int code, String response) throws IOException {
-            exchange.sendResponseHeaders(code, response.getBytes().length);
+            byte[] bytes = response.getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(code, bytes.length);
             OutputStream os = exchange.getResponseBody();
-            os.write(response.getBytes());
+            os.write(bytes);
             os.close();
         }
 
+        /**
+         * Sends the encoded bytes and returns the writer to its pool.
+         */
+        private void sendJson(HttpExchange exchange, int code, JsonWriter json) throws IOException {
+            Metrics.JSON_ENCODE.recordSince(json.acquiredAt());
+            try {
+                exchange.sendResponseHeaders(code, json.length());
+                OutputStream os = exchange.getResponseBody();
+                json.writeTo(os);
+                os.close();
+            } finally {
+                json.release();
+            }
+        }
+
         private void sendError(HttpExchange exchange, int code, String message) throws IOException {
-            String error = "{\"error\":\"" + escapeJson(message) + "\"}";
-            sendResponse(exchange, code, error);
+            JsonWriter json = JsonWriter.acquire();
+            json.raw("{\"error\":").string(message).raw('}');
+            sendJson(exchange, code, json);
         }
     }
 
+    /**
+     * Serves the bundled page, and the files under {@code sms.static.dir} when it is set, from
+     * memory. See {@link StaticAssets}.
+     */
     static class RootHandler implements HttpHandler {
+        private final StaticAssets assets = new StaticAssets();
+
+        RootHandler() throws IOException {
+            if (STATIC_DIR != null) {
+                assets.addDirectory(Path.of(STATIC_DIR), "public, max-age=" + STATIC_MAX_AGE_SECONDS, STATIC_MAX_FILE_BYTES);
+            }
+            // Revalidated on every load, which costs a 304 while it is unchanged
+            StaticAssets.Asset index = new StaticAssets.Asset("text/html; charset=utf-8",
+                    getIndexHTML().getBytes(StandardCharsets.UTF_8), "no-cache");
+            assets.put("/", index);
+            assets.put("/index.html", index);
+        }
+
         @Override
         public void handle(HttpExchange exchange) throws IOException {
             exchange.getResponseHeaders().add("Access-Control-Allow-Origin", "*");
-            exchange.getResponseHeaders().add("Content-Type", "text/html");
-
-            if (exchange.getRequestURI().getPath().equals("/")) {
-                String html = getIndexHTML();
-                exchange.sendResponseHeaders(200, html.getBytes().length);
-                OutputStream os = exchange.getResponseBody();
-                os.write(html.getBytes());
-                os.close();
-            } else if (exchange.getRequestURI().getPath().equals("/index.html")) {
-                String html = getIndexHTML();
-                exchange.sendResponseHeaders(200, html.getBytes().length);
-                OutputStream os = exchange.getResponseBody();
-                os.write(html.getBytes());
-                os.close();
-            } else {
-                exchange.sendResponseHeaders(404, 0);
+            if (!assets.serve(exchange)) {
+                exchange.sendResponseHeaders(404, -1);
                 exchange.close();
             }
         }
@@ -280,6 +1097,7 @@ public class StudentAPI {
                     "            <tbody id=\"tableBody\">\n" +
                     "            </tbody>\n" +
                     "        </table>\n" +
+                    "        <button id=\"loadMore\" onclick=\"loadMore()\" style=\"margin-top: 10px; display: none;\">Load more</button>\n" +
                     "    </div>\n" +
                     "\n" +
                     "    <script>\n" +
@@ -292,23 +1110,77 @@ public class StudentAPI {
                     "            setTimeout(() => msgEl.style.display = 'none', 3000);\n" +
                     "        }\n" +
                     "\n" +
+                    "        const PAGE_SIZE = 100;\n" +
+                    "        let nextCursor = null;\n" +
+                    "        // Changes that arrive while a page is loading are applied after it\n" +
+                    "        let loading = 0;\n" +
+                    "        let pending = [];\n" +
+                    "\n" +
                     "        function loadStudents() {\n" +
-                    "            fetch(API_URL)\n" +
+                    "            document.getElementById('tableBody').innerHTML = '';\n" +
+                    "            nextCursor = null;\n" +
+                    "            fetchPage(API_URL + '?limit=' + PAGE_SIZE);\n" +
+                    "        }\n" +
+                    "\n" +
+                    "        function loadMore() {\n" +
+                    "            if (nextCursor) fetchPage(API_URL + '?limit=' + PAGE_SIZE + '&cursor=' + encodeURIComponent(nextCursor));\n" +
+                    "        }\n" +
+                    "\n" +
+                    "        function fetchPage(url) {\n" +
+                    "            loading++;\n" +
+                    "            fetch(url)\n" +
                     "                .then(res => res.json())\n" +
-                    "                .then(students => {\n" +
+                    "                .then(page => {\n" +
                     "                    const tbody = document.getElementById('tableBody');\n" +
-                    "                    tbody.innerHTML = '';\n" +
-                    "                    students.forEach(s => {\n" +
-                    "                        const row = `<tr onclick=\"selectStudent(${s.id}, '${s.name}', '${s.email}', ${s.age})\" style=\"cursor: pointer;\">\n" +
-                    "                            <td>${s.id}</td>\n" +
-                    "                            <td>${s.name}</td>\n" +
-                    "                            <td>${s.email}</td>\n" +
-                    "                            <td>${s.age}</td>\n" +
-                    "                        </tr>`;\n" +
-                    "                        tbody.innerHTML += row;\n" +
+                    "                    nextCursor = page.nextCursor;\n" +
+                    "                    document.getElementById('loadMore').style.display = nextCursor ? 'inline-block' : 'none';\n" +
+                    "                    page.students.forEach(s => {\n" +
+                    "                        if (!document.getElementById('student-' + s.id)) tbody.insertAdjacentHTML('beforeend', rowHtml(s));\n" +
                     "                    });\n" +
                     "                })\n" +
-                    "                .catch(err => showMessage('Error loading students: ' + err, 'error'));\n" +
+                    "                .catch(err => showMessage('Error loading students: ' + err, 'error'))\n" +
+                    "                .finally(() => {\n" +
+                    "                    if (--loading === 0) {\n" +
+                    "                        const changes = pending;\n" +
+                    "                        pending = [];\n" +
+                    "                        changes.forEach(c => applyChange(c.type, c.student));\n" +
+                    "                    }\n" +
+                    "                });\n" +
+                    "        }\n" +
+                    "\n" +
+                    "        function rowHtml(s) {\n" +
+                    "            return `<tr id=\"student-${s.id}\" onclick=\"selectStudent(${s.id}, '${s.name}', '${s.email}', ${s.age})\" style=\"cursor: pointer;\">\n" +
+                    "                <td>${s.id}</td>\n" +
+                    "                <td>${s.name}</td>\n" +
+                    "                <td>${s.email}</td>\n" +
+                    "                <td>${s.age}</td>\n" +
+                    "            </tr>`;\n" +
+                    "        }\n" +
+                    "\n" +
+                    "        // Keeps the table current from the server's change feed instead of reloading it\n" +
+                    "        function applyChange(type, s) {\n" +
+                    "            if (loading > 0) {\n" +
+                    "                pending.push({ type, student: s });\n" +
+                    "                return;\n" +
+                    "            }\n" +
+                    "            const row = document.getElementById('student-' + s.id);\n" +
+                    "            if (type === 'delete') {\n" +
+                    "                if (row) row.remove();\n" +
+                    "            } else if (row) {\n" +
+                    "                row.outerHTML = rowHtml(s);\n" +
+                    "            } else if (type === 'insert' && !nextCursor) {\n" +
+                    "                // With more pages to load, the new row arrives with them\n" +
+                    "                document.getElementById('tableBody').insertAdjacentHTML('beforeend', rowHtml(s));\n" +
+                    "            }\n" +
+                    "        }\n" +
+                    "\n" +
+                    "        function listenForChanges() {\n" +
+                    "            // EventSource reconnects by itself and resumes from the last event it saw\n" +
+                    "            const changes = new EventSource(API_URL + '/changes');\n" +
+                    "            ['insert', 'update', 'delete'].forEach(type =>\n" +
+                    "                changes.addEventListener(type, e => applyChange(type, JSON.parse(e.data).student)));\n" +
+                    "            // Sent when changes were missed; only a reload brings the table back in step\n" +
+                    "            changes.addEventListener('reset', () => loadStudents());\n" +
                     "        }\n" +
                     "\n" +
                     "        function selectStudent(id, name, email, age) {\n" +
@@ -337,7 +1209,6 @@ public class StudentAPI {
                     "            .then(data => {\n" +
                     "                showMessage('Student added successfully!', 'success');\n" +
                     "                clearForm();\n" +
-                    "                loadStudents();\n" +
                     "            })\n" +
                     "            .catch(err => showMessage('Error: ' + err, 'error'));\n" +
                     "        }\n" +
@@ -362,7 +1233,6 @@ public class StudentAPI {
                     "            .then(data => {\n" +
                     "                showMessage('Student updated successfully!', 'success');\n" +
                     "                clearForm();\n" +
-                    "                loadStudents();\n" +
                     "            })\n" +
                     "            .catch(err => showMessage('Error: ' + err, 'error'));\n" +
                     "        }\n" +
@@ -381,7 +1251,6 @@ public class StudentAPI {
                     "            .then(data => {\n" +
                     "                showMessage('Student deleted successfully!', 'success');\n" +
                     "                clearForm();\n" +
-                    "                loadStudents();\n" +
                     "            })\n" +
                     "            .catch(err => showMessage('Error: ' + err, 'error'));\n" +
                     "        }\n" +
@@ -395,6 +1264,7 @@ public class StudentAPI {
                     "\n" +
                     "        // Load students on page load\n" +
                     "        loadStudents();\n" +
+                    "        listenForChanges();\n" +
                     "    </script>\n" +
                     "</body>\n" +
                     "</html>";
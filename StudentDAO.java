@@ -1,11 +1,552 @@
-/*
- * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
- * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
- */
-
 package com.example.sms;
 
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+public class StudentDAO implements StudentStore {
+    // Snapshot restores with --replace load here, then swap it in for the students table
+    private static final String RESTORE_TABLE = "students_restore";
+    private static final String REPLACED_TABLE = "students_replaced";
+    private static final int STREAM_FETCH_SIZE = Integer.getInteger("sms.db.streamFetchSize", 500);
+    // SQL per projection shape, indexed by StudentFields.mask(); the same text each time
+    // lets the connection pool hand back an already prepared statement
+    private static final String[] BY_ID_SQL = new String[StudentFields.SHAPES];
+    private static final String[] STREAM_SQL = new String[StudentFields.SHAPES];
+
+    static {
+        for (int mask = 0; mask < StudentFields.SHAPES; mask++) {
+            String columns = StudentFields.of(mask).with(StudentFields.ID).columns();
+            BY_ID_SQL[mask] = "SELECT " + columns + " FROM students WHERE id = ?";
+            STREAM_SQL[mask] = "SELECT " + columns + " FROM students ORDER BY id";
+        }
+    }
+
+    // Null means the shared pool behind DBConnection
+    private final ConnectionPool pool;
+    // Inserts keep the ids callers assign instead of taking AUTO_INCREMENT values
+    private final boolean explicitIds;
+    // Pages sort text by code point instead of by the column's collation
+    private final boolean binaryTextOrder;
+
+    public StudentDAO() {
+        this(null, false, false);
+    }
+
+    /**
+     * A DAO for the database behind {@code pool}, such as one shard. With
+     * {@code explicitIds}, every insert stores the id already set on the student. With
+     * {@code binaryTextOrder}, pages sorted by name or email come in code point order, so
+     * pages from several databases can be merged in Java.
+     */
+    public StudentDAO(ConnectionPool pool, boolean explicitIds, boolean binaryTextOrder) {
+        this.pool = pool;
+        this.explicitIds = explicitIds;
+        this.binaryTextOrder = binaryTextOrder;
+    }
+
+    @Override
+    public void addStudent(Student student) throws SQLException {
+        if (explicitIds) {
+            restoreStudents(List.of(student));
+            return;
+        }
+        String sql = "INSERT INTO students (name, email, age) VALUES (?, ?, ?)";
+        try (Connection conn = connection();
+             PreparedStatement ps = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
+            ps.setString(1, student.getName());
+            ps.setString(2, student.getEmail());
+            ps.setInt(3, student.getAge());
+            ps.executeUpdate();
+            try (ResultSet keys = ps.getGeneratedKeys()) {
+                if (keys.next()) {
+                    student.setId(keys.getInt(1));
+                }
+            }
+        }
+    }
+
+    @Override
+    public void updateStudent(Student student) throws SQLException {
+        String sql = "UPDATE students SET name = ?, email = ?, age = ? WHERE id = ?";
+        try (Connection conn = connection();
+             PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setString(1, student.getName());
+            ps.setString(2, student.getEmail());
+            ps.setInt(3, student.getAge());
+            ps.setInt(4, student.getId());
+            ps.executeUpdate();
+        }
+    }
+
+    @Override
+    public void deleteStudent(int id) throws SQLException {
+        String sql = "DELETE FROM students WHERE id = ?";
+        try (Connection conn = connection();
+             PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setInt(1, id);
+            ps.executeUpdate();
+        }
+    }
+
+    @Override
+    public Student getStudentById(int id) throws SQLException {
+        return readStudent(id, StudentFields.ALL);
+    }
+
+    /**
+     * Selects only the requested columns, plus the id.
+     */
+    @Override
+    public Student getStudentById(int id, StudentFields fields) throws SQLException {
+        return readStudent(id, fields);
+    }
+
+    @Override
+    public List<Student> getAllStudents() throws SQLException {
+        List<Student> list = new ArrayList<>();
+        try (Connection conn = connection();
+             PreparedStatement ps = conn.prepareStatement(STREAM_SQL[StudentFields.ALL.mask()]);
+             ResultSet rs = ps.executeQuery()) {
+            while (rs.next()) {
+                list.add(mapRow(rs, StudentFields.ALL));
+            }
+        }
+        return list;
+    }
+
+    @Override
+    public void streamAllStudents(RowHandler handler) throws SQLException, IOException {
+        streamAllStudents(StudentFields.ALL, handler);
+    }
+
+    /**
+     * Passes every student to the handler as it is read, without building a list. Only the
+     * requested columns are selected. The statement is forward-only and read-only so the
+     * driver can stream rows instead of buffering the whole result set.
+     */
+    @Override
+    public void streamAllStudents(StudentFields fields, RowHandler handler) throws SQLException, IOException {
+        try (Connection conn = connection();
+             PreparedStatement ps = conn.prepareStatement(STREAM_SQL[fields.mask()])) {
+            ps.setFetchSize(streamFetchSize(conn));
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    int c = 1;
+                    int id = rs.getInt(c++);
+                    String name = fields.has(StudentFields.NAME) ? rs.getString(c++) : null;
+                    String email = fields.has(StudentFields.EMAIL) ? rs.getString(c++) : null;
+                    int age = fields.has(StudentFields.AGE) ? rs.getInt(c) : 0;
+                    handler.row(id, name, email, age);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the lowest and highest id, or null if the table is empty.
+     */
+    public int[] idBounds() throws SQLException {
+        try (Connection conn = connection();
+             PreparedStatement ps = conn.prepareStatement("SELECT MIN(id), MAX(id) FROM students");
+             ResultSet rs = ps.executeQuery()) {
+            if (rs.next()) {
+                int min = rs.getInt(1);
+                if (!rs.wasNull()) {
+                    return new int[]{min, rs.getInt(2)};
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Streams the students with ids from {@code fromId} to {@code toId} inclusive, in id
+     * order. Each range is a primary key range scan, so ranges can be read in parallel.
+     */
+    public void streamStudentRange(int fromId, int toId, RowHandler handler) throws SQLException, IOException {
+        try (Connection conn = connection();
+             PreparedStatement ps = conn.prepareStatement(
+                     "SELECT id, name, email, age FROM students WHERE id BETWEEN ? AND ? ORDER BY id")) {
+            ps.setFetchSize(streamFetchSize(conn));
+            ps.setInt(1, fromId);
+            ps.setInt(2, toId);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    handler.row(rs.getInt(1), rs.getString(2), rs.getString(3), rs.getInt(4));
+                }
+            }
+        }
+    }
+
+    /**
+     * Inserts students with the ids they already have, as one batch in one transaction.
+     * Used to restore a snapshot.
+     */
+    public void restoreStudents(List<Student> students) throws SQLException {
+        restoreStudents(students, false);
+    }
+
+    /**
+     * As {@link #restoreStudents(List)}, into the restore table instead if {@code staged}.
+     */
+    public void restoreStudents(List<Student> students, boolean staged) throws SQLException {
+        if (students.isEmpty()) {
+            return;
+        }
+        String sql = "INSERT INTO " + (staged ? RESTORE_TABLE : "students") + " (id, name, email, age) VALUES (?, ?, ?, ?)";
+        try (Connection conn = connection()) {
+            conn.setAutoCommit(false);
+            try (PreparedStatement ps = conn.prepareStatement(sql)) {
+                for (Student s : students) {
+                    ps.setInt(1, s.getId());
+                    ps.setString(2, s.getName());
+                    ps.setString(3, s.getEmail());
+                    ps.setInt(4, s.getAge());
+                    ps.addBatch();
+                }
+                ps.executeBatch();
+                conn.commit();
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Creates an empty copy of the students table, indexes included, for a restore to fill
+     * while the live table stays as it is. Drops whatever an earlier restore left there.
+     */
+    public void createRestoreTable() throws SQLException {
+        try (Connection conn = connection();
+             Statement st = conn.createStatement()) {
+            st.execute("DROP TABLE IF EXISTS " + RESTORE_TABLE);
+            st.execute("CREATE TABLE " + RESTORE_TABLE + " LIKE students");
+        }
+    }
+
+    public void dropRestoreTable() throws SQLException {
+        try (Connection conn = connection();
+             Statement st = conn.createStatement()) {
+            st.execute("DROP TABLE IF EXISTS " + RESTORE_TABLE);
+        }
+    }
+
+    /**
+     * Puts the filled restore table in place of the students table with one atomic RENAME,
+     * so readers see either all the old rows or all the restored ones, then drops the old.
+     */
+    public void swapInRestoreTable() throws SQLException {
+        try (Connection conn = connection();
+             Statement st = conn.createStatement()) {
+            st.execute("DROP TABLE IF EXISTS " + REPLACED_TABLE);
+            st.execute("RENAME TABLE students TO " + REPLACED_TABLE + ", " + RESTORE_TABLE + " TO students");
+            st.execute("DROP TABLE " + REPLACED_TABLE);
+        }
+    }
+
+    private Student readStudent(int id, StudentFields fields) throws SQLException {
+        try (Connection conn = connection();
+             PreparedStatement ps = conn.prepareStatement(BY_ID_SQL[fields.mask()])) {
+            ps.setInt(1, id);
+            try (ResultSet rs = ps.executeQuery()) {
+                if (rs.next()) {
+                    return mapRow(rs, fields);
+                }
+            }
+        }
+        return null;
+    }
+
+    private Connection connection() throws SQLException {
+        if (pool == null) {
+            return DBConnection.getConnection();
+        }
+        long start = System.nanoTime();
+        try {
+            return pool.borrow();
+        } finally {
+            Metrics.DB_ACQUIRE.recordSince(start);
+        }
+    }
+
+    private static int streamFetchSize(Connection conn) throws SQLException {
+        // Connector/J only streams row by row with this sentinel; otherwise it reads everything into memory
+        if (conn.getMetaData().getURL().startsWith("jdbc:mysql:")) {
+            return Integer.MIN_VALUE;
+        }
+        return STREAM_FETCH_SIZE;
+    }
+
+    /**
+     * Returns one page of students. Filters, sort order and the keyset position are all
+     * applied in SQL, so the cost depends on the page size rather than the table size.
+     * Only the query's fields are selected, plus the id and sort column for the cursor.
+     * <p>
+     * With {@code binaryTextOrder}, name and email are compared as utf8mb4_0900_bin on
+     * MySQL, whose default collation ignores case and accents. Other databases are expected
+     * to compare strings by code point already, as H2 does.
+     */
+    @Override
+    public StudentPage findStudents(StudentQuery query) throws SQLException {
+        try (Connection conn = connection()) {
+            return findStudents(conn, query);
+        }
+    }
+
+    private StudentPage findStudents(Connection conn, StudentQuery query) throws SQLException {
+        StudentFields fields = query.getFields().with(StudentFields.ID).with(StudentFields.forSort(query.getSortField()));
+        StringBuilder sql = new StringBuilder("SELECT ").append(fields.columns()).append(" FROM students WHERE 1 = 1");
+        List<Object> params = new ArrayList<>();
+
+        if (query.getMinAge() != null) {
+            sql.append(" AND age >= ?");
+            params.add(query.getMinAge());
+        }
+        if (query.getMaxAge() != null) {
+            sql.append(" AND age <= ?");
+            params.add(query.getMaxAge());
+        }
+        if (query.getNamePrefix() != null) {
+            sql.append(" AND name LIKE ? ESCAPE '!'");
+            params.add(likePrefix(query.getNamePrefix()));
+        }
+        if (query.getEmailPrefix() != null) {
+            sql.append(" AND email LIKE ? ESCAPE '!'");
+            params.add(likePrefix(query.getEmailPrefix()));
+        }
+
+        String column = query.getSortField().getColumn();
+        boolean text = query.getSortField() == StudentQuery.SortField.NAME
+                || query.getSortField() == StudentQuery.SortField.EMAIL;
+        if (binaryTextOrder && text && conn.getMetaData().getURL().startsWith("jdbc:mysql:")) {
+            // Not utf8mb4_bin: it ignores trailing spaces, and Java does not
+            column += " COLLATE utf8mb4_0900_bin";
+        }
+        String cmp = query.isDescending() ? "<" : ">";
+        String dir = query.isDescending() ? "DESC" : "ASC";
+        if (query.hasPosition()) {
+            Object afterValue = sortValue(query);
+            if (query.getSortField() == StudentQuery.SortField.ID) {
+                sql.append(" AND id ").append(cmp).append(" ?");
+                params.add(query.getAfterId());
+            } else if (afterValue == null) {
+                // NULLs sort first, as on MySQL and H2: ascending, every other value follows
+                // them; descending, they come last
+                String nullable = query.getSortField().getColumn();
+                sql.append(query.isDescending()
+                        ? " AND (" + nullable + " IS NULL AND id < ?)"
+                        : " AND (" + nullable + " IS NOT NULL OR id > ?)");
+                params.add(query.getAfterId());
+            } else {
+                sql.append(" AND (").append(column).append(' ').append(cmp).append(" ? OR (")
+                        .append(column).append(" = ? AND id ").append(cmp).append(" ?)");
+                if (query.isDescending()) {
+                    sql.append(" OR ").append(query.getSortField().getColumn()).append(" IS NULL");
+                }
+                sql.append(')');
+                params.add(afterValue);
+                params.add(afterValue);
+                params.add(query.getAfterId());
+            }
+        }
+        sql.append(" ORDER BY ");
+        if (query.getSortField() != StudentQuery.SortField.ID) {
+            sql.append(column).append(' ').append(dir).append(", ");
+        }
+        sql.append("id ").append(dir).append(" LIMIT ?");
+        // One extra row tells us whether there is a next page
+        params.add(query.getLimit() + 1);
+
+        List<Student> list = new ArrayList<>(Math.min(query.getLimit() + 1, 256));
+        try (PreparedStatement ps = conn.prepareStatement(sql.toString())) {
+            for (int i = 0; i < params.size(); i++) {
+                ps.setObject(i + 1, params.get(i));
+            }
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    list.add(mapRow(rs, fields));
+                }
+            }
+        }
+
+        String nextCursor = null;
+        if (list.size() > query.getLimit()) {
+            list.remove(list.size() - 1);
+            nextCursor = query.cursorAfter(list.get(list.size() - 1));
+        }
+        return new StudentPage(list, nextCursor);
+    }
+
+    /**
+     * Runs the operations as JDBC batches in a single transaction. Consecutive operations of
+     * the same type share one batch, so order is preserved. If any statement fails the whole
+     * transaction is rolled back and every operation is reported as failed.
+     */
+    @Override
+    public List<BulkResult> executeBulk(List<BulkOperation> ops) throws SQLException {
+        List<BulkResult> results = new ArrayList<>(ops.size());
+        try (Connection conn = connection()) {
+            conn.setAutoCommit(false);
+            try (PreparedStatement insert = explicitIds
+                         ? conn.prepareStatement("INSERT INTO students (name, email, age, id) VALUES (?, ?, ?, ?)")
+                         : conn.prepareStatement("INSERT INTO students (name, email, age) VALUES (?, ?, ?)", Statement.RETURN_GENERATED_KEYS);
+                 PreparedStatement update = conn.prepareStatement(
+                         "UPDATE students SET name = ?, email = ?, age = ? WHERE id = ?");
+                 PreparedStatement delete = conn.prepareStatement("DELETE FROM students WHERE id = ?")) {
+                int runStart = 0;
+                for (int i = 0; i < ops.size(); i++) {
+                    BulkOperation op = ops.get(i);
+                    if (i > runStart && op.getType() != ops.get(runStart).getType()) {
+                        flushRun(ops, runStart, i, insert, update, delete, results, explicitIds);
+                        runStart = i;
+                    }
+                    Student s = op.getStudent();
+                    switch (op.getType()) {
+                        case CREATE -> {
+                            insert.setString(1, s.getName());
+                            insert.setString(2, s.getEmail());
+                            insert.setInt(3, s.getAge());
+                            if (explicitIds) {
+                                insert.setInt(4, s.getId());
+                            }
+                            insert.addBatch();
+                        }
+                        case UPDATE -> {
+                            update.setString(1, s.getName());
+                            update.setString(2, s.getEmail());
+                            update.setInt(3, s.getAge());
+                            update.setInt(4, s.getId());
+                            update.addBatch();
+                        }
+                        case DELETE -> {
+                            delete.setInt(1, s.getId());
+                            delete.addBatch();
+                        }
+                    }
+                }
+                if (runStart < ops.size()) {
+                    flushRun(ops, runStart, ops.size(), insert, update, delete, results, explicitIds);
+                }
+                conn.commit();
+            } catch (SQLException e) {
+                conn.rollback();
+                results.clear();
+                for (BulkOperation op : ops) {
+                    results.add(new BulkResult(op.getIndex(), op.getType(), 500, op.getStudent().getId(),
+                            "Rolled back: " + e.getMessage()));
+                }
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Inserts all rows with a single multi-row INSERT, so they succeed or fail together.
+     */
+    @Override
+    public void insertStudents(List<Student> students) throws SQLException {
+        if (students.isEmpty()) {
+            return;
+        }
+        if (explicitIds) {
+            restoreStudents(students);
+            return;
+        }
+        StringBuilder sql = new StringBuilder("INSERT INTO students (name, email, age) VALUES ");
+        for (int i = 0; i < students.size(); i++) {
+            sql.append(i == 0 ? "(?, ?, ?)" : ", (?, ?, ?)");
+        }
+        try (Connection conn = connection();
+             PreparedStatement ps = conn.prepareStatement(sql.toString(), Statement.RETURN_GENERATED_KEYS)) {
+            int p = 1;
+            for (Student s : students) {
+                ps.setString(p++, s.getName());
+                ps.setString(p++, s.getEmail());
+                ps.setInt(p++, s.getAge());
+            }
+            ps.executeUpdate();
+            try (ResultSet keys = ps.getGeneratedKeys()) {
+                for (Student s : students) {
+                    if (!keys.next()) {
+                        break;
+                    }
+                    s.setId(keys.getInt(1));
+                }
+            }
+        }
+    }
+
+    private static void flushRun(List<BulkOperation> ops, int from, int to,
+                                 PreparedStatement insert, PreparedStatement update, PreparedStatement delete,
+                                 List<BulkResult> results, boolean explicitIds) throws SQLException {
+        BulkOperation.Type type = ops.get(from).getType();
+        if (type == BulkOperation.Type.CREATE && explicitIds) {
+            insert.executeBatch();
+            for (int i = from; i < to; i++) {
+                results.add(new BulkResult(ops.get(i).getIndex(), type, 201, ops.get(i).getStudent().getId(), null));
+            }
+            return;
+        }
+        if (type == BulkOperation.Type.CREATE) {
+            insert.executeBatch();
+            try (ResultSet keys = insert.getGeneratedKeys()) {
+                for (int i = from; i < to; i++) {
+                    int id = keys.next() ? keys.getInt(1) : 0;
+                    results.add(new BulkResult(ops.get(i).getIndex(), type, 201, id, null));
+                }
+            }
+            return;
+        }
+        int[] counts = (type == BulkOperation.Type.UPDATE ? update : delete).executeBatch();
+        for (int i = from; i < to; i++) {
+            int count = counts[i - from];
+            BulkOperation op = ops.get(i);
+            if (count == 0) {
+                results.add(new BulkResult(op.getIndex(), type, 404, op.getStudent().getId(), "Student not found"));
+            } else {
+                results.add(new BulkResult(op.getIndex(), type, 200, op.getStudent().getId(), null));
+            }
+        }
+    }
+
+    private static Object sortValue(StudentQuery query) {
+        if (query.getSortField() == StudentQuery.SortField.AGE) {
+            try {
+                return Integer.valueOf(query.getAfterValue());
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Malformed cursor");
+            }
+        }
+        return query.getAfterValue();
+    }
 
-class StudentDAO {
+    private static String likePrefix(String prefix) {
+        return prefix.replace("!", "!!").replace("%", "!%").replace("_", "!_") + "%";
+    }
 
+    /**
+     * Reads a row selected with {@code fields.columns()}, which always starts with the id.
+     */
+    private static Student mapRow(ResultSet rs, StudentFields fields) throws SQLException {
+        Student s = new Student();
+        int c = 1;
+        s.setId(rs.getInt(c++));
+        if (fields.has(StudentFields.NAME)) {
+            s.setName(rs.getString(c++));
+        }
+        if (fields.has(StudentFields.EMAIL)) {
+            s.setEmail(rs.getString(c++));
+        }
+        if (fields.has(StudentFields.AGE)) {
+            s.setAge(rs.getInt(c));
+        }
+        return s;
+    }
 }
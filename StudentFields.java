@@ -0,0 +1,116 @@
+package com.example.sms;
+
+import java.util.Locale;
+
+/**
+ * The student fields a response asks for, from a {@code fields=id,name} parameter. Stores
+ * that can read fewer columns read only these, and encoders write only these keys.
+ * <p>
+ * There are only sixteen shapes, so each one is a shared instance and {@link #mask()} can
+ * index per-shape caches.
+ */
+public final class StudentFields {
+    public static final int ID = 1;
+    public static final int NAME = 2;
+    public static final int EMAIL = 4;
+    public static final int AGE = 8;
+    static final int SHAPES = 16;
+
+    private static final StudentFields[] BY_MASK = new StudentFields[SHAPES];
+
+    static {
+        for (int mask = 0; mask < SHAPES; mask++) {
+            BY_MASK[mask] = new StudentFields(mask);
+        }
+    }
+
+    public static final StudentFields ALL = BY_MASK[ID | NAME | EMAIL | AGE];
+
+    private final int mask;
+
+    private StudentFields(int mask) {
+        this.mask = mask;
+    }
+
+    /**
+     * Parses a comma-separated list of field names; null or blank means every field.
+     */
+    public static StudentFields parse(String param) {
+        if (param == null || param.isBlank()) {
+            return ALL;
+        }
+        int mask = 0;
+        for (String name : param.split(",")) {
+            switch (name.trim().toLowerCase(Locale.ROOT)) {
+                case "id" -> mask |= ID;
+                case "name" -> mask |= NAME;
+                case "email" -> mask |= EMAIL;
+                case "age" -> mask |= AGE;
+                case "" -> { }
+                default -> throw new IllegalArgumentException("Unknown field: " + name.trim());
+            }
+        }
+        if (mask == 0) {
+            throw new IllegalArgumentException("fields must name at least one field");
+        }
+        return BY_MASK[mask];
+    }
+
+    public static StudentFields of(int mask) {
+        return BY_MASK[mask & (SHAPES - 1)];
+    }
+
+    public boolean has(int field) {
+        return (mask & field) != 0;
+    }
+
+    public boolean isAll() {
+        return this == ALL;
+    }
+
+    public int mask() {
+        return mask;
+    }
+
+    public StudentFields with(int field) {
+        return BY_MASK[mask | field];
+    }
+
+    /**
+     * The field for a sort order, which a page needs to build its cursor.
+     */
+    public static int forSort(StudentQuery.SortField sortField) {
+        return switch (sortField) {
+            case ID -> ID;
+            case NAME -> NAME;
+            case EMAIL -> EMAIL;
+            case AGE -> AGE;
+        };
+    }
+
+    /**
+     * Column list for a SELECT, always in id, name, email, age order.
+     */
+    public String columns() {
+        return join(", ");
+    }
+
+    @Override
+    public String toString() {
+        return join(",");
+    }
+
+    private String join(String separator) {
+        StringBuilder sb = new StringBuilder();
+        String[] names = {"id", "name", "email", "age"};
+        for (int i = 0; i < names.length; i++) {
+            if ((mask & (1 << i)) != 0) {
+                if (sb.length() > 0) {
+                    sb.append(separator);
+                }
+                sb.append(names[i]);
+            }
+        }
+        return sb.toString();
+    }
+}
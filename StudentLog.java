@@ -0,0 +1,558 @@
+package com.example.sms;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.zip.CRC32C;
+
+/**
+ * Append-only log of student changes, kept in fixed-size memory-mapped segment files
+ * named {@code students-<number>.log}.
+ * <p>
+ * A segment starts with a 32-byte header (magic, version, segment number, highest id issued
+ * when the segment was created) followed by frames {@code [int length][int crc32c][payload]}.
+ * A payload holds one or more operations, so a multi-row change is all-or-nothing on recovery:
+ * <pre>
+ *   PUT    [byte 1][int id][int age][name][email]
+ *   DELETE [byte 2][int id]
+ * </pre>
+ * Strings are an unsigned short byte count (0xFFFF for null) followed by UTF-8 bytes.
+ * A frame that does not fit in the current segment starts a new one; the unused tail stays
+ * zero, which reads as the end of the segment. A frame whose checksum does not match ends
+ * the last segment (a write torn by a crash); anywhere else it is reported as corruption.
+ * Opening zeroes whatever follows the last good frame, so leftovers of a torn write can
+ * neither be replayed nor trip the check once later frames have been appended over them.
+ * <p>
+ * A location is {@code segmentNumber << 32 | offset} of an operation. Appends, segment
+ * removal and reads of the active segment must be serialized by the caller.
+ * {@link #awaitDurable} can be called from any thread.
+ */
+final class StudentLog implements Closeable {
+    static final byte PUT = 1;
+    static final byte DELETE = 2;
+
+    private static final int HEADER_SIZE = 32;
+    private static final int FRAME_OVERHEAD = 8;
+    private static final int MAGIC = 0x534D534C;
+    private static final int VERSION = 1;
+    private static final int NULL_STRING = 0xFFFF;
+    private static final String PREFIX = "students-";
+    private static final String SUFFIX = ".log";
+
+    /**
+     * Receives each operation found while scanning; names and emails are not decoded.
+     */
+    interface OpVisitor {
+        void op(long location, int size, byte type, int id);
+    }
+
+    static final class Segment {
+        final long number;
+        final Path path;
+        final FileChannel channel;
+        final MappedByteBuffer buf;
+        // Offset just past the last frame
+        int end;
+        // Operation bytes written, and those still referenced; the second is kept by the store
+        long totalBytes;
+        long liveBytes;
+        // Delete operations, which hide older records rather than hold data
+        long tombstoneBytes;
+
+        Segment(long number, Path path, FileChannel channel, MappedByteBuffer buf) {
+            this.number = number;
+            this.path = path;
+            this.channel = channel;
+            this.buf = buf;
+        }
+
+        /**
+         * Share of the segment that compaction would have to copy. Tombstones count as live
+         * unless the segment is the oldest, since until then an older segment may still hold
+         * a record they hide.
+         */
+        double liveRatio(boolean oldest) {
+            long live = oldest ? liveBytes : liveBytes + tombstoneBytes;
+            return totalBytes == 0 ? 1.0 : (double) live / totalBytes;
+        }
+    }
+
+    /**
+     * Operations encoded into one frame. Reused by the single appending thread.
+     */
+    static final class Frame {
+        private byte[] buf = new byte[4096];
+        private int len;
+        private int[] opOffsets = new int[64];
+        private int count;
+        private int deleteBytes;
+        private long base;
+
+        void reset() {
+            len = 0;
+            count = 0;
+            deleteBytes = 0;
+        }
+
+        int count() {
+            return count;
+        }
+
+        int length() {
+            return len;
+        }
+
+        void put(int id, String name, String email, int age) {
+            startOp(PUT);
+            putInt(id);
+            putInt(age);
+            putString(name);
+            putString(email);
+        }
+
+        void delete(int id) {
+            startOp(DELETE);
+            putInt(id);
+            deleteBytes += 5;
+        }
+
+        /**
+         * Location of the i-th operation, valid after the frame was appended.
+         */
+        long location(int i) {
+            return base + opOffsets[i];
+        }
+
+        int size(int i) {
+            return (i + 1 < count ? opOffsets[i + 1] : len) - opOffsets[i];
+        }
+
+        private void startOp(byte type) {
+            if (count == opOffsets.length) {
+                opOffsets = Arrays.copyOf(opOffsets, count * 2);
+            }
+            opOffsets[count++] = len;
+            ensure(1);
+            buf[len++] = type;
+        }
+
+        private void putInt(int v) {
+            ensure(4);
+            buf[len++] = (byte) (v >>> 24);
+            buf[len++] = (byte) (v >>> 16);
+            buf[len++] = (byte) (v >>> 8);
+            buf[len++] = (byte) v;
+        }
+
+        private void putString(String s) {
+            if (s == null) {
+                ensure(2);
+                buf[len++] = (byte) (NULL_STRING >>> 8);
+                buf[len++] = (byte) NULL_STRING;
+                return;
+            }
+            byte[] b = s.getBytes(StandardCharsets.UTF_8);
+            if (b.length >= NULL_STRING) {
+                throw new IllegalArgumentException("Text too long to store: " + b.length + " bytes");
+            }
+            ensure(2 + b.length);
+            buf[len++] = (byte) (b.length >>> 8);
+            buf[len++] = (byte) b.length;
+            System.arraycopy(b, 0, buf, len, b.length);
+            len += b.length;
+        }
+
+        private void ensure(int extra) {
+            if (len + extra > buf.length) {
+                buf = Arrays.copyOf(buf, Math.max(buf.length * 2, len + extra));
+            }
+        }
+    }
+
+    private final Path dir;
+    private final int segmentSize;
+    private final TreeMap<Long, Segment> segments = new TreeMap<>();
+    private final CRC32C appendCrc = new CRC32C();
+    private volatile Segment active;
+    // Bytes appended since open, across segments; the durability watermark is in the same units
+    private volatile long appended;
+    private int headerLastId;
+
+    private final Object syncMonitor = new Object();
+    private boolean syncing;
+    private long durable;
+    private volatile IOException syncFailure;
+
+    StudentLog(Path dir, int segmentSize) {
+        if (segmentSize < 64 * 1024) {
+            throw new IllegalArgumentException("segmentSize must be at least 64 KB");
+        }
+        this.dir = dir;
+        this.segmentSize = segmentSize;
+    }
+
+    /**
+     * Maps every segment, reports each operation to the visitor in log order, and prepares
+     * the last segment for appends. Returns the highest id recorded in any segment header.
+     */
+    int open(OpVisitor visitor) throws IOException {
+        Files.createDirectories(dir);
+        List<Long> numbers = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, PREFIX + "*" + SUFFIX)) {
+            for (Path p : files) {
+                String name = p.getFileName().toString();
+                try {
+                    numbers.add(Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length())));
+                } catch (NumberFormatException e) {
+                    // Not one of ours
+                }
+            }
+        }
+        numbers.sort(null);
+        for (int i = 0; i < numbers.size(); i++) {
+            boolean last = i == numbers.size() - 1;
+            Segment seg = openSegment(numbers.get(i), last);
+            segments.put(seg.number, seg);
+            scan(seg, visitor, true, last);
+            if (last) {
+                active = seg;
+            }
+        }
+        if (active == null) {
+            active = createSegment(1, 0);
+        }
+        return headerLastId;
+    }
+
+    /**
+     * Reports every operation in a sealed segment. Sealed segments never change, so this
+     * needs no lock.
+     */
+    void scan(Segment seg, OpVisitor visitor) throws IOException {
+        scan(seg, visitor, false, false);
+    }
+
+    /**
+     * While opening, also records where the segment ends, and repairs a torn tail if this is
+     * the last segment.
+     */
+    private void scan(Segment seg, OpVisitor visitor, boolean opening, boolean last) throws IOException {
+        MappedByteBuffer b = seg.buf;
+        CRC32C crc = new CRC32C();
+        int limit = b.capacity();
+        int pos = HEADER_SIZE;
+        byte[] payload = new byte[256];
+        long total = 0;
+        long tombstones = 0;
+        while (pos + FRAME_OVERHEAD <= limit) {
+            int len = b.getInt(pos);
+            if (len == 0) {
+                break;
+            }
+            boolean intact = len > 0 && len <= limit - pos - FRAME_OVERHEAD;
+            if (intact) {
+                if (payload.length < len) {
+                    payload = new byte[len];
+                }
+                b.get(pos + FRAME_OVERHEAD, payload, 0, len);
+                crc.reset();
+                crc.update(payload, 0, len);
+                intact = (int) crc.getValue() == b.getInt(pos + 4);
+            }
+            if (!intact) {
+                if (!opening || !last) {
+                    throw new IOException("Corrupt log segment " + seg.path + " at offset " + pos);
+                }
+                // Torn write from a crash; the tail is cleared below
+                break;
+            }
+            int op = pos + FRAME_OVERHEAD;
+            int frameEnd = op + len;
+            while (op < frameEnd) {
+                int size = opSize(b, op);
+                byte type = b.get(op);
+                visitor.op(location(seg.number, op), size, type, b.getInt(op + 1));
+                total += size;
+                if (type == DELETE) {
+                    tombstones += size;
+                }
+                op += size;
+            }
+            pos = frameEnd;
+        }
+        if (opening) {
+            seg.end = pos;
+            seg.totalBytes = total;
+            seg.tombstoneBytes = tombstones;
+            if (last) {
+                clearTail(b, pos);
+            }
+        }
+    }
+
+    /**
+     * Zeroes the segment from {@code pos} on, so later appends start from clean space. Only
+     * bytes that are set are written, which leaves the pages of a clean tail untouched.
+     */
+    private static void clearTail(MappedByteBuffer b, int pos) {
+        boolean dirty = false;
+        int limit = b.capacity();
+        int i = pos;
+        for (; i < limit && (i & 7) != 0; i++) {
+            if (b.get(i) != 0) {
+                b.put(i, (byte) 0);
+                dirty = true;
+            }
+        }
+        for (; i + 8 <= limit; i += 8) {
+            if (b.getLong(i) != 0) {
+                b.putLong(i, 0);
+                dirty = true;
+            }
+        }
+        for (; i < limit; i++) {
+            if (b.get(i) != 0) {
+                b.put(i, (byte) 0);
+                dirty = true;
+            }
+        }
+        if (dirty) {
+            b.force();
+        }
+    }
+
+    /**
+     * Writes the frame at the end of the log and returns the position to pass to
+     * {@link #awaitDurable}. {@code lastId} is recorded in the header if a new segment is started.
+     */
+    long append(Frame frame, int lastId) throws IOException {
+        if (syncFailure != null) {
+            throw new IOException("Log is unusable after a failed fsync", syncFailure);
+        }
+        int len = frame.length();
+        if (HEADER_SIZE + FRAME_OVERHEAD + len > segmentSize) {
+            throw new IOException("Change of " + len + " bytes does not fit in a log segment");
+        }
+        Segment seg = active;
+        if (seg.end + FRAME_OVERHEAD + len > segmentSize) {
+            // Seal the full segment before anything lands in the next one
+            force(seg);
+            seg = createSegment(seg.number + 1, lastId);
+            active = seg;
+        }
+        int pos = seg.end;
+        appendCrc.reset();
+        appendCrc.update(frame.buf, 0, len);
+        seg.buf.put(pos + FRAME_OVERHEAD, frame.buf, 0, len);
+        seg.buf.putInt(pos + 4, (int) appendCrc.getValue());
+        seg.buf.putInt(pos, len);
+        seg.end = pos + FRAME_OVERHEAD + len;
+        seg.totalBytes += len;
+        seg.tombstoneBytes += frame.deleteBytes;
+        frame.base = location(seg.number, pos + FRAME_OVERHEAD);
+        appended += FRAME_OVERHEAD + len;
+        return appended;
+    }
+
+    /**
+     * Returns once everything up to {@code position} is on disk. Concurrent callers share
+     * fsyncs: whoever finds none in progress forces the file for all writes so far, and the
+     * others wait for it. After a failed fsync the log refuses to report anything as durable.
+     */
+    void awaitDurable(long position) throws IOException {
+        synchronized (syncMonitor) {
+            while (true) {
+                if (syncFailure != null) {
+                    throw new IOException("Log is unusable after a failed fsync", syncFailure);
+                }
+                if (durable >= position) {
+                    return;
+                }
+                if (!syncing) {
+                    syncing = true;
+                    break;
+                }
+                try {
+                    syncMonitor.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted waiting for fsync");
+                }
+            }
+        }
+        // Read the watermark before the segment: a roll forces the old segment first
+        long target = appended;
+        Segment seg = active;
+        IOException failure = null;
+        try {
+            force(seg);
+        } catch (IOException e) {
+            failure = e;
+        }
+        synchronized (syncMonitor) {
+            syncing = false;
+            if (failure == null) {
+                durable = Math.max(durable, target);
+            } else {
+                syncFailure = failure;
+            }
+            syncMonitor.notifyAll();
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    Student read(long location) {
+        Segment seg = segments.get(location >>> 32);
+        MappedByteBuffer b = seg.buf;
+        int pos = (int) location;
+        int id = b.getInt(pos + 1);
+        int age = b.getInt(pos + 5);
+        pos += 9;
+        String name = readString(b, pos);
+        pos += 2 + stringBytes(b, pos);
+        String email = readString(b, pos);
+        return new Student(id, name, email, age);
+    }
+
+    int opSize(long location) {
+        return opSize(segments.get(location >>> 32).buf, (int) location);
+    }
+
+    Segment segment(long location) {
+        return segments.get(location >>> 32);
+    }
+
+    List<Segment> sealedSegments() {
+        List<Segment> list = new ArrayList<>(segments.values());
+        list.remove(active);
+        return list;
+    }
+
+    boolean isOldest(Segment seg) {
+        return segments.firstKey() == seg.number;
+    }
+
+    /**
+     * Deletes a sealed segment whose data has been copied forward. The caller makes sure the
+     * copies are durable first. A file the OS will not delete yet stays listed and is retried
+     * by the next compaction.
+     */
+    boolean drop(Segment seg) {
+        try {
+            Files.delete(seg.path);
+        } catch (IOException e) {
+            return false;
+        }
+        segments.remove(seg.number);
+        try {
+            seg.channel.close();
+        } catch (IOException e) {
+            // Already deleted; nothing left to lose
+        }
+        return true;
+    }
+
+    /**
+     * Forces the active segment regardless of the caller's durability mode.
+     */
+    void force() throws IOException {
+        force(active);
+    }
+
+    @Override
+    public void close() throws IOException {
+        force(active);
+        for (Segment seg : segments.values()) {
+            seg.channel.close();
+        }
+    }
+
+    private static void force(Segment seg) throws IOException {
+        try {
+            seg.buf.force();
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private Segment openSegment(long number, boolean writable) throws IOException {
+        Path path = segmentPath(number);
+        FileChannel ch = writable
+                ? FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)
+                : FileChannel.open(path, StandardOpenOption.READ);
+        long size = writable ? Math.max(segmentSize, ch.size()) : ch.size();
+        if (size < HEADER_SIZE || size > Integer.MAX_VALUE) {
+            ch.close();
+            throw new IOException("Bad log segment size: " + path);
+        }
+        MappedByteBuffer buf = ch.map(writable ? FileChannel.MapMode.READ_WRITE : FileChannel.MapMode.READ_ONLY, 0, size);
+        if (buf.getInt(0) != MAGIC || buf.getInt(4) != VERSION || buf.getLong(8) != number) {
+            ch.close();
+            throw new IOException("Not a student log segment: " + path);
+        }
+        headerLastId = Math.max(headerLastId, buf.getInt(16));
+        return new Segment(number, path, ch, buf);
+    }
+
+    private Segment createSegment(long number, int lastId) throws IOException {
+        Path path = segmentPath(number);
+        FileChannel ch = FileChannel.open(path, StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        MappedByteBuffer buf = ch.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+        buf.putInt(0, MAGIC);
+        buf.putInt(4, VERSION);
+        buf.putLong(8, number);
+        buf.putInt(16, lastId);
+        buf.force();
+        Segment seg = new Segment(number, path, ch, buf);
+        seg.end = HEADER_SIZE;
+        segments.put(number, seg);
+        return seg;
+    }
+
+    private Path segmentPath(long number) {
+        return dir.resolve(String.format("%s%08d%s", PREFIX, number, SUFFIX));
+    }
+
+    private static long location(long segment, int offset) {
+        return segment << 32 | offset;
+    }
+
+    private static int opSize(MappedByteBuffer b, int pos) {
+        if (b.get(pos) == DELETE) {
+            return 5;
+        }
+        int namePos = pos + 9;
+        int emailPos = namePos + 2 + stringBytes(b, namePos);
+        return emailPos + 2 + stringBytes(b, emailPos) - pos;
+    }
+
+    private static int stringBytes(MappedByteBuffer b, int pos) {
+        int n = b.getShort(pos) & 0xFFFF;
+        return n == NULL_STRING ? 0 : n;
+    }
+
+    private static String readString(MappedByteBuffer b, int pos) {
+        int n = b.getShort(pos) & 0xFFFF;
+        if (n == NULL_STRING) {
+            return null;
+        }
+        byte[] bytes = new byte[n];
+        b.get(pos + 2, bytes, 0, n);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
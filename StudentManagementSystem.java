@@ -1,5 +1,12 @@
 package com.example.sms;
 
+import java.io.BufferedReader;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.sql.SQLException;
 import java.util.List;
 import java.util.Scanner;
@@ -7,9 +14,13 @@ import java.util.Scanner;
 public class StudentManagementSystem {
 
     private static final Scanner scanner = new Scanner(System.in);
-    private static final StudentDAO dao = new StudentDAO();
+    private static final StudentStore dao = StudentStore.create();
 
     public static void main(String[] args) {
+        if (args.length > 0) {
+            runCommand(args);
+            return;
+        }
         System.out.println("Welcome to Student Management System");
         int choice;
         do {
@@ -38,6 +49,71 @@ public class StudentManagementSystem {
         } while (choice != 0);
     }
 
+    /**
+     * Non-interactive mode:
+     *   export &lt;file.csv&gt;
+     *   import &lt;file.csv&gt; [--skip N] [--batch N] [--continue]
+     */
+    private static void runCommand(String[] args) {
+        try {
+            switch (args[0]) {
+                case "export" -> exportCsv(Path.of(args[1]));
+                case "import" -> importCsv(args);
+                default -> System.err.println("Usage: export <file.csv> | import <file.csv> [--skip N] [--batch N] [--continue]");
+            }
+        } catch (ArrayIndexOutOfBoundsException e) {
+            System.err.println("Missing argument");
+        } catch (IllegalArgumentException e) {
+            System.err.println("Invalid argument: " + e.getMessage());
+        } catch (IOException e) {
+            System.err.println("I/O Error: " + e.getMessage());
+        } catch (SQLException e) {
+            System.err.println("Database Error: " + e.getMessage());
+        }
+    }
+
+    private static void exportCsv(Path file) throws IOException, SQLException {
+        long[] rows = new long[1];
+        try (OutputStream os = new FileOutputStream(file.toFile());
+             CsvWriter csv = new CsvWriter(os)) {
+            csv.writeHeader();
+            dao.streamAllStudents((id, name, email, age) -> {
+                csv.writeStudent(id, name, email, age);
+                rows[0]++;
+            });
+        }
+        System.out.println("Exported " + rows[0] + " students to " + file);
+    }
+
+    private static void importCsv(String[] args) throws IOException {
+        Path file = Path.of(args[1]);
+        long skip = 0;
+        int batchSize = 1000;
+        boolean continueOnError = false;
+        for (int i = 2; i < args.length; i++) {
+            switch (args[i]) {
+                case "--skip" -> skip = Long.parseLong(args[++i]);
+                case "--batch" -> batchSize = Integer.parseInt(args[++i]);
+                case "--continue" -> continueOnError = true;
+                default -> throw new IllegalArgumentException("Unknown option: " + args[i]);
+            }
+        }
+        CsvImporter importer = new CsvImporter(dao, batchSize, continueOnError, 10_000);
+        CsvImporter.Result result;
+        try (BufferedReader in = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            result = importer.importFrom(in, skip, progress ->
+                    System.out.println("... " + progress.rowsRead + " rows read, " + progress.imported + " imported"));
+        }
+        System.out.println("Rows read: " + result.rowsRead + ", imported: " + result.imported
+                + ", rejected: " + result.rejected + ", failed: " + result.failedRows);
+        for (String error : result.errors) {
+            System.out.println("  " + error);
+        }
+        if (result.stopped) {
+            System.out.println("Import stopped. Resume with: import " + file + " --skip " + result.resumeAfterRow);
+        }
+    }
+
     private static void addStudent() throws SQLException {
         System.out.print("Enter name: ");
         String name = scanner.nextLine();
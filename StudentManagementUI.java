@@ -2,14 +2,13 @@ package com.example.sms;
 
 import java.awt.*;
 import java.sql.SQLException;
-import java.util.List;
+import java.util.concurrent.ExecutionException;
 import javax.swing.*;
-import javax.swing.table.DefaultTableModel;
 
 public class StudentManagementUI extends JFrame {
 
-    private final StudentDAO dao = new StudentDAO();
-    private final DefaultTableModel tableModel = new DefaultTableModel(new String[]{"ID", "Name", "Email", "Age"}, 0);
+    private final StudentStore dao = StudentStore.create();
+    private final StudentTableModel tableModel;
     private JTextField idField;
     private JTextField nameField;
     private JTextField emailField;
@@ -22,6 +21,7 @@ public class StudentManagementUI extends JFrame {
         setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
         setLayout(new BorderLayout());
 
+        tableModel = new StudentTableModel(dao, message -> JOptionPane.showMessageDialog(this, message));
         JTable table = new JTable(tableModel);
         JScrollPane scrollPane = new JScrollPane(table);
         add(scrollPane, BorderLayout.CENTER);
@@ -54,7 +54,7 @@ public class StudentManagementUI extends JFrame {
         buttonPanel.add(refreshBtn);
         buttonPanel.add(clearBtn);
 
-        add(form, BorderLayout.CENTER);
+        add(form, BorderLayout.NORTH);
         add(buttonPanel, BorderLayout.SOUTH);
 
         addBtn.addActionListener(e -> {
@@ -66,14 +66,14 @@ public class StudentManagementUI extends JFrame {
                     JOptionPane.showMessageDialog(this, "Please fill all fields!");
                     return;
                 }
-                dao.addStudent(new Student(0, name, email, age));
-                JOptionPane.showMessageDialog(this, "Student added successfully!");
-                clearFields();
-                loadTable();
+                Student student = new Student(0, name, email, age);
+                write(() -> dao.addStudent(student), () -> {
+                    tableModel.added(student);
+                    JOptionPane.showMessageDialog(this, "Student added successfully!");
+                    clearFields();
+                });
             } catch (NumberFormatException ex) {
                 JOptionPane.showMessageDialog(this, "Invalid age format!");
-            } catch (SQLException ex) {
-                JOptionPane.showMessageDialog(this, "Database error: " + ex.getMessage());
             }
         });
 
@@ -87,14 +87,14 @@ public class StudentManagementUI extends JFrame {
                     JOptionPane.showMessageDialog(this, "Please fill all fields!");
                     return;
                 }
-                dao.updateStudent(new Student(id, name, email, age));
-                JOptionPane.showMessageDialog(this, "Student updated successfully!");
-                clearFields();
-                loadTable();
+                Student student = new Student(id, name, email, age);
+                write(() -> dao.updateStudent(student), () -> {
+                    tableModel.updated(student);
+                    JOptionPane.showMessageDialog(this, "Student updated successfully!");
+                    clearFields();
+                });
             } catch (NumberFormatException ex) {
                 JOptionPane.showMessageDialog(this, "Invalid input format!");
-            } catch (SQLException ex) {
-                JOptionPane.showMessageDialog(this, "Database error: " + ex.getMessage());
             }
         });
 
@@ -103,35 +103,49 @@ public class StudentManagementUI extends JFrame {
                 int id = Integer.parseInt(idField.getText());
                 int confirm = JOptionPane.showConfirmDialog(this, "Are you sure?");
                 if (confirm == JOptionPane.YES_OPTION) {
-                    dao.deleteStudent(id);
-                    JOptionPane.showMessageDialog(this, "Student deleted successfully!");
-                    clearFields();
-                    loadTable();
+                    write(() -> dao.deleteStudent(id), () -> {
+                        tableModel.removed(id);
+                        JOptionPane.showMessageDialog(this, "Student deleted successfully!");
+                        clearFields();
+                    });
                 }
             } catch (NumberFormatException ex) {
                 JOptionPane.showMessageDialog(this, "Please enter a valid ID!");
-            } catch (SQLException ex) {
-                JOptionPane.showMessageDialog(this, "Database error: " + ex.getMessage());
             }
         });
 
-        refreshBtn.addActionListener(e -> loadTable());
+        refreshBtn.addActionListener(e -> tableModel.refresh());
 
         clearBtn.addActionListener(e -> clearFields());
+    }
 
-        loadTable();
+    private interface StoreWrite {
+        void run() throws SQLException;
     }
 
-    private void loadTable() {
-        try {
-            List<Student> list = dao.getAllStudents();
-            tableModel.setRowCount(0);
-            for (Student s : list) {
-                tableModel.addRow(new Object[]{s.getId(), s.getName(), s.getEmail(), s.getAge()});
+    /**
+     * Runs a write off the event dispatch thread, then {@code onSuccess} back on it.
+     */
+    private void write(StoreWrite call, Runnable onSuccess) {
+        new SwingWorker<Void, Void>() {
+            @Override
+            protected Void doInBackground() throws SQLException {
+                call.run();
+                return null;
+            }
+
+            @Override
+            protected void done() {
+                try {
+                    get();
+                    onSuccess.run();
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                } catch (ExecutionException ex) {
+                    JOptionPane.showMessageDialog(StudentManagementUI.this, "Database error: " + ex.getCause().getMessage());
+                }
             }
-        } catch (SQLException e) {
-            JOptionPane.showMessageDialog(this, e.getMessage());
-        }
+        }.execute();
     }
 
     private void clearFields() {
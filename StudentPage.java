@@ -0,0 +1,24 @@
+package com.example.sms;
+
+import java.util.List;
+
+public class StudentPage {
+    private final List<Student> students;
+    private final String nextCursor;
+
+    public StudentPage(List<Student> students, String nextCursor) {
+        this.students = students;
+        this.nextCursor = nextCursor;
+    }
+
+    public List<Student> getStudents() {
+        return students;
+    }
+
+    /**
+     * Cursor for the following page, or null when this is the last page.
+     */
+    public String getNextCursor() {
+        return nextCursor;
+    }
+}
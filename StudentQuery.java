@@ -0,0 +1,190 @@
+package com.example.sms;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Filter, sort and keyset position for a page of students.
+ * The cursor is an opaque token holding the sort value and id of the last row
+ * of the previous page, so the next page starts with an index seek instead of OFFSET.
+ */
+public class StudentQuery {
+    public static final int DEFAULT_LIMIT = 50;
+    public static final int MAX_LIMIT = 1000;
+
+    public enum SortField {
+        ID("id"), NAME("name"), EMAIL("email"), AGE("age");
+
+        private final String column;
+
+        SortField(String column) {
+            this.column = column;
+        }
+
+        public String getColumn() {
+            return column;
+        }
+
+        public static SortField fromParam(String value) {
+            for (SortField f : values()) {
+                if (f.column.equalsIgnoreCase(value)) {
+                    return f;
+                }
+            }
+            throw new IllegalArgumentException("Unknown sort field: " + value);
+        }
+    }
+
+    private int limit = DEFAULT_LIMIT;
+    private SortField sortField = SortField.ID;
+    private boolean descending;
+    private Integer minAge;
+    private Integer maxAge;
+    private String namePrefix;
+    private String emailPrefix;
+    private boolean hasPosition;
+    private int afterId;
+    private String afterValue;
+    private StudentFields fields = StudentFields.ALL;
+
+    public int getLimit() {
+        return limit;
+    }
+
+    public void setLimit(int limit) {
+        if (limit < 1 || limit > MAX_LIMIT) {
+            throw new IllegalArgumentException("limit must be between 1 and " + MAX_LIMIT);
+        }
+        this.limit = limit;
+    }
+
+    public SortField getSortField() {
+        return sortField;
+    }
+
+    public void setSortField(SortField sortField) {
+        this.sortField = sortField;
+    }
+
+    public boolean isDescending() {
+        return descending;
+    }
+
+    public void setDescending(boolean descending) {
+        this.descending = descending;
+    }
+
+    public Integer getMinAge() {
+        return minAge;
+    }
+
+    public void setMinAge(Integer minAge) {
+        this.minAge = minAge;
+    }
+
+    public Integer getMaxAge() {
+        return maxAge;
+    }
+
+    public void setMaxAge(Integer maxAge) {
+        this.maxAge = maxAge;
+    }
+
+    public String getNamePrefix() {
+        return namePrefix;
+    }
+
+    public void setNamePrefix(String namePrefix) {
+        this.namePrefix = namePrefix;
+    }
+
+    public String getEmailPrefix() {
+        return emailPrefix;
+    }
+
+    public void setEmailPrefix(String emailPrefix) {
+        this.emailPrefix = emailPrefix;
+    }
+
+    public StudentFields getFields() {
+        return fields;
+    }
+
+    /**
+     * Fields the caller will use. Stores may leave the others unset, except id and the sort
+     * field, which the cursor needs.
+     */
+    public void setFields(StudentFields fields) {
+        this.fields = fields;
+    }
+
+    public boolean hasPosition() {
+        return hasPosition;
+    }
+
+    public int getAfterId() {
+        return afterId;
+    }
+
+    /**
+     * Sort value of the row the page starts after; null when that row's name or email is NULL.
+     */
+    public String getAfterValue() {
+        return afterValue;
+    }
+
+    /**
+     * Starts the page after the given id. Only meaningful when sorting by id.
+     */
+    public void setAfterId(int afterId) {
+        if (sortField != SortField.ID) {
+            throw new IllegalArgumentException("after=<id> requires sort=id; use cursor instead");
+        }
+        this.hasPosition = true;
+        this.afterId = afterId;
+        this.afterValue = String.valueOf(afterId);
+    }
+
+    public void setCursor(String cursor) {
+        String decoded;
+        try {
+            decoded = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Malformed cursor");
+        }
+        // sortField|direction|id|value -- value last because it may contain '|', and left
+        // out with its separator when it is NULL
+        String[] parts = decoded.split("\\|", 4);
+        boolean textSort = sortField == SortField.NAME || sortField == SortField.EMAIL;
+        if (parts.length != 4 && !(parts.length == 3 && textSort)) {
+            throw new IllegalArgumentException("Malformed cursor");
+        }
+        if (!parts[0].equals(sortField.getColumn()) || !parts[1].equals(descending ? "desc" : "asc")) {
+            throw new IllegalArgumentException("Cursor does not match the requested sort order");
+        }
+        try {
+            this.afterId = Integer.parseInt(parts[2]);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Malformed cursor");
+        }
+        this.afterValue = parts.length == 4 ? parts[3] : null;
+        this.hasPosition = true;
+    }
+
+    /**
+     * Encodes the position after {@code last}. A NULL name or email is encoded as such, not
+     * as the text "null", since NULLs sort before every other value.
+     */
+    public String cursorAfter(Student last) {
+        String value;
+        switch (sortField) {
+            case NAME -> value = last.getName();
+            case EMAIL -> value = last.getEmail();
+            case AGE -> value = String.valueOf(last.getAge());
+            default -> value = String.valueOf(last.getId());
+        }
+        String raw = sortField.getColumn() + "|" + (descending ? "desc" : "asc") + "|" + last.getId()
+                + (value == null ? "" : "|" + value);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,426 @@
+package com.example.sms;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.PriorityQueue;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * In-process search index over student names and emails.
+ * <p>
+ * Text is lowercased and cut into trigrams; the first one and two characters of every word
+ * are indexed as well. Each gram maps to a posting list of student ids. A term of three or
+ * more characters matches anywhere in a name or email; a shorter term matches the start of
+ * a word. A search walks the shortest posting list among its grams, checks each candidate
+ * against the stored text, and keeps the best K in a bounded heap, stopping early if its
+ * time budget runs out.
+ * <p>
+ * Posting lists are append-only. Ids left behind by updates and deletes fail the text check
+ * and are purged when they make up half of all entries.
+ */
+final class StudentSearchIndex {
+    private static final int DEADLINE_CHECK_INTERVAL = 256;
+    private static final int MIN_REBUILD_STALE = 10_000;
+
+    static final class Result {
+        final List<Student> students;
+        final int matched;
+        final boolean partial;
+
+        Result(List<Student> students, int matched, boolean partial) {
+            this.students = students;
+            this.matched = matched;
+            this.partial = partial;
+        }
+    }
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // Documents, one slot per student
+    private final IntIntMap slots = new IntIntMap(1024);
+    private int[] ids = new int[1024];
+    private String[] names = new String[1024];
+    private String[] emails = new String[1024];
+    private int[] ages = new int[1024];
+    private String[] lowerNames = new String[1024];
+    private String[] lowerEmails = new String[1024];
+    private int[] freeSlots = new int[16];
+    private int freeCount;
+    private int used;
+
+    // Posting lists, found through gram -> list number
+    private final IntIntMap gramLists = new IntIntMap(4096);
+    private int[][] postings = new int[1024][];
+    private int[] postingSizes = new int[1024];
+    private int listCount;
+    private long entries;
+    private long staleEntries;
+
+    /**
+     * Adds or replaces a student and returns the previous version, or null.
+     */
+    Student put(int id, String name, String email, int age) {
+        lock.writeLock().lock();
+        try {
+            Student previous = null;
+            String lowerName = lower(name);
+            String lowerEmail = lower(email);
+            int slot = slots.get(id);
+            int[] newGrams = grams(lowerName, lowerEmail);
+            if (slot == IntIntMap.MISSING) {
+                slot = allocateSlot();
+                slots.put(id, slot);
+                for (int g : newGrams) {
+                    addPosting(g, id);
+                }
+            } else {
+                previous = new Student(id, names[slot], emails[slot], ages[slot]);
+                int[] oldGrams = grams(lowerNames[slot], lowerEmails[slot]);
+                for (int g : newGrams) {
+                    if (Arrays.binarySearch(oldGrams, g) < 0) {
+                        addPosting(g, id);
+                    }
+                }
+                for (int g : oldGrams) {
+                    if (Arrays.binarySearch(newGrams, g) < 0) {
+                        staleEntries++;
+                    }
+                }
+            }
+            ids[slot] = id;
+            names[slot] = name;
+            emails[slot] = email;
+            ages[slot] = age;
+            lowerNames[slot] = lowerName;
+            lowerEmails[slot] = lowerEmail;
+            maybeRebuild();
+            return previous;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    Student put(Student s) {
+        return put(s.getId(), s.getName(), s.getEmail(), s.getAge());
+    }
+
+    /**
+     * Like {@link #put(Student)}, but only for a student already in the index, matching
+     * an UPDATE that changes nothing when the id does not exist. Returns the previous
+     * version, or null if nothing changed.
+     */
+    Student update(Student s) {
+        lock.writeLock().lock();
+        try {
+            return slots.get(s.getId()) == IntIntMap.MISSING ? null : put(s);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Removes a student and returns it, or null if it was not indexed.
+     */
+    Student remove(int id) {
+        lock.writeLock().lock();
+        try {
+            int slot = slots.get(id);
+            if (slot == IntIntMap.MISSING) {
+                return null;
+            }
+            Student removed = new Student(id, names[slot], emails[slot], ages[slot]);
+            staleEntries += grams(lowerNames[slot], lowerEmails[slot]).length;
+            slots.remove(id);
+            names[slot] = emails[slot] = lowerNames[slot] = lowerEmails[slot] = null;
+            if (freeCount == freeSlots.length) {
+                freeSlots = Arrays.copyOf(freeSlots, freeCount * 2);
+            }
+            freeSlots[freeCount++] = slot;
+            maybeRebuild();
+            return removed;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    int size() {
+        lock.readLock().lock();
+        try {
+            return slots.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns up to {@code limit} best matches for every whitespace-separated term of the
+     * query. If the budget runs out first, the result holds the best matches found so far
+     * and is marked partial.
+     */
+    Result search(String query, int limit, long budgetNanos) {
+        long deadline = System.nanoTime() + budgetNanos;
+        String[] terms = lower(query).trim().split("\\s+");
+        if (terms.length == 0 || terms[0].isEmpty()) {
+            throw new IllegalArgumentException("q is required");
+        }
+
+        lock.readLock().lock();
+        try {
+            // Drive the search from the rarest gram of any term
+            int driver = -1;
+            for (String term : terms) {
+                for (int g : queryGrams(term)) {
+                    int list = gramLists.get(g);
+                    if (list == IntIntMap.MISSING) {
+                        return new Result(List.of(), 0, false);
+                    }
+                    if (driver < 0 || postingSizes[list] < postingSizes[driver]) {
+                        driver = list;
+                    }
+                }
+            }
+
+            String phrase = String.join(" ", terms);
+            // Worst hit on top, so it is the one dropped when the heap overflows
+            PriorityQueue<Hit> heap = new PriorityQueue<>(limit + 1, HIT_ORDER);
+            int[] posting = postings[driver];
+            int size = postingSizes[driver];
+            // A list can hold an id twice after an update re-adds a gram it had dropped
+            IntIntMap seen = new IntIntMap(limit * 2);
+            int matched = 0;
+            boolean partial = false;
+            for (int i = 0; i < size; i++) {
+                if (i % DEADLINE_CHECK_INTERVAL == DEADLINE_CHECK_INTERVAL - 1 && System.nanoTime() > deadline) {
+                    partial = true;
+                    break;
+                }
+                int id = posting[i];
+                int slot = slots.get(id);
+                if (slot == IntIntMap.MISSING) {
+                    continue;
+                }
+                int score = score(terms, phrase, lowerNames[slot], lowerEmails[slot]);
+                if (score <= 0 || seen.get(id) != IntIntMap.MISSING) {
+                    continue;
+                }
+                seen.put(id, 1);
+                matched++;
+                if (heap.size() < limit || compare(heap.peek(), score, lowerNames[slot].length(), id) < 0) {
+                    heap.add(new Hit(score, id, names[slot], emails[slot], ages[slot], lowerNames[slot]));
+                    if (heap.size() > limit) {
+                        heap.poll();
+                    }
+                }
+            }
+
+            List<Hit> hits = new ArrayList<>(heap);
+            hits.sort(HIT_ORDER.reversed());
+            List<Student> students = new ArrayList<>(hits.size());
+            for (Hit h : hits) {
+                students.add(new Student(h.id, h.name, h.email, h.age));
+            }
+            return new Result(students, matched, partial);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Sum over terms of how well each one matches; 0 if any term does not match at all.
+     * A match at the start of the name ranks highest, then at the start of a word, then
+     * anywhere; name matches outrank email matches.
+     */
+    private static int score(String[] terms, String phrase, String name, String email) {
+        int total = 0;
+        for (String term : terms) {
+            int best;
+            boolean anywhere = term.length() >= 3;
+            if (name.startsWith(term)) {
+                best = 100;
+            } else if (startsWord(name, term)) {
+                best = 60;
+            } else if (email.startsWith(term)) {
+                best = 50;
+            } else if (anywhere && name.contains(term)) {
+                best = 30;
+            } else if (startsWord(email, term)) {
+                best = 25;
+            } else if (anywhere && email.contains(term)) {
+                best = 20;
+            } else {
+                return 0;
+            }
+            total += best;
+        }
+        if (name.equals(phrase)) {
+            total += 50;
+        }
+        return total;
+    }
+
+    private static boolean startsWord(String text, String term) {
+        for (int i = text.indexOf(term, 1); i > 0; i = text.indexOf(term, i + 1)) {
+            if (!Character.isLetterOrDigit(text.charAt(i - 1))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static final class Hit {
+        final int score;
+        final int id;
+        final String name;
+        final String email;
+        final int age;
+        final int nameLength;
+
+        Hit(int score, int id, String name, String email, int age, String lowerName) {
+            this.score = score;
+            this.id = id;
+            this.name = name;
+            this.email = email;
+            this.age = age;
+            this.nameLength = lowerName.length();
+        }
+    }
+
+    /**
+     * Ascending from worst to best: lower score, then longer name, then higher id.
+     */
+    private static final Comparator<Hit> HIT_ORDER =
+            (a, b) -> compare(a, b.score, b.nameLength, b.id);
+
+    private static int compare(Hit a, int score, int nameLength, int id) {
+        if (a.score != score) {
+            return Integer.compare(a.score, score);
+        }
+        if (a.nameLength != nameLength) {
+            return Integer.compare(nameLength, a.nameLength);
+        }
+        return Integer.compare(id, a.id);
+    }
+
+    private int allocateSlot() {
+        if (freeCount > 0) {
+            return freeSlots[--freeCount];
+        }
+        if (used == ids.length) {
+            int capacity = used * 2;
+            ids = Arrays.copyOf(ids, capacity);
+            names = Arrays.copyOf(names, capacity);
+            emails = Arrays.copyOf(emails, capacity);
+            ages = Arrays.copyOf(ages, capacity);
+            lowerNames = Arrays.copyOf(lowerNames, capacity);
+            lowerEmails = Arrays.copyOf(lowerEmails, capacity);
+        }
+        return used++;
+    }
+
+    private void addPosting(int gram, int id) {
+        int list = gramLists.get(gram);
+        if (list == IntIntMap.MISSING) {
+            if (listCount == postings.length) {
+                postings = Arrays.copyOf(postings, listCount * 2);
+                postingSizes = Arrays.copyOf(postingSizes, listCount * 2);
+            }
+            list = listCount++;
+            postings[list] = new int[4];
+            postingSizes[list] = 0;
+            gramLists.put(gram, list);
+        }
+        int n = postingSizes[list];
+        if (n == postings[list].length) {
+            postings[list] = Arrays.copyOf(postings[list], n * 2);
+        }
+        postings[list][n] = id;
+        postingSizes[list] = n + 1;
+        entries++;
+    }
+
+    private void maybeRebuild() {
+        if (staleEntries < MIN_REBUILD_STALE || staleEntries * 2 < entries) {
+            return;
+        }
+        gramLists.clear();
+        Arrays.fill(postings, 0, listCount, null);
+        listCount = 0;
+        entries = staleEntries = 0;
+        for (int slot = 0; slot < used; slot++) {
+            if (lowerNames[slot] != null && slots.get(ids[slot]) == slot) {
+                for (int g : grams(lowerNames[slot], lowerEmails[slot])) {
+                    addPosting(g, ids[slot]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Sorted, distinct grams of a document.
+     */
+    private static int[] grams(String name, String email) {
+        int[] out = new int[Math.max(16, (name.length() + email.length()) * 2)];
+        int n = addGrams(email, out, addGrams(name, out, 0));
+        Arrays.sort(out, 0, n);
+        int distinct = 0;
+        for (int i = 0; i < n; i++) {
+            if (distinct == 0 || out[distinct - 1] != out[i]) {
+                out[distinct++] = out[i];
+            }
+        }
+        return Arrays.copyOf(out, distinct);
+    }
+
+    private static int addGrams(String text, int[] out, int n) {
+        for (int i = 0; i + 3 <= text.length(); i++) {
+            out[n++] = trigram(text.charAt(i), text.charAt(i + 1), text.charAt(i + 2));
+        }
+        for (int i = 0; i < text.length(); i++) {
+            if (isWordStart(text, i)) {
+                out[n++] = prefixGram(text.charAt(i), (char) 0);
+                if (i + 1 < text.length() && Character.isLetterOrDigit(text.charAt(i + 1))) {
+                    out[n++] = prefixGram(text.charAt(i), text.charAt(i + 1));
+                }
+            }
+        }
+        return n;
+    }
+
+    private static int[] queryGrams(String term) {
+        if (term.length() >= 3) {
+            int[] out = new int[term.length() - 2];
+            for (int i = 0; i < out.length; i++) {
+                out[i] = trigram(term.charAt(i), term.charAt(i + 1), term.charAt(i + 2));
+            }
+            return out;
+        }
+        return new int[]{prefixGram(term.charAt(0), term.length() > 1 ? term.charAt(1) : (char) 0)};
+    }
+
+    private static boolean isWordStart(String text, int i) {
+        return Character.isLetterOrDigit(text.charAt(i)) && (i == 0 || !Character.isLetterOrDigit(text.charAt(i - 1)));
+    }
+
+    // Grams are hashed to ints; a collision only adds candidates, which the text check drops
+
+    private static int trigram(char a, char b, char c) {
+        return mix((a * 65599 + b) * 65599 + c);
+    }
+
+    private static int prefixGram(char a, char b) {
+        return mix(((0x7F4A7C15 + a) * 65599 + b) * 65599);
+    }
+
+    private static int mix(int h) {
+        h *= 0x9E3779B9;
+        h ^= h >>> 15;
+        return h == 0 ? 1 : h;
+    }
+
+    private static String lower(String s) {
+        return s == null ? "" : s.toLowerCase(Locale.ROOT);
+    }
+}
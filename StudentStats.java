@@ -0,0 +1,141 @@
+package com.example.sms;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Running totals over all students: count, age histogram and per-email-domain counts.
+ * Writers call {@link #add} and {@link #remove}; readers get an immutable {@link Snapshot},
+ * which is built on the first read after a change and shared until the next one.
+ * <p>
+ * Ages outside 0-{@value #MAX_AGE} are counted at the nearest end of the histogram.
+ */
+final class StudentStats {
+    static final int MAX_AGE = 150;
+
+    private long count;
+    private long ageSum;
+    private final long[] ages = new long[MAX_AGE + 1];
+    private final Map<String, long[]> domains = new HashMap<>();
+    private Snapshot snapshot;
+
+    static final class DomainCount {
+        final String domain;
+        final long count;
+
+        DomainCount(String domain, long count) {
+            this.domain = domain;
+            this.count = count;
+        }
+    }
+
+    static final class Snapshot {
+        final long count;
+        final int minAge;
+        final int maxAge;
+        final double meanAge;
+        final int p50;
+        final int p90;
+        final int p99;
+        /** Student count per age; index is the age. */
+        final long[] ages;
+        /** Largest first. */
+        final List<DomainCount> domains;
+
+        private Snapshot(long count, long ageSum, long[] ages, List<DomainCount> domains) {
+            this.count = count;
+            this.ages = ages;
+            this.domains = domains;
+            this.meanAge = count == 0 ? 0 : (double) ageSum / count;
+            int min = -1;
+            int max = -1;
+            for (int age = 0; age <= MAX_AGE; age++) {
+                if (ages[age] > 0) {
+                    if (min < 0) min = age;
+                    max = age;
+                }
+            }
+            this.minAge = min;
+            this.maxAge = max;
+            this.p50 = percentile(0.50);
+            this.p90 = percentile(0.90);
+            this.p99 = percentile(0.99);
+        }
+
+        /**
+         * Smallest age with at least the given share of students at or below it; -1 when empty.
+         */
+        int percentile(double share) {
+            if (count == 0) {
+                return -1;
+            }
+            long rank = Math.max(1, (long) Math.ceil(share * count));
+            long seen = 0;
+            for (int age = 0; age <= MAX_AGE; age++) {
+                seen += ages[age];
+                if (seen >= rank) {
+                    return age;
+                }
+            }
+            return MAX_AGE;
+        }
+    }
+
+    synchronized void add(String email, int age) {
+        count++;
+        ageSum += age;
+        ages[bucket(age)]++;
+        domains.computeIfAbsent(domain(email), d -> new long[1])[0]++;
+        snapshot = null;
+    }
+
+    synchronized void remove(String email, int age) {
+        count--;
+        ageSum -= age;
+        ages[bucket(age)]--;
+        String domain = domain(email);
+        long[] n = domains.get(domain);
+        if (n != null && --n[0] <= 0) {
+            domains.remove(domain);
+        }
+        snapshot = null;
+    }
+
+    void add(Student s) {
+        add(s.getEmail(), s.getAge());
+    }
+
+    void remove(Student s) {
+        remove(s.getEmail(), s.getAge());
+    }
+
+    synchronized Snapshot snapshot() {
+        if (snapshot == null) {
+            List<DomainCount> sorted = new ArrayList<>(domains.size());
+            for (Map.Entry<String, long[]> e : domains.entrySet()) {
+                sorted.add(new DomainCount(e.getKey(), e.getValue()[0]));
+            }
+            sorted.sort((a, b) -> a.count != b.count ? Long.compare(b.count, a.count) : a.domain.compareTo(b.domain));
+            snapshot = new Snapshot(count, ageSum, ages.clone(), List.copyOf(sorted));
+        }
+        return snapshot;
+    }
+
+    private static int bucket(int age) {
+        return Math.max(0, Math.min(MAX_AGE, age));
+    }
+
+    /**
+     * Lowercased text after the last '@', or "" when there is none.
+     */
+    static String domain(String email) {
+        if (email == null) {
+            return "";
+        }
+        int at = email.lastIndexOf('@');
+        return at < 0 ? "" : email.substring(at + 1).toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,105 @@
+package com.example.sms;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.List;
+
+/**
+ * Storage backend for students. {@link StudentDAO} keeps them in MySQL through
+ * {@link DBConnection}; {@link ShardedStudentStore} spreads them over several databases;
+ * {@link InMemoryStudentStore} keeps them on the heap; {@link LogStudentStore} keeps them
+ * in local log files.
+ * <p>
+ * The backend is chosen once at startup with {@link #create()}. Methods declare
+ * SQLException so callers handle every backend the same way.
+ */
+public interface StudentStore {
+
+    /**
+     * Receives rows one at a time from {@link #streamAllStudents}.
+     */
+    interface RowHandler {
+        void row(int id, String name, String email, int age) throws IOException;
+    }
+
+    /**
+     * Inserts the student and writes the generated id back into it.
+     */
+    void addStudent(Student student) throws SQLException;
+
+    void updateStudent(Student student) throws SQLException;
+
+    void deleteStudent(int id) throws SQLException;
+
+    Student getStudentById(int id) throws SQLException;
+
+    /**
+     * Like {@link #getStudentById(int)}, but only {@code fields} need be filled in; the rest
+     * may be left null or 0. Backends that read whole rows anyway can ignore it.
+     */
+    default Student getStudentById(int id, StudentFields fields) throws SQLException {
+        return getStudentById(id);
+    }
+
+    List<Student> getAllStudents() throws SQLException;
+
+    /**
+     * Passes every student to the handler in id order, without building a list.
+     */
+    void streamAllStudents(RowHandler handler) throws SQLException, IOException;
+
+    /**
+     * Like {@link #streamAllStudents(RowHandler)}, but only {@code fields} need be passed;
+     * the rest may be null or 0. The id is always passed.
+     */
+    default void streamAllStudents(StudentFields fields, RowHandler handler) throws SQLException, IOException {
+        streamAllStudents(handler);
+    }
+
+    /**
+     * Returns one page of students matching the query, in the query's sort order.
+     */
+    StudentPage findStudents(StudentQuery query) throws SQLException;
+
+    /**
+     * Applies the operations in order as a single unit. Update and delete of a missing id
+     * are reported as 404 without undoing the rest.
+     */
+    List<BulkResult> executeBulk(List<BulkOperation> ops) throws SQLException;
+
+    /**
+     * Inserts all rows so that they succeed or fail together, and writes the generated ids
+     * back into them.
+     */
+    void insertStudents(List<Student> students) throws SQLException;
+
+    /**
+     * Builds the backend named by the {@code sms.store} system property:
+     * {@code jdbc} (default), {@code sharded}, {@code memory} or {@code log}.
+     */
+    static StudentStore create() {
+        String type = System.getProperty("sms.store", "jdbc");
+        switch (type) {
+            case "jdbc":
+                if (!Boolean.getBoolean("sms.cache.enabled")) {
+                    return new StudentDAO();
+                }
+                return new CachingStudentDAO(Integer.getInteger("sms.cache.maxSize", 10_000),
+                        Long.getLong("sms.cache.ttlMs", 5_000), Long.getLong("sms.cache.negativeTtlMs", 1_000));
+            case "sharded":
+                return ShardedStudentStore.fromProperties(System.err::println);
+            case "memory":
+                return new InMemoryStudentStore();
+            case "log":
+                try {
+                    return new LogStudentStore(Path.of(System.getProperty("sms.store.dir", "data")));
+                } catch (IOException e) {
+                    throw new UncheckedIOException("Cannot open student log", e);
+                }
+            default:
+                throw new IllegalArgumentException("Unknown sms.store: " + type);
+        }
+    }
+}
@@ -0,0 +1,332 @@
+package com.example.sms;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Consumer;
+import javax.swing.SwingWorker;
+import javax.swing.table.AbstractTableModel;
+
+/**
+ * Table model that loads students a page at a time, when their rows are first shown.
+ * <p>
+ * Pages are read in id order with {@link StudentStore#findStudents} on a background thread,
+ * so the event dispatch thread never waits for the database. Each page starts after the last
+ * id of the one before, so the row count grows as the user scrolls towards the end. Only the
+ * {@code sms.ui.cachedPages} most recently shown pages keep their rows; an evicted page is read
+ * again when it is next shown.
+ * <p>
+ * {@link #added}, {@link #updated} and {@link #removed} apply a write made through the UI to
+ * the loaded rows without a reload. Writes made elsewhere show up when their page is read
+ * again, or after {@link #refresh}. All methods must be called on the event dispatch thread.
+ */
+final class StudentTableModel extends AbstractTableModel {
+    private static final int PAGE_SIZE = Math.min(StudentQuery.MAX_LIMIT, Integer.getInteger("sms.ui.pageSize", 200));
+    private static final int CACHED_PAGES = Math.max(2, Integer.getInteger("sms.ui.cachedPages", 20));
+    private static final String[] COLUMNS = {"ID", "Name", "Email", "Age"};
+
+    private static final class Page {
+        // Rows have ids above this; unused for the first page
+        final int afterId;
+        // -1 until the page is first read
+        int size = -1;
+        // Null until read, and again once evicted
+        List<Student> rows;
+        boolean loading;
+        boolean failed;
+
+        Page(int afterId) {
+            this.afterId = afterId;
+        }
+    }
+
+    private final StudentStore store;
+    private final Consumer<String> onError;
+    private final List<Page> pages = new ArrayList<>();
+    // ends[p] is the row after the last row of page p
+    private int[] ends = new int[0];
+    private int rowCount;
+    // Bumped by refresh() so reads started before it are ignored
+    private int generation;
+    private final Map<Page, Boolean> cached = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Page, Boolean> eldest) {
+            if (size() <= CACHED_PAGES) {
+                return false;
+            }
+            eldest.getKey().rows = null;
+            return true;
+        }
+    };
+
+    StudentTableModel(StudentStore store, Consumer<String> onError) {
+        this.store = store;
+        this.onError = onError;
+        refresh();
+    }
+
+    /**
+     * Forgets every loaded row and starts again from the first page.
+     */
+    void refresh() {
+        generation++;
+        pages.clear();
+        cached.clear();
+        recount();
+        fireTableDataChanged();
+        pages.add(new Page(0));
+        recount();
+        load(0);
+    }
+
+    @Override
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    @Override
+    public int getColumnCount() {
+        return COLUMNS.length;
+    }
+
+    @Override
+    public String getColumnName(int column) {
+        return COLUMNS[column];
+    }
+
+    @Override
+    public Object getValueAt(int row, int column) {
+        Student s = getStudent(row);
+        if (s == null) {
+            return null;
+        }
+        return switch (column) {
+            case 0 -> s.getId();
+            case 1 -> s.getName();
+            case 2 -> s.getEmail();
+            default -> s.getAge();
+        };
+    }
+
+    /**
+     * Returns the student shown at a row, or null while its page is being read.
+     */
+    Student getStudent(int row) {
+        int p = pageOf(row);
+        Page page = pages.get(p);
+        // The page after the last one read is fetched as soon as the end is on screen
+        if (p == pages.size() - 2 && pages.get(p + 1).size < 0) {
+            load(p + 1);
+        }
+        if (page.rows == null) {
+            load(p);
+            return null;
+        }
+        cached.get(page);
+        int i = row - start(p);
+        return i < page.rows.size() ? page.rows.get(i) : null;
+    }
+
+    /**
+     * Shows a student just created, if its page has been read.
+     */
+    void added(Student student) {
+        int p = pageFor(student.getId());
+        Page page = pages.get(p);
+        if (page.rows == null) {
+            return;
+        }
+        int i = position(page.rows, student.getId());
+        if (i < page.rows.size() && page.rows.get(i).getId() == student.getId()) {
+            return;
+        }
+        page.rows.add(i, student);
+        page.size++;
+        recount();
+        fireTableRowsInserted(start(p) + i, start(p) + i);
+    }
+
+    void updated(Student student) {
+        int p = pageFor(student.getId());
+        Page page = pages.get(p);
+        if (page.rows == null) {
+            return;
+        }
+        int i = position(page.rows, student.getId());
+        if (i < page.rows.size() && page.rows.get(i).getId() == student.getId()) {
+            page.rows.set(i, student);
+            fireTableRowsUpdated(start(p) + i, start(p) + i);
+        }
+    }
+
+    void removed(int id) {
+        int p = pageFor(id);
+        Page page = pages.get(p);
+        if (page.rows == null) {
+            return;
+        }
+        int i = position(page.rows, id);
+        if (i < page.rows.size() && page.rows.get(i).getId() == id) {
+            page.rows.remove(i);
+            page.size--;
+            recount();
+            fireTableRowsDeleted(start(p) + i, start(p) + i);
+        }
+    }
+
+    /**
+     * Reads a page. A page before the last is read up to the next page's first id, however
+     * many rows were inserted there since it was last read.
+     */
+    private void load(int p) {
+        Page page = pages.get(p);
+        if (page.loading || page.failed) {
+            return;
+        }
+        page.loading = true;
+        int gen = generation;
+        int limit = Math.min(StudentQuery.MAX_LIMIT, Math.max(PAGE_SIZE, page.size));
+        boolean last = p == pages.size() - 1;
+        int bound = last ? 0 : pages.get(p + 1).afterId;
+        StudentQuery query = new StudentQuery();
+        query.setLimit(limit);
+        if (p > 0) {
+            query.setAfterId(page.afterId);
+        }
+        new SwingWorker<List<Student>, Void>() {
+            @Override
+            protected List<Student> doInBackground() throws SQLException {
+                List<Student> read = store.findStudents(query).getStudents();
+                if (last) {
+                    return read;
+                }
+                List<Student> rows = new ArrayList<>(read);
+                while (read.size() == limit && rows.get(rows.size() - 1).getId() < bound) {
+                    StudentQuery more = new StudentQuery();
+                    more.setLimit(limit);
+                    more.setAfterId(rows.get(rows.size() - 1).getId());
+                    read = store.findStudents(more).getStudents();
+                    rows.addAll(read);
+                }
+                return rows;
+            }
+
+            @Override
+            protected void done() {
+                if (gen != generation) {
+                    return;
+                }
+                page.loading = false;
+                try {
+                    loaded(p, get(), limit);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } catch (ExecutionException e) {
+                    // Not retried until refresh(), or every repaint would ask again
+                    page.failed = true;
+                    onError.accept("Could not load students: " + e.getCause().getMessage());
+                }
+            }
+        }.execute();
+    }
+
+    private void loaded(int p, List<Student> fetched, int limit) {
+        Page page = pages.get(p);
+        List<Student> rows = new ArrayList<>(fetched);
+        boolean last = p == pages.size() - 1;
+        if (!last) {
+            // Rows inserted since the next page was read belong to that page
+            int bound = pages.get(p + 1).afterId;
+            while (!rows.isEmpty() && rows.get(rows.size() - 1).getId() > bound) {
+                rows.remove(rows.size() - 1);
+            }
+        }
+        int oldSize = Math.max(0, page.size);
+        page.rows = rows;
+        page.size = rows.size();
+        cached.put(page, Boolean.TRUE);
+        if (last && fetched.size() >= limit) {
+            pages.add(new Page(rows.get(rows.size() - 1).getId()));
+        }
+        recount();
+
+        int start = start(p);
+        if (page.size > oldSize) {
+            fireTableRowsInserted(start + oldSize, start + page.size - 1);
+        } else if (page.size < oldSize) {
+            fireTableRowsDeleted(start + page.size, start + oldSize - 1);
+        }
+        int common = Math.min(oldSize, page.size);
+        if (common > 0) {
+            fireTableRowsUpdated(start, start + common - 1);
+        }
+    }
+
+    private void recount() {
+        ends = new int[pages.size()];
+        int n = 0;
+        for (int p = 0; p < ends.length; p++) {
+            n += Math.max(0, pages.get(p).size);
+            ends[p] = n;
+        }
+        rowCount = n;
+    }
+
+    private int start(int p) {
+        return p == 0 ? 0 : ends[p - 1];
+    }
+
+    /**
+     * Page holding a row: the first page that ends after it.
+     */
+    private int pageOf(int row) {
+        int lo = 0;
+        int hi = pages.size() - 1;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (ends[mid] > row) {
+                hi = mid;
+            } else {
+                lo = mid + 1;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * Page an id belongs to: the last page starting after a smaller id.
+     */
+    private int pageFor(int id) {
+        int lo = 0;
+        int hi = pages.size() - 1;
+        while (lo < hi) {
+            int mid = (lo + hi + 1) >>> 1;
+            if (pages.get(mid).afterId < id) {
+                lo = mid;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * Index of the first row whose id is not below {@code id}.
+     */
+    private static int position(List<Student> rows, int id) {
+        int lo = 0;
+        int hi = rows.size();
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (rows.get(mid).getId() < id) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+}
@@ -8,6 +8,7 @@ public class TestDBConnection {
         try (Connection conn = DBConnection.getConnection()) {
             if (conn != null && !conn.isClosed()) {
                 System.out.println("OK: MySQL connected");
+                System.out.println("Pool: " + DBConnection.getPoolStats());
             } else {
                 System.out.println("ERROR: Connection is null or closed");
             }
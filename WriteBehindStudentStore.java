@@ -0,0 +1,338 @@
+package com.example.sms;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Queues single-row writes and applies them in groups, so many writes share one transaction.
+ * <p>
+ * A writer thread takes the first queued write, then waits up to {@code maxDelayMs} for more,
+ * up to {@code batchSize}, and applies the group with one {@link StudentStore#executeBulk}
+ * call. If the group is rolled back, its writes are retried one by one so a single bad row
+ * only fails itself. {@link #addStudent}, {@link #updateStudent} and {@link #deleteStudent}
+ * wait for their group to commit; {@link #submit} returns at once with an {@link Operation}
+ * to look up later. When the queue is full, submitting waits up to {@code offerTimeoutMs}
+ * and then throws {@link RejectedExecutionException}. A caller that waits for its group
+ * gives up after {@code commitTimeoutMs} with the same exception; the write stays queued.
+ * <p>
+ * Reads and batch writes go straight to the underlying store and do not see queued writes.
+ */
+public final class WriteBehindStudentStore implements StudentStore, AutoCloseable {
+
+    /**
+     * One queued write. {@link #result} completes when its group has been applied.
+     */
+    static final class Operation {
+        final long id;
+        final BulkOperation.Type type;
+        final Student student;
+        final CompletableFuture<BulkResult> result = new CompletableFuture<>();
+
+        Operation(long id, BulkOperation.Type type, Student student) {
+            this.id = id;
+            this.type = type;
+            this.student = student;
+        }
+    }
+
+    private final StudentStore store;
+    private final BlockingQueue<Operation> queue;
+    private final int batchSize;
+    private final long maxDelayNanos;
+    private final long offerTimeoutMillis;
+    private final long commitTimeoutMillis;
+    private final AtomicLong nextId = new AtomicLong();
+    // Recently submitted operations, slot = id % length, so old ones are forgotten
+    private final AtomicReferenceArray<Operation> recent;
+    private final Thread writer;
+    // Submitters hold the read lock while they check closed and offer, so none is still
+    // adding to the queue once close has taken the write lock
+    private final ReentrantReadWriteLock closeLock = new ReentrantReadWriteLock();
+    private volatile boolean closed;
+
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder applied = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+
+    public WriteBehindStudentStore(StudentStore store, int queueCapacity, int batchSize, long maxDelayMillis,
+                                   long offerTimeoutMillis, long commitTimeoutMillis, int trackedOperations) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("batchSize must be positive");
+        }
+        this.store = store;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.batchSize = batchSize;
+        this.maxDelayNanos = TimeUnit.MILLISECONDS.toNanos(maxDelayMillis);
+        this.offerTimeoutMillis = offerTimeoutMillis;
+        this.commitTimeoutMillis = commitTimeoutMillis;
+        this.recent = new AtomicReferenceArray<>(Math.max(1, trackedOperations));
+        this.writer = Thread.ofPlatform().daemon().name("sms-write-behind").start(this::runWriter);
+    }
+
+    /**
+     * Queues a write and returns without waiting for it to be applied.
+     */
+    Operation submit(BulkOperation.Type type, Student student) {
+        Operation op;
+        closeLock.readLock().lock();
+        try {
+            if (closed) {
+                throw new RejectedExecutionException("Write queue is closed");
+            }
+            op = new Operation(nextId.incrementAndGet(), type, student);
+            boolean queued;
+            try {
+                queued = queue.offer(op, offerTimeoutMillis, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RejectedExecutionException("Interrupted while waiting for space in the write queue", e);
+            }
+            if (!queued) {
+                rejected.increment();
+                throw new RejectedExecutionException("Write queue is full");
+            }
+        } finally {
+            closeLock.readLock().unlock();
+        }
+        recent.set((int) (op.id % recent.length()), op);
+        return op;
+    }
+
+    /**
+     * Returns a recently submitted operation, or null once it has been forgotten.
+     */
+    Operation operation(long id) {
+        if (id < 1) {
+            return null;
+        }
+        Operation op = recent.get((int) (id % recent.length()));
+        return op != null && op.id == id ? op : null;
+    }
+
+    public int getQueued() {
+        return queue.size();
+    }
+
+    public long getBatches() {
+        return batches.sum();
+    }
+
+    public long getApplied() {
+        return applied.sum();
+    }
+
+    public long getRejected() {
+        return rejected.sum();
+    }
+
+    @Override
+    public void addStudent(Student student) throws SQLException {
+        BulkResult r = await(submit(BulkOperation.Type.CREATE,
+                new Student(0, student.getName(), student.getEmail(), student.getAge())));
+        student.setId(r.getId());
+    }
+
+    @Override
+    public void updateStudent(Student student) throws SQLException {
+        // 404 is not an error here, matching an UPDATE that matches no row
+        await(submit(BulkOperation.Type.UPDATE,
+                new Student(student.getId(), student.getName(), student.getEmail(), student.getAge())));
+    }
+
+    @Override
+    public void deleteStudent(int id) throws SQLException {
+        Student student = new Student();
+        student.setId(id);
+        await(submit(BulkOperation.Type.DELETE, student));
+    }
+
+    @Override
+    public Student getStudentById(int id) throws SQLException {
+        return store.getStudentById(id);
+    }
+
+    @Override
+    public Student getStudentById(int id, StudentFields fields) throws SQLException {
+        return store.getStudentById(id, fields);
+    }
+
+    @Override
+    public List<Student> getAllStudents() throws SQLException {
+        return store.getAllStudents();
+    }
+
+    @Override
+    public void streamAllStudents(RowHandler handler) throws SQLException, IOException {
+        store.streamAllStudents(handler);
+    }
+
+    @Override
+    public void streamAllStudents(StudentFields fields, RowHandler handler) throws SQLException, IOException {
+        store.streamAllStudents(fields, handler);
+    }
+
+    @Override
+    public StudentPage findStudents(StudentQuery query) throws SQLException {
+        return store.findStudents(query);
+    }
+
+    @Override
+    public List<BulkResult> executeBulk(List<BulkOperation> ops) throws SQLException {
+        return store.executeBulk(ops);
+    }
+
+    @Override
+    public void insertStudents(List<Student> students) throws SQLException {
+        store.insertStudents(students);
+    }
+
+    /**
+     * Stops accepting writes, applies everything already queued and stops the writer.
+     */
+    @Override
+    public void close() {
+        closeLock.writeLock().lock();
+        try {
+            closed = true;
+        } finally {
+            closeLock.writeLock().unlock();
+        }
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        // Left only if the writer stopped early, for instance when interrupted
+        Operation op;
+        while ((op = queue.poll()) != null) {
+            op.result.completeExceptionally(new RejectedExecutionException("Write queue is closed"));
+        }
+    }
+
+    private BulkResult await(Operation op) throws SQLException {
+        BulkResult r;
+        try {
+            r = op.result.get(commitTimeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for write", e);
+        } catch (TimeoutException e) {
+            throw new RejectedExecutionException("Write " + op.id + " not applied within " + commitTimeoutMillis
+                    + " ms; it is still queued");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof SQLException sqlEx) {
+                throw sqlEx;
+            }
+            throw new SQLException(e.getCause().getMessage(), e.getCause());
+        }
+        if (r.getStatus() >= 500) {
+            throw new SQLException(r.getError());
+        }
+        return r;
+    }
+
+    private void runWriter() {
+        List<Operation> batch = new ArrayList<>(batchSize);
+        while (true) {
+            Operation first;
+            try {
+                first = queue.poll(100, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                return;
+            }
+            if (first == null) {
+                if (closed) {
+                    return;
+                }
+                continue;
+            }
+            batch.add(first);
+            long deadline = System.nanoTime() + maxDelayNanos;
+            while (batch.size() < batchSize) {
+                if (queue.drainTo(batch, batchSize - batch.size()) > 0) {
+                    continue;
+                }
+                long wait = deadline - System.nanoTime();
+                if (wait <= 0 || closed) {
+                    break;
+                }
+                Operation next;
+                try {
+                    next = queue.poll(wait, TimeUnit.NANOSECONDS);
+                } catch (InterruptedException e) {
+                    break;
+                }
+                if (next == null) {
+                    break;
+                }
+                batch.add(next);
+            }
+            flush(batch);
+            batch.clear();
+        }
+    }
+
+    private void flush(List<Operation> batch) {
+        batches.increment();
+        List<BulkOperation> ops = new ArrayList<>(batch.size());
+        for (int i = 0; i < batch.size(); i++) {
+            Operation op = batch.get(i);
+            ops.add(new BulkOperation(i, op.type, op.student));
+        }
+        List<BulkResult> results = null;
+        Exception failure = null;
+        try {
+            results = store.executeBulk(ops);
+        } catch (SQLException | RuntimeException e) {
+            failure = e;
+        }
+        if (results != null && (batch.size() == 1 || !rolledBack(results))) {
+            for (int i = 0; i < batch.size(); i++) {
+                complete(batch.get(i), results.get(i));
+            }
+            return;
+        }
+        if (batch.size() == 1) {
+            batch.get(0).result.completeExceptionally(failure);
+            return;
+        }
+        // Apply one at a time so only the failing writes fail
+        for (int i = 0; i < batch.size(); i++) {
+            Operation op = batch.get(i);
+            try {
+                complete(op, store.executeBulk(List.of(ops.get(i))).get(0));
+            } catch (SQLException | RuntimeException e) {
+                op.result.completeExceptionally(e);
+            }
+        }
+    }
+
+    private void complete(Operation op, BulkResult r) {
+        if (r.isSuccess()) {
+            applied.increment();
+        }
+        op.result.complete(new BulkResult(0, op.type, r.getStatus(), r.getId(), r.getError()));
+    }
+
+    private static boolean rolledBack(List<BulkResult> results) {
+        for (BulkResult r : results) {
+            if (r.getStatus() >= 500) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
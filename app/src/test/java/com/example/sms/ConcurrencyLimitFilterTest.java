@@ -0,0 +1,97 @@
+package com.example.sms;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+class ConcurrencyLimitFilterTest {
+    private static final long WINDOW_MILLIS = 20;
+
+    private HttpServer server;
+
+    @AfterEach
+    void stop() {
+        if (server != null) {
+            server.stop(0);
+        }
+    }
+
+    @Test
+    void limitShrinksWhenLatencyRises() throws InterruptedException {
+        ConcurrencyLimitFilter filter = new ConcurrencyLimitFilter(100, 1, 1000, WINDOW_MILLIS);
+        // Sets the baseline; with no traffic near the limit it does not grow either
+        window(filter, TimeUnit.MILLISECONDS.toNanos(1));
+        assertEquals(100, filter.getLimit());
+
+        int previous = filter.getLimit();
+        for (int i = 0; i < 5; i++) {
+            window(filter, TimeUnit.MILLISECONDS.toNanos(10));
+            assertTrue(filter.getLimit() < previous, "window " + i + ": " + filter.getLimit() + " >= " + previous);
+            previous = filter.getLimit();
+        }
+
+        // Back to normal latency the limit holds rather than dropping further
+        window(filter, TimeUnit.MILLISECONDS.toNanos(1));
+        assertEquals(previous, filter.getLimit());
+    }
+
+    @Test
+    void requestsOverTheLimitGet503() throws Exception {
+        ConcurrencyLimitFilter filter = new ConcurrencyLimitFilter(1, 1, 1, WINDOW_MILLIS);
+        CountDownLatch entered = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+        server.createContext("/api/students", exchange -> {
+            entered.countDown();
+            try {
+                release.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            exchange.sendResponseHeaders(200, -1);
+            exchange.close();
+        }).getFilters().add(filter);
+        server.start();
+
+        HttpClient client = HttpClient.newHttpClient();
+        HttpRequest request = HttpRequest.newBuilder(
+                URI.create("http://127.0.0.1:" + server.getAddress().getPort() + "/api/students")).build();
+        CompletableFuture<HttpResponse<String>> first = client.sendAsync(request, HttpResponse.BodyHandlers.ofString());
+        assertTrue(entered.await(10, TimeUnit.SECONDS));
+
+        HttpResponse<String> busy = client.send(request, HttpResponse.BodyHandlers.ofString());
+        assertEquals(503, busy.statusCode());
+        assertEquals("1", busy.headers().firstValue("Retry-After").orElse(null));
+        assertEquals(1, filter.getRejected());
+
+        release.countDown();
+        assertEquals(200, first.get(10, TimeUnit.SECONDS).statusCode());
+        assertEquals(0, filter.getInFlight());
+    }
+
+    /**
+     * Reports a window's worth of database calls of the given duration, then lets the window
+     * end so the next call closes it.
+     */
+    private static void window(ConcurrencyLimitFilter filter, long latencyNanos) throws InterruptedException {
+        for (int i = 0; i < 20; i++) {
+            filter.sample(latencyNanos);
+        }
+        Thread.sleep(WINDOW_MILLIS + 5);
+        filter.sample(latencyNanos);
+    }
+}
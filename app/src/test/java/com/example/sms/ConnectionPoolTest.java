@@ -0,0 +1,193 @@
+package com.example.sms;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.Driver;
+import java.sql.DriverManager;
+import java.sql.DriverPropertyInfo;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.sql.Statement;
+import java.util.Properties;
+import java.util.UUID;
+import java.util.logging.Logger;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+class ConnectionPoolTest {
+    private static final FlakyDriver FLAKY = new FlakyDriver();
+
+    static {
+        try {
+            DriverManager.registerDriver(FLAKY);
+        } catch (SQLException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private final String url = "jdbc:h2:mem:pool-" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1";
+    private ConnectionPool pool;
+
+    @AfterEach
+    void closePool() {
+        FLAKY.broken = false;
+        if (pool != null) {
+            pool.close();
+        }
+    }
+
+    private ConnectionPool open(String url, int maxSize, int statementCacheSize) {
+        pool = new ConnectionPool(url, "sa", "", maxSize, 0, 200, 60_000, 1_800_000, statementCacheSize);
+        return pool;
+    }
+
+    @Test
+    void borrowTimesOutWhileEveryConnectionIsLent() throws SQLException {
+        ConnectionPool pool = open(url, 1, 0);
+        Connection held = pool.borrow();
+        long start = System.nanoTime();
+        assertThrows(SQLTimeoutException.class, pool::borrow);
+        assertTrue(System.nanoTime() - start >= 150_000_000L, "waited for the borrow timeout");
+        assertEquals(1, pool.stats().getTimeouts());
+
+        held.close();
+        try (Connection conn = pool.borrow()) {
+            assertTrue(conn.isValid(1));
+        }
+        assertEquals(1, pool.stats().getCreated());
+    }
+
+    @Test
+    void releaseRollsBackAndRestoresAutoCommit() throws SQLException {
+        ConnectionPool pool = open(url, 1, 0);
+        try (Connection conn = pool.borrow(); Statement st = conn.createStatement()) {
+            st.execute("CREATE TABLE t (id INT)");
+        }
+        try (Connection conn = pool.borrow(); Statement st = conn.createStatement()) {
+            conn.setAutoCommit(false);
+            st.executeUpdate("INSERT INTO t VALUES (1)");
+            // Returned without a commit
+        }
+        try (Connection conn = pool.borrow(); Statement st = conn.createStatement();
+             ResultSet rs = st.executeQuery("SELECT COUNT(*) FROM t")) {
+            assertTrue(conn.getAutoCommit());
+            rs.next();
+            assertEquals(0, rs.getInt(1));
+        }
+        assertEquals(1, pool.stats().getCreated());
+    }
+
+    @Test
+    void cachedStatementsAreReusedAndReset() throws SQLException {
+        ConnectionPool pool = open(url, 1, 4);
+        String sql = "SELECT CAST(? AS INT)";
+        PreparedStatement first;
+        int fetchSize;
+        try (Connection conn = pool.borrow(); PreparedStatement ps = conn.prepareStatement(sql)) {
+            first = ps.unwrap(PreparedStatement.class);
+            fetchSize = ps.getFetchSize();
+            ps.setInt(1, 42);
+            ps.setFetchSize(fetchSize + 7);
+            try (ResultSet rs = ps.executeQuery()) {
+                rs.next();
+                assertEquals(42, rs.getInt(1));
+            }
+        }
+        try (Connection conn = pool.borrow(); PreparedStatement ps = conn.prepareStatement(sql)) {
+            assertSame(first, ps.unwrap(PreparedStatement.class));
+            // Parameters and fetch size from the last use were cleared
+            assertThrows(SQLException.class, ps::executeQuery);
+            assertEquals(fetchSize, ps.getFetchSize());
+            // A statement already out of the cache is not handed out twice
+            try (PreparedStatement other = conn.prepareStatement(sql)) {
+                assertNotSame(first, other.unwrap(PreparedStatement.class));
+            }
+        }
+        assertEquals(1, pool.stats().getStatementHits());
+        assertEquals(2, pool.stats().getStatementMisses());
+    }
+
+    @Test
+    void connectionExceptionsDiscardTheConnection() throws SQLException {
+        ConnectionPool pool = open(url.replace("jdbc:", "jdbc:flaky:"), 1, 4);
+        try (Connection conn = pool.borrow()) {
+            FLAKY.broken = true;
+            SQLException e = assertThrows(SQLException.class, () -> conn.prepareStatement("SELECT 1"));
+            assertEquals("08S01", e.getSQLState());
+        }
+        FLAKY.broken = false;
+        assertEquals(0, pool.stats().getTotal());
+        assertEquals(1, pool.stats().getEvicted());
+
+        try (Connection conn = pool.borrow(); Statement st = conn.createStatement()) {
+            st.execute("SELECT 1");
+        }
+        assertEquals(2, pool.stats().getCreated());
+    }
+
+    /**
+     * Opens H2 connections for {@code jdbc:flaky:} URLs that fail with a connection
+     * exception while {@link #broken} is set, as a dropped MySQL socket does.
+     */
+    private static final class FlakyDriver implements Driver {
+        volatile boolean broken;
+
+        @Override
+        public Connection connect(String url, Properties info) throws SQLException {
+            if (!acceptsURL(url)) {
+                return null;
+            }
+            Connection real = DriverManager.getConnection(url.replace("jdbc:flaky:", "jdbc:"), info);
+            return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                    new Class<?>[]{Connection.class}, (proxy, method, args) -> {
+                        if (broken && !method.getName().equals("close")) {
+                            throw new SQLException("Communications link failure", "08S01");
+                        }
+                        try {
+                            return method.invoke(real, args);
+                        } catch (InvocationTargetException e) {
+                            throw e.getCause();
+                        }
+                    });
+        }
+
+        @Override
+        public boolean acceptsURL(String url) {
+            return url.startsWith("jdbc:flaky:");
+        }
+
+        @Override
+        public DriverPropertyInfo[] getPropertyInfo(String url, Properties info) {
+            return new DriverPropertyInfo[0];
+        }
+
+        @Override
+        public int getMajorVersion() {
+            return 1;
+        }
+
+        @Override
+        public int getMinorVersion() {
+            return 0;
+        }
+
+        @Override
+        public boolean jdbcCompliant() {
+            return false;
+        }
+
+        @Override
+        public Logger getParentLogger() {
+            return Logger.getGlobal();
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package com.example.sms;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class LogStudentStoreTest {
+    private static final int SEGMENT_SIZE = 64 * 1024;
+
+    @TempDir
+    Path dir;
+
+    private LogStudentStore open() throws IOException {
+        return new LogStudentStore(dir, SEGMENT_SIZE, false, 0, 0.5);
+    }
+
+    @Test
+    void deletesSurviveRestart() throws IOException, SQLException {
+        try (LogStudentStore store = open()) {
+            for (int i = 0; i < 3; i++) {
+                store.addStudent(new Student(0, "s" + i, "s" + i + "@example.com", 20 + i));
+            }
+            store.deleteStudent(2);
+        }
+        try (LogStudentStore store = open()) {
+            assertNull(store.getStudentById(2));
+            assertEquals(2, store.size());
+            Student added = new Student(0, "new", "new@example.com", 30);
+            store.addStudent(added);
+            // Ids are never reused, or the tombstone could hide the new row after a restart
+            assertEquals(4, added.getId());
+        }
+        try (LogStudentStore store = open()) {
+            assertNull(store.getStudentById(2));
+            assertEquals("new", store.getStudentById(4).getName());
+        }
+    }
+
+    @Test
+    void compactThenReopenKeepsLiveRowsAndDeletes() throws IOException, SQLException {
+        Map<Integer, String> expected = new TreeMap<>();
+        try (LogStudentStore store = open()) {
+            for (int i = 1; i <= 4000; i++) {
+                store.addStudent(new Student(0, "student-" + i, "s" + i + "@example.com", 20));
+                expected.put(i, "student-" + i);
+            }
+            for (int i = 1; i <= 4000; i++) {
+                if (i % 3 == 0) {
+                    store.deleteStudent(i);
+                    expected.remove(i);
+                } else if (i % 2 == 0) {
+                    store.updateStudent(new Student(i, "updated-" + i, "s" + i + "@example.com", 21));
+                    expected.put(i, "updated-" + i);
+                }
+            }
+            int before = segmentFiles();
+            store.compact();
+            assertTrue(segmentFiles() < before, "compaction should drop mostly dead segments");
+            assertContents(store, expected);
+        }
+        try (LogStudentStore store = open()) {
+            assertContents(store, expected);
+            store.compact();
+        }
+        try (LogStudentStore store = open()) {
+            assertContents(store, expected);
+        }
+    }
+
+    @Test
+    void tombstonesStayWhileTheRowsTheyHideRemain() throws IOException, SQLException {
+        try (LogStudentStore store = open()) {
+            for (int i = 1; i <= 24_000; i++) {
+                store.addStudent(new Student(0, "student-" + i, "s" + i + "@example.com", 20));
+            }
+            // Leaves the older segments three quarters live, and fills a segment with tombstones
+            for (int i = 4; i <= 24_000; i += 4) {
+                store.deleteStudent(i);
+            }
+            int segments = segmentFiles();
+            while (segmentFiles() == segments) {
+                store.addStudent(new Student(0, "filler", "filler@example.com", 20));
+            }
+            int before = segmentFiles();
+            store.compact();
+            assertEquals(before, segmentFiles(), "no segment is below the threshold");
+        }
+        try (LogStudentStore store = open()) {
+            assertNull(store.getStudentById(4));
+            assertNull(store.getStudentById(24_000));
+            assertEquals("student-1", store.getStudentById(1).getName());
+        }
+    }
+
+    private static void assertContents(LogStudentStore store, Map<Integer, String> expected) {
+        assertEquals(expected.size(), store.size());
+        for (int id = 1; id <= 4000; id++) {
+            Student s = store.getStudentById(id);
+            assertEquals(expected.get(id), s == null ? null : s.getName(), "student " + id);
+        }
+    }
+
+    private int segmentFiles() throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            return (int) files.filter(p -> p.getFileName().toString().startsWith("students-")).count();
+        }
+    }
+}
@@ -0,0 +1,278 @@
+package com.example.sms;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.sun.net.httpserver.HttpExchange;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class NioHttpServerTest {
+    private static final long MAX_BODY = 100_000_000;
+
+    private NioHttpServer server;
+    private final CompletableFuture<Throwable> bodyError = new CompletableFuture<>();
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    @BeforeEach
+    void start() throws IOException {
+        server = new NioHttpServer(2, 8192, MAX_BODY, 4 * NioHttpServer.BODY_WINDOW, 60_000);
+        server.bind(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/echo", exchange -> {
+            byte[] body;
+            try {
+                body = exchange.getRequestBody().readAllBytes();
+            } catch (IOException e) {
+                bodyError.complete(e);
+                throw e;
+            }
+            respond(exchange, body);
+        });
+        // Holds its body unread until the test lets it go
+        server.createContext("/hold", exchange -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            respond(exchange, "held".getBytes(StandardCharsets.US_ASCII));
+        });
+        server.start();
+    }
+
+    @AfterEach
+    void stop() {
+        release.countDown();
+        server.stop(0);
+    }
+
+    private static void respond(HttpExchange exchange, byte[] body) throws IOException {
+        exchange.sendResponseHeaders(200, body.length == 0 ? -1 : body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    // Parser
+
+    @Test
+    void chunkedBodySplitAcrossReadsIsDecoded() throws Exception {
+        Parsed p = new Parsed(1024);
+        String request = "POST /echo HTTP/1.1\r\nHost: x\r\nTransfer-Encoding: chunked\r\n\r\n"
+                + "5\r\nhello\r\n7;ext=1\r\n, world\r\n0\r\nTrailer: t\r\n\r\n";
+        List<Integer> results = new ArrayList<>();
+        // One byte at a time, as the slowest client would send it
+        for (byte b : request.getBytes(StandardCharsets.US_ASCII)) {
+            results.add(p.feed(new byte[] {b}));
+        }
+        assertEquals(1, results.stream().filter(r -> r == NioHttpServer.RequestParser.READY).count());
+        assertEquals(NioHttpServer.RequestParser.BODY_DONE, results.get(results.size() - 1));
+        assertEquals("hello, world", p.body.toString(StandardCharsets.US_ASCII));
+    }
+
+    @Test
+    void contentLengthBodyIsNotBufferedByTheParser() throws Exception {
+        Parsed p = new Parsed(MAX_BODY);
+        assertEquals(NioHttpServer.RequestParser.READY,
+                p.feed("POST /echo HTTP/1.1\r\nContent-Length: 67000000\r\n\r\n".getBytes(StandardCharsets.US_ASCII)));
+        NioHttpServer.Request request = p.parser.take();
+        assertTrue(request.hasBody);
+        assertEquals(NioHttpServer.RequestParser.NEED_MORE, p.feed(new byte[1000]));
+        assertEquals(1000, p.body.size());
+    }
+
+    @Test
+    void oversizeBodiesAreRejected() throws Exception {
+        Parsed declared = new Parsed(1024);
+        NioHttpServer.RequestParser.BadRequest e = assertThrows(NioHttpServer.RequestParser.BadRequest.class,
+                () -> declared.feed("POST / HTTP/1.1\r\nContent-Length: 1025\r\n\r\n".getBytes(StandardCharsets.US_ASCII)));
+        assertEquals(413, e.status);
+
+        Parsed chunked = new Parsed(1024);
+        assertEquals(NioHttpServer.RequestParser.READY,
+                chunked.feed("POST / HTTP/1.1\r\nTransfer-Encoding: chunked\r\n\r\n".getBytes(StandardCharsets.US_ASCII)));
+        e = assertThrows(NioHttpServer.RequestParser.BadRequest.class,
+                () -> chunked.feed(("400\r\n" + "x".repeat(1024) + "\r\n1\r\n").getBytes(StandardCharsets.US_ASCII)));
+        assertEquals(413, e.status);
+    }
+
+    @Test
+    void pipelinedRequestsParseOneAfterAnother() throws Exception {
+        Parsed p = new Parsed(1024);
+        byte[] none = new byte[0];
+        assertEquals(NioHttpServer.RequestParser.READY, p.feed(("POST /a HTTP/1.1\r\nContent-Length: 3\r\n\r\nabc"
+                + "GET /b HTTP/1.1\r\n\r\n").getBytes(StandardCharsets.US_ASCII)));
+        assertEquals("/a", p.parser.take().uri.getPath());
+        assertEquals(NioHttpServer.RequestParser.BODY_DONE, p.feed(none));
+        assertEquals(NioHttpServer.RequestParser.READY, p.feed(none));
+        NioHttpServer.Request second = p.parser.take();
+        assertEquals("/b", second.uri.getPath());
+        assertTrue(!second.hasBody);
+        assertEquals(NioHttpServer.RequestParser.NEED_MORE, p.feed(none));
+        assertEquals(0, p.in.position());
+        assertEquals("abc", p.body.toString(StandardCharsets.US_ASCII));
+    }
+
+    private static final class Parsed implements NioHttpServer.RequestParser.BodySink {
+        final NioHttpServer.RequestParser parser;
+        final ByteArrayOutputStream body = new ByteArrayOutputStream();
+        final ByteBuffer in = ByteBuffer.allocate(NioHttpServer.BUFFER_SIZE);
+
+        Parsed(long maxBodyBytes) {
+            parser = new NioHttpServer.RequestParser(8192, maxBodyBytes);
+        }
+
+        /**
+         * Adds bytes to the buffer as a read would, and parses once, as the connection does.
+         */
+        int feed(byte[] bytes) throws NioHttpServer.RequestParser.BadRequest {
+            in.put(bytes);
+            in.flip();
+            try {
+                return parser.parse(in, this);
+            } finally {
+                in.compact();
+            }
+        }
+
+        @Override
+        public void append(ByteBuffer buf, int n) {
+            byte[] data = new byte[n];
+            buf.get(data);
+            body.write(data, 0, n);
+        }
+    }
+
+    // Server
+
+    @Test
+    void pipelinedRequestsAreAnsweredInOrder() throws IOException {
+        try (Socket socket = connect()) {
+            socket.getOutputStream().write(("POST /echo HTTP/1.1\r\nContent-Length: 5\r\n\r\nfirst"
+                    + "POST /echo HTTP/1.1\r\nTransfer-Encoding: chunked\r\n\r\n6\r\nsecond\r\n0\r\n\r\n"
+                    + "POST /echo HTTP/1.1\r\nContent-Length: 5\r\n\r\nthird").getBytes(StandardCharsets.US_ASCII));
+            InputStream in = socket.getInputStream();
+            assertEquals("first", readResponse(in));
+            assertEquals("second", readResponse(in));
+            assertEquals("third", readResponse(in));
+        }
+    }
+
+    @Test
+    void largeBodyStreamsThroughInPieces() throws IOException {
+        byte[] body = new byte[5 * 1024 * 1024];
+        for (int i = 0; i < body.length; i++) {
+            body[i] = (byte) ('a' + i % 26);
+        }
+        try (Socket socket = connect()) {
+            OutputStream out = socket.getOutputStream();
+            out.write("POST /echo HTTP/1.1\r\nTransfer-Encoding: chunked\r\n\r\n".getBytes(StandardCharsets.US_ASCII));
+            for (int off = 0; off < body.length; off += 100_000) {
+                int n = Math.min(100_000, body.length - off);
+                out.write((Integer.toHexString(n) + "\r\n").getBytes(StandardCharsets.US_ASCII));
+                out.write(body, off, n);
+                out.write("\r\n".getBytes(StandardCharsets.US_ASCII));
+            }
+            out.write("0\r\n\r\n".getBytes(StandardCharsets.US_ASCII));
+            assertEquals(new String(body, StandardCharsets.US_ASCII), readResponse(socket.getInputStream()));
+        }
+    }
+
+    @Test
+    void shortBodyFailsTheHandlersStream() throws Exception {
+        try (Socket socket = connect()) {
+            socket.getOutputStream().write("POST /echo HTTP/1.1\r\nContent-Length: 100\r\n\r\nonly ten!!"
+                    .getBytes(StandardCharsets.US_ASCII));
+            socket.shutdownOutput();
+            assertInstanceOf(IOException.class, bodyError.get(5, TimeUnit.SECONDS));
+            // The connection closes instead of waiting for the rest
+            socket.getInputStream().readAllBytes();
+        }
+    }
+
+    @Test
+    void oversizeRequestIsRejectedBeforeItsBody() throws IOException {
+        try (Socket socket = connect()) {
+            socket.getOutputStream().write(("POST /echo HTTP/1.1\r\nContent-Length: " + (MAX_BODY + 1) + "\r\n\r\n")
+                    .getBytes(StandardCharsets.US_ASCII));
+            assertTrue(readHead(socket.getInputStream()).startsWith("HTTP/1.1 413 "));
+        }
+    }
+
+    @Test
+    void hugeDeclaredBodiesDoNotStopNewConnections() throws Exception {
+        List<Socket> uploads = new ArrayList<>();
+        try {
+            byte[] part = new byte[256 * 1024];
+            for (int i = 0; i < 60; i++) {
+                Socket socket = connect();
+                uploads.add(socket);
+                socket.getOutputStream().write("POST /hold HTTP/1.1\r\nContent-Length: 67000000\r\n\r\n"
+                        .getBytes(StandardCharsets.US_ASCII));
+                // Only part of it fits before the server stops reading; the rest waits in the socket
+                Thread.ofVirtual().start(() -> {
+                    try {
+                        socket.getOutputStream().write(part);
+                    } catch (IOException e) {
+                        // Closed when the test ends
+                    }
+                });
+            }
+            try (Socket socket = connect()) {
+                socket.getOutputStream().write("POST /echo HTTP/1.1\r\nContent-Length: 2\r\n\r\nok"
+                        .getBytes(StandardCharsets.US_ASCII));
+                assertEquals("ok", readResponse(socket.getInputStream()));
+            }
+        } finally {
+            for (Socket socket : uploads) {
+                socket.close();
+            }
+        }
+    }
+
+    private Socket connect() throws IOException {
+        Socket socket = new Socket("127.0.0.1", server.getAddress().getPort());
+        socket.setSoTimeout(10_000);
+        return socket;
+    }
+
+    private static String readHead(InputStream in) throws IOException {
+        StringBuilder head = new StringBuilder();
+        while (!head.toString().endsWith("\r\n\r\n")) {
+            int b = in.read();
+            if (b < 0) {
+                throw new IOException("Connection closed in the response head: " + head);
+            }
+            head.append((char) b);
+        }
+        return head.toString();
+    }
+
+    private static String readResponse(InputStream in) throws IOException {
+        String head = readHead(in);
+        assertTrue(head.startsWith("HTTP/1.1 200 "), head);
+        int length = 0;
+        for (String line : head.split("\r\n")) {
+            if (line.toLowerCase().startsWith("content-length:")) {
+                length = Integer.parseInt(line.substring(15).trim());
+            }
+        }
+        return new String(in.readNBytes(length), StandardCharsets.US_ASCII);
+    }
+}
@@ -0,0 +1,87 @@
+package com.example.sms;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+class RateLimitFilterTest {
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    private final HttpClient client = HttpClient.newHttpClient();
+    private HttpServer server;
+
+    @AfterEach
+    void stop() {
+        if (server != null) {
+            server.stop(0);
+        }
+    }
+
+    @Test
+    void burstIsSpentThenTokensReturnAtTheRate() {
+        RateLimitFilter.Limit limit = new RateLimitFilter.Limit(2, 3);
+        long now = 1_000 * SECOND;
+        AtomicLong bucket = new AtomicLong(now);
+        for (int i = 0; i < 3; i++) {
+            assertEquals(0, limit.take(bucket, now), "token " + i);
+        }
+        // Empty: the next token comes one interval after the burst was spent
+        assertEquals(SECOND / 2, limit.take(bucket, now));
+        assertEquals(SECOND / 4, limit.take(bucket, now + SECOND / 4));
+        assertEquals(0, limit.take(bucket, now + SECOND / 2));
+        assertEquals(SECOND / 2, limit.take(bucket, now + SECOND / 2));
+
+        // A bucket left alone refills to the burst and no further
+        long later = now + 60 * SECOND;
+        for (int i = 0; i < 3; i++) {
+            assertEquals(0, limit.take(bucket, later), "token " + i);
+        }
+        assertEquals(SECOND / 2, limit.take(bucket, later));
+    }
+
+    @Test
+    void requestsOverTheBurstGet429WithRetryAfter() throws Exception {
+        // One read every ten seconds with a burst of two, and a separate bucket for writes
+        RateLimitFilter filter = new RateLimitFilter(0.1, 2, 0.1, 1, 100, Set.of());
+        start(filter);
+
+        assertEquals(200, send("GET").statusCode());
+        assertEquals(200, send("GET").statusCode());
+        HttpResponse<String> limited = send("GET");
+        assertEquals(429, limited.statusCode());
+        assertEquals("10", limited.headers().firstValue("Retry-After").orElse(null));
+        assertEquals(1, filter.getLimited());
+
+        assertEquals(200, send("POST").statusCode());
+        HttpResponse<String> limitedWrite = send("POST");
+        assertEquals(429, limitedWrite.statusCode());
+        assertEquals("10", limitedWrite.headers().firstValue("Retry-After").orElse(null));
+        assertEquals(1, filter.getClients());
+    }
+
+    private void start(RateLimitFilter filter) throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/api/students", exchange -> {
+            exchange.sendResponseHeaders(200, -1);
+            exchange.close();
+        }).getFilters().add(filter);
+        server.start();
+    }
+
+    private HttpResponse<String> send(String method) throws IOException, InterruptedException {
+        URI uri = URI.create("http://127.0.0.1:" + server.getAddress().getPort() + "/api/students");
+        HttpRequest request = HttpRequest.newBuilder(uri).method(method, HttpRequest.BodyPublishers.noBody()).build();
+        return client.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+}
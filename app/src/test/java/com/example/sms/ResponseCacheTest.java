@@ -0,0 +1,120 @@
+package com.example.sms;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+class ResponseCacheTest {
+    private final ResponseCache cache = new ResponseCache(1024 * 1024);
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+
+    @AfterEach
+    void stop() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void concurrentMissesShareOneLoad() throws Exception {
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        ResponseCache.Loader loader = () -> {
+            loads.incrementAndGet();
+            await(release);
+            return body("page");
+        };
+        int callers = 8;
+        List<Future<byte[]>> results = new ArrayList<>();
+        for (int i = 0; i < callers; i++) {
+            results.add(executor.submit(() -> cache.get("/api/students", 1, loader)));
+        }
+        // Every caller but the one loading is parked on its result
+        long deadline = System.nanoTime() + 10_000_000_000L;
+        while (cache.getCoalesced() < callers - 1 && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        release.countDown();
+
+        byte[] first = results.get(0).get(10, TimeUnit.SECONDS);
+        for (Future<byte[]> result : results) {
+            assertSame(first, result.get(10, TimeUnit.SECONDS));
+        }
+        assertEquals(1, loads.get());
+        assertEquals(1, cache.getMisses());
+        assertEquals(callers - 1, cache.getCoalesced());
+
+        assertSame(first, cache.get("/api/students", 1, () -> body("reloaded")));
+        assertEquals(1, cache.getHits());
+    }
+
+    @Test
+    void newerVersionIsNeverServedAnOlderBody() throws Exception {
+        assertArrayEquals(body("v1"), cache.get("/api/students", 1, () -> body("v1")));
+        assertArrayEquals(body("v2"), cache.get("/api/students", 2, () -> body("v2")));
+        // A reader still at the old version may take the newer body
+        assertArrayEquals(body("v2"), cache.get("/api/students", 1, () -> body("v1")));
+
+        // A load already running for an older version is not joined
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<byte[]> slow = CompletableFuture.supplyAsync(() -> {
+            try {
+                return cache.get("/api/students", 3, () -> {
+                    started.countDown();
+                    await(release);
+                    return body("v3");
+                });
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        }, executor);
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+        assertArrayEquals(body("v4"), cache.get("/api/students", 4, () -> body("v4")));
+        release.countDown();
+        assertArrayEquals(body("v3"), slow.get(10, TimeUnit.SECONDS));
+
+        // The late v3 body did not replace the v4 one
+        assertArrayEquals(body("v4"), cache.get("/api/students", 4, () -> body("reloaded")));
+        assertEquals(0, cache.getCoalesced());
+    }
+
+    @Test
+    void failedLoadIsNotCached() throws Exception {
+        assertThrows(IOException.class, () -> cache.get("/api/students", 1, () -> {
+            throw new IOException("Lost the database connection");
+        }));
+        assertArrayEquals(body("page"), cache.get("/api/students", 1, () -> body("page")));
+        assertEquals(2, cache.getMisses());
+        assertEquals(0, cache.getHits());
+    }
+
+    private static byte[] body(String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static void await(CountDownLatch latch) throws IOException {
+        try {
+            if (!latch.await(10, TimeUnit.SECONDS)) {
+                throw new IOException("Never released");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        }
+    }
+}
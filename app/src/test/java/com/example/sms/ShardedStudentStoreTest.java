@@ -0,0 +1,272 @@
+package com.example.sms;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+class ShardedStudentStoreTest {
+    private final String run = UUID.randomUUID().toString();
+    private final List<ConnectionPool> pools = new ArrayList<>();
+    private final List<String> warnings = new ArrayList<>();
+
+    @AfterEach
+    void closePools() {
+        pools.forEach(ConnectionPool::close);
+    }
+
+    /**
+     * A store over the first {@code count} of this test's in-memory databases. Databases
+     * keep their rows and claims between stores, as real shards would across restarts.
+     */
+    private ShardedStudentStore open(int count) throws SQLException {
+        List<ShardedStudentStore.Shard> shards = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            String url = "jdbc:h2:mem:shard-" + i + "-" + run + ";DB_CLOSE_DELAY=-1;MODE=MySQL";
+            ConnectionPool pool = new ConnectionPool(url, "sa", "", 4, 0, 5_000, 60_000, 1_800_000);
+            pools.add(pool);
+            try (Connection conn = pool.borrow(); Statement st = conn.createStatement()) {
+                st.execute("CREATE TABLE IF NOT EXISTS students (id INT AUTO_INCREMENT PRIMARY KEY, "
+                        + "name VARCHAR(100), email VARCHAR(100), age INT)");
+            }
+            shards.add(new ShardedStudentStore.Shard(i, url, pool));
+        }
+        return new ShardedStudentStore(shards, warnings::add);
+    }
+
+    private static List<Student> addStudents(StudentStore store, int count) throws SQLException {
+        List<Student> added = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            // Mixed case, so a case-insensitive sort on any shard would show
+            String name = (i % 3 == 0 ? "Name " : "name ") + String.format("%03d", (i * 37) % count);
+            Student s = new Student(0, name, "s" + i + "@example.com", 18 + i % 7);
+            store.addStudent(s);
+            added.add(s);
+        }
+        return added;
+    }
+
+    @Test
+    void idsRouteToTheShardOwningTheirBucket() throws SQLException {
+        for (int b = 0; b < ShardedStudentStore.BUCKETS; b++) {
+            assertEquals(b, ShardedStudentStore.bucketOf(ShardedStudentStore.firstId(b)));
+            assertEquals(b, ShardedStudentStore.bucketOf(ShardedStudentStore.lastId(b)));
+        }
+        ShardedStudentStore store = open(3);
+        Set<Integer> buckets = new HashSet<>();
+        for (Student s : addStudents(store, 600)) {
+            int bucket = ShardedStudentStore.bucketOf(s.getId());
+            buckets.add(bucket);
+            int owner = store.ownerOf(bucket);
+            for (ShardedStudentStore.Shard shard : store.shards()) {
+                Student stored = shard.dao.getStudentById(s.getId());
+                if (shard.index == owner) {
+                    assertNotNull(stored, "student " + s.getId() + " on its owner");
+                } else {
+                    assertNull(stored, "student " + s.getId() + " on shard " + shard.index);
+                }
+            }
+            assertEquals(s.getName(), store.getStudentById(s.getId()).getName());
+        }
+        // Round-robin over the buckets, so every bucket and every shard gets students
+        assertEquals(ShardedStudentStore.BUCKETS, buckets.size());
+    }
+
+    @Test
+    void mergedPagesFollowTheSortOrderAcrossShards() throws SQLException {
+        ShardedStudentStore store = open(3);
+        List<Student> added = addStudents(store, 400);
+        for (StudentQuery.SortField field : StudentQuery.SortField.values()) {
+            for (boolean descending : new boolean[]{false, true}) {
+                StudentQuery query = new StudentQuery();
+                query.setSortField(field);
+                query.setDescending(descending);
+                List<Student> expected = new ArrayList<>(added);
+                expected.sort(ShardedStudentStore.order(query));
+                assertEquals(ids(expected), ids(pageThrough(store, field, descending, 7, null)), field + " " + descending);
+            }
+        }
+    }
+
+    @Test
+    void textSortsByCodePoint() {
+        assertTrue(ShardedStudentStore.compareCodePoints("Bob", "alice") < 0);
+        assertTrue(ShardedStudentStore.compareCodePoints("ann", "ann ") < 0);
+        // Above U+FFFF, UTF-16 order and code point order disagree
+        String emoji = new String(Character.toChars(0x1F600));
+        assertTrue(ShardedStudentStore.compareCodePoints("\uFFFD", emoji) < 0);
+        assertTrue("\uFFFD".compareTo(emoji) > 0);
+    }
+
+    @Test
+    void pagesDoNotSkipRowsBehindStaleCopies() throws SQLException {
+        ShardedStudentStore store = open(2);
+        List<Student> added = addStudents(store, 300);
+        // What interrupted moves leave behind: shard 1 also holds every row of shard 0
+        List<Student> stale = new ArrayList<>();
+        for (Student s : added) {
+            if (store.ownerOf(ShardedStudentStore.bucketOf(s.getId())) == 0) {
+                stale.add(s);
+            }
+        }
+        store.shards().get(1).dao.restoreStudents(stale);
+
+        for (StudentQuery.SortField field : List.of(StudentQuery.SortField.NAME, StudentQuery.SortField.ID)) {
+            StudentQuery query = new StudentQuery();
+            query.setSortField(field);
+            List<Student> expected = new ArrayList<>(added);
+            expected.sort(ShardedStudentStore.order(query));
+            assertEquals(ids(expected), ids(pageThrough(store, field, false, 5, null)), field.toString());
+        }
+    }
+
+    @Test
+    void nullNamesAndEmailsPageWithoutSkippingRows() throws SQLException {
+        ShardedStudentStore store = open(2);
+        InMemoryStudentStore memory = new InMemoryStudentStore();
+        List<Student> added = new ArrayList<>();
+        for (int i = 0; i < 60; i++) {
+            // Capitalized names sort below "null", which a cursor holding the text "null" skipped
+            String name = i % 4 == 0 ? null : (i % 2 == 0 ? "Name " : "name ") + i;
+            String email = i % 5 == 0 ? null : "s" + i + "@example.com";
+            Student s = new Student(0, name, email, 20);
+            store.addStudent(s);
+            memory.addStudent(new Student(0, name, email, 20));
+            added.add(s);
+        }
+        for (StudentQuery.SortField field : List.of(StudentQuery.SortField.NAME, StudentQuery.SortField.EMAIL)) {
+            for (boolean descending : new boolean[]{false, true}) {
+                StudentQuery query = new StudentQuery();
+                query.setSortField(field);
+                query.setDescending(descending);
+                List<Student> expected = new ArrayList<>(added);
+                expected.sort(ShardedStudentStore.order(query));
+                assertEquals(ids(expected), ids(pageThrough(store, field, descending, 4, null)), field + " " + descending);
+                List<Integer> paged = ids(pageThrough(memory, field, descending, 4, null));
+                assertEquals(added.size(), paged.size());
+                assertEquals(added.size(), new HashSet<>(paged).size());
+            }
+        }
+    }
+
+    @Test
+    void cursorStaysContinuousWhileBucketsMove() throws SQLException {
+        ShardedStudentStore store = open(2);
+        List<Student> added = addStudents(store, 300);
+        StudentQuery query = new StudentQuery();
+        query.setSortField(StudentQuery.SortField.NAME);
+        List<Student> expected = new ArrayList<>(added);
+        expected.sort(ShardedStudentStore.order(query));
+
+        int[] page = {0};
+        List<Student> seen = pageThrough(store, StudentQuery.SortField.NAME, false, 10, () -> {
+            // Between pages, move a few buckets each way
+            int p = page[0]++;
+            for (int b = p * 8; b < p * 8 + 4; b++) {
+                store.moveBucket(b, 1 - store.ownerOf(b));
+                int other = ShardedStudentStore.BUCKETS - 1 - b;
+                store.moveBucket(other, 1 - store.ownerOf(other));
+            }
+        });
+        assertTrue(store.getMoves() > 0);
+        assertEquals(ids(expected), ids(seen));
+        for (Student s : added) {
+            assertEquals(s.getName(), store.getStudentById(s.getId()).getName());
+        }
+    }
+
+    @Test
+    void planEvensOutBucketsOverANewShard() throws SQLException {
+        ShardedStudentStore two = open(2);
+        List<Student> added = addStudents(two, 500);
+
+        // The third database has no claims, so it starts with no buckets
+        ShardedStudentStore store = open(3);
+        List<int[]> events = new ArrayList<>();
+        ShardRebalancer rebalancer = new ShardRebalancer(store, 0,
+                (bucket, from, to, students, millis, done, total) -> events.add(new int[]{bucket, from, to, done, total}));
+        int[] before = rebalancer.bucketsPerShard();
+        assertEquals(0, before[2]);
+
+        List<int[]> plan = rebalancer.plan();
+        int[] after = before.clone();
+        int lastBucket = Integer.MAX_VALUE;
+        for (int[] move : plan) {
+            assertNotEquals(store.ownerOf(move[0]), move[1]);
+            assertTrue(move[0] < lastBucket, "highest buckets move first");
+            lastBucket = move[0];
+            after[store.ownerOf(move[0])]--;
+            after[move[1]]++;
+        }
+        for (int owned : after) {
+            assertTrue(Math.abs(owned - ShardedStudentStore.BUCKETS / 3) <= 1, "balanced: " + owned);
+        }
+        // Only the buckets the new shard needs move
+        assertEquals(after[2], plan.size());
+
+        assertEquals(plan.size(), rebalancer.rebalance());
+        assertEquals(plan.size(), events.size());
+        assertEquals(plan.size(), events.get(events.size() - 1)[3]);
+        assertTrue(rebalancer.plan().isEmpty());
+        for (Student s : added) {
+            assertEquals(s.getName(), store.getStudentById(s.getId()).getName());
+        }
+        assertEquals(ids(added.stream().sorted(Comparator.comparingInt(Student::getId)).toList()),
+                ids(store.getAllStudents()));
+    }
+
+    @Test
+    void staleClaimsAreDroppedAndReported() throws SQLException {
+        ShardedStudentStore store = open(2);
+        assertEquals(0, store.ownerOf(5));
+        // A move that stopped after the new owner's claim
+        store.shards().get(1).claim(5, 1, 1);
+        ShardedStudentStore reopened = open(2);
+        assertEquals(1, reopened.ownerOf(5));
+        assertEquals(List.of("Shard 0: dropping stale copy of bucket 5"), warnings);
+    }
+
+    private interface BetweenPages {
+        void run() throws SQLException;
+    }
+
+    private static List<Student> pageThrough(StudentStore store, StudentQuery.SortField field, boolean descending,
+                                             int limit, BetweenPages between) throws SQLException {
+        List<Student> seen = new ArrayList<>();
+        String cursor = null;
+        do {
+            StudentQuery query = new StudentQuery();
+            query.setSortField(field);
+            query.setDescending(descending);
+            query.setLimit(limit);
+            if (cursor != null) {
+                query.setCursor(cursor);
+            }
+            StudentPage page = store.findStudents(query);
+            assertTrue(page.getStudents().size() <= limit);
+            seen.addAll(page.getStudents());
+            cursor = page.getNextCursor();
+            if (between != null && cursor != null) {
+                between.run();
+            }
+        } while (cursor != null);
+        return seen;
+    }
+
+    private static List<Integer> ids(List<Student> students) {
+        return students.stream().map(Student::getId).toList();
+    }
+}
@@ -0,0 +1,127 @@
+package com.example.sms;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.util.Arrays;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+class StudentAPITest {
+    private static final int STUDENTS = 3_000;
+    private static final int ROWS_BEFORE_FAILURE = 2_000;
+
+    private HttpServer server;
+
+    @AfterEach
+    void stop() {
+        if (server != null) {
+            server.stop(0);
+        }
+    }
+
+    /**
+     * Serves a store whose full scans fail after {@link #ROWS_BEFORE_FAILURE} rows, well after
+     * the response headers have gone out.
+     */
+    private void start(String engine) throws IOException, SQLException {
+        InMemoryStudentStore store = new InMemoryStudentStore() {
+            @Override
+            public void streamAllStudents(RowHandler handler) throws IOException {
+                int[] rows = {0};
+                super.streamAllStudents((id, name, email, age) -> {
+                    if (++rows[0] > ROWS_BEFORE_FAILURE) {
+                        throw new IOException("Lost the database connection");
+                    }
+                    handler.row(id, name, email, age);
+                });
+            }
+        };
+        for (int i = 0; i < STUDENTS; i++) {
+            store.addStudent(new Student(0, "student-" + i, "s" + i + "@example.com", 20));
+        }
+        server = engine.equals("nio")
+                ? new NioHttpServer(1, 8192, 64L * 1024 * 1024, 1024 * 1024, 60_000)
+                : HttpServer.create();
+        server.bind(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/api/students", new StudentAPI.StudentHandler(store));
+        server.start();
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"jdk", "nio"})
+    void csvExportFailingMidStreamIsCutShort(String engine) throws Exception {
+        start(engine);
+        String response = get("/api/students/export.csv");
+        assertTrue(response.startsWith("HTTP/1.1 200 "), response);
+        assertTrue(response.contains(CsvWriter.HEADER));
+        assertCutShort(response);
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"jdk", "nio"})
+    void fullListFailingMidStreamIsCutShort(String engine) throws Exception {
+        start(engine);
+        String response = get("/api/students");
+        assertTrue(response.startsWith("HTTP/1.1 200 "), response);
+        assertTrue(response.contains("student-0"));
+        assertCutShort(response);
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"jdk", "nio"})
+    void oversizeBulkArrayIsRejected(String engine) throws Exception {
+        start(engine);
+        byte[] body = new byte[16 * 1024 * 1024 + 1];
+        Arrays.fill(body, (byte) ' ');
+        body[0] = '[';
+        body[body.length - 1] = ']';
+        try (Socket socket = new Socket("127.0.0.1", server.getAddress().getPort())) {
+            socket.setSoTimeout(10_000);
+            OutputStream out = socket.getOutputStream();
+            out.write(("POST /api/students/_bulk HTTP/1.1\r\nHost: localhost\r\nContent-Length: " + body.length
+                    + "\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+            // The server may answer and close before it has all of it
+            Thread writer = Thread.ofVirtual().start(() -> {
+                try {
+                    out.write(body);
+                } catch (IOException e) {
+                    // Closed by the server or the test
+                }
+            });
+            byte[] head = socket.getInputStream().readNBytes(12);
+            assertEquals("HTTP/1.1 413", new String(head, StandardCharsets.US_ASCII));
+            socket.close();
+            writer.join();
+        }
+    }
+
+    private static void assertCutShort(String response) {
+        // No last chunk, so the client knows the body is incomplete
+        assertFalse(response.endsWith("\r\n0\r\n\r\n"), "body ended normally");
+        // And no second status line after the first
+        assertEquals(-1, response.indexOf("HTTP/1.1 ", 1));
+    }
+
+    /**
+     * Reads the whole response. The request asks for the connection to close after it, so a
+     * complete response ends there too.
+     */
+    private String get(String path) throws IOException {
+        try (Socket socket = new Socket("127.0.0.1", server.getAddress().getPort())) {
+            socket.setSoTimeout(10_000);
+            socket.getOutputStream().write(("GET " + path + " HTTP/1.1\r\nHost: localhost\r\nConnection: close\r\n\r\n")
+                    .getBytes(StandardCharsets.US_ASCII));
+            return new String(socket.getInputStream().readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+}
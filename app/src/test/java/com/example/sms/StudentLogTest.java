@@ -0,0 +1,146 @@
+package com.example.sms;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class StudentLogTest {
+    private static final int SEGMENT_SIZE = 64 * 1024;
+    private static final int HEADER_SIZE = 32;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void tornFrameAtTheEndIsDiscarded() throws IOException {
+        StudentLog log = new StudentLog(dir, SEGMENT_SIZE);
+        log.open((location, size, type, id) -> { });
+        appendPut(log, 1, "Ann");
+        appendPut(log, 2, "Bob");
+        log.close();
+
+        // A crash after the length and part of the payload reached the disk
+        Path segment = dir.resolve("students-00000001.log");
+        int end = endOfFrames(segment);
+        ByteBuffer torn = ByteBuffer.allocate(20);
+        torn.putInt(40).putInt(0xBAD).putInt(0x01020304).putInt(5).putInt(6).flip();
+        write(segment, end, torn);
+
+        assertEquals(List.of(1, 2), reopen().ids);
+        StudentLog reopened = new StudentLog(dir, SEGMENT_SIZE);
+        reopened.open((location, size, type, id) -> { });
+        appendPut(reopened, 3, "Cy");
+        reopened.close();
+        assertEquals(List.of(1, 2, 3), reopen().ids);
+    }
+
+    @Test
+    void leftoversAfterTheLastFrameAreNeverReplayed() throws IOException {
+        StudentLog log = new StudentLog(dir, SEGMENT_SIZE);
+        log.open((location, size, type, id) -> { });
+        appendPut(log, 1, "Ann");
+        log.close();
+
+        // An intact frame beyond a zero length, as a torn or reused segment can leave behind
+        Path segment = dir.resolve("students-00000001.log");
+        int end = endOfFrames(segment);
+        ByteBuffer stale = read(segment, HEADER_SIZE, end - HEADER_SIZE);
+        int gap = frameSize("Bob");
+        write(segment, end + gap, stale);
+
+        assertEquals(List.of(1), reopen().ids);
+        StudentLog reopened = new StudentLog(dir, SEGMENT_SIZE);
+        reopened.open((location, size, type, id) -> { });
+        // Lands exactly in the gap, so the leftover frame would follow it directly
+        appendPut(reopened, 2, "Bob");
+        reopened.close();
+        assertEquals(List.of(1, 2), reopen().ids);
+    }
+
+    @Test
+    void tombstonesCountAsLiveUntilTheirSegmentIsOldest() throws IOException {
+        StudentLog log = new StudentLog(dir, SEGMENT_SIZE);
+        log.open((location, size, type, id) -> { });
+        StudentLog.Frame frame = new StudentLog.Frame();
+        frame.put(1, "Ann", "ann@example.com", 20);
+        frame.delete(2);
+        log.append(frame, 1);
+        StudentLog.Segment seg = log.segment(frame.location(0));
+        seg.liveBytes = frame.size(0);
+        assertEquals(5, seg.tombstoneBytes);
+        assertEquals(1.0, seg.liveRatio(false));
+        assertEquals((double) frame.size(0) / (frame.size(0) + 5), seg.liveRatio(true));
+        log.close();
+
+        StudentLog reopened = new StudentLog(dir, SEGMENT_SIZE);
+        List<Long> locations = new ArrayList<>();
+        reopened.open((location, size, type, id) -> locations.add(location));
+        assertEquals(5, reopened.segment(locations.get(0)).tombstoneBytes);
+        reopened.close();
+    }
+
+    private static final class Replay {
+        final List<Integer> ids = new ArrayList<>();
+    }
+
+    private Replay reopen() throws IOException {
+        Replay replay = new Replay();
+        StudentLog log = new StudentLog(dir, SEGMENT_SIZE);
+        log.open((location, size, type, id) -> {
+            assertTrue(type == StudentLog.PUT || type == StudentLog.DELETE);
+            replay.ids.add(id);
+        });
+        log.close();
+        return replay;
+    }
+
+    private static void appendPut(StudentLog log, int id, String name) throws IOException {
+        StudentLog.Frame frame = new StudentLog.Frame();
+        frame.put(id, name, email(name), 20);
+        log.append(frame, id);
+    }
+
+    private static String email(String name) {
+        return name.toLowerCase() + "@example.com";
+    }
+
+    private static int frameSize(String name) {
+        StudentLog.Frame frame = new StudentLog.Frame();
+        frame.put(0, name, email(name), 20);
+        return 8 + frame.length();
+    }
+
+    private static int endOfFrames(Path segment) throws IOException {
+        try (FileChannel ch = FileChannel.open(segment, StandardOpenOption.READ)) {
+            ByteBuffer b = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+            int pos = HEADER_SIZE;
+            while (b.getInt(pos) != 0) {
+                pos += 8 + b.getInt(pos);
+            }
+            return pos;
+        }
+    }
+
+    private static ByteBuffer read(Path segment, int pos, int len) throws IOException {
+        try (FileChannel ch = FileChannel.open(segment, StandardOpenOption.READ)) {
+            ByteBuffer b = ByteBuffer.allocate(len);
+            ch.read(b, pos);
+            return b.flip();
+        }
+    }
+
+    private static void write(Path segment, int pos, ByteBuffer bytes) throws IOException {
+        try (FileChannel ch = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+            ch.write(bytes, pos);
+        }
+    }
+}
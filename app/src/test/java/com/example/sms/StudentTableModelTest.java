@@ -0,0 +1,79 @@
+package com.example.sms;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicReference;
+import javax.swing.SwingUtilities;
+import org.junit.jupiter.api.Test;
+
+class StudentTableModelTest {
+    // The model's defaults: sms.ui.pageSize and sms.ui.cachedPages
+    private static final int PAGE_SIZE = 200;
+    private static final int CACHED_PAGES = 20;
+
+    private final List<String> errors = new ArrayList<>();
+
+    @Test
+    void evictedPageShowsRowsInsertedIntoItsRange() throws Exception {
+        InMemoryStudentStore store = new InMemoryStudentStore();
+        int pages = CACHED_PAGES + 2;
+        // Even ids only, so other clients can add rows inside every page later
+        for (int i = 1; i <= pages * PAGE_SIZE; i++) {
+            store.insertWithId(new Student(2 * i, "student-" + 2 * i, "s" + 2 * i + "@example.com", 20));
+        }
+        StudentTableModel model = onEdt(() -> new StudentTableModel(store, errors::add));
+        // Scrolling to the last page pushes the first one out of the cache
+        for (int p = 0; p < pages; p++) {
+            assertEquals(2 * (p * PAGE_SIZE + 1), show(model, p * PAGE_SIZE).getId());
+        }
+
+        // Another client fills the gaps of the first page, doubling it
+        for (int id = 1; id < 2 * PAGE_SIZE; id += 2) {
+            store.insertWithId(new Student(id, "student-" + id, "s" + id + "@example.com", 20));
+        }
+        show(model, 0);
+        for (int row = 0; row < 2 * PAGE_SIZE; row++) {
+            assertEquals(row + 1, show(model, row).getId(), "row " + row);
+        }
+        // The second page still starts where it did
+        assertEquals(2 * PAGE_SIZE + 2, show(model, 2 * PAGE_SIZE).getId());
+        assertEquals((pages + 1) * PAGE_SIZE, (int) onEdt(model::getRowCount));
+        assertTrue(errors.isEmpty(), errors.toString());
+    }
+
+    /**
+     * Waits for the row's page to be read, as a table repainting it would.
+     */
+    private static Student show(StudentTableModel model, int row) throws Exception {
+        long deadline = System.nanoTime() + 10_000_000_000L;
+        while (System.nanoTime() < deadline) {
+            Student s = onEdt(() -> row < model.getRowCount() ? model.getStudent(row) : null);
+            if (s != null) {
+                return s;
+            }
+            Thread.sleep(5);
+        }
+        return fail("row " + row + " was never read");
+    }
+
+    private static <T> T onEdt(Callable<T> task) throws Exception {
+        AtomicReference<T> result = new AtomicReference<>();
+        AtomicReference<Exception> failure = new AtomicReference<>();
+        SwingUtilities.invokeAndWait(() -> {
+            try {
+                result.set(task.call());
+            } catch (Exception e) {
+                failure.set(e);
+            }
+        });
+        if (failure.get() != null) {
+            throw failure.get();
+        }
+        return result.get();
+    }
+}
@@ -0,0 +1,142 @@
+package com.example.sms;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+class WriteBehindStudentStoreTest {
+    private static final String BAD_NAME = "bad";
+
+    private final GatedStore store = new GatedStore();
+    private WriteBehindStudentStore writeBehind;
+
+    @AfterEach
+    void close() {
+        store.gate.countDown();
+        if (writeBehind != null) {
+            writeBehind.close();
+        }
+    }
+
+    private WriteBehindStudentStore open(int queueCapacity, long offerTimeoutMillis) {
+        writeBehind = new WriteBehindStudentStore(store, queueCapacity, 100, 50, offerTimeoutMillis, 10_000, 1024);
+        return writeBehind;
+    }
+
+    /**
+     * Submits one write and waits until the writer thread is stuck applying it, so later
+     * writes pile up in the queue.
+     */
+    private WriteBehindStudentStore.Operation holdWriter() throws InterruptedException {
+        WriteBehindStudentStore.Operation first = writeBehind.submit(BulkOperation.Type.CREATE, student("first"));
+        assertTrue(store.entered.await(10, TimeUnit.SECONDS), "writer never started");
+        return first;
+    }
+
+    @Test
+    void queuedWritesAreAppliedAsOneGroup() throws Exception {
+        open(1000, 1000);
+        WriteBehindStudentStore.Operation first = holdWriter();
+        List<WriteBehindStudentStore.Operation> queued = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            queued.add(writeBehind.submit(BulkOperation.Type.CREATE, student("student-" + i)));
+        }
+        store.gate.countDown();
+
+        assertEquals(201, first.result.get(10, TimeUnit.SECONDS).getStatus());
+        for (WriteBehindStudentStore.Operation op : queued) {
+            assertEquals(201, op.result.get(10, TimeUnit.SECONDS).getStatus());
+        }
+        assertEquals(List.of(1, 50), store.calls);
+        assertEquals(2, writeBehind.getBatches());
+        assertEquals(51, writeBehind.getApplied());
+        assertEquals(51, store.getAllStudents().size());
+    }
+
+    @Test
+    void rolledBackGroupIsRetriedOneWriteAtATime() throws Exception {
+        open(1000, 1000);
+        holdWriter();
+        WriteBehindStudentStore.Operation before = writeBehind.submit(BulkOperation.Type.CREATE, student("before"));
+        WriteBehindStudentStore.Operation bad = writeBehind.submit(BulkOperation.Type.CREATE, student(BAD_NAME));
+        WriteBehindStudentStore.Operation after = writeBehind.submit(BulkOperation.Type.CREATE, student("after"));
+        store.gate.countDown();
+
+        assertEquals(201, before.result.get(10, TimeUnit.SECONDS).getStatus());
+        assertEquals(500, bad.result.get(10, TimeUnit.SECONDS).getStatus());
+        assertEquals(201, after.result.get(10, TimeUnit.SECONDS).getStatus());
+        // The group of three, then each of its writes on its own
+        assertEquals(List.of(1, 3, 1, 1, 1), store.calls);
+        assertEquals(3, writeBehind.getApplied());
+
+        // A caller waiting on the bad write sees the failure
+        assertThrows(SQLException.class, () -> writeBehind.addStudent(student(BAD_NAME)));
+    }
+
+    @Test
+    void fullQueueRejectsWritesAfterTheOfferTimeout() throws Exception {
+        open(2, 100);
+        holdWriter();
+        writeBehind.submit(BulkOperation.Type.CREATE, student("queued-1"));
+        writeBehind.submit(BulkOperation.Type.CREATE, student("queued-2"));
+
+        long start = System.nanoTime();
+        RejectedExecutionException e = assertThrows(RejectedExecutionException.class,
+                () -> writeBehind.submit(BulkOperation.Type.CREATE, student("rejected")));
+        assertTrue(System.nanoTime() - start >= 80_000_000L, "waited for room in the queue");
+        assertNotNull(e.getMessage());
+        assertEquals(1, writeBehind.getRejected());
+        assertEquals(2, writeBehind.getQueued());
+
+        store.gate.countDown();
+        writeBehind.close();
+        assertEquals(3, store.getAllStudents().size());
+    }
+
+    private static Student student(String name) {
+        return new Student(0, name, name + "@example.com", 20);
+    }
+
+    /**
+     * Holds the first bulk call until {@link #gate} opens, and rolls back any group that
+     * contains a student named {@link #BAD_NAME}, as a failed transaction in MySQL would.
+     */
+    private static final class GatedStore extends InMemoryStudentStore {
+        final CountDownLatch entered = new CountDownLatch(1);
+        final CountDownLatch gate = new CountDownLatch(1);
+        final List<Integer> calls = Collections.synchronizedList(new ArrayList<>());
+
+        @Override
+        public List<BulkResult> executeBulk(List<BulkOperation> ops) {
+            calls.add(ops.size());
+            entered.countDown();
+            try {
+                gate.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            for (BulkOperation op : ops) {
+                if (BAD_NAME.equals(op.getStudent().getName())) {
+                    List<BulkResult> results = new ArrayList<>(ops.size());
+                    for (BulkOperation o : ops) {
+                        String error = o == op ? "Constraint violated" : "Rolled back";
+                        results.add(new BulkResult(o.getIndex(), o.getType(), 500, 0, error));
+                    }
+                    return results;
+                }
+            }
+            return super.executeBulk(ops);
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package com.example.sms;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.sql.SQLException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import com.sun.net.httpserver.HttpServer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Full request path: HTTP client, loopback socket, HttpServer, StudentHandler, DAO and pool.
+ * The server is started in-process on an ephemeral port with the same handler and executor
+ * as StudentAPI.main.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ApiBenchmark {
+    private static final byte[] NEW_STUDENT =
+            "{\"name\":\"Bench Student\",\"email\":\"bench@example.com\",\"age\":20}".getBytes();
+
+    private HttpServer server;
+    private ExecutorService executor;
+    private HttpClient client;
+    private String base;
+
+    @Setup
+    public void setUp() throws IOException, SQLException {
+        BenchmarkDatabase.setUp();
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/api/students", new StudentAPI.StudentHandler());
+        executor = StudentAPI.createExecutor();
+        server.setExecutor(executor);
+        server.start();
+        base = "http://localhost:" + server.getAddress().getPort() + "/api/students";
+        client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+    }
+
+    @TearDown
+    public void tearDown() {
+        server.stop(0);
+        executor.shutdownNow();
+        client.close();
+    }
+
+    private int send(HttpRequest request) throws IOException, InterruptedException {
+        HttpResponse<byte[]> response = client.send(request, HttpResponse.BodyHandlers.ofByteArray());
+        if (response.statusCode() >= 300) {
+            throw new IllegalStateException("HTTP " + response.statusCode() + " from " + request.uri());
+        }
+        return response.body().length;
+    }
+
+    @Benchmark
+    public int getById() throws IOException, InterruptedException {
+        int id = ThreadLocalRandom.current().nextInt(1, BenchmarkDatabase.SEED_ROWS + 1);
+        return send(HttpRequest.newBuilder(URI.create(base + "?id=" + id)).build());
+    }
+
+    @Benchmark
+    public int getPage() throws IOException, InterruptedException {
+        return send(HttpRequest.newBuilder(URI.create(base + "?limit=50&minAge=20")).build());
+    }
+
+    @Benchmark
+    public int post() throws IOException, InterruptedException {
+        return send(HttpRequest.newBuilder(URI.create(base))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofByteArray(NEW_STUDENT))
+                .build());
+    }
+}
@@ -0,0 +1,52 @@
+package com.example.sms;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Points the application at an in-memory H2 database and seeds it. Must run before
+ * DBConnection or StudentAPI are first touched, since both read their settings once.
+ */
+final class BenchmarkDatabase {
+    static final int SEED_ROWS = Integer.getInteger("sms.bench.rows", 10_000);
+
+    private static boolean ready;
+
+    private BenchmarkDatabase() {
+    }
+
+    static synchronized void setUp() throws SQLException {
+        if (ready) {
+            return;
+        }
+        System.setProperty("sms.db.url", "jdbc:h2:mem:sms;DB_CLOSE_DELAY=-1;MODE=MySQL");
+        System.setProperty("sms.db.user", "sa");
+        System.setProperty("sms.db.password", "");
+        try (Connection conn = DBConnection.getConnection(); Statement st = conn.createStatement()) {
+            st.execute("CREATE TABLE IF NOT EXISTS students (id INT AUTO_INCREMENT PRIMARY KEY, "
+                    + "name VARCHAR(100), email VARCHAR(100), age INT)");
+            st.execute("CREATE INDEX IF NOT EXISTS idx_students_name ON students (name, id)");
+            st.execute("CREATE INDEX IF NOT EXISTS idx_students_email ON students (email, id)");
+            st.execute("CREATE INDEX IF NOT EXISTS idx_students_age ON students (age, id)");
+        }
+        seed(new StudentDAO());
+        ready = true;
+    }
+
+    /**
+     * Inserts {@link #SEED_ROWS} students; ids come out as 1..SEED_ROWS on an empty store.
+     */
+    static void seed(StudentStore store) throws SQLException {
+        List<Student> batch = new ArrayList<>(1000);
+        for (int i = 1; i <= SEED_ROWS; i++) {
+            batch.add(new Student(0, "Student " + i, "student" + i + "@example.com", 18 + i % 10));
+            if (batch.size() == 1000 || i == SEED_ROWS) {
+                store.insertStudents(batch);
+                batch.clear();
+            }
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package com.example.sms;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of getting a connection from DBConnection's pool, compared with opening one directly.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ConnectionBenchmark {
+    @Setup
+    public void setUp() throws SQLException {
+        BenchmarkDatabase.setUp();
+    }
+
+    @Benchmark
+    public boolean pooled() throws SQLException {
+        try (Connection conn = DBConnection.getConnection()) {
+            return conn.getAutoCommit();
+        }
+    }
+
+    @Benchmark
+    @Threads(8)
+    public boolean pooledContended() throws SQLException {
+        try (Connection conn = DBConnection.getConnection()) {
+            return conn.getAutoCommit();
+        }
+    }
+
+    @Benchmark
+    public boolean unpooled() throws SQLException {
+        try (Connection conn = DriverManager.getConnection(System.getProperty("sms.db.url"),
+                System.getProperty("sms.db.user"), System.getProperty("sms.db.password"))) {
+            return conn.getAutoCommit();
+        }
+    }
+}
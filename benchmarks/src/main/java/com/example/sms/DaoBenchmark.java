@@ -0,0 +1,81 @@
+package com.example.sms;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.sql.SQLException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Storage calls for each backend: {@code jdbc} is StudentDAO against a seeded in-memory
+ * H2 database through the connection pool, {@code memory} is InMemoryStudentStore and
+ * {@code log} is LogStudentStore in a temporary directory, both with the same rows.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DaoBenchmark {
+    @Param({"jdbc", "memory", "log"})
+    public String store;
+
+    private StudentStore dao;
+
+    @Setup
+    public void setUp() throws SQLException, IOException {
+        if (store.equals("jdbc")) {
+            BenchmarkDatabase.setUp();
+            dao = new StudentDAO();
+        } else {
+            dao = store.equals("memory") ? new InMemoryStudentStore()
+                    : new LogStudentStore(Files.createTempDirectory("sms-bench-log"));
+            BenchmarkDatabase.seed(dao);
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        if (dao instanceof LogStudentStore log) {
+            log.close();
+        }
+    }
+
+    @Benchmark
+    public Student getStudentById() throws SQLException {
+        return dao.getStudentById(ThreadLocalRandom.current().nextInt(1, BenchmarkDatabase.SEED_ROWS + 1));
+    }
+
+    @Benchmark
+    public StudentPage findStudentsPage() throws SQLException {
+        StudentQuery query = new StudentQuery();
+        query.setLimit(50);
+        query.setMinAge(20);
+        return dao.findStudents(query);
+    }
+
+    @Benchmark
+    public void streamAllStudents(Blackhole bh) throws Exception {
+        dao.streamAllStudents((id, name, email, age) -> bh.consume(id));
+    }
+
+    @Benchmark
+    public void addStudent() throws SQLException {
+        dao.addStudent(new Student(0, "Bench Student", "bench@example.com", 20));
+    }
+}
@@ -0,0 +1,109 @@
+package com.example.sms;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * JSON encoding and decoding as done by StudentHandler, without any I/O.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class JsonCodecBenchmark {
+    @Param({"ascii", "unicode"})
+    public String text;
+
+    private Student student;
+    private Student[] page;
+    private byte[] body;
+    private byte[] bulkBody;
+    private final JsonReader.Fields fields = new JsonReader.Fields();
+
+    @Setup
+    public void setUp() {
+        String suffix = text.equals("ascii") ? "Smith" : "Müller é中";
+        student = new Student(42, "Jane " + suffix, "jane.smith@example.com", 21);
+        page = new Student[100];
+        for (int i = 0; i < page.length; i++) {
+            page[i] = new Student(i + 1, "Student " + i + " " + suffix, "student" + i + "@example.com", 18 + i % 10);
+        }
+        body = encode(student);
+        StringBuilder sb = new StringBuilder("[");
+        for (int i = 0; i < page.length; i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append("{\"op\":\"create\",").append(new String(encode(page[i]), StandardCharsets.UTF_8).substring(1));
+        }
+        bulkBody = sb.append(']').toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static byte[] encode(Student s) {
+        JsonWriter w = JsonWriter.acquire();
+        try {
+            w.student(s);
+            return java.util.Arrays.copyOf(w.array(), w.length());
+        } finally {
+            w.release();
+        }
+    }
+
+    @Benchmark
+    public int encodeStudent() {
+        JsonWriter w = JsonWriter.acquire();
+        try {
+            w.student(student);
+            return w.length();
+        } finally {
+            w.release();
+        }
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public int encodePage() {
+        JsonWriter w = JsonWriter.acquire();
+        try {
+            w.raw("{\"students\":[");
+            for (int i = 0; i < page.length; i++) {
+                if (i > 0) {
+                    w.raw(',');
+                }
+                w.student(page[i]);
+            }
+            w.raw("],\"nextCursor\":null}");
+            return w.length();
+        } finally {
+            w.release();
+        }
+    }
+
+    @Benchmark
+    public Student decodeStudent() {
+        JsonReader.parseObject(body, 0, body.length, fields);
+        return fields.toStudent();
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public int decodeBulkArray() {
+        int[] count = new int[1];
+        JsonReader.parseArray(bulkBody, 0, bulkBody.length, f -> count[0] += f.age);
+        return count[0];
+    }
+}